@@ -18,6 +18,7 @@
 package ca.uqac.lif.mtnp;
 
 import ca.uqac.lif.mtnp.table.PrimitiveValue;
+import ca.uqac.lif.mtnp.util.NumberParser;
 
 /**
  * Provides various facilities for reading, casting and formatting values
@@ -54,22 +55,10 @@ public class DataFormatter
 	{
 		if (o instanceof String)
 		{
-			try
+			Number n = NumberParser.parse((String) o);
+			if (n != null)
 			{
-				int f = Integer.parseInt((String) o);
-				return f;
-			}
-			catch (NumberFormatException e1)
-			{
-				try
-				{
-					float f = Float.parseFloat((String) o);
-					return f;
-				}
-				catch (NumberFormatException e2)
-				{
-					return o;
-				}
+				return n;
 			}
 		}
 		return o;
@@ -147,18 +136,6 @@ public class DataFormatter
 	 */
 	public static boolean isNumeric(String s)
 	{
-		if (s == null)
-		{
-			return false;
-		}
-		try
-		{
-			Float.parseFloat(s);
-			return true;
-		}
-		catch (NumberFormatException nfe)
-		{
-			return false;
-		}
+		return NumberParser.isNumeric(s);
 	}
 }
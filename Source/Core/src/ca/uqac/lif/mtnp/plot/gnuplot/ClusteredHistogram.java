@@ -154,7 +154,7 @@ public class ClusteredHistogram extends GnuPlot implements TwoDimensionalPlot
 		{
 			series.add(columns[i]);
 		}
-		String csv_values = tab.toCsv(s_datafileSeparator, s_datafileMissing);
+		StringBuilder csv_values = tab.writeCsv(new StringBuilder(), s_datafileSeparator, s_datafileMissing);
 		// Build GP string from table
 		StringBuilder out = new StringBuilder();
 		out.append(getHeader(term, lab_title, with_caption));
@@ -82,7 +82,7 @@ public class GnuBoxPlot extends GnuPlot implements BoxPlot
 	public String toGnuplot(ImageType term, String lab_title, boolean with_caption)
 	{
 		HardTable tab = processTable(m_table.getDataTable());
-		String csv_values = tab.toCsv(s_datafileSeparator, s_datafileMissing);
+		StringBuilder csv_values = tab.writeCsv(new StringBuilder(), s_datafileSeparator, s_datafileMissing);
 		StringBuilder out = new StringBuilder();
 		out.append(getHeader(term, lab_title, with_caption));
 		out.append("set boxwidth 0.2 absolute").append(DataFormatter.CRLF);
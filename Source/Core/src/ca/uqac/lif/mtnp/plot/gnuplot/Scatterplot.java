@@ -147,7 +147,7 @@ public class Scatterplot extends GnuPlot implements ca.uqac.lif.mtnp.plot.Scatte
 		{
 			series.add(columns[i]);
 		}
-		String csv_values = tab.toCsv(s_datafileSeparator, s_datafileMissing);
+		StringBuilder csv_values = tab.writeCsv(new StringBuilder(), s_datafileSeparator, s_datafileMissing);
 		String point_string = " with points";
 		if (m_withLines)
 		{
@@ -189,7 +189,7 @@ public class GralDataTable extends Table implements DataSource
 	public static DataSeries getCleanedDataSeries(String col_name_x, String col_name_y, HardTable table)
 	{
 		TempTable temp_t = new TempTable(table.getId(), col_name_x, col_name_y);
-		for (TableEntry te : table.getEntries())
+		for (TableEntry te : table.readEntries())
 		{
 			PrimitiveValue val_x = te.get(col_name_x);
 			PrimitiveValue val_y = te.get(col_name_y);
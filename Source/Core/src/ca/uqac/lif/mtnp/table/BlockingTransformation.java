@@ -0,0 +1,33 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+/**
+ * Marks a transformation that must read all its input before producing
+ * its first row of output, such as a sort. In a pipeline read through a
+ * {@link RowCursor}, such a transformation holds all the rows of its
+ * input in memory; the transformations before it are still streamed.
+ * This interface declares no method, and only documents the nature of
+ * the transformation.
+ * @since 0.1.14
+ * @author Sylvain Hallé
+ */
+public interface BlockingTransformation extends TableTransformation
+{
+	// Marker interface
+}
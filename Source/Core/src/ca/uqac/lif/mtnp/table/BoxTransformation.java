@@ -17,8 +17,7 @@
  */
 package ca.uqac.lif.mtnp.table;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -60,7 +59,7 @@ import ca.uqac.lif.petitpoucet.NodeFunction;
  *  
  * @author Sylvain Hallé
  */
-public class BoxTransformation implements TableTransformation 
+public class BoxTransformation implements BlockingTransformation 
 {
 	protected String m_captionX = "x";
 	protected String m_captionMin = "Min";
@@ -104,51 +103,91 @@ public class BoxTransformation implements TableTransformation
 	{
 		TempTable table = tables[0];
 		TempTable new_table = new TempTable(-10, m_captionX, m_captionMin, m_captionQ1, m_captionQ2, m_captionQ3, m_captionMax, m_captionLabel);
+		String[] col_names = table.getColumnNames();
+		List<TableEntry> entries = table.m_entries;
+		// The values are read from the entries, which may have changed since
+		// the statistics of the table were computed: the buffer is sized on
+		// the rows rather than on the count of values
+		float[] values = new float[entries.size()];
 		int col = 0;
-		for (String col_name : table.getColumnNames())
+		for (String col_name : col_names)
 		{
-			List<NodeFunction> deps = new LinkedList<NodeFunction>();
-			List<Float> values = new ArrayList<Float>();
-			int row = 0;
-			for (TableEntry te : table.getEntries())
+			int num_values = 0;
+			for (TableEntry te : entries)
 			{
 				Float f = DataFormatter.readFloat(te.get(col_name));
 				if (f != null)
 				{
-					values.add(f);
-				}
-				NodeFunction nf = table.dependsOn(row, col);
-				//NodeFunction nf = //te.getDependency(col_name);
-				if (nf != null)
-				{
-					deps.add(nf);
+					values[num_values++] = f;
 				}
-				row++;
 			}
-			Collections.sort(values);
-			if (values.isEmpty())
+			if (num_values == 0)
 			{
 				// Nothing to do
-				return new_table;
+				break;
 			}
-			float num_values = values.size();
+			Arrays.sort(values, 0, num_values);
 			TableEntry te = new TableEntry();
 			te.put(m_captionX, col);
-			te.put(m_captionMin, values.get(0));
-			te.put(m_captionQ1, values.get(Math.max(0, (int)(num_values * 0.25) - 1)));
-			te.put(m_captionQ2, values.get(Math.max(0, (int)(num_values * 0.5) - 1)));
-			te.put(m_captionQ3, values.get(Math.max(0, (int)(num_values * 0.75) - 1)));
-			te.put(m_captionMax, values.get(Math.max(0, (int) num_values - 1)));
+			te.put(m_captionMin, values[0]);
+			te.put(m_captionQ1, values[Math.max(0, (int)(num_values * 0.25f) - 1)]);
+			te.put(m_captionQ2, values[Math.max(0, (int)(num_values * 0.5f) - 1)]);
+			te.put(m_captionQ3, values[Math.max(0, (int)(num_values * 0.75f) - 1)]);
+			te.put(m_captionMax, values[num_values - 1]);
 			te.put(m_captionLabel, DataFormatter.cast(col_name));
-			te.addDependency(m_captionMin, new AggregateFunction("Minimum value of column " + col_name + " in Table #" + table.m_id, deps));
-			te.addDependency(m_captionQ1, new AggregateFunction("First quartile " + col_name + " in Table #" + table.m_id, deps));
-			te.addDependency(m_captionQ2, new AggregateFunction("Median of column " + col_name + " in Table #" + table.m_id, deps));
-			te.addDependency(m_captionQ3, new AggregateFunction("Third quartile of column " + col_name + " in Table #" + table.m_id, deps));
-			te.addDependency(m_captionMax, new AggregateFunction("Maximum value of column " + col_name + " in Table #" + table.m_id, deps));
 			new_table.add(te);
 			col++;
 		}
+		if (TransformedTable.isProvenanceEnabled())
+		{
+			new_table.setLineage(new BoxLineage(table));
+		}
 		return new_table;
 	}
+	
+	/**
+	 * The lineage of a table produced by this transformation. Row <i>i</i>
+	 * describes column <i>i</i> of the input table; each statistic depends
+	 * on all the cells of that column.
+	 */
+	protected static class BoxLineage implements CellLineage
+	{
+		/**
+		 * The descriptions of the statistics, in the order of the output
+		 * columns; the first and last columns have no dependency
+		 */
+		protected static final String[] s_descriptions = {null, "Minimum value of column ", "First quartile ", "Median of column ", "Third quartile of column ", "Maximum value of column ", null};
+		
+		/**
+		 * The input table
+		 */
+		protected final TempTable m_input;
+		
+		public BoxLineage(TempTable input)
+		{
+			super();
+			m_input = input;
+		}
+		
+		@Override
+		public NodeFunction getDependency(int row, int col)
+		{
+			String col_name = m_input.getColumnName(row);
+			if (col_name == null || col < 0 || col >= s_descriptions.length || s_descriptions[col] == null)
+			{
+				return null;
+			}
+			List<NodeFunction> deps = new LinkedList<NodeFunction>();
+			for (int in_row = 0; in_row < m_input.getRowCount(); in_row++)
+			{
+				NodeFunction nf = m_input.dependsOn(in_row, row);
+				if (nf != null)
+				{
+					deps.add(nf);
+				}
+			}
+			return new AggregateFunction(s_descriptions[col] + col_name + " in Table #" + m_input.m_id, deps);
+		}
+	}
 
 }
@@ -0,0 +1,43 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import ca.uqac.lif.petitpoucet.NodeFunction;
+
+/**
+ * A compact description of where the cells of a table come from. Rather
+ * than attaching a {@link NodeFunction} to every cell it produces, a
+ * transformation can record a lineage (for example, the permutation of
+ * the rows of its input) in its output table; the dependency of a cell
+ * is then only created when it is asked for, with
+ * {@link Table#dependsOn(int, int)}.
+ * @see TempTable#setLineage(CellLineage)
+ * @since 0.1.14
+ * @author Sylvain Hallé
+ */
+public interface CellLineage
+{
+	/**
+	 * Computes the dependency of a cell
+	 * @param row The row of the cell
+	 * @param col The column of the cell
+	 * @return The dependency, or {@code null} if the cell does not depend
+	 *   on anything
+	 */
+	public NodeFunction getDependency(int row, int col);
+}
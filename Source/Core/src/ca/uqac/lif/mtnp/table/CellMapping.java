@@ -0,0 +1,112 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import ca.uqac.lif.petitpoucet.DirectValue;
+import ca.uqac.lif.petitpoucet.NodeFunction;
+
+/**
+ * A lineage where each cell of a table comes from a single cell of
+ * another table. The correspondence is given by two arrays: one for the
+ * rows, and one for the columns. For example, sorting a table only
+ * permutes its rows, and removing columns only changes the column
+ * indices.
+ * <p>
+ * The mapping can either point to the cells of the source table, or pass
+ * through them and give the dependencies of these cells directly. The
+ * latter is used when a table simply exposes the same cells as another
+ * one, in a different order.
+ * @since 0.1.14
+ * @author Sylvain Hallé
+ */
+public class CellMapping implements CellLineage
+{
+	/**
+	 * The table the cells come from
+	 */
+	protected final Table m_source;
+
+	/**
+	 * The row of the source table each row comes from, or {@code null}
+	 * if rows are not moved
+	 */
+	protected final int[] m_rows;
+
+	/**
+	 * The column of the source table each column comes from, or
+	 * {@code null} if columns are not moved
+	 */
+	protected final int[] m_columns;
+
+	/**
+	 * Whether to give the dependency of the source cell instead of the
+	 * source cell itself
+	 */
+	protected final boolean m_passThrough;
+
+	/**
+	 * Creates a new mapping
+	 * @param source The table the cells come from
+	 * @param rows The row of the source table each row comes from, or
+	 *   {@code null} if rows are not moved
+	 * @param columns The column of the source table each column comes
+	 *   from, or {@code null} if columns are not moved
+	 * @param pass_through Set to {@code true} to give the dependency of
+	 *   the source cell instead of the source cell itself
+	 */
+	public CellMapping(Table source, int[] rows, int[] columns, boolean pass_through)
+	{
+		super();
+		m_source = source;
+		m_rows = rows;
+		m_columns = columns;
+		m_passThrough = pass_through;
+	}
+
+	@Override
+	public NodeFunction getDependency(int row, int col)
+	{
+		if (m_rows != null)
+		{
+			if (row < 0 || row >= m_rows.length)
+			{
+				return null;
+			}
+			row = m_rows[row];
+		}
+		if (m_columns != null)
+		{
+			if (col < 0 || col >= m_columns.length)
+			{
+				return null;
+			}
+			col = m_columns[col];
+		}
+		if (row < 0 || col < 0)
+		{
+			return null;
+		}
+		if (m_passThrough)
+		{
+			return m_source.dependsOn(row, col);
+		}
+		DirectValue dv = new DirectValue();
+		dv.add(new TableCellNode(m_source, row, col));
+		return dv;
+	}
+}
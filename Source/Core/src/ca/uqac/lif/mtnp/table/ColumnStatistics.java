@@ -0,0 +1,231 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+/**
+ * Running statistics on the numerical values of a table column: number
+ * of values, number of missing values, minimum, maximum and sum. The sum
+ * is computed twice: once naively, and once with Neumaier's variant of
+ * Kahan summation, which keeps track of the low-order bits lost at each
+ * addition and is accurate even for long columns of values of very
+ * different magnitudes.
+ * <p>
+ * Statistics are updated one value at a time with
+ * {@link #add(PrimitiveValue)}; non-numerical values are ignored.
+ * @since 0.1.14
+ * @author Sylvain Hallé
+ */
+public class ColumnStatistics
+{
+	/**
+	 * The number of numerical values
+	 */
+	protected int m_count;
+
+	/**
+	 * The number of missing values
+	 */
+	protected int m_nullCount;
+
+	/**
+	 * The smallest numerical value
+	 */
+	protected double m_min;
+
+	/**
+	 * The largest numerical value
+	 */
+	protected double m_max;
+
+	/**
+	 * The sum of the numerical values
+	 */
+	protected double m_sum;
+
+	/**
+	 * The running sum used for compensated summation
+	 */
+	protected double m_compensatedSum;
+
+	/**
+	 * The accumulated rounding error of the compensated sum
+	 */
+	protected double m_compensation;
+
+	/**
+	 * Creates a new empty set of statistics
+	 */
+	public ColumnStatistics()
+	{
+		super();
+		clear();
+	}
+
+	/**
+	 * Resets the statistics to those of an empty column
+	 */
+	public void clear()
+	{
+		m_count = 0;
+		m_nullCount = 0;
+		m_min = Double.NaN;
+		m_max = Double.NaN;
+		m_sum = 0;
+		m_compensatedSum = 0;
+		m_compensation = 0;
+	}
+
+	/**
+	 * Updates the statistics with a new value
+	 * @param v The value; {@code null} or {@link PrimitiveValue#NULL}
+	 *   designate a missing value
+	 */
+	public void add(PrimitiveValue v)
+	{
+		if (v == null || v.isNull())
+		{
+			m_nullCount++;
+			return;
+		}
+		if (!v.isNumeric())
+		{
+			return;
+		}
+		double d = v.doubleValue();
+		if (m_count == 0)
+		{
+			m_min = d;
+			m_max = d;
+		}
+		else
+		{
+			if (d < m_min)
+			{
+				m_min = d;
+			}
+			if (d > m_max)
+			{
+				m_max = d;
+			}
+		}
+		m_count++;
+		m_sum += d;
+		double t = m_compensatedSum + d;
+		if (Math.abs(m_compensatedSum) >= Math.abs(d))
+		{
+			m_compensation += (m_compensatedSum - t) + d;
+		}
+		else
+		{
+			m_compensation += (d - t) + m_compensatedSum;
+		}
+		m_compensatedSum = t;
+	}
+
+	/**
+	 * Gets the number of numerical values in the column
+	 * @return The number of values
+	 */
+	public int getCount()
+	{
+		return m_count;
+	}
+
+	/**
+	 * Gets the number of missing values in the column
+	 * @return The number of values
+	 */
+	public int getNullCount()
+	{
+		return m_nullCount;
+	}
+
+	/**
+	 * Gets the smallest numerical value in the column
+	 * @return The value, or {@code NaN} if the column contains no number
+	 */
+	public double getMin()
+	{
+		return m_min;
+	}
+
+	/**
+	 * Gets the largest numerical value in the column
+	 * @return The value, or {@code NaN} if the column contains no number
+	 */
+	public double getMax()
+	{
+		return m_max;
+	}
+
+	/**
+	 * Gets the sum of the numerical values in the column, computed by
+	 * adding the values one after the other
+	 * @return The sum
+	 */
+	public double getSum()
+	{
+		return m_sum;
+	}
+
+	/**
+	 * Gets the sum of the numerical values in the column, computed with
+	 * compensated summation
+	 * @return The sum
+	 */
+	public double getCompensatedSum()
+	{
+		return m_compensatedSum + m_compensation;
+	}
+
+	/**
+	 * Gets the average of the numerical values in the column
+	 * @return The average, or {@code NaN} if the column contains no number
+	 */
+	public double getMean()
+	{
+		if (m_count == 0)
+		{
+			return Double.NaN;
+		}
+		return getCompensatedSum() / m_count;
+	}
+
+	/**
+	 * Creates a copy of these statistics
+	 * @return The copy
+	 */
+	public ColumnStatistics copy()
+	{
+		ColumnStatistics cs = new ColumnStatistics();
+		cs.m_count = m_count;
+		cs.m_nullCount = m_nullCount;
+		cs.m_min = m_min;
+		cs.m_max = m_max;
+		cs.m_sum = m_sum;
+		cs.m_compensatedSum = m_compensatedSum;
+		cs.m_compensation = m_compensation;
+		return cs;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "count=" + m_count + ", nulls=" + m_nullCount + ", min=" + m_min + ", max=" + m_max + ", sum=" + getCompensatedSum();
+	}
+}
@@ -18,6 +18,7 @@
 package ca.uqac.lif.mtnp.table;
 
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import ca.uqac.lif.petitpoucet.AggregateFunction;
@@ -27,7 +28,7 @@ import ca.uqac.lif.petitpoucet.NodeFunction;
  * Computes the sum of each column
  * @author Sylvain Hallé
  */
-public class ColumnSum implements TableTransformation
+public class ColumnSum implements IncrementalTransformation, BlockingTransformation
 {
 	/**
 	 * A single instance of this table transformation
@@ -53,40 +54,135 @@ public class ColumnSum implements TableTransformation
 	{
 		TempTable table = tables[0];
 		String[] col_names = table.getColumnNames();
-		float[] col_sum = new float[col_names.length];
-		TempTable out_table = new TempTable(table.m_id, col_names);
-		int row = 0;
-		@SuppressWarnings("unchecked")
-		Set<NodeFunction>[] deps = new Set[col_names.length];
+		ColumnStatistics[] stats = new ColumnStatistics[col_names.length];
 		for (int col = 0; col < col_names.length; col++)
 		{
-			deps[col] = new HashSet<NodeFunction>();
+			stats[col] = table.getColumnStatistics(col_names[col]).copy();
 		}
-		for (TableEntry te : table.getEntries())
+		return getTable(table, col_names, stats);
+	}
+	
+	/**
+	 * Updates the sums by adding the values of the new rows to the
+	 * compensated sums kept along with the previous result. Only the new
+	 * rows are read, and the sums are the same as the ones computed from
+	 * scratch.
+	 */
+	@Override
+	public TempTable update(TempTable previous, TempTable input, int from)
+	{
+		String[] col_names = input.getColumnNames();
+		if (!(previous instanceof SumTable) || ((SumTable) previous).m_statistics.length != col_names.length)
 		{
+			return transform(input);
+		}
+		ColumnStatistics[] stats = new ColumnStatistics[col_names.length];
+		for (int col = 0; col < col_names.length; col++)
+		{
+			// The statistics of the previous result are shared with it
+			stats[col] = ((SumTable) previous).m_statistics[col].copy();
+		}
+		RowSchema schema = RowSchema.of(col_names);
+		List<TableEntry> entries = input.m_entries;
+		for (int i = from; i < entries.size(); i++)
+		{
+			TableEntry in_te = entries.get(i);
 			for (int col = 0; col < col_names.length; col++)
 			{
-				PrimitiveValue o = te.get(col_names[col]);
-				if (o == null)
-					continue;
-				if (o.isNumeric())
-				{
-					float val = o.numberValue().floatValue();
-					col_sum[col] += val;
-					deps[col].add(new TableCellNode(table, row, col));
-				}
+				stats[col].add(in_te.get(schema, col));
 			}
-			row++;
 		}
+		return getTable(input, col_names, stats);
+	}
+	
+	/**
+	 * Creates the table containing the sums of the columns
+	 * @param input The input table
+	 * @param col_names The names of the columns
+	 * @param stats The statistics of each column
+	 * @return The table
+	 */
+	protected static TempTable getTable(TempTable input, String[] col_names, ColumnStatistics[] stats)
+	{
+		SumTable out_table = new SumTable(input.m_id, null, col_names, stats);
 		TableEntry te = new TableEntry();
 		for (int col = 0; col < col_names.length; col++)
 		{
-			te.put(col_names[col], col_sum[col]);
-			AggregateFunction af = new AggregateFunction("The sum of column " + col + " in Table #" + table.m_id, deps[col]);
-			te.addDependency(col_names[col], af);
+			// Rounded only when written to the table
+			te.put(col_names[col], (float) stats[col].getCompensatedSum());
 		}
 		out_table.add(te);
+		if (TransformedTable.isProvenanceEnabled())
+		{
+			out_table.setLineage(new SumLineage(input));
+		}
 		return out_table;
 	}
-
+	
+	/**
+	 * A table produced by this transformation, which keeps the exact sums
+	 * of the columns so that they can be updated without accumulating
+	 * rounding errors
+	 */
+	protected static class SumTable extends TempTable
+	{
+		/**
+		 * The statistics of each column of the input table
+		 */
+		protected final ColumnStatistics[] m_statistics;
+		
+		public SumTable(int id, List<TableEntry> entries, String[] ordering, ColumnStatistics[] stats)
+		{
+			super(id, entries, ordering);
+			m_statistics = stats;
+		}
+		
+		@Override
+		public TempTable getDataTable(boolean temporary)
+		{
+			SumTable st = new SumTable(getId(), m_entries, m_preferredOrdering, m_statistics);
+			st.m_lineage = m_lineage;
+			return st;
+		}
+	}
+	
+	/**
+	 * The lineage of a table produced by this transformation: the sum of a
+	 * column depends on all the numerical cells of that column
+	 */
+	protected static class SumLineage implements CellLineage
+	{
+		/**
+		 * The input table
+		 */
+		protected final TempTable m_input;
+		
+		public SumLineage(TempTable input)
+		{
+			super();
+			m_input = input;
+		}
+		
+		@Override
+		public NodeFunction getDependency(int row, int col)
+		{
+			String col_name = m_input.getColumnName(col);
+			if (row != 0 || col_name == null)
+			{
+				return null;
+			}
+			Set<NodeFunction> deps = new HashSet<NodeFunction>();
+			int in_row = 0;
+			for (TableEntry in_te : m_input.m_entries)
+			{
+				PrimitiveValue o = in_te.get(col_name);
+				if (o != null && o.isNumeric())
+				{
+					deps.add(new TableCellNode(m_input, in_row, col));
+				}
+				in_row++;
+			}
+			return new AggregateFunction("The sum of column " + col + " in Table #" + m_input.m_id, deps);
+		}
+	}
 }
@@ -0,0 +1,252 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import ca.uqac.lif.petitpoucet.NodeFunction;
+
+/**
+ * A table of raw data whose cells are read from their position, column
+ * by column, rather than from a list of {@link TableEntry} objects. This
+ * class gives access to the columns and cells of such a table; a
+ * descendant only needs to say how the value of a cell is read, and
+ * whether a column is numeric.
+ * <p>
+ * No {@link TableEntry} is created by {@link #get(int, int)} or by the
+ * cursor of the table; entries are only created when the table is
+ * passed to a transformation through {@link #getDataTable()}.
+ * @since 0.1.14
+ * @author Sylvain Hallé
+ */
+public abstract class ColumnTable extends Table
+{
+	/**
+	 * The names of the columns of this table
+	 */
+	protected String[] m_columnNames;
+
+	/**
+	 * The number of rows in this table
+	 */
+	protected int m_rowCount;
+
+	/**
+	 * Creates a new table
+	 * @param column_names The names of the columns of this table
+	 * @param row_count The number of rows in this table
+	 */
+	public ColumnTable(String[] column_names, int row_count)
+	{
+		super();
+		m_columnNames = column_names;
+		m_rowCount = row_count;
+	}
+
+	/**
+	 * Reads the value of a cell in the table. The cell is assumed to be
+	 * within the bounds of the table.
+	 * @param col The column
+	 * @param row The row
+	 * @return The value, or {@code null} if the cell contains a missing
+	 * value
+	 */
+	protected abstract PrimitiveValue read(int col, int row);
+
+	/**
+	 * Determines if a column contains at least one numerical value. The
+	 * column is assumed to be within the bounds of the table.
+	 * @param col The position of the column
+	 * @return {@code true} if the column is numeric
+	 */
+	protected abstract boolean isNumeric(int col);
+
+	/**
+	 * Gets the value of a cell in the table
+	 * @param col The column
+	 * @param row The row
+	 * @return The value, or {@code null} if the cell is out of bounds or
+	 * contains a missing value
+	 */
+	public PrimitiveValue get(int col, int row)
+	{
+		if (row < 0 || row >= m_rowCount || col < 0 || col >= m_columnNames.length)
+		{
+			// Out of bounds
+			return null;
+		}
+		return read(col, row);
+	}
+
+	/**
+	 * Gets the number of columns in the table
+	 * @return The number of columns
+	 */
+	public int getColumnCount()
+	{
+		return m_columnNames.length;
+	}
+
+	/**
+	 * Gets the number of rows in the table
+	 * @return The number of rows
+	 */
+	public int getRowCount()
+	{
+		return m_rowCount;
+	}
+
+	/**
+	 * Gets the names of all the columns in the table
+	 * @return An array of names
+	 */
+	public String[] getColumnNames()
+	{
+		return m_columnNames;
+	}
+
+	/**
+	 * Gets the name of the column at a given position in the table
+	 * @param col The position
+	 * @return The column's name, or null if the index is out of bounds
+	 */
+	public String getColumnName(int col)
+	{
+		if (col < 0 || col >= m_columnNames.length)
+		{
+			return null;
+		}
+		return m_columnNames[col];
+	}
+
+	/**
+	 * Gets the position of the column of a given name in the table
+	 * @param name The name
+	 * @return The column's position, or -1 if the name was not found
+	 */
+	public int getColumnPosition(String name)
+	{
+		for (int i = 0; i < m_columnNames.length; i++)
+		{
+			if (m_columnNames[i].compareTo(name) == 0)
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Gets the type of the column of given name
+	 * @param col_name The name of the column
+	 * @return The type, or {@code null} if the column does not exist
+	 */
+	public Class<? extends Comparable<?>> getColumnTypeFor(String col_name)
+	{
+		int pos = getColumnPosition(col_name);
+		if (pos < 0)
+		{
+			return null;
+		}
+		if (isNumeric(pos))
+		{
+			return Float.class;
+		}
+		return String.class;
+	}
+
+	/**
+	 * Gets the type of each column of the table
+	 * @return An array of types, with <tt>Float.class</tt> for a numeric
+	 *   column and <tt>String.class</tt> otherwise
+	 */
+	public Class<? extends Comparable<?>>[] getColumnTypes()
+	{
+		@SuppressWarnings("unchecked")
+		Class<? extends Comparable<?>>[] types = (Class<? extends Comparable<?>>[]) new Class<?>[m_columnNames.length];
+		for (int i = 0; i < m_columnNames.length; i++)
+		{
+			types[i] = isNumeric(i) ? Float.class : String.class;
+		}
+		return types;
+	}
+
+	/**
+	 * Determines if a column contains at least one numerical value
+	 * @param col The position of the column
+	 * @return {@code true} if the column is numeric, {@code false}
+	 *   otherwise or if the position is out of bounds
+	 */
+	public final boolean isColumnNumeric(int col)
+	{
+		return col >= 0 && col < m_columnNames.length && isNumeric(col);
+	}
+
+	@Override
+	public TempTable getDataTable(boolean temporary)
+	{
+		return getDataTable(temporary, m_columnNames);
+	}
+
+	/**
+	 * Gets a cursor reading the rows of this table from its columns,
+	 * without creating any {@link TableEntry}
+	 * @return The cursor
+	 */
+	@Override
+	public RowCursor getCursor()
+	{
+		return new RowCursor.Indexed(m_columnNames, m_rowCount)
+		{
+			@Override
+			protected PrimitiveValue get(int col, int row)
+			{
+				return read(col, row);
+			}
+		};
+	}
+
+	@Override
+	protected TempTable getDataTable(boolean link_to_experiments, String... ordering)
+	{
+		TempTable tt = new TempTable(getId(), ordering);
+		RowSchema schema = RowSchema.of(m_columnNames);
+		// The position of each column in the entries; a name given more
+		// than once designates a single value
+		int[] ordinals = new int[m_columnNames.length];
+		for (int col = 0; col < ordinals.length; col++)
+		{
+			ordinals[col] = schema.getOrdinal(m_columnNames[col]);
+		}
+		for (int row = 0; row < m_rowCount; row++)
+		{
+			TableEntry te = new TableEntry(schema);
+			for (int col = 0; col < ordinals.length; col++)
+			{
+				te.setValue(ordinals[col], read(col, row));
+			}
+			tt.add(te);
+		}
+		return tt;
+	}
+
+	@Override
+	public NodeFunction getDependency(int row, int col)
+	{
+		// Raw data: no dependency
+		return null;
+	}
+}
@@ -0,0 +1,866 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import ca.uqac.lif.mtnp.DataFormatter;
+import ca.uqac.lif.mtnp.util.NumberParser;
+
+/**
+ * A table whose contents are stored column by column, in arrays of
+ * primitive values, rather than as a list of {@link TableEntry} maps.
+ * Each column starts as a column of <tt>int</tt>s, and is promoted to a
+ * column of <tt>long</tt>s, <tt>double</tt>s, strings or arbitrary
+ * {@link PrimitiveValue}s as values that do not fit its current type are
+ * added to it. Integers that a <tt>double</tt> cannot represent exactly
+ * are never put in a column of <tt>double</tt>s: a column mixing them
+ * with non-integral numbers holds arbitrary values instead, so that
+ * they keep their exact value. Missing values are recorded in a bitmap.
+ * Columns of
+ * strings are dictionary-encoded: each distinct string is stored once,
+ * and each row only holds its <tt>int</tt> code (see
+ * {@link #getDictionary(int)}).
+ * <p>
+ * This table is meant for large tables of raw data, where the overhead of
+ * one map per row becomes significant. Its contents can be passed to
+ * any {@link TableTransformation} or renderer through
+ * {@link #getDataTable()}, which produces a regular {@link TempTable}.
+ * @since 0.1.14
+ * @author Sylvain Hallé
+ */
+public class ColumnarTable extends ColumnTable
+{
+	/**
+	 * The initial number of rows each column can hold
+	 */
+	protected static final int s_initialCapacity = 16;
+
+	/**
+	 * The columns of this table
+	 */
+	protected Column[] m_columns;
+
+	/**
+	 * Creates a new empty columnar table
+	 * @param column_names The names of the columns of this table
+	 */
+	public ColumnarTable(String ... column_names)
+	{
+		super(column_names, 0);
+		m_columns = new Column[column_names.length];
+		for (int i = 0; i < m_columns.length; i++)
+		{
+			m_columns[i] = new IntColumn(s_initialCapacity);
+		}
+	}
+
+	/**
+	 * Creates a columnar table with the contents of an arbitrary table.
+	 * @param t The table
+	 * @return A columnar table. If <tt>t</tt> is already a columnar table,
+	 *   it is returned as is.
+	 */
+	public static ColumnarTable toColumnar(Table t)
+	{
+		if (t instanceof ColumnarTable)
+		{
+			return (ColumnarTable) t;
+		}
+		TempTable tt = t.getDataTable();
+		ColumnarTable ct = new ColumnarTable(tt.getColumnNames());
+		for (TableEntry te : tt.m_entries)
+		{
+			ct.add(te);
+		}
+		return ct;
+	}
+
+	/**
+	 * Adds a new row to the table. Keys of the entry that do not
+	 * correspond to a column of the table are ignored; columns that do
+	 * not appear in the entry are given a missing value.
+	 * @param e The entry
+	 */
+	public void add(TableEntry e)
+	{
+		for (int col = 0; col < m_columnNames.length; col++)
+		{
+			m_columns[col] = m_columns[col].append(e.get(m_columnNames[col]), m_rowCount);
+		}
+		m_rowCount++;
+		appended();
+	}
+
+	/**
+	 * Adds a new row to the table
+	 * @param values The values of each column, in the order in which
+	 * the columns are defined. Missing trailing values are given a
+	 * missing value.
+	 */
+	public void addRow(Object ... values)
+	{
+		for (int col = 0; col < m_columnNames.length; col++)
+		{
+			PrimitiveValue v = null;
+			if (col < values.length && values[col] != null)
+			{
+				v = PrimitiveValue.getInstance(values[col]);
+			}
+			m_columns[col] = m_columns[col].append(v, m_rowCount);
+		}
+		m_rowCount++;
+		appended();
+	}
+
+	/**
+	 * Prepares a column to receive values of a given kind, so that it
+	 * does not have to be promoted (and its contents copied) while these
+	 * values are added. A column that can already hold such values is
+	 * left as is; in all cases, the column is still promoted if a value
+	 * it cannot hold is added later.
+	 * @param col The index of the column
+	 * @param kind The kind of values, as defined in {@link NumberParser}
+	 */
+	public void prepareColumn(int col, int kind)
+	{
+		Column c = m_columns[col];
+		int capacity = Math.max(s_initialCapacity, m_rowCount);
+		if (kind == NumberParser.LONG && c instanceof IntColumn)
+		{
+			m_columns[col] = c.promoteTo(new LongColumn(capacity), m_rowCount);
+		}
+		else if (kind == NumberParser.DECIMAL && (c instanceof IntColumn || (c instanceof LongColumn && !((LongColumn) c).m_exact)))
+		{
+			m_columns[col] = c.promoteTo(new DoubleColumn(capacity), m_rowCount);
+		}
+		else if (kind == NumberParser.TEXT && c instanceof IntColumn && c.m_nonNulls == 0)
+		{
+			m_columns[col] = c.promoteTo(new StringColumn(capacity), m_rowCount);
+		}
+	}
+
+	@Override
+	protected PrimitiveValue read(int col, int row)
+	{
+		Column c = m_columns[col];
+		if (c.isNull(row))
+		{
+			return null;
+		}
+		return c.get(row);
+	}
+
+	@Override
+	protected boolean isNumeric(int col)
+	{
+		return m_columns[col].isNumeric();
+	}
+
+	/**
+	 * Writes the contents of the table as CSV, one line per row, preceded
+	 * by a line with the column names. Values are read directly from the
+	 * columns and written to the output without being converted into
+	 * {@link PrimitiveValue}s first.
+	 * @param out The output to write to
+	 * @param separator The symbol used as the separator for values
+	 * @param missing The symbol used for missing data
+	 * @throws IOException If the output cannot be written to
+	 */
+	public void writeCsv(Appendable out, String separator, String missing) throws IOException
+	{
+		for (int i = 0; i < m_columnNames.length; i++)
+		{
+			if (i > 0)
+			{
+				out.append(separator);
+			}
+			out.append(m_columnNames[i]);
+		}
+		out.append(DataFormatter.CRLF);
+		for (int row = 0; row < m_rowCount; row++)
+		{
+			for (int i = 0; i < m_columns.length; i++)
+			{
+				if (i > 0)
+				{
+					out.append(separator);
+				}
+				Column c = m_columns[i];
+				if (c.isNull(row))
+				{
+					out.append(missing);
+				}
+				else
+				{
+					c.appendTo(out, row);
+				}
+			}
+			out.append(DataFormatter.CRLF);
+		}
+	}
+
+	/**
+	 * Gets the dictionary of a dictionary-encoded column
+	 * @param col The column
+	 * @return The dictionary, or {@code null} if the column does not
+	 * exist or is not dictionary-encoded
+	 */
+	public ValueDictionary getDictionary(int col)
+	{
+		if (col < 0 || col >= m_columns.length || !(m_columns[col] instanceof StringColumn))
+		{
+			return null;
+		}
+		return ((StringColumn) m_columns[col]).m_dictionary;
+	}
+
+	/**
+	 * Gets the dictionary code of a cell in a dictionary-encoded column
+	 * @param col The column
+	 * @param row The row
+	 * @return The code, or -1 if the cell is out of bounds, contains a
+	 * missing value or is not in a dictionary-encoded column
+	 */
+	public int getCode(int col, int row)
+	{
+		if (row < 0 || row >= m_rowCount || col < 0 || col >= m_columns.length)
+		{
+			return -1;
+		}
+		Column c = m_columns[col];
+		if (!(c instanceof StringColumn) || c.isNull(row))
+		{
+			return -1;
+		}
+		return ((StringColumn) c).m_codes[row];
+	}
+
+	/**
+	 * Determines if the version of this table changes whenever its
+	 * contents change. This is the case, since rows can only be added
+	 * through {@link #add(TableEntry)} and {@link #addRow(Object...)}.
+	 * @return {@code true}
+	 */
+	@Override
+	public boolean isVersioned()
+	{
+		return true;
+	}
+
+	@Override
+	public void clear()
+	{
+		super.clear();
+		m_rowCount = 0;
+		for (int i = 0; i < m_columns.length; i++)
+		{
+			m_columns[i] = new IntColumn(s_initialCapacity);
+		}
+	}
+
+	@Override
+	public ColumnarTable duplicate(boolean with_state)
+	{
+		ColumnarTable ct = new ColumnarTable(m_columnNames);
+		copyInto(ct, with_state);
+		return ct;
+	}
+
+	@Override
+	protected void copyInto(Table t, boolean with_state)
+	{
+		super.copyInto(t, with_state);
+		if (!(t instanceof ColumnarTable))
+		{
+			return;
+		}
+		ColumnarTable ct = (ColumnarTable) t;
+		ct.m_columnNames = m_columnNames;
+		ct.m_columns = new Column[m_columns.length];
+		ct.m_rowCount = 0;
+		for (int i = 0; i < m_columns.length; i++)
+		{
+			ct.m_columns[i] = with_state ? m_columns[i].copy() : new IntColumn(s_initialCapacity);
+		}
+		if (with_state)
+		{
+			ct.m_rowCount = m_rowCount;
+		}
+	}
+
+	/**
+	 * A column of values. Columns are append-only; appending a value that
+	 * does not fit the column's type returns a new, more general column
+	 * containing the same values.
+	 */
+	protected abstract static class Column
+	{
+		/**
+		 * A bitmap indicating which rows contain a missing value
+		 */
+		protected long[] m_nulls;
+
+		/**
+		 * The number of non-null values in this column
+		 */
+		protected int m_nonNulls = 0;
+
+		/**
+		 * Creates a new empty column
+		 * @param capacity The number of rows the column can hold
+		 *   before growing
+		 */
+		public Column(int capacity)
+		{
+			super();
+			m_nulls = new long[(capacity >> 6) + 1];
+		}
+
+		/**
+		 * Appends a value at the end of the column
+		 * @param v The value; {@code null} designates a missing value
+		 * @param row The index of the row to write to
+		 * @return The column in which the value has been written; this
+		 *   is either this column, or a promotion of this column to a
+		 *   more general type
+		 */
+		public abstract Column append(PrimitiveValue v, int row);
+
+		/**
+		 * Gets the value at a given row. The row is assumed not to
+		 * contain a missing value.
+		 * @param row The row
+		 * @return The value
+		 */
+		public abstract PrimitiveValue get(int row);
+
+		/**
+		 * Writes the value at a given row. The row is assumed not to
+		 * contain a missing value.
+		 * @param out The output to write to
+		 * @param row The row
+		 * @throws IOException If the output cannot be written to
+		 */
+		public void appendTo(Appendable out, int row) throws IOException
+		{
+			get(row).appendTo(out);
+		}
+
+		/**
+		 * Determines if this column contains at least one numerical value
+		 * @return {@code true} if the column is numerical, {@code false}
+		 * otherwise
+		 */
+		public abstract boolean isNumeric();
+
+		/**
+		 * Creates a copy of this column
+		 * @return The copy
+		 */
+		public abstract Column copy();
+
+		/**
+		 * Determines if a row contains a missing value
+		 * @param row The row
+		 * @return {@code true} if the value is missing
+		 */
+		public final boolean isNull(int row)
+		{
+			int word = row >> 6;
+			return word < m_nulls.length && (m_nulls[word] & (1L << row)) != 0;
+		}
+
+		/**
+		 * Marks a row as containing a missing value
+		 * @param row The row
+		 */
+		protected final void setNull(int row)
+		{
+			int word = row >> 6;
+			if (word >= m_nulls.length)
+			{
+				m_nulls = Arrays.copyOf(m_nulls, Math.max(word + 1, m_nulls.length * 2));
+			}
+			m_nulls[word] |= 1L << row;
+		}
+
+		/**
+		 * Computes the new capacity of an array that must hold a given row
+		 * @param length The current length of the array
+		 * @param row The row
+		 * @return The new length
+		 */
+		protected static int grow(int length, int row)
+		{
+			return Math.max(row + 1, length * 2);
+		}
+
+		/**
+		 * Determines if an integer can be stored in a <tt>double</tt>
+		 * without losing precision
+		 * @param x The integer
+		 * @return {@code true} if the integer is represented exactly
+		 */
+		protected static boolean fitsDouble(long x)
+		{
+			// Long.MAX_VALUE becomes 2^63, which is converted back to
+			// Long.MAX_VALUE
+			return x != Long.MAX_VALUE && (long) (double) x == x;
+		}
+
+		/**
+		 * Copies every value of this column into a new column, starting
+		 * with the null bitmap
+		 * @param c The new column
+		 * @param rows The number of rows to copy
+		 * @return The new column
+		 */
+		protected Column promoteTo(Column c, int rows)
+		{
+			c.m_nulls = m_nulls.clone();
+			for (int i = 0; i < rows; i++)
+			{
+				if (!isNull(i))
+				{
+					c.append(get(i), i);
+				}
+			}
+			return c;
+		}
+
+		/**
+		 * Promotes this column to accept a non-numerical value
+		 * @param rows The number of rows in the column
+		 * @return The new column
+		 */
+		protected Column promoteToNonNumeric(PrimitiveValue v, int rows)
+		{
+			Column c;
+			if (m_nonNulls == 0 && !v.isBoolean())
+			{
+				c = new StringColumn(rows + 1);
+			}
+			else
+			{
+				c = new ValueColumn(rows + 1);
+			}
+			return promoteTo(c, rows).append(v, rows);
+		}
+	}
+
+	/**
+	 * A column of <tt>int</tt>s
+	 */
+	protected static class IntColumn extends Column
+	{
+		protected int[] m_values;
+
+		public IntColumn(int capacity)
+		{
+			super(capacity);
+			m_values = new int[capacity];
+		}
+
+		@Override
+		public Column append(PrimitiveValue v, int row)
+		{
+			if (v == null || v.isNull())
+			{
+				setNull(row);
+				return this;
+			}
+			if (!v.isNumeric())
+			{
+				return promoteToNonNumeric(v, row);
+			}
+			if (!v.isIntegral())
+			{
+				return promoteTo(new DoubleColumn(m_values.length), row).append(v, row);
+			}
+			long l = v.longValue();
+			if (l < Integer.MIN_VALUE || l > Integer.MAX_VALUE)
+			{
+				return promoteTo(new LongColumn(m_values.length), row).append(v, row);
+			}
+			if (row >= m_values.length)
+			{
+				m_values = Arrays.copyOf(m_values, grow(m_values.length, row));
+			}
+			m_values[row] = (int) l;
+			m_nonNulls++;
+			return this;
+		}
+
+		@Override
+		public PrimitiveValue get(int row)
+		{
+			return PrimitiveValue.getInstance(m_values[row]);
+		}
+
+		@Override
+		public void appendTo(Appendable out, int row) throws IOException
+		{
+			PrimitiveValue.appendLong(out, m_values[row]);
+		}
+
+		@Override
+		public boolean isNumeric()
+		{
+			return m_nonNulls > 0;
+		}
+
+		@Override
+		public IntColumn copy()
+		{
+			IntColumn c = new IntColumn(0);
+			c.m_values = m_values.clone();
+			c.m_nulls = m_nulls.clone();
+			c.m_nonNulls = m_nonNulls;
+			return c;
+		}
+	}
+
+	/**
+	 * A column of <tt>long</tt>s
+	 */
+	protected static class LongColumn extends Column
+	{
+		protected long[] m_values;
+
+		/**
+		 * Whether the column contains an integer that a <tt>double</tt>
+		 * cannot represent exactly
+		 */
+		protected boolean m_exact = false;
+
+		public LongColumn(int capacity)
+		{
+			super(capacity);
+			m_values = new long[capacity];
+		}
+
+		@Override
+		public Column append(PrimitiveValue v, int row)
+		{
+			if (v == null || v.isNull())
+			{
+				setNull(row);
+				return this;
+			}
+			if (!v.isNumeric())
+			{
+				return promoteToNonNumeric(v, row);
+			}
+			if (!v.isIntegral())
+			{
+				Column c = m_exact ? new ValueColumn(m_values.length) : new DoubleColumn(m_values.length);
+				return promoteTo(c, row).append(v, row);
+			}
+			if (row >= m_values.length)
+			{
+				m_values = Arrays.copyOf(m_values, grow(m_values.length, row));
+			}
+			long l = v.longValue();
+			m_values[row] = l;
+			m_exact |= !fitsDouble(l);
+			m_nonNulls++;
+			return this;
+		}
+
+		@Override
+		public PrimitiveValue get(int row)
+		{
+			return PrimitiveValue.getInstance(m_values[row]);
+		}
+
+		@Override
+		public void appendTo(Appendable out, int row) throws IOException
+		{
+			PrimitiveValue.appendLong(out, m_values[row]);
+		}
+
+		@Override
+		public boolean isNumeric()
+		{
+			return m_nonNulls > 0;
+		}
+
+		@Override
+		public LongColumn copy()
+		{
+			LongColumn c = new LongColumn(0);
+			c.m_values = m_values.clone();
+			c.m_nulls = m_nulls.clone();
+			c.m_nonNulls = m_nonNulls;
+			c.m_exact = m_exact;
+			return c;
+		}
+	}
+
+	/**
+	 * A column of <tt>double</tt>s. Since the column may also receive
+	 * integers, a second bitmap remembers which values were integral, so
+	 * that they are given back with the same type.
+	 */
+	protected static class DoubleColumn extends Column
+	{
+		protected double[] m_values;
+
+		/**
+		 * A bitmap indicating which rows contain an integral value
+		 */
+		protected long[] m_integral;
+
+		/**
+		 * Whether all the non-integral values in the column are
+		 * single-precision floats
+		 */
+		protected boolean m_float = true;
+
+		public DoubleColumn(int capacity)
+		{
+			super(capacity);
+			m_values = new double[capacity];
+			m_integral = new long[(capacity >> 6) + 1];
+		}
+
+		@Override
+		public Column append(PrimitiveValue v, int row)
+		{
+			if (v == null || v.isNull())
+			{
+				setNull(row);
+				return this;
+			}
+			if (!v.isNumeric())
+			{
+				return promoteToNonNumeric(v, row);
+			}
+			if (v.isIntegral() && !fitsDouble(v.longValue()))
+			{
+				// The integer would lose precision
+				return promoteTo(new ValueColumn(m_values.length), row).append(v, row);
+			}
+			if (row >= m_values.length)
+			{
+				m_values = Arrays.copyOf(m_values, grow(m_values.length, row));
+			}
+			if (v instanceof PrimitiveValue.FloatValue)
+			{
+				m_values[row] = v.doubleValue();
+			}
+			else if (!v.isIntegral())
+			{
+				m_values[row] = v.doubleValue();
+				m_float = false;
+			}
+			else
+			{
+				m_values[row] = v.longValue();
+				int word = row >> 6;
+				if (word >= m_integral.length)
+				{
+					m_integral = Arrays.copyOf(m_integral, Math.max(word + 1, m_integral.length * 2));
+				}
+				m_integral[word] |= 1L << row;
+			}
+			m_nonNulls++;
+			return this;
+		}
+
+		@Override
+		public PrimitiveValue get(int row)
+		{
+			int word = row >> 6;
+			if (word < m_integral.length && (m_integral[word] & (1L << row)) != 0)
+			{
+				return PrimitiveValue.getInstance((long) m_values[row]);
+			}
+			if (m_float)
+			{
+				return PrimitiveValue.getInstance((float) m_values[row]);
+			}
+			return PrimitiveValue.getInstance(m_values[row]);
+		}
+
+		@Override
+		public void appendTo(Appendable out, int row) throws IOException
+		{
+			int word = row >> 6;
+			if (word < m_integral.length && (m_integral[word] & (1L << row)) != 0)
+			{
+				PrimitiveValue.appendLong(out, (long) m_values[row]);
+			}
+			else if (!(out instanceof StringBuilder))
+			{
+				get(row).appendTo(out);
+			}
+			else if (m_float)
+			{
+				((StringBuilder) out).append((float) m_values[row]);
+			}
+			else
+			{
+				((StringBuilder) out).append(m_values[row]);
+			}
+		}
+
+		@Override
+		public boolean isNumeric()
+		{
+			return m_nonNulls > 0;
+		}
+
+		@Override
+		public DoubleColumn copy()
+		{
+			DoubleColumn c = new DoubleColumn(0);
+			c.m_values = m_values.clone();
+			c.m_integral = m_integral.clone();
+			c.m_nulls = m_nulls.clone();
+			c.m_nonNulls = m_nonNulls;
+			c.m_float = m_float;
+			return c;
+		}
+	}
+
+	/**
+	 * A column of strings, stored as codes in a dictionary of the distinct
+	 * strings of the column
+	 */
+	protected static class StringColumn extends Column
+	{
+		protected int[] m_codes;
+
+		protected ValueDictionary m_dictionary;
+
+		public StringColumn(int capacity)
+		{
+			super(capacity);
+			m_codes = new int[capacity];
+			m_dictionary = new ValueDictionary();
+		}
+
+		@Override
+		public Column append(PrimitiveValue v, int row)
+		{
+			if (v == null || v.isNull())
+			{
+				setNull(row);
+				return this;
+			}
+			if (v.isNumeric() || v.isBoolean())
+			{
+				return promoteTo(new ValueColumn(m_codes.length), row).append(v, row);
+			}
+			if (row >= m_codes.length)
+			{
+				m_codes = Arrays.copyOf(m_codes, grow(m_codes.length, row));
+			}
+			m_codes[row] = m_dictionary.encode(v);
+			m_nonNulls++;
+			return this;
+		}
+
+		@Override
+		public PrimitiveValue get(int row)
+		{
+			return m_dictionary.decode(m_codes[row]);
+		}
+
+		@Override
+		public boolean isNumeric()
+		{
+			return false;
+		}
+
+		@Override
+		public StringColumn copy()
+		{
+			StringColumn c = new StringColumn(0);
+			c.m_codes = m_codes.clone();
+			c.m_dictionary = m_dictionary.copy();
+			c.m_nulls = m_nulls.clone();
+			c.m_nonNulls = m_nonNulls;
+			return c;
+		}
+	}
+
+	/**
+	 * A column of arbitrary values, used when a column mixes values of
+	 * different types
+	 */
+	protected static class ValueColumn extends Column
+	{
+		protected PrimitiveValue[] m_values;
+
+		/**
+		 * Whether the column contains at least one numerical value
+		 */
+		protected boolean m_numeric = false;
+
+		public ValueColumn(int capacity)
+		{
+			super(capacity);
+			m_values = new PrimitiveValue[capacity];
+		}
+
+		@Override
+		public Column append(PrimitiveValue v, int row)
+		{
+			if (v == null || v.isNull())
+			{
+				setNull(row);
+				return this;
+			}
+			if (row >= m_values.length)
+			{
+				m_values = Arrays.copyOf(m_values, grow(m_values.length, row));
+			}
+			m_values[row] = v;
+			m_numeric |= v.isNumeric();
+			m_nonNulls++;
+			return this;
+		}
+
+		@Override
+		public PrimitiveValue get(int row)
+		{
+			return m_values[row];
+		}
+
+		@Override
+		public boolean isNumeric()
+		{
+			return m_numeric;
+		}
+
+		@Override
+		public ValueColumn copy()
+		{
+			ValueColumn c = new ValueColumn(0);
+			c.m_values = m_values.clone();
+			c.m_nulls = m_nulls.clone();
+			c.m_nonNulls = m_nonNulls;
+			c.m_numeric = m_numeric;
+			return c;
+		}
+	}
+}
@@ -19,16 +19,28 @@ package ca.uqac.lif.mtnp.table;
 
 /**
  * A table transformation made by chaining multiple transformations
- * one after the other.
+ * one after the other. Consecutive {@link RowTransformation}s are fused
+ * into a {@link FusedTransformation}, so that no table is created
+ * between them.
+ * <p>
+ * A composition can be streamed: rows go through the transformations as
+ * they are read, up to the first one that is not a
+ * {@link StreamableTransformation}.
  * @author Sylvain Hallé
  */
-public class Composition implements TableTransformation
+public class Composition implements StreamableTransformation
 {
 	/**
 	 * The list of transformations to perform
 	 */
 	protected final TableTransformation[] m_transformations;
 	
+	/**
+	 * The transformations actually performed, where consecutive row
+	 * transformations are fused
+	 */
+	protected final TableTransformation[] m_steps;
+	
 	/**
 	 * Creates a new composition
 	 * @param transformations The list of table transformations to apply
@@ -37,17 +49,28 @@ public class Composition implements TableTransformation
 	{
 		super();
 		m_transformations = transformations;
+		m_steps = FusedTransformation.fuse(transformations);
 	}
 
 	@Override
 	public TempTable transform(TempTable ... tables)
 	{
-		TempTable t = m_transformations[0].transform(tables);
-		for (int i = 1; i < m_transformations.length; i++)
+		TempTable t = m_steps[0].transform(tables);
+		for (int i = 1; i < m_steps.length; i++)
 		{
-			t = m_transformations[i].transform(t);
+			t = m_steps[i].transform(t);
 		}
 		return t;
 	}
 
+	@Override
+	public RowCursor stream(RowCursor ... inputs)
+	{
+		RowCursor cursor = RowCursor.stream(m_steps[0], inputs);
+		for (int i = 1; i < m_steps.length; i++)
+		{
+			cursor = RowCursor.stream(m_steps[i], cursor);
+		}
+		return cursor;
+	}
 }
@@ -18,13 +18,14 @@
 package ca.uqac.lif.mtnp.table;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Map.Entry;
+import java.util.Map;
 
 import ca.uqac.lif.petitpoucet.DirectValue;
-
-import java.util.Set;
+import ca.uqac.lif.petitpoucet.NodeFunction;
 
 /**
  * Transforms a table by expanding the values of one column as column
@@ -53,20 +54,45 @@ import java.util.Set;
  * <pre>
  * TableTransformation t = new ExpandAsColumns("Market", "Share");
  * </pre>
+ * The new columns appear in the order in which their name is first
+ * found in the table, or in ascending order if
+ * {@link #setSortColumns(boolean)} is used. Several value columns can
+ * be expanded at once. Rows are grouped by encoding the values of the
+ * remaining columns as integer codes, so that grouping takes a single
+ * pass over the table. The new columns are only known once all the rows
+ * have been read, which makes this transformation blocking.
  * @author Sylvain Hallé
  *
  */
-public class ExpandAsColumns implements TableTransformation
+public class ExpandAsColumns implements BlockingTransformation
 {
 	protected final String m_columnKey;
 	
-	protected final String m_valueKey;
+	protected final String[] m_valueKeys;
+	
+	/**
+	 * Whether the new columns are sorted in ascending order of their name
+	 */
+	protected boolean m_sortColumns = false;
 	
 	public ExpandAsColumns(String column_key, String value_key)
+	{
+		this(column_key, new String[] {value_key});
+	}
+	
+	/**
+	 * Creates a new transformation that expands several value columns at
+	 * once. For each value of the column key, a new column is created for
+	 * each of the value columns; its name is given by
+	 * {@link #getColumnName(String, String)}.
+	 * @param column_key The column whose values become column headers
+	 * @param value_keys The columns whose values fill the new columns
+	 */
+	public ExpandAsColumns(String column_key, String ... value_keys)
 	{
 		super();
 		m_columnKey = column_key;
-		m_valueKey = value_key;
+		m_valueKeys = value_keys;
 	}
 	
 	public static ExpandAsColumns get(String column_key, String value_key)
@@ -74,96 +100,203 @@ public class ExpandAsColumns implements TableTransformation
 		return new ExpandAsColumns(column_key, value_key);
 	}
 	
+	/**
+	 * Sets whether the new columns are sorted in ascending order of the
+	 * values of the column key. Otherwise, they appear in the order in
+	 * which these values are first found in the table.
+	 * @param b Set to {@code true} to sort the new columns
+	 * @return This transformation
+	 */
+	public ExpandAsColumns setSortColumns(boolean b)
+	{
+		m_sortColumns = b;
+		return this;
+	}
+	
+	/**
+	 * Gets the name of a new column. When a single value column is
+	 * expanded, this is the value of the column key; otherwise, the name
+	 * of the value column is appended to it.
+	 * @param key The value of the column key
+	 * @param value_key The name of the value column
+	 * @return The name of the new column
+	 */
+	protected String getColumnName(String key, String value_key)
+	{
+		if (m_valueKeys.length == 1)
+		{
+			return key;
+		}
+		return key + " " + value_key;
+	}
+	
 	@Override
 	public TempTable transform(TempTable ... tables)
 	{
 		TempTable table = tables[0];
-		Set<String> new_keys = new HashSet<String>();
-		for (TableEntry te : table.getEntries())
+		List<TableEntry> table_entries = table.m_entries;
+		// The values of the column key are numbered by the order in which
+		// they first appear in the table. Since they become column names,
+		// values are told apart by their string, so that two values with the
+		// same string (such as the number 1 and the string "1") give a single
+		// column.
+		Map<String,Integer> column_dictionary = new HashMap<String,Integer>();
+		final List<PrimitiveValue> column_values = new ArrayList<PrimitiveValue>();
+		int[] column_codes = new int[table_entries.size()];
+		int row = 0;
+		for (TableEntry te : table_entries)
 		{
-			if (!te.containsKey(m_columnKey))
-			{
-				continue;
-			}
 			PrimitiveValue o = te.get(m_columnKey);
-			if (o == null)
+			int code = -1;
+			if (o != null)
 			{
-				continue;
+				String s = getString(o);
+				Integer c = column_dictionary.get(s);
+				if (c == null)
+				{
+					c = column_values.size();
+					column_dictionary.put(s, c);
+					column_values.add(o);
+				}
+				code = c;
 			}
-			new_keys.add(o.toString());
+			column_codes[row++] = code;
 		}
-		if (new_keys.isEmpty())
+		int num_keys = column_values.size();
+		if (num_keys == 0)
 		{
 			// Nothing to do
 			return table;
 		}
+		// The position of each value of the column key among the new
+		// columns, and the value at each position
+		Integer[] key_order = new Integer[num_keys];
+		for (int i = 0; i < num_keys; i++)
+		{
+			key_order[i] = i;
+		}
+		if (m_sortColumns)
+		{
+			Arrays.sort(key_order, new Comparator<Integer>()
+			{
+				@Override
+				public int compare(Integer c1, Integer c2)
+				{
+					return column_values.get(c1).compareTo(column_values.get(c2));
+				}
+			});
+		}
+		int[] key_positions = new int[num_keys];
+		for (int i = 0; i < num_keys; i++)
+		{
+			key_positions[key_order[i]] = i;
+		}
+		int num_values = m_valueKeys.length;
 		String[] old_names = table.getColumnNames();
-		String[] new_names = new String[old_names.length - 2 + new_keys.size()];
-		int pos = 0;
+		List<String> other_list = new ArrayList<String>(old_names.length);
 		for (String name : old_names)
 		{
-			if (name.compareTo(m_columnKey) != 0 && name.compareTo(m_valueKey) != 0)
+			if (name.compareTo(m_columnKey) != 0 && !isValueKey(name))
 			{
-				new_names[pos] = name;
-				pos++;
+				other_list.add(name);
 			}
 		}
-		for (String name : new_keys)
+		String[] other_names = other_list.toArray(new String[other_list.size()]);
+		String[] new_names = new String[other_names.length + num_keys * num_values];
+		System.arraycopy(other_names, 0, new_names, 0, other_names.length);
+		int pos = other_names.length;
+		for (int i = 0; i < num_keys; i++)
 		{
-			new_names[pos] = name;
-			pos++;
+			String key = getString(column_values.get(key_order[i]));
+			for (String value_key : m_valueKeys)
+			{
+				new_names[pos++] = getColumnName(key, value_key);
+			}
 		}
 		TempTable new_table = new TempTable(table.getId(), new_names);
+		// Rows are grouped on the codes of their values for the other columns
+		ValueDictionary[] dictionaries = new ValueDictionary[other_names.length];
+		for (int i = 0; i < dictionaries.length; i++)
+		{
+			dictionaries[i] = new ValueDictionary();
+		}
+		Map<ValueDictionary.Tuple,Integer> groups = new HashMap<ValueDictionary.Tuple,Integer>();
 		List<TableEntry> entries = new ArrayList<TableEntry>();
-		int value_pos = table.getColumnPosition(m_valueKey);
-		int column_pos = table.getColumnPosition(m_columnKey);
-		for (TableEntry te : table.getEntries())
+		// The first input row merged into each output row, and the last
+		// input row filling each group of new columns of each output row
+		List<Integer> first_rows = new ArrayList<Integer>();
+		List<int[]> cell_rows = new ArrayList<int[]>();
+		row = 0;
+		for (TableEntry te : table_entries)
 		{
-			TableEntry existing_entry = findEntry(te, entries);
-			if (te.containsKey(m_columnKey))
+			int[] codes = new int[other_names.length];
+			for (int i = 0; i < codes.length; i++)
+			{
+				codes[i] = dictionaries[i].encode(te.get(other_names[i]));
+			}
+			ValueDictionary.Tuple key = new ValueDictionary.Tuple(codes);
+			Integer out_row = groups.get(key);
+			if (out_row == null)
 			{
-				
-				String s = getString(te.get(m_columnKey));
-				existing_entry.put(s, te.get(m_valueKey));
-				DirectValue dv = new DirectValue();
-				dv.add(new TableCellNode(table, te.getRowIndex(), value_pos));
-				dv.add(new TableCellNode(table, te.getRowIndex(), column_pos));
-				existing_entry.addDependency(s, dv);
+				out_row = entries.size();
+				groups.put(key, out_row);
+				entries.add(new TableEntry(te, false));
+				first_rows.add(row);
+				int[] cells = new int[num_keys];
+				Arrays.fill(cells, -1);
+				cell_rows.add(cells);
 			}
+			int code = column_codes[row];
+			if (code >= 0)
+			{
+				cell_rows.get(out_row)[key_positions[code]] = row;
+				TableEntry out_e = entries.get(out_row);
+				int first_col = other_names.length + key_positions[code] * num_values;
+				for (int i = 0; i < num_values; i++)
+				{
+					out_e.put(new_names[first_col + i], te.get(m_valueKeys[i]));
+				}
+			}
+			row++;
 		}
 		new_table.addAll(entries);
+		if (TransformedTable.isProvenanceEnabled())
+		{
+			int[] other_positions = new int[other_names.length];
+			for (int i = 0; i < other_names.length; i++)
+			{
+				other_positions[i] = table.getColumnPosition(other_names[i]);
+			}
+			int[] value_positions = new int[num_values];
+			for (int i = 0; i < num_values; i++)
+			{
+				value_positions[i] = table.getColumnPosition(m_valueKeys[i]);
+			}
+			int[] first = new int[first_rows.size()];
+			for (int i = 0; i < first.length; i++)
+			{
+				first[i] = first_rows.get(i);
+			}
+			new_table.setLineage(new ExpandLineage(table, first, cell_rows.toArray(new int[cell_rows.size()][]), other_positions, value_positions, table.getColumnPosition(m_columnKey)));
+		}
 		return new_table;
 	}
 	
-	protected TableEntry findEntry(TableEntry e, List<TableEntry> list)
+	/**
+	 * Determines if a column is one of the value columns
+	 * @param name The name of the column
+	 * @return {@code true} if the column is a value column
+	 */
+	protected boolean isValueKey(String name)
 	{
-		Set<Entry<String,PrimitiveValue>> entry_set = e.entrySet();
-		for (TableEntry te : list)
+		for (String value_key : m_valueKeys)
 		{
-			boolean found = true;
-			for (Entry<String,PrimitiveValue> entry : entry_set)
-			{
-				if (entry.getKey().compareTo(m_columnKey) == 0 || entry.getKey().compareTo(m_valueKey) == 0)
-				{
-					// Ignore key
-					continue;
-				}
-				if (!te.containsKey(entry.getKey()))
-					continue;
-				if (!te.get(entry.getKey()).equals(entry.getValue()))
-				{
-					found = false;
-					break;
-				}
-			}
-			if (found)
+			if (name.compareTo(value_key) == 0)
 			{
-				return te;
+				return true;
 			}
 		}
-		TableEntry new_e = new TableEntry(e);
-		list.add(new_e);
-		return new_e;
+		return false;
 	}
 	
 	protected static String getString(Object o)
@@ -174,4 +307,84 @@ public class ExpandAsColumns implements TableTransformation
 		}
 		return o.toString();
 	}
+	
+	/**
+	 * The lineage of a table produced by this transformation. The cells of
+	 * the columns that are kept come from the first input row merged into
+	 * each output row; the cells of the new columns depend on both the
+	 * column key and the value of the last input row that filled them.
+	 */
+	protected static class ExpandLineage implements CellLineage
+	{
+		/**
+		 * The input table
+		 */
+		protected final TempTable m_input;
+		
+		/**
+		 * The first input row merged into each output row
+		 */
+		protected final int[] m_firstRows;
+		
+		/**
+		 * For each output row, the last input row that filled each group of
+		 * new columns, or -1 if none
+		 */
+		protected final int[][] m_cellRows;
+		
+		/**
+		 * The position in the input table of each column that is kept
+		 */
+		protected final int[] m_otherPositions;
+		
+		/**
+		 * The position of each value column in the input table
+		 */
+		protected final int[] m_valuePositions;
+		
+		/**
+		 * The position of the column key in the input table
+		 */
+		protected final int m_columnPos;
+		
+		public ExpandLineage(TempTable input, int[] first_rows, int[][] cell_rows, int[] other_positions, int[] value_positions, int column_pos)
+		{
+			super();
+			m_input = input;
+			m_firstRows = first_rows;
+			m_cellRows = cell_rows;
+			m_otherPositions = other_positions;
+			m_valuePositions = value_positions;
+			m_columnPos = column_pos;
+		}
+		
+		@Override
+		public NodeFunction getDependency(int row, int col)
+		{
+			if (row < 0 || row >= m_firstRows.length)
+			{
+				return null;
+			}
+			if (col < m_otherPositions.length)
+			{
+				return m_input.dependsOn(m_firstRows[row], m_otherPositions[col]);
+			}
+			int new_col = col - m_otherPositions.length;
+			int value_index = new_col % m_valuePositions.length;
+			int key_index = new_col / m_valuePositions.length;
+			if (key_index >= m_cellRows[row].length)
+			{
+				return null;
+			}
+			int i = m_cellRows[row][key_index];
+			if (i < 0)
+			{
+				return null;
+			}
+			DirectValue dv = new DirectValue();
+			dv.add(new TableCellNode(m_input, i, m_valuePositions[value_index]));
+			dv.add(new TableCellNode(m_input, i, m_columnPos));
+			return dv;
+		}
+	}
 }
@@ -0,0 +1,139 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+/**
+ * Keeps only the rows of a table that satisfy a condition. The rows that
+ * are kept appear in the same order as in the input table.
+ * <p>
+ * A filter can be given the names of the columns its condition reads.
+ * This allows a {@link LogicalPlan} to move the filter before other
+ * transformations that leave these columns untouched, so that fewer
+ * rows go through them. A filter that declares no column is assumed to
+ * possibly read any of them.
+ * @since 0.1.14
+ * @author Sylvain Hallé
+ */
+public class Filter extends RowTransformation
+{
+	/**
+	 * The condition that a row must satisfy to be kept
+	 */
+	protected final Condition m_condition;
+
+	/**
+	 * The columns read by the condition
+	 */
+	protected final String[] m_columns;
+
+	/**
+	 * Creates a new filter
+	 * @param condition The condition that a row must satisfy to be kept
+	 * @param columns The columns read by the condition
+	 */
+	public Filter(Condition condition, String ... columns)
+	{
+		super();
+		m_condition = condition;
+		m_columns = columns;
+	}
+
+	/**
+	 * Creates a filter keeping the rows where a column has a given value
+	 * @param column The name of the column
+	 * @param value The value
+	 * @return The filter
+	 */
+	public static Filter equal(final String column, Object value)
+	{
+		final PrimitiveValue pv = PrimitiveValue.getInstance(value);
+		return new Filter(new Condition()
+		{
+			@Override
+			public boolean evaluate(TableEntry e)
+			{
+				return pv.equals(e.get(column));
+			}
+			
+			@Override
+			public String toString()
+			{
+				return column + " = " + pv;
+			}
+		}, column);
+	}
+
+	/**
+	 * Gets the columns read by the condition of this filter
+	 * @return The names of the columns, or an empty array if they are
+	 *   not known
+	 */
+	public String[] getColumns()
+	{
+		return m_columns;
+	}
+
+	@Override
+	protected RowFunction getFunction(String[] input_columns)
+	{
+		// The condition is evaluated on an entry holding the current row
+		final TableEntry e = new TableEntry(RowSchema.of(input_columns));
+		return new RowFunction(input_columns, RowFunction.identity(input_columns.length))
+		{
+			@Override
+			public boolean apply(PrimitiveValue[] in, PrimitiveValue[] out)
+			{
+				for (int i = 0; i < out.length; i++)
+				{
+					e.setValue(i, in[i]);
+					out[i] = in[i];
+				}
+				return m_condition.evaluate(e);
+			}
+		};
+	}
+
+	@Override
+	protected void setLineage(TempTable output, TempTable input, int[] rows)
+	{
+		if (TransformedTable.isProvenanceEnabled())
+		{
+			output.setLineage(new CellMapping(input, rows, null, false));
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return "Filter " + m_condition;
+	}
+
+	/**
+	 * A condition on the rows of a table
+	 */
+	public static interface Condition
+	{
+		/**
+		 * Determines if a row satisfies the condition
+		 * @param e The row. The same entry may be passed again with the
+		 *   values of other rows, and must not be kept.
+		 * @return {@code true} if the row satisfies the condition
+		 */
+		public boolean evaluate(TableEntry e);
+	}
+}
@@ -257,6 +257,8 @@ public class FrequencyTable extends HardTable
 	 */
 	public double[][] getArray()
 	{
+		// The array can be modified by the caller
+		modified();
 		return m_values;
 	}
 
@@ -353,6 +355,7 @@ public class FrequencyTable extends HardTable
 			return this;
 		}
 		m_values[bin_y][bin_x] += v;
+		modified();
 		return this;
 	}
 	
@@ -0,0 +1,168 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A row transformation made by chaining multiple row transformations.
+ * Instead of creating a table after each transformation, the
+ * {@link RowFunction}s of all the transformations are chained, and each
+ * row of the input goes through all of them before the next row is
+ * read. The intermediate rows only exist in arrays reused from one row
+ * to the next; a single table is created, for the output.
+ * <p>
+ * A {@link Composition} fuses its consecutive row transformations this
+ * way, and so does a {@link LogicalPlan} for consecutive
+ * {@link TransformedTable}s.
+ * @since 0.1.14
+ * @author Sylvain Hallé
+ */
+public class FusedTransformation extends RowTransformation
+{
+	/**
+	 * The transformations to apply, in order
+	 */
+	protected final RowTransformation[] m_transformations;
+
+	/**
+	 * Creates a new fused transformation
+	 * @param transformations The transformations to apply, in order. There
+	 *   must be at least one.
+	 */
+	public FusedTransformation(RowTransformation ... transformations)
+	{
+		super();
+		m_transformations = transformations;
+	}
+
+	/**
+	 * Gets the transformations applied by this fused transformation
+	 * @return The transformations, in order
+	 */
+	public RowTransformation[] getTransformations()
+	{
+		return m_transformations;
+	}
+
+	/**
+	 * Replaces each run of consecutive row transformations in a list of
+	 * transformations by their fusion
+	 * @param transformations The transformations
+	 * @return The transformations, where runs of row transformations are
+	 *   fused
+	 */
+	public static TableTransformation[] fuse(TableTransformation ... transformations)
+	{
+		List<TableTransformation> steps = new ArrayList<TableTransformation>(transformations.length);
+		List<RowTransformation> run = new ArrayList<RowTransformation>();
+		for (TableTransformation t : transformations)
+		{
+			if (t instanceof RowTransformation)
+			{
+				run.add((RowTransformation) t);
+				continue;
+			}
+			addRun(steps, run);
+			steps.add(t);
+		}
+		addRun(steps, run);
+		return steps.toArray(new TableTransformation[steps.size()]);
+	}
+
+	/**
+	 * Adds a run of row transformations to a list of transformations, and
+	 * empties the run
+	 * @param steps The list of transformations
+	 * @param run The run
+	 */
+	protected static void addRun(List<TableTransformation> steps, List<RowTransformation> run)
+	{
+		if (run.size() == 1)
+		{
+			steps.add(run.get(0));
+		}
+		else if (run.size() > 1)
+		{
+			steps.add(new FusedTransformation(run.toArray(new RowTransformation[run.size()])));
+		}
+		run.clear();
+	}
+
+	@Override
+	protected RowFunction getFunction(String[] input_columns)
+	{
+		final RowFunction[] functions = new RowFunction[m_transformations.length];
+		final PrimitiveValue[][] buffers = new PrimitiveValue[functions.length][];
+		String[] cols = input_columns;
+		// The sources of the chain are the composition of the sources of
+		// each function
+		int[] sources = RowFunction.identity(cols.length);
+		for (int i = 0; i < functions.length; i++)
+		{
+			functions[i] = m_transformations[i].getFunction(cols);
+			cols = functions[i].getOutputColumns();
+			buffers[i] = new PrimitiveValue[cols.length];
+			int[] f_sources = functions[i].getSources();
+			if (sources == null || f_sources == null)
+			{
+				sources = null;
+				continue;
+			}
+			int[] new_sources = new int[f_sources.length];
+			for (int j = 0; j < f_sources.length; j++)
+			{
+				new_sources[j] = sources[f_sources[j]];
+			}
+			sources = new_sources;
+		}
+		return new RowFunction(cols, sources)
+		{
+			@Override
+			public boolean apply(PrimitiveValue[] in, PrimitiveValue[] out)
+			{
+				PrimitiveValue[] current = in;
+				int last = functions.length - 1;
+				for (int i = 0; i < last; i++)
+				{
+					if (!functions[i].apply(current, buffers[i]))
+					{
+						return false;
+					}
+					current = buffers[i];
+				}
+				return functions[last].apply(current, out);
+			}
+		};
+	}
+
+	@Override
+	protected void setLineage(TempTable output, TempTable input, int[] rows)
+	{
+		if (!TransformedTable.isProvenanceEnabled())
+		{
+			return;
+		}
+		int[] sources = getFunction(input.getColumnNames()).getSources();
+		if (sources != null)
+		{
+			output.setLineage(new CellMapping(input, rows, sources, false));
+		}
+	}
+}
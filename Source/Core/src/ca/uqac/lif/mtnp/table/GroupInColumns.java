@@ -17,12 +17,13 @@
  */
 package ca.uqac.lif.mtnp.table;
 
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
 import ca.uqac.lif.petitpoucet.DirectValue;
+import ca.uqac.lif.petitpoucet.NodeFunction;
 
 /**
  * Creates columns from values of two parameters in an existing table.
@@ -48,6 +49,8 @@ import ca.uqac.lif.petitpoucet.DirectValue;
  * </table> 
  * Columns are the values of "A", and values in each column are those
  * found in parameter "B" for rows with that particular value of "A".
+ * Columns appear in the order in which their value of "A" is first found
+ * in the table.
  * <p>
  * A common usage for this transformation is to use a table in a
  * {@link ca.uqac.lif.mtnp.plot.gral.BoxPlot BoxPlot}.
@@ -55,7 +58,7 @@ import ca.uqac.lif.petitpoucet.DirectValue;
  * @author Sylvain Hallé
  *
  */
-public class GroupInColumns implements TableTransformation
+public class GroupInColumns implements BlockingTransformation
 {
 	protected final String m_parameter;
 
@@ -72,14 +75,18 @@ public class GroupInColumns implements TableTransformation
 	public TempTable transform(TempTable... tables) 
 	{
 		TempTable table = tables[0];
-		Map<String,List<PrimitiveValue>> values = new HashMap<String,List<PrimitiveValue>>();
-		Map<String,List<TableEntry>> entries = new HashMap<String,List<TableEntry>>();
-		int parameter_column = table.getColumnPosition(m_parameter);
-		int value_column = table.getColumnPosition(m_value);
-		for (TableEntry te : table.getEntries())
+		List<TableEntry> table_entries = table.m_entries;
+		// Columns are numbered by the order in which their parameter value
+		// first appears in the table. Since these values become column names,
+		// they are told apart by their string.
+		Map<String,Integer> dictionary = new HashMap<String,Integer>();
+		List<String> headers = new ArrayList<String>();
+		List<List<PrimitiveValue>> values = new ArrayList<List<PrimitiveValue>>();
+		// The input row of each value put in each column
+		List<List<Integer>> rows = new ArrayList<List<Integer>>();
+		int row = 0;
+		for (TableEntry te : table_entries)
 		{
-			if (!te.containsKey(m_parameter))
-				continue;
 			PrimitiveValue p = te.get(m_parameter);
 			if (p != null)
 			{
@@ -87,35 +94,26 @@ public class GroupInColumns implements TableTransformation
 				if (v != null)
 				{
 					String p_s = p.toString();
-					List<PrimitiveValue> l_values = new LinkedList<PrimitiveValue>();
-					List<TableEntry> e_values = new LinkedList<TableEntry>();
-					if (values.containsKey(p_s))
+					Integer code = dictionary.get(p_s);
+					if (code == null)
 					{
-						l_values = values.get(p_s);
-						e_values = entries.get(p_s);
+						code = headers.size();
+						dictionary.put(p_s, code);
+						headers.add(p_s);
+						values.add(new ArrayList<PrimitiveValue>());
+						rows.add(new ArrayList<Integer>());
 					}
-					l_values.add(v);
-					e_values.add(te);
-					values.put(p_s, l_values);
-					entries.put(p_s, e_values);
+					values.get(code).add(v);
+					rows.get(code).add(row);
 				}
 			}
+			row++;
 		}
-		String[] a_headers = new String[values.keySet().size()];
+		String[] a_headers = headers.toArray(new String[headers.size()]);
 		@SuppressWarnings("unchecked")
-		List<PrimitiveValue>[] a_values = new List[values.keySet().size()];
-		@SuppressWarnings("unchecked")
-		List<TableEntry>[] a_entries = new List[values.keySet().size()];
-		int i = 0;
-		for (Map.Entry<String,List<PrimitiveValue>> map_entry : values.entrySet())
-		{
-			a_headers[i] = map_entry.getKey();
-			a_values[i] = map_entry.getValue();
-			a_entries[i] = entries.get(map_entry.getKey());
-			i++;
-		}
+		List<PrimitiveValue>[] a_values = values.toArray(new List[values.size()]);
 		TempTable new_table = new TempTable(table.getId(), a_headers);
-		i = 0;
+		int i = 0;
 		boolean added = true;
 		while (added)
 		{
@@ -126,11 +124,6 @@ public class GroupInColumns implements TableTransformation
 				if (i < a_values[j].size())
 				{
 					te.put(a_headers[j], a_values[j].get(i));
-					TableEntry t_ent = a_entries[j].get(i);
-					DirectValue dv = new DirectValue();
-					dv.add(new TableCellNode(table, t_ent.getRowIndex(), parameter_column));
-					dv.add(new TableCellNode(table, t_ent.getRowIndex(), value_column));
-					te.addDependency(a_headers[j], dv);
 					added = true;
 				}
 				else
@@ -144,7 +137,72 @@ public class GroupInColumns implements TableTransformation
 			}
 			i++;
 		}
+		if (TransformedTable.isProvenanceEnabled())
+		{
+			int[][] a_rows = new int[rows.size()][];
+			for (int j = 0; j < a_rows.length; j++)
+			{
+				List<Integer> col_rows = rows.get(j);
+				a_rows[j] = new int[col_rows.size()];
+				for (int k = 0; k < a_rows[j].length; k++)
+				{
+					a_rows[j][k] = col_rows.get(k);
+				}
+			}
+			new_table.setLineage(new GroupLineage(table, a_rows, table.getColumnPosition(m_parameter), table.getColumnPosition(m_value)));
+		}
 		return new_table;
 	}
 
+	/**
+	 * The lineage of a table produced by this transformation. The cell at
+	 * row <i>i</i> of column <i>j</i> comes from the <i>i</i>-th input
+	 * row put in column <i>j</i>, and depends on both its parameter and its
+	 * value.
+	 */
+	protected static class GroupLineage implements CellLineage
+	{
+		/**
+		 * The input table
+		 */
+		protected final TempTable m_input;
+
+		/**
+		 * The input row of each cell, indexed by column and then by row
+		 */
+		protected final int[][] m_rows;
+
+		/**
+		 * The position of the parameter column in the input table
+		 */
+		protected final int m_parameterColumn;
+
+		/**
+		 * The position of the value column in the input table
+		 */
+		protected final int m_valueColumn;
+
+		public GroupLineage(TempTable input, int[][] rows, int parameter_column, int value_column)
+		{
+			super();
+			m_input = input;
+			m_rows = rows;
+			m_parameterColumn = parameter_column;
+			m_valueColumn = value_column;
+		}
+
+		@Override
+		public NodeFunction getDependency(int row, int col)
+		{
+			if (col < 0 || col >= m_rows.length || row < 0 || row >= m_rows[col].length)
+			{
+				return null;
+			}
+			int i = m_rows[col][row];
+			DirectValue dv = new DirectValue();
+			dv.add(new TableCellNode(m_input, i, m_parameterColumn));
+			dv.add(new TableCellNode(m_input, i, m_valueColumn));
+			return dv;
+		}
+	}
 }
@@ -17,20 +17,14 @@
  */
 package ca.uqac.lif.mtnp.table;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Scanner;
-import java.util.Set;
 
 import ca.uqac.lif.mtnp.DataFormatter;
-import ca.uqac.lif.mtnp.table.rendering.CsvTableRenderer;
 import ca.uqac.lif.petitpoucet.NodeFunction;
 
 /**
@@ -57,6 +51,17 @@ public class HardTable extends Table
 	 */
 	protected String[] m_preferredOrdering;
 	
+	/**
+	 * The layout of the entries of this table, following the preferred
+	 * ordering. Entries that share this layout are accessed by ordinal.
+	 */
+	protected RowSchema m_rowSchema;
+	
+	/**
+	 * The columns of this table, with their position and their type
+	 */
+	protected TableSchema m_schema;
+	
 	/**
 	 * The symbol used to separate data values in a CSV rendition
 	 */
@@ -100,7 +105,7 @@ public class HardTable extends Table
 		{
 			m_entries.addAll(entries);
 		}
-		m_preferredOrdering = ordering;
+		setPreferredOrdering(ordering);
 	}
 	
 	/**
@@ -116,7 +121,47 @@ public class HardTable extends Table
 		{
 			m_entries.addAll(entries);
 		}
-		m_preferredOrdering = ordering;
+		setPreferredOrdering(ordering);
+	}
+
+	/**
+	 * Sets the preferred ordering of the columns of this table, and
+	 * updates the layout of its entries accordingly
+	 * @param ordering The ordering
+	 */
+	protected void setPreferredOrdering(String ... ordering)
+	{
+		m_schema = new TableSchema(ordering);
+		// Repeated names are only kept once
+		m_preferredOrdering = m_schema.getNames();
+		m_rowSchema = m_schema.getLayout();
+		modified();
+	}
+
+	/**
+	 * Determines if the version of this table changes whenever its
+	 * contents change. This is the case, since all the methods giving
+	 * access to the entries signal a modification.
+	 * @return {@code true}
+	 */
+	@Override
+	public boolean isVersioned()
+	{
+		return true;
+	}
+
+	/**
+	 * Gets the schema of this table, computing the column types if they
+	 * are not up to date
+	 * @return The schema
+	 */
+	public TableSchema getSchema()
+	{
+		if (!m_schema.isValid())
+		{
+			m_schema.rebuild(m_entries);
+		}
+		return m_schema;
 	}
 
 	/**
@@ -132,13 +177,54 @@ public class HardTable extends Table
 	}
 	
 	/**
-	 * Adds a new entry to the table
+	 * Adds a new entry to the table. The entry itself becomes part of the
+	 * table, and is not copied: if it contains the same columns as the
+	 * table in a different order, its values are rearranged to follow the
+	 * layout of the table, and its row index is set. An entry that must
+	 * be left untouched, or that already belongs to another table, should
+	 * be copied with {@link TableEntry#TableEntry(TableEntry)} first.
 	 * @param e The entry
 	 */
 	public void add(TableEntry e)
 	{
+		if (e.m_schema != m_rowSchema && e.m_schema.size() == m_rowSchema.size())
+		{
+			conform(e);
+		}
 		e.m_rowIndex = m_entries.size();
 		m_entries.add(e);
+		m_schema.update(e);
+		appended();
+	}
+	
+	/**
+	 * Rearranges the values of an entry so that it uses the same layout
+	 * as this table, if it contains the same columns in a different order
+	 * @param e The entry
+	 */
+	protected void conform(TableEntry e)
+	{
+		RowSchema s = e.m_schema;
+		int size = m_rowSchema.size();
+		PrimitiveValue[] values = new PrimitiveValue[size];
+		NodeFunction[] dependencies = e.m_dependencies == null ? null : new NodeFunction[size];
+		for (int i = 0; i < size; i++)
+		{
+			int pos = s.getOrdinal(m_rowSchema.getName(i));
+			if (pos < 0)
+			{
+				// Not the same columns: leave the entry as is
+				return;
+			}
+			values[i] = e.m_values[pos];
+			if (dependencies != null)
+			{
+				dependencies[i] = e.getDependency(pos);
+			}
+		}
+		e.m_schema = m_rowSchema;
+		e.m_values = values;
+		e.m_dependencies = dependencies;
 	}
 	
 	/**
@@ -175,65 +261,7 @@ public class HardTable extends Table
 	 */
 	public TableNode getTree(String[] sort_order)
 	{
-		List<TableNode> nodes = getChildren(sort_order, 0, m_entries);
-		TableNode root = new TableNode("", PrimitiveValue.getInstance(""));
-		root.m_children = nodes;
-		return root;
-	}
-	
-	protected List<TableNode> getChildren(String[] sort_order, int index, Collection<TableEntry> available_entries)
-	{
-		List<TableNode> children = new LinkedList<TableNode>();
-		if (index >= sort_order.length)
-		{
-			return children;
-		}
-		String current_key = sort_order[index];
-		Map<PrimitiveValue,Set<TableEntry>> partition = partitionEntries(available_entries, current_key);
-		List<PrimitiveValue> keys = new LinkedList<PrimitiveValue>();
-		keys.addAll(partition.keySet());
-		Collections.sort(keys);
-		for (PrimitiveValue value : keys)
-		{
-			TableNode new_node = new TableNode(current_key, value);
-			Set<TableEntry> entries = partition.get(value);
-			for (TableEntry te : entries)
-			{
-				new_node.addCoordinate(te.getRowIndex(), index);
-			}
-			List<TableNode> new_node_children = getChildren(sort_order, index + 1, entries);
-			new_node.m_children.addAll(new_node_children);
-			children.add(new_node);
-		}
-		return children;
-	}
-	
-	/**
-	 * Partitions a set of entries into sets, with all entries having the
-	 * same value with respect to a key being put into the same set
-	 * @param available_entries The set of entries to partition
-	 * @param key The key against which to partition the set
-	 * @return A map from values to sets of entries
-	 */
-	protected static Map<PrimitiveValue,Set<TableEntry>> partitionEntries(Collection<TableEntry> available_entries, String key)
-	{
-		Map<PrimitiveValue,Set<TableEntry>> partition = new HashMap<PrimitiveValue,Set<TableEntry>>();
-		for (TableEntry e : available_entries)
-		{
-			PrimitiveValue o = e.get(key);
-			Set<TableEntry> value_set;
-			if (partition.containsKey(o))
-			{
-				value_set = partition.get(o);
-			}
-			else
-			{
-				value_set = new HashSet<TableEntry>();
-			}
-			value_set.add(e);
-			partition.put(o, value_set);
-		}
-		return partition;
+		return new TableNodeBuilder(sort_order).build(m_entries);
 	}
 	
 	/**
@@ -335,9 +363,16 @@ public class HardTable extends Table
 	 */
 	protected String toCsv(String[] sort_order, String separator, String missing)
 	{
-		TableNode node = getTree(sort_order);
-		CsvTableRenderer ctr = new CsvTableRenderer(this, separator, missing);
-		return ctr.render(node, sort_order);
+		StringBuilder out = new StringBuilder();
+		try
+		{
+			writeCsv(out, sort_order, separator, missing);
+		}
+		catch (IOException e)
+		{
+			// Cannot happen with a string builder
+		}
+		return out.toString();
 	}
 
 	public PrimitiveValue get(int col, int row)
@@ -347,15 +382,8 @@ public class HardTable extends Table
 			// Out of bounds
 			return null;
 		}
-		TableEntry e = m_entries.get(row);
-		String key = m_preferredOrdering[col];
-		if (!e.containsKey(key))
-		{
-			// This entry does not contain the key we are looking for
-			return null;
-		}
-		PrimitiveValue o = e.get(key);
-		return o;
+		// Returns null if the entry does not contain the key we are looking for
+		return m_entries.get(row).get(m_rowSchema, col);
 	}
 
 	public int getColumnCount()
@@ -365,15 +393,14 @@ public class HardTable extends Table
 
 	public Class<? extends Comparable<?>>[] getColumnTypes()
 	{
+		TableSchema schema = getSchema();
 		@SuppressWarnings("unchecked")
 		Class<? extends Comparable<?>>[] types = new Class[m_preferredOrdering.length];
 		for (int i = 0; i < m_preferredOrdering.length; i++)
 		{
-			String key = m_preferredOrdering[i];
-			types[i] = getColumnTypeFor(key);
+			types[i] = schema.getType(i);
 		}
 		return types;
-		//return m_columnTypes;
 	}
 
 	public int getRowCount()
@@ -388,24 +415,21 @@ public class HardTable extends Table
 	 */
 	public Class<? extends Comparable<?>> getColumnTypeFor(String col_name)
 	{
+		int pos = m_schema.getPosition(col_name);
+		if (pos >= 0)
+		{
+			return getSchema().getType(pos);
+		}
+		// Not a column of the table: look for the key in the entries
 		for (TableEntry e : m_entries)
 		{
-			if (!e.containsKey(col_name))
-			{
-				continue;
-			}
 			PrimitiveValue elem = e.get(col_name);
-			if (elem == null)
-			{
-				continue;
-			}
-			if (elem.isNumeric())
+			if (elem != null && elem.isNumeric())
 			{
 				return Float.class;
 			}
 		}
 		return String.class;
-		//return m_columnTypes[pos];
 	}
 
 	/*@Override
@@ -414,6 +438,48 @@ public class HardTable extends Table
 		return new DataTable(m_entries, ordering);
 	}*/
 
+	/**
+	 * Sets whether this table maintains statistics on the numerical values
+	 * of each column. When enabled, the statistics are updated as entries
+	 * are added to the table, and are passed on to the tables produced
+	 * by {@link #getDataTable(boolean)}, so that transformations applied
+	 * to this table do not need to compute them again.
+	 * @param b Set to {@code true} to maintain statistics
+	 * @return This table
+	 */
+	public HardTable setKeepStatistics(boolean b)
+	{
+		if (b)
+		{
+			m_schema.enableStatistics();
+		}
+		else
+		{
+			m_schema.disableStatistics();
+		}
+		return this;
+	}
+
+	/**
+	 * Gets statistics on the numerical values of a column. The first call
+	 * to this method computes the statistics of every column and enables
+	 * their maintenance (see {@link #setKeepStatistics(boolean)}); from
+	 * then on, they are updated as entries are added to the table, and
+	 * only computed again if the table is otherwise modified.
+	 * @param col_name The name of the column
+	 * @return The statistics, or {@code null} if the column does not exist
+	 */
+	public ColumnStatistics getColumnStatistics(String col_name)
+	{
+		int pos = m_schema.getPosition(col_name);
+		if (pos < 0)
+		{
+			return null;
+		}
+		m_schema.enableStatistics();
+		return getSchema().getStatistics(pos);
+	}
+
 	/**
 	 * Gets the name of the column at a given position in the table
 	 * @param col The position
@@ -435,14 +501,7 @@ public class HardTable extends Table
 	 */
 	public int getColumnPosition(String name)
 	{
-		for (int i = 0; i < m_preferredOrdering.length; i++)
-		{
-			if (m_preferredOrdering[i].compareTo(name) == 0)
-			{
-				return i;
-			}
-		}
-		return -1;
+		return m_schema.getPosition(name);
 	}
 
 	/**
@@ -462,13 +521,14 @@ public class HardTable extends Table
 	 */
 	public TableEntry findEntry(TableEntry e)
 	{
+		RowSchema s = e.getSchema();
 		for (TableEntry tab_e : m_entries)
 		{
 			boolean same = true;
-			for (Entry<String,PrimitiveValue> kv : e.entrySet())
+			for (int i = 0; i < s.size(); i++)
 			{
-				String key = kv.getKey();
-				if (!tab_e.containsKey(key) || !(tab_e.get(key).equals(e.get(key))))
+				PrimitiveValue v = tab_e.get(s, i);
+				if (v == null || !v.equals(e.getValue(i)))
 				{
 					same = false;
 					break;
@@ -483,13 +543,32 @@ public class HardTable extends Table
 	}
 
 	/**
-	 * Gets the list of entries if this table
+	 * Gets the list of entries of this table. Since the caller may modify
+	 * the entries, or the list itself, each call counts as a modification
+	 * of the table: its column types are computed again the next time
+	 * they are needed, and its version is incremented, so that the tables
+	 * computed from it are computed again. Use {@link #readEntries()} to
+	 * only read the entries.
 	 * @return The entries
 	 */
 	public List<TableEntry> getEntries()
 	{
+		m_schema.invalidate();
+		modified();
 		return m_entries;
 	}
+
+	/**
+	 * Gets the list of entries of this table, for reading only. Unlike
+	 * {@link #getEntries()}, the table is not considered as modified, and
+	 * its column types are kept; the caller must therefore not modify the
+	 * entries.
+	 * @return The entries
+	 */
+	public List<TableEntry> readEntries()
+	{
+		return Collections.unmodifiableList(m_entries);
+	}
 	
 	/**
 	 * Returns the contents of the table as a CSV string
@@ -511,6 +590,74 @@ public class HardTable extends Table
 		return toCsv(m_preferredOrdering, separator, missing);
 	}
 	
+	/**
+	 * Writes the contents of the table as CSV, preceded by a line with the
+	 * column names. The output is the same as {@link #toCsv(String, String)}:
+	 * rows are sorted on all the columns, and identical rows are written
+	 * once. However, the tree of the table is never built, and the values
+	 * are written directly to the output.
+	 * @param out The output to write to
+	 * @param separator The symbol used as the separator for values
+	 * @param missing The symbol used for missing data
+	 * @throws IOException If the output cannot be written to
+	 * @since 0.1.14
+	 */
+	public void writeCsv(Appendable out, String separator, String missing) throws IOException
+	{
+		writeCsv(out, m_preferredOrdering, separator, missing);
+	}
+
+	/**
+	 * Writes the contents of the table as CSV, by ordering the columns in
+	 * a specific way
+	 * @param out The output to write to
+	 * @param sort_order An array of column names specifying the order
+	 *  in which they should be shown
+	 * @param separator The symbol used as the separator for values
+	 * @param missing The symbol used for missing data
+	 * @throws IOException If the output cannot be written to
+	 */
+	protected void writeCsv(Appendable out, String[] sort_order, String separator, String missing) throws IOException
+	{
+		if (sort_order.length == 0 || m_entries.isEmpty())
+		{
+			// Same as rendering an empty tree
+			return;
+		}
+		for (int i = 0; i < sort_order.length; i++)
+		{
+			if (i > 0)
+			{
+				out.append(separator);
+			}
+			out.append(sort_order[i]);
+		}
+		out.append(DataFormatter.CRLF);
+		new TableNodeBuilder(sort_order).writeCsv(m_entries, out, separator, missing);
+	}
+	
+	/**
+	 * Writes the contents of the table as CSV to a string builder
+	 * @param out The string builder to write to
+	 * @param separator The symbol used as the separator for values
+	 * @param missing The symbol used for missing data
+	 * @return The string builder
+	 * @see #writeCsv(Appendable, String, String)
+	 * @since 0.1.14
+	 */
+	public StringBuilder writeCsv(StringBuilder out, String separator, String missing)
+	{
+		try
+		{
+			writeCsv((Appendable) out, separator, missing);
+		}
+		catch (IOException e)
+		{
+			// Cannot happen with a string builder
+		}
+		return out;
+	}
+	
 	@Override
 	public String toString()
 	{
@@ -558,18 +705,36 @@ public class HardTable extends Table
 		{
 			return null;
 		}
-		String key = m_preferredOrdering[col];
-		if (!entry.containsKey(key))
-		{
-			return null;
-		}
-		return entry.getDependency(key);
+		return entry.getDependency(m_rowSchema, col);
+	}
+
+	/**
+	 * Gets a cursor reading the entries of this table directly. The table
+	 * must not be modified while the cursor is in use.
+	 * @return The cursor
+	 */
+	@Override
+	public RowCursor getCursor()
+	{
+		return RowCursor.of(this);
 	}
 
 	@Override
 	public TempTable getDataTable(boolean temporary)
 	{
-		return new TempTable(getId(), m_entries, m_preferredOrdering);
+		TempTable tt = new TempTable(getId(), m_entries, m_preferredOrdering);
+		if (m_schema.hasStatistics())
+		{
+			getSchema();
+		}
+		if (m_schema.isValid())
+		{
+			// Same entries, same columns: the types and statistics carry over.
+			// They are only accurate as long as the shared entries are not
+			// modified through this table.
+			tt.m_schema = m_schema.copy();
+		}
+		return tt;
 	}
 
 	@Override
@@ -579,7 +744,8 @@ public class HardTable extends Table
 	}
 	
 	/**
-	 * Populates a table from a CSV file
+	 * Populates a table from a CSV file. For large files, consider using
+	 * {@link ca.uqac.lif.mtnp.table.io.CsvReader} instead.
 	 * @param scanner A scanner to an open CSV text file
 	 * @return A data table
 	 */
@@ -608,10 +774,23 @@ public class HardTable extends Table
 			{
 				assert col_names != null;
 				assert dt != null;
-				TableEntry entry = new TableEntry();
-				for (int i = 0; i < Math.min(col_names.length, parts.length); i++)
+				TableEntry entry;
+				if (parts.length >= col_names.length)
 				{
-					entry.put(col_names[i], PrimitiveValue.getInstance(parts[i]));
+					entry = new TableEntry(dt.m_rowSchema);
+					for (int i = 0; i < col_names.length; i++)
+					{
+						entry.setValue(i, PrimitiveValue.getInstance(parts[i]));
+					}
+				}
+				else
+				{
+					// Missing values at the end of the line: these keys are absent
+					entry = new TableEntry();
+					for (int i = 0; i < parts.length; i++)
+					{
+						entry.put(col_names[i], PrimitiveValue.getInstance(parts[i]));
+					}
 				}
 				dt.add(entry);
 			}
@@ -624,6 +803,7 @@ public class HardTable extends Table
 	{
 		super.clear();
 		m_entries.clear();
+		m_schema.invalidate();
 	}
 	
 	@Override
@@ -643,10 +823,16 @@ public class HardTable extends Table
 			return;
 		}
 		HardTable ht = (HardTable) t;
-		ht.m_preferredOrdering = m_preferredOrdering;
+		ht.setPreferredOrdering(m_preferredOrdering);
+		if (m_schema.hasStatistics())
+		{
+			ht.m_schema.enableStatistics();
+		}
 		if (with_state)
 		{
 			ht.m_entries.addAll(m_entries);
+			ht.m_schema.invalidate();
+			ht.modified();
 		}
 	}
 }
@@ -0,0 +1,45 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+/**
+ * A transformation whose result can be updated when rows are appended to
+ * its input table, without being computed again from all the rows.
+ * A {@link TransformedTable} in
+ * {@linkplain TransformedTable#setIncremental(boolean) incremental mode}
+ * uses {@link #update(TempTable, TempTable, int)} instead of
+ * {@link #transform(TempTable...)} when the only change to its input
+ * since the last evaluation is the addition of new rows at the end.
+ * @since 0.1.14
+ * @author Sylvain Hallé
+ */
+public interface IncrementalTransformation extends TableTransformation
+{
+	/**
+	 * Updates the result of a previous evaluation of this transformation
+	 * after rows were appended to its input table
+	 * @param previous A copy of the table produced by the previous
+	 *   evaluation. The method may add entries to this table, but must
+	 *   not modify the entries it already contains, as they are shared
+	 *   with other tables.
+	 * @param input The input table, including the new rows
+	 * @param from The index of the first new row in the input table
+	 * @return The updated table
+	 */
+	public TempTable update(TempTable previous, TempTable input, int from);
+}
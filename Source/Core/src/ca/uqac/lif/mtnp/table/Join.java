@@ -18,21 +18,45 @@
 package ca.uqac.lif.mtnp.table;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+
+import ca.uqac.lif.petitpoucet.DirectValue;
+import ca.uqac.lif.petitpoucet.NodeFunction;
 
 /**
  * Joins multiple tables on the values of specific columns.
  * This table performs roughly what the "join" operator does in relational
- * algebra.
+ * algebra. The values of the join columns are encoded as integer codes,
+ * and all the tables are joined in a single pass using a hash table
+ * indexed on these codes, so that the join takes time linear in the
+ * size of the tables.
+ * <p>
+ * When the tables are known to be sorted on the join columns, they can
+ * instead be merged without building any index; see
+ * {@link #setSortedInputs(boolean)}.
+ * <p>
+ * A row may match rows found anywhere in the other tables, and rows
+ * without a match are kept. There is thus no side of the join whose
+ * rows could be streamed: all the tables are read before the first
+ * output row is produced.
  * @author Sylvain Hallé
  */
-public class Join implements TableTransformation
+public class Join implements BlockingTransformation
 {
 	/**
 	 * The columns of the tables on which to perform a join
 	 */
 	protected String[] m_commonDimensions;
 	
+	/**
+	 * Whether the input tables are expected to be sorted on the join
+	 * columns
+	 */
+	protected boolean m_sortedInputs = false;
+	
 	/**
 	 * Creates a new join table
 	 * @param common_dimensions
@@ -44,35 +68,19 @@ public class Join implements TableTransformation
 	}
 	
 	/**
-	 * Finds an entry with the same values of common dimensions
-	 * @param e The entry to find
-	 * @param entries The set of entries
-	 * @return The entry
+	 * Sets whether the input tables are expected to be sorted in ascending
+	 * order of their join columns. In such a case, the tables are merged
+	 * in a single pass without building an index, and the rows of the
+	 * resulting table appear in ascending order of the join columns. If a
+	 * table turns out not to be sorted, the join falls back to the
+	 * default strategy.
+	 * @param b Set to {@code true} if the tables are sorted
+	 * @return This join
 	 */
-	protected TableEntry findExistingEntry(TableEntry e, List<TableEntry> entries)
+	public Join setSortedInputs(boolean b)
 	{
-		if (e == null)
-		{
-			return null;
-		}
-		for (TableEntry ent : entries)
-		{
-			boolean found = true;
-			for (String key : m_commonDimensions)
-			{
-				if (!ent.containsKey(key) || !ent.get(key).equals(e.get(key)))
-				{
-					found = false;
-					break;
-				}
-			}
-			if (found)
-			{
-				return ent;
-			}
-		}
-		entries.add(e);
-		return e;
+		m_sortedInputs = b;
+		return this;
 	}
 	
 	protected int getColumnCount(HardTable ... tables)
@@ -167,22 +175,28 @@ public class Join implements TableTransformation
 		return a_names;
 	}
 	
-	protected List<TableEntry> getRowKeys(HardTable ... tables)
+	/**
+	 * Encodes the values of the join columns of an entry as a tuple of
+	 * codes
+	 * @param e The entry
+	 * @param dictionaries The dictionaries in which to encode the value
+	 *   of each join column
+	 * @return The tuple, or {@code null} if the entry has no value for
+	 *   one of the join columns
+	 */
+	protected ValueDictionary.Tuple getRowKey(TableEntry e, ValueDictionary[] dictionaries)
 	{
-		List<TableEntry> keys = new ArrayList<TableEntry>();
-		for (HardTable t : tables)
+		int[] codes = new int[m_commonDimensions.length];
+		for (int i = 0; i < codes.length; i++)
 		{
-			for (TableEntry e : t.getEntries())
+			PrimitiveValue v = e.get(m_commonDimensions[i]);
+			if (v == null)
 			{
-				TableEntry new_e = new TableEntry();
-				for (String k : m_commonDimensions)
-				{
-					new_e.put(k, e.get(k));
-				}
-				keys.add(new_e);
+				return null;
 			}
+			codes[i] = dictionaries[i].encode(v);
 		}
-		return keys;
+		return new ValueDictionary.Tuple(codes);
 	}
 
 	@SuppressWarnings("unchecked")
@@ -197,30 +211,339 @@ public class Join implements TableTransformation
 			new_types[i] = col_type;
 		}
 		TempTable mt = new TempTable(-1, ordering);
-		List<TableEntry> entries = new ArrayList<TableEntry>();
-		List<TableEntry> keys = getRowKeys(tables);
-		for (TableEntry key : keys)
+		List<List<TableEntry>> inputs = new ArrayList<List<TableEntry>>(tables.length);
+		for (HardTable t : tables)
+		{
+			inputs.add(t.m_entries);
+		}
+		// The row of each input table joined in each output row, or -1
+		int[][] rows = null;
+		if (m_sortedInputs)
+		{
+			rows = mergeJoin(inputs);
+		}
+		if (rows == null)
+		{
+			rows = hashJoin(inputs);
+		}
+		int num_rows = rows.length == 0 ? 0 : rows[0].length;
+		List<TableEntry> entries = new ArrayList<TableEntry>(num_rows);
+		for (int out_row = 0; out_row < num_rows; out_row++)
 		{
+			TableEntry existing_e = null;
 			for (int table_pos = 0; table_pos < tables.length; table_pos++)
 			{
-				HardTable t = tables[table_pos];
-				TableEntry t_entry = t.findEntry(key);
-				if (t_entry != null)
+				int row = rows[table_pos][out_row];
+				if (row < 0)
 				{
-					int row = t_entry.getRowIndex();
-					TableEntry existing_e = findExistingEntry(t_entry, entries);
-					String[] col_names = t.getColumnNames();
-					for (int col = 0; col < col_names.length; col++)
-					{
-						String map_key = col_names[col];
-						existing_e.put(map_key, t_entry.get(map_key));
-						existing_e.addDependency(map_key, t.dependsOn(row, col));
-					}
+					continue;
+				}
+				TableEntry t_entry = inputs.get(table_pos).get(row);
+				if (existing_e == null)
+				{
+					existing_e = new TableEntry(t_entry, false);
+					entries.add(existing_e);
+				}
+				for (String map_key : tables[table_pos].getColumnNames())
+				{
+					existing_e.put(map_key, t_entry.get(map_key));
 				}
 			}
 		}
 		mt.addAll(entries);
+		if (TransformedTable.isProvenanceEnabled())
+		{
+			mt.setLineage(new JoinLineage(tables, rows, ordering));
+		}
 		return mt;
 	}
+	
+	/**
+	 * Matches the rows of all the tables in a single pass, using a hash
+	 * table indexed on the join values. Output rows appear in the order in
+	 * which their key is first seen, going through the tables in order.
+	 * @param inputs The entries of each table
+	 * @return The row of each input table joined in each output row, or
+	 *   -1 if the table has no row for that output row
+	 */
+	protected int[][] hashJoin(List<List<TableEntry>> inputs)
+	{
+		// The values of the join columns are encoded in dictionaries shared
+		// by all the tables, so that rows can be matched on their codes
+		ValueDictionary[] dictionaries = new ValueDictionary[m_commonDimensions.length];
+		for (int i = 0; i < dictionaries.length; i++)
+		{
+			dictionaries[i] = new ValueDictionary();
+		}
+		Map<ValueDictionary.Tuple,Integer> out_rows = new HashMap<ValueDictionary.Tuple,Integer>();
+		int[][] rows = newRows(inputs.size(), inputs.isEmpty() ? 0 : inputs.get(0).size());
+		int num_rows = 0;
+		for (int table_pos = 0; table_pos < inputs.size(); table_pos++)
+		{
+			int row = 0;
+			for (TableEntry e : inputs.get(table_pos))
+			{
+				ValueDictionary.Tuple key = getRowKey(e, dictionaries);
+				if (key != null)
+				{
+					Integer out_row = out_rows.get(key);
+					if (out_row == null)
+					{
+						out_row = num_rows;
+						out_rows.put(key, out_row);
+						rows = ensureRows(rows, ++num_rows);
+					}
+					if (rows[table_pos][out_row] < 0)
+					{
+						// Only the first entry with a given key is joined
+						rows[table_pos][out_row] = row;
+					}
+				}
+				row++;
+			}
+		}
+		return trimRows(rows, num_rows);
+	}
+	
+	/**
+	 * Matches the rows of all the tables by going through them in
+	 * parallel, assuming each table is sorted in ascending order of its
+	 * join values. Output rows appear in ascending order of their key.
+	 * No index is built; if a table turns out not to be sorted, the
+	 * method gives up.
+	 * @param inputs The entries of each table
+	 * @return The row of each input table joined in each output row, or
+	 *   {@code null} if one of the tables is not sorted
+	 */
+	protected int[][] mergeJoin(List<List<TableEntry>> inputs)
+	{
+		int num_tables = inputs.size();
+		int[] positions = new int[num_tables];
+		int[][] rows = newRows(num_tables, inputs.isEmpty() ? 0 : inputs.get(0).size());
+		int num_rows = 0;
+		while (true)
+		{
+			// Find the smallest key among the current row of each table
+			TableEntry min = null;
+			for (int table_pos = 0; table_pos < num_tables; table_pos++)
+			{
+				List<TableEntry> entries = inputs.get(table_pos);
+				while (positions[table_pos] < entries.size() && !hasKey(entries.get(positions[table_pos])))
+				{
+					positions[table_pos]++;
+				}
+				if (positions[table_pos] < entries.size())
+				{
+					TableEntry e = entries.get(positions[table_pos]);
+					if (min == null || compareKeys(e, min) < 0)
+					{
+						min = e;
+					}
+				}
+			}
+			if (min == null)
+			{
+				break;
+			}
+			rows = ensureRows(rows, num_rows + 1);
+			for (int table_pos = 0; table_pos < num_tables; table_pos++)
+			{
+				List<TableEntry> entries = inputs.get(table_pos);
+				int pos = positions[table_pos];
+				if (pos >= entries.size() || compareKeys(entries.get(pos), min) != 0)
+				{
+					continue;
+				}
+				// Only the first entry with a given key is joined
+				rows[table_pos][num_rows] = pos;
+				TableEntry first = entries.get(pos);
+				pos++;
+				while (pos < entries.size())
+				{
+					TableEntry e = entries.get(pos);
+					if (hasKey(e))
+					{
+						int c = compareKeys(e, first);
+						if (c < 0)
+						{
+							// Not sorted
+							return null;
+						}
+						if (c > 0)
+						{
+							break;
+						}
+					}
+					pos++;
+				}
+				positions[table_pos] = pos;
+			}
+			num_rows++;
+		}
+		return trimRows(rows, num_rows);
+	}
+	
+	/**
+	 * Determines if an entry has a value for every join column
+	 * @param e The entry
+	 * @return {@code true} if the entry can be joined
+	 */
+	protected boolean hasKey(TableEntry e)
+	{
+		for (String col_name : m_commonDimensions)
+		{
+			if (e.get(col_name) == null)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Compares the values of the join columns of two entries
+	 * @param e1 The first entry
+	 * @param e2 The second entry
+	 * @return A negative number, zero or a positive number if the key of
+	 *   the first entry is smaller than, equal to or greater than the key
+	 *   of the second
+	 */
+	protected int compareKeys(TableEntry e1, TableEntry e2)
+	{
+		for (String col_name : m_commonDimensions)
+		{
+			int c = e1.get(col_name).compareTo(e2.get(col_name));
+			if (c != 0)
+			{
+				return c;
+			}
+		}
+		return 0;
+	}
+	
+	/**
+	 * Creates the array associating output rows to input rows, with no
+	 * row associated yet
+	 * @param num_tables The number of input tables
+	 * @param capacity The number of output rows the array can hold
+	 * @return The array
+	 */
+	protected static int[][] newRows(int num_tables, int capacity)
+	{
+		int[][] rows = new int[num_tables][Math.max(capacity, 16)];
+		for (int[] t_rows : rows)
+		{
+			Arrays.fill(t_rows, -1);
+		}
+		return rows;
+	}
+	
+	/**
+	 * Makes sure the array associating output rows to input rows can hold
+	 * a given number of output rows
+	 * @param rows The array
+	 * @param num_rows The number of output rows
+	 * @return The array, or a larger copy of it
+	 */
+	protected static int[][] ensureRows(int[][] rows, int num_rows)
+	{
+		if (rows.length == 0 || num_rows <= rows[0].length)
+		{
+			return rows;
+		}
+		int old_length = rows[0].length;
+		for (int i = 0; i < rows.length; i++)
+		{
+			rows[i] = Arrays.copyOf(rows[i], Math.max(num_rows, old_length * 2));
+			Arrays.fill(rows[i], old_length, rows[i].length, -1);
+		}
+		return rows;
+	}
+	
+	/**
+	 * Shrinks the array associating output rows to input rows to the
+	 * actual number of output rows
+	 * @param rows The array
+	 * @param num_rows The number of output rows
+	 * @return The array
+	 */
+	protected static int[][] trimRows(int[][] rows, int num_rows)
+	{
+		for (int i = 0; i < rows.length; i++)
+		{
+			if (rows[i].length != num_rows)
+			{
+				rows[i] = Arrays.copyOf(rows[i], num_rows);
+			}
+		}
+		return rows;
+	}
 
+	/**
+	 * The lineage of a table produced by a join. Each cell comes from the
+	 * corresponding cell in the last input table that contributes to its
+	 * row and has that column; if that cell has a dependency of its own,
+	 * it is given instead.
+	 */
+	protected static class JoinLineage implements CellLineage
+	{
+		/**
+		 * The input tables
+		 */
+		protected final HardTable[] m_tables;
+		
+		/**
+		 * The row of each input table joined in each output row, or -1
+		 */
+		protected final int[][] m_rows;
+		
+		/**
+		 * The names of the columns of the output table
+		 */
+		protected final String[] m_columnNames;
+		
+		public JoinLineage(HardTable[] tables, int[][] rows, String[] column_names)
+		{
+			super();
+			m_tables = tables;
+			m_rows = rows;
+			m_columnNames = column_names;
+		}
+		
+		@Override
+		public NodeFunction getDependency(int row, int col)
+		{
+			if (col < 0 || col >= m_columnNames.length)
+			{
+				return null;
+			}
+			for (int table_pos = m_tables.length - 1; table_pos >= 0; table_pos--)
+			{
+				if (row < 0 || row >= m_rows[table_pos].length)
+				{
+					return null;
+				}
+				int t_row = m_rows[table_pos][row];
+				if (t_row < 0)
+				{
+					continue;
+				}
+				int t_col = m_tables[table_pos].getColumnPosition(m_columnNames[col]);
+				if (t_col < 0)
+				{
+					continue;
+				}
+				NodeFunction nf = m_tables[table_pos].dependsOn(t_row, t_col);
+				if (nf == null)
+				{
+					// The input cell has no lineage of its own: point to it
+					DirectValue dv = new DirectValue();
+					dv.add(new TableCellNode(m_tables[table_pos], t_row, t_col));
+					nf = dv;
+				}
+				return nf;
+			}
+			return null;
+		}
+	}
 }
@@ -0,0 +1,103 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import java.util.List;
+
+/**
+ * Keeps the first rows of a table, up to a given number. When the
+ * transformation is streamed, it stops reading its input as soon as
+ * this number of rows has been produced; placed after streamable
+ * transformations, it thus avoids going through the rest of a large
+ * source.
+ * @since 0.1.14
+ * @author Sylvain Hallé
+ */
+public class Limit implements IncrementalTransformation, StreamableTransformation
+{
+	/**
+	 * The maximum number of rows to keep
+	 */
+	protected final int m_limit;
+
+	/**
+	 * Creates a new limit
+	 * @param limit The maximum number of rows to keep
+	 */
+	public Limit(int limit)
+	{
+		super();
+		m_limit = limit;
+	}
+
+	@Override
+	public TempTable transform(TempTable ... tables)
+	{
+		TempTable input = tables[0];
+		return update(new TempTable(input.getId(), input.getColumnNames()), input, 0);
+	}
+
+	@Override
+	public TempTable update(TempTable previous, TempTable input, int from)
+	{
+		List<TableEntry> entries = input.m_entries;
+		for (int i = from; i < entries.size() && previous.getRowCount() < m_limit; i++)
+		{
+			previous.add(new TableEntry(entries.get(i), false));
+		}
+		if (TransformedTable.isProvenanceEnabled())
+		{
+			// Rows and columns are at the same place as in the input
+			previous.setLineage(new CellMapping(input, null, null, false));
+		}
+		return previous;
+	}
+
+	@Override
+	public RowCursor stream(RowCursor ... inputs)
+	{
+		final RowCursor input = inputs[0];
+		return new RowCursor(input.getColumnNames())
+		{
+			int m_count = 0;
+
+			@Override
+			public boolean next()
+			{
+				if (m_count >= m_limit || !input.next())
+				{
+					return false;
+				}
+				m_count++;
+				return true;
+			}
+
+			@Override
+			public PrimitiveValue[] getValues()
+			{
+				return input.getValues();
+			}
+		};
+	}
+
+	@Override
+	public String toString()
+	{
+		return "Limit " + m_limit;
+	}
+}
@@ -0,0 +1,999 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Represents a pipeline of {@link TransformedTable}s as a graph of
+ * operators, and rewrites it into an equivalent pipeline that does less
+ * work. The graph is obtained by going through the input tables of a
+ * table; a {@link Composition} is expanded into its successive
+ * transformations, and a table used by several others becomes a single
+ * node with several parents.
+ * <p>
+ * The following rewrites are applied until none of them changes the
+ * plan:
+ * <ul>
+ * <li>a {@link Select} or {@link RemoveColumns} above a {@link Join}
+ *   also removes, from each input of the join, the columns that are
+ *   neither join columns nor kept in the end</li>
+ * <li>adjacent {@link Select}s and {@link RemoveColumns} are merged into
+ *   one, and adjacent {@link RenameColumns} are replaced by the last
+ *   one</li>
+ * <li>a {@link Select} or {@link RemoveColumns} that keeps all the
+ *   columns of its input is removed</li>
+ * <li>a {@link SortRows} immediately followed by another sort is
+ *   removed, when its order is entirely determined by the second
+ *   one</li>
+ * <li>a {@link Filter} is moved before sorts and projections, and into
+ *   the inputs of a join when it only reads join columns</li>
+ * </ul>
+ * Once the plan no longer changes, consecutive {@link RowTransformation}s
+ * are fused into a {@link FusedTransformation}, which computes them in
+ * a single pass over the rows.
+ * Any other transformation is a barrier: nothing is moved across it. 
+ * Projections are not pushed below an {@link ExpandAsColumns} either, as
+ * it groups rows on all the columns it does not expand; removing one of
+ * them beforehand would merge rows that are otherwise kept apart.
+ * Rewrites needing the names of the columns of a table are only applied
+ * when these names can be found without evaluating anything.
+ * <p>
+ * A typical use is:
+ * <pre>
+ * LogicalPlan plan = new LogicalPlan(table).optimize();
+ * System.out.println(plan.explain());
+ * Table optimized = plan.getTable();
+ * </pre>
+ * Tables that are not affected by any rewrite are reused as is in the
+ * optimized pipeline, except the optimized table itself, which is never
+ * one of the tables of the original pipeline; the lineage of the cells
+ * of the other tables refers to the tables of the optimized pipeline. A
+ * table created by a rewrite has the same provenance, cache and
+ * incremental settings as the table whose node was rewritten.
+ * @since 0.1.14
+ * @author Sylvain Hallé
+ */
+public class LogicalPlan
+{
+	/**
+	 * The maximum number of times the rewrites are applied to the whole
+	 * plan
+	 */
+	protected static final int MAX_PASSES = 100;
+
+	/**
+	 * The table this plan was created from
+	 */
+	protected final Table m_table;
+
+	/**
+	 * The root of the plan
+	 */
+	protected Node m_root;
+
+	/**
+	 * The number of parents of each node in the current plan
+	 */
+	protected Map<Node,Integer> m_parents;
+
+	/**
+	 * A description of each rewrite applied to the plan, in order
+	 */
+	protected final List<String> m_rewrites = new ArrayList<String>();
+
+	/**
+	 * Creates the plan computing a table
+	 * @param t The table
+	 */
+	public LogicalPlan(Table t)
+	{
+		super();
+		m_table = t;
+		m_root = toNode(t, new IdentityHashMap<Table,Node>());
+	}
+
+	/**
+	 * Optimizes the pipeline computing a table
+	 * @param t The table
+	 * @return A table with the same contents, computed by the optimized
+	 *   pipeline
+	 */
+	public static Table optimize(Table t)
+	{
+		return new LogicalPlan(t).optimize().getTable();
+	}
+
+	/**
+	 * Applies the rewrites to this plan until none of them changes it, and
+	 * then fuses consecutive row transformations
+	 * @return This plan
+	 */
+	public LogicalPlan optimize()
+	{
+		for (int pass = 0; pass < MAX_PASSES; pass++)
+		{
+			m_parents = new IdentityHashMap<Node,Integer>();
+			countParents(m_root, m_parents);
+			Node root = rewrite(m_root, new IdentityHashMap<Node,Node>());
+			if (root == m_root)
+			{
+				break;
+			}
+			m_root = root;
+		}
+		m_parents = new IdentityHashMap<Node,Integer>();
+		countParents(m_root, m_parents);
+		m_root = fuse(m_root, new IdentityHashMap<Node,Node>());
+		return this;
+	}
+
+	/**
+	 * Gets the table computed by this plan. If the rewrites reduce the
+	 * plan to one of its input tables, as when the only transformation is
+	 * a projection keeping all the columns, that input is not returned
+	 * itself: modifying the result would otherwise modify the input. The
+	 * result is instead a table computing a copy of the input.
+	 * @return The table. This is the original table if no rewrite has
+	 *   been applied.
+	 */
+	public Table getTable()
+	{
+		Table t = toTable(m_root, new IdentityHashMap<Node,Table>());
+		if (m_root.m_table != null && t != m_table)
+		{
+			String[] names = getColumns(m_root);
+			if (names == null || !(m_table instanceof TransformedTable))
+			{
+				return m_table;
+			}
+			TransformedTable original = (TransformedTable) m_table;
+			TransformedTable tt = new TransformedTable(new Select(names), t);
+			tt.setProvenance(original.m_provenance);
+			tt.setCache(original.m_cache);
+			tt.setIncremental(original.m_incremental);
+			t = tt;
+		}
+		if (t != m_table)
+		{
+			// A new table replaces the original one
+			t.setNickname(m_table.getNickname());
+			t.setTitle(m_table.getTitle());
+			t.setDescription(m_table.getDescription());
+		}
+		return t;
+	}
+
+	/**
+	 * Gets a description of each rewrite applied to this plan
+	 * @return The descriptions, in the order the rewrites were applied
+	 */
+	public List<String> getRewrites()
+	{
+		return m_rewrites;
+	}
+
+	/**
+	 * Describes this plan, as an indented tree of operators with the
+	 * inputs of each operator below it, followed by the rewrites that
+	 * were applied. A node with several parents is only expanded the
+	 * first time it is encountered.
+	 * @return The description
+	 */
+	public String explain()
+	{
+		StringBuilder out = new StringBuilder();
+		explain(m_root, 0, out, new IdentityHashMap<Node,Node>());
+		if (!m_rewrites.isEmpty())
+		{
+			out.append("Rewrites:\n");
+			for (String rewrite : m_rewrites)
+			{
+				out.append("  ").append(rewrite).append("\n");
+			}
+		}
+		return out.toString();
+	}
+
+	@Override
+	public String toString()
+	{
+		return explain();
+	}
+
+	/**
+	 * Describes a node and its inputs
+	 * @param n The node
+	 * @param indent The indentation level
+	 * @param out The builder where the description is appended
+	 * @param visited The nodes already described
+	 */
+	protected static void explain(Node n, int indent, StringBuilder out, Map<Node,Node> visited)
+	{
+		for (int i = 0; i < indent; i++)
+		{
+			out.append("  ");
+		}
+		out.append(describe(n));
+		if (n.m_inputs.length > 0 && visited.containsKey(n))
+		{
+			out.append(" (see above)\n");
+			return;
+		}
+		visited.put(n, n);
+		out.append("\n");
+		for (Node in : n.m_inputs)
+		{
+			explain(in, indent + 1, out, visited);
+		}
+	}
+
+	/**
+	 * Describes a single node
+	 * @param n The node
+	 * @return The description
+	 */
+	protected static String describe(Node n)
+	{
+		if (n.m_transformation == null)
+		{
+			return "Table " + n.m_table.getId() + " (" + n.m_table.getClass().getSimpleName() + ")";
+		}
+		return describe(n.m_transformation);
+	}
+
+	/**
+	 * Describes a transformation
+	 * @param t The transformation
+	 * @return The description
+	 */
+	protected static String describe(TableTransformation t)
+	{
+		if (t instanceof Select)
+		{
+			return "Select " + Arrays.toString(((Select) t).m_columnNames);
+		}
+		if (t instanceof RemoveColumns)
+		{
+			return "RemoveColumns " + Arrays.toString(((RemoveColumns) t).m_namesToRemove);
+		}
+		if (t instanceof RenameColumns)
+		{
+			return "RenameColumns " + Arrays.toString(((RenameColumns) t).m_names);
+		}
+		if (t instanceof Join)
+		{
+			return "Join " + Arrays.toString(((Join) t).m_commonDimensions);
+		}
+		if (t instanceof SortRows)
+		{
+			SortRows sort = (SortRows) t;
+			if (sort.m_columns.length == 0)
+			{
+				return "SortRows (all columns)";
+			}
+			StringBuilder out = new StringBuilder("SortRows [");
+			for (int i = 0; i < sort.m_columns.length; i++)
+			{
+				if (i > 0)
+				{
+					out.append(", ");
+				}
+				out.append(sort.m_columns[i]);
+				if (sort.m_descending.contains(sort.m_columns[i]))
+				{
+					out.append(" desc");
+				}
+			}
+			return out.append("]").toString();
+		}
+		if (t instanceof Filter)
+		{
+			return t.toString();
+		}
+		if (t instanceof FusedTransformation)
+		{
+			RowTransformation[] transformations = ((FusedTransformation) t).m_transformations;
+			StringBuilder out = new StringBuilder("Fused [");
+			for (int i = 0; i < transformations.length; i++)
+			{
+				if (i > 0)
+				{
+					out.append("; ");
+				}
+				out.append(describe(transformations[i]));
+			}
+			return out.append("]").toString();
+		}
+		String name = t.getClass().getSimpleName();
+		if (name.isEmpty())
+		{
+			name = t.getClass().getName();
+		}
+		return name + " (barrier)";
+	}
+
+	/**
+	 * Creates the node computing a table
+	 * @param t The table
+	 * @param nodes The node already created for each table
+	 * @return The node
+	 */
+	protected static Node toNode(Table t, Map<Table,Node> nodes)
+	{
+		Node n = nodes.get(t);
+		if (n != null)
+		{
+			return n;
+		}
+		if (t instanceof TransformedTable)
+		{
+			TransformedTable tt = (TransformedTable) t;
+			Node[] inputs = new Node[tt.m_inputTables.length];
+			for (int i = 0; i < inputs.length; i++)
+			{
+				inputs[i] = toNode(tt.m_inputTables[i], nodes);
+			}
+			n = chain(tt.m_transformation, inputs);
+			// The last node computes the table itself
+			n = new Node(n.m_transformation, n.m_inputs, tt);
+			inherit(n, tt);
+		}
+		else
+		{
+			n = new Node(t);
+		}
+		nodes.put(t, n);
+		return n;
+	}
+
+	/**
+	 * Creates the nodes applying a transformation, expanding compositions
+	 * @param t The transformation
+	 * @param inputs The nodes giving the input tables
+	 * @return The last node
+	 */
+	protected static Node chain(TableTransformation t, Node[] inputs)
+	{
+		if (t instanceof Composition)
+		{
+			TableTransformation[] transformations = ((Composition) t).m_transformations;
+			Node n = chain(transformations[0], inputs);
+			for (int i = 1; i < transformations.length; i++)
+			{
+				n = chain(transformations[i], new Node[] {n});
+			}
+			return n;
+		}
+		return new Node(t, inputs, null);
+	}
+
+	/**
+	 * Creates the table computed by a node
+	 * @param n The node
+	 * @param tables The table already created for each node
+	 * @return The table
+	 */
+	protected static Table toTable(Node n, Map<Node,Table> tables)
+	{
+		if (n.m_table != null)
+		{
+			return n.m_table;
+		}
+		Table t = tables.get(n);
+		if (t != null)
+		{
+			return t;
+		}
+		Table[] inputs = new Table[n.m_inputs.length];
+		for (int i = 0; i < inputs.length; i++)
+		{
+			inputs[i] = toTable(n.m_inputs[i], tables);
+		}
+		TransformedTable tt = new TransformedTable(n.m_transformation, inputs);
+		if (n.m_settings != null)
+		{
+			tt.setProvenance(n.m_settings.m_provenance);
+			tt.setCache(n.m_settings.m_cache);
+			tt.setIncremental(n.m_settings.m_incremental);
+		}
+		tables.put(n, tt);
+		return tt;
+	}
+
+	/**
+	 * Gives the settings of a table to a node and to the nodes below it
+	 * that do not have settings yet
+	 * @param n The node
+	 * @param settings The table whose settings are given
+	 */
+	protected static void inherit(Node n, TransformedTable settings)
+	{
+		if (n.m_transformation == null || n.m_settings != null)
+		{
+			return;
+		}
+		n.m_settings = settings;
+		for (Node in : n.m_inputs)
+		{
+			inherit(in, settings);
+		}
+	}
+
+	/**
+	 * Counts the parents of each node below a node
+	 * @param n The node
+	 * @param parents The number of parents of each node
+	 */
+	protected static void countParents(Node n, Map<Node,Integer> parents)
+	{
+		for (Node in : n.m_inputs)
+		{
+			Integer count = parents.get(in);
+			parents.put(in, count == null ? 1 : count + 1);
+			if (count == null)
+			{
+				countParents(in, parents);
+			}
+		}
+	}
+
+	/**
+	 * Rewrites a node and its inputs
+	 * @param n The node
+	 * @param rewritten The node already obtained for each node
+	 * @return The rewritten node, or the node itself if nothing changed
+	 */
+	protected Node rewrite(Node n, Map<Node,Node> rewritten)
+	{
+		Node r = rewritten.get(n);
+		if (r != null)
+		{
+			return r;
+		}
+		r = n;
+		if (n.m_transformation != null)
+		{
+			Node[] inputs = new Node[n.m_inputs.length];
+			boolean changed = false;
+			for (int i = 0; i < inputs.length; i++)
+			{
+				inputs[i] = rewrite(n.m_inputs[i], rewritten);
+				changed |= inputs[i] != n.m_inputs[i];
+			}
+			if (changed)
+			{
+				r = new Node(n.m_transformation, inputs, null);
+			}
+			r = applyRules(r);
+			// The nodes created by the rewrites stand for the original node
+			inherit(r, n.m_settings);
+		}
+		rewritten.put(n, r);
+		return r;
+	}
+
+	/**
+	 * Fuses the consecutive row transformations below a node
+	 * @param n The node
+	 * @param fused The node already obtained for each node
+	 * @return The rewritten node, or the node itself if nothing changed
+	 */
+	protected Node fuse(Node n, Map<Node,Node> fused)
+	{
+		Node r = fused.get(n);
+		if (r != null)
+		{
+			return r;
+		}
+		r = n;
+		if (n.m_transformation != null)
+		{
+			Node[] inputs = new Node[n.m_inputs.length];
+			boolean changed = false;
+			for (int i = 0; i < inputs.length; i++)
+			{
+				inputs[i] = fuse(n.m_inputs[i], fused);
+				changed |= inputs[i] != n.m_inputs[i];
+			}
+			if (changed)
+			{
+				r = new Node(n.m_transformation, inputs, null);
+			}
+			if (r.m_transformation instanceof RowTransformation && inputs.length == 1
+					&& inputs[0].m_transformation instanceof RowTransformation && !isShared(n.m_inputs[0]))
+			{
+				List<RowTransformation> transformations = new ArrayList<RowTransformation>();
+				addFused(transformations, (RowTransformation) inputs[0].m_transformation);
+				addFused(transformations, (RowTransformation) r.m_transformation);
+				m_rewrites.add("fused " + describe(r) + " with " + describe(inputs[0]));
+				r = new Node(new FusedTransformation(transformations.toArray(new RowTransformation[transformations.size()])), inputs[0].m_inputs, null);
+			}
+			inherit(r, n.m_settings);
+		}
+		fused.put(n, r);
+		return r;
+	}
+
+	/**
+	 * Adds a row transformation to a list of transformations to fuse
+	 * @param transformations The list
+	 * @param t The transformation. If it is already fused, the
+	 *   transformations it is made of are added instead.
+	 */
+	protected static void addFused(List<RowTransformation> transformations, RowTransformation t)
+	{
+		if (t instanceof FusedTransformation)
+		{
+			transformations.addAll(Arrays.asList(((FusedTransformation) t).m_transformations));
+		}
+		else
+		{
+			transformations.add(t);
+		}
+	}
+
+	/**
+	 * Applies the first rewrite that changes a node
+	 * @param n The node
+	 * @return The rewritten node, or the node itself if no rewrite applies
+	 */
+	protected Node applyRules(Node n)
+	{
+		if (n.m_inputs.length != 1)
+		{
+			return n;
+		}
+		TableTransformation t = n.m_transformation;
+		Node in = n.m_inputs[0];
+		if (t instanceof Select || t instanceof RemoveColumns)
+		{
+			String[] in_cols = getColumns(in);
+			String[] kept = getKeptColumns(t, in_cols);
+			if (kept != null && Arrays.equals(kept, in_cols))
+			{
+				m_rewrites.add("removed " + describe(n) + ", which keeps all the columns");
+				return in;
+			}
+		}
+		if (isShared(in))
+		{
+			// Changing the input would compute it twice
+			return n;
+		}
+		TableTransformation t_in = in.m_transformation;
+		if (t instanceof Select)
+		{
+			return rewriteSelect(n, (Select) t, in);
+		}
+		if (t instanceof RemoveColumns)
+		{
+			return rewriteRemove(n, (RemoveColumns) t, in);
+		}
+		if (t instanceof RenameColumns && t_in instanceof RenameColumns
+				&& ((RenameColumns) t).m_names.length == ((RenameColumns) t_in).m_names.length)
+		{
+			m_rewrites.add("merged " + describe(in) + " into " + describe(n));
+			return new Node(t, in.m_inputs, null);
+		}
+		if (t instanceof SortRows && t_in instanceof SortRows)
+		{
+			return rewriteSort(n, (SortRows) t, in, (SortRows) t_in);
+		}
+		if (t instanceof Filter)
+		{
+			return rewriteFilter(n, (Filter) t, in);
+		}
+		return n;
+	}
+
+	/**
+	 * Rewrites a {@link Select} node
+	 * @param n The node
+	 * @param s The transformation of the node
+	 * @param in The input of the node
+	 * @return The rewritten node, or the node itself if no rewrite applies
+	 */
+	protected Node rewriteSelect(Node n, Select s, Node in)
+	{
+		TableTransformation t_in = in.m_transformation;
+		if (t_in instanceof Select && containsAll(((Select) t_in).m_columnNames, s.m_columnNames))
+		{
+			m_rewrites.add("merged " + describe(in) + " into " + describe(n));
+			return new Node(s, in.m_inputs, null);
+		}
+		if (t_in instanceof RemoveColumns && !containsAny(s.m_columnNames, ((RemoveColumns) t_in).m_namesToRemove))
+		{
+			m_rewrites.add("merged " + describe(in) + " into " + describe(n));
+			return new Node(s, in.m_inputs, null);
+		}
+		if (t_in instanceof Join)
+		{
+			return pushProjection(n, s.m_columnNames, in);
+		}
+		return n;
+	}
+
+	/**
+	 * Rewrites a {@link RemoveColumns} node
+	 * @param n The node
+	 * @param r The transformation of the node
+	 * @param in The input of the node
+	 * @return The rewritten node, or the node itself if no rewrite applies
+	 */
+	protected Node rewriteRemove(Node n, RemoveColumns r, Node in)
+	{
+		TableTransformation t_in = in.m_transformation;
+		if (t_in instanceof RemoveColumns)
+		{
+			List<String> names = new ArrayList<String>(Arrays.asList(((RemoveColumns) t_in).m_namesToRemove));
+			for (String name : r.m_namesToRemove)
+			{
+				if (!names.contains(name))
+				{
+					names.add(name);
+				}
+			}
+			m_rewrites.add("merged " + describe(in) + " into " + describe(n));
+			return new Node(new RemoveColumns(names.toArray(new String[names.size()])), in.m_inputs, null);
+		}
+		if (t_in instanceof Select)
+		{
+			m_rewrites.add("merged " + describe(n) + " into " + describe(in));
+			return new Node(new Select(getKeptColumns(r, ((Select) t_in).m_columnNames)), in.m_inputs, null);
+		}
+		if (t_in instanceof Join)
+		{
+			String[] kept = getKeptColumns(r, getColumns(in));
+			if (kept != null)
+			{
+				return pushProjection(n, kept, in);
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Removes, from each input of a join, the columns that are not needed
+	 * by a projection applied to its result
+	 * @param n The node of the projection
+	 * @param kept The columns kept by the projection
+	 * @param join_node The node of the join
+	 * @return The rewritten node, or the node itself if no input of the
+	 *   join has columns to remove
+	 */
+	protected Node pushProjection(Node n, String[] kept, Node join_node)
+	{
+		Join j = (Join) join_node.m_transformation;
+		Node[] inputs = new Node[join_node.m_inputs.length];
+		boolean changed = false;
+		for (int i = 0; i < inputs.length; i++)
+		{
+			Node input = join_node.m_inputs[i];
+			inputs[i] = input;
+			String[] cols = getColumns(input);
+			if (cols == null)
+			{
+				continue;
+			}
+			List<String> needed = new ArrayList<String>(cols.length);
+			for (String col : cols)
+			{
+				if (j.isJoinColumn(col) || contains(kept, col))
+				{
+					needed.add(col);
+				}
+			}
+			if (needed.size() < cols.length)
+			{
+				inputs[i] = new Node(new Select(needed.toArray(new String[needed.size()])), new Node[] {input}, null);
+				changed = true;
+			}
+		}
+		if (!changed)
+		{
+			return n;
+		}
+		m_rewrites.add("pushed " + describe(n) + " below " + describe(join_node));
+		return new Node(n.m_transformation, new Node[] {new Node(j, inputs, null)}, null);
+	}
+
+	/**
+	 * Rewrites a {@link SortRows} node whose input is also a sort
+	 * @param n The node
+	 * @param s The transformation of the node
+	 * @param in The input of the node
+	 * @param s_in The transformation of the input
+	 * @return The rewritten node, or the node itself if no rewrite applies
+	 */
+	protected Node rewriteSort(Node n, SortRows s, Node in, SortRows s_in)
+	{
+		// Sorting is stable: rows that are tied for the second sort keep
+		// the order given by the first one. If these rows are also tied
+		// for the first sort, they keep their original order, and the
+		// first sort has no effect.
+		String[] in_keys = s_in.m_columns.length == 0 ? getColumns(in.m_inputs[0]) : s_in.m_columns;
+		if (s.m_columns.length == 0 || (in_keys != null && containsAll(s.m_columns, in_keys)))
+		{
+			m_rewrites.add("removed " + describe(in) + ", followed by " + describe(n));
+			return new Node(s, in.m_inputs, null);
+		}
+		return n;
+	}
+
+	/**
+	 * Rewrites a {@link Filter} node
+	 * @param n The node
+	 * @param f The transformation of the node
+	 * @param in The input of the node
+	 * @return The rewritten node, or the node itself if no rewrite applies
+	 */
+	protected Node rewriteFilter(Node n, Filter f, Node in)
+	{
+		TableTransformation t_in = in.m_transformation;
+		String[] cols = f.m_columns;
+		boolean swap = t_in instanceof SortRows;
+		if (cols.length > 0)
+		{
+			swap |= t_in instanceof Select && containsAll(((Select) t_in).m_columnNames, cols);
+			swap |= t_in instanceof RemoveColumns && !containsAny(((RemoveColumns) t_in).m_namesToRemove, cols);
+		}
+		if (swap)
+		{
+			m_rewrites.add("moved " + describe(n) + " before " + describe(in));
+			return new Node(t_in, new Node[] {new Node(f, in.m_inputs, null)}, null);
+		}
+		if (t_in instanceof Join && cols.length > 0)
+		{
+			// A filter on the join columns removes the same keys from all
+			// the inputs
+			Join j = (Join) t_in;
+			for (String col : cols)
+			{
+				if (!j.isJoinColumn(col))
+				{
+					return n;
+				}
+			}
+			Node[] inputs = new Node[in.m_inputs.length];
+			for (int i = 0; i < inputs.length; i++)
+			{
+				inputs[i] = new Node(f, new Node[] {in.m_inputs[i]}, null);
+			}
+			m_rewrites.add("moved " + describe(n) + " into the inputs of " + describe(in));
+			return new Node(j, inputs, null);
+		}
+		return n;
+	}
+
+	/**
+	 * Determines if a node has more than one parent in the current plan
+	 * @param n The node
+	 * @return {@code true} if the node is shared
+	 */
+	protected boolean isShared(Node n)
+	{
+		Integer count = m_parents.get(n);
+		return count != null && count > 1;
+	}
+
+	/**
+	 * Gets the names of the columns of the table computed by a node,
+	 * without evaluating it
+	 * @param n The node
+	 * @return The names of the columns, or {@code null} if they cannot
+	 *   be known in advance
+	 */
+	protected static String[] getColumns(Node n)
+	{
+		TableTransformation t = n.m_transformation;
+		if (t == null)
+		{
+			if (n.m_table instanceof HardTable)
+			{
+				return ((HardTable) n.m_table).getColumnNames();
+			}
+			if (n.m_table instanceof ColumnTable)
+			{
+				return ((ColumnTable) n.m_table).getColumnNames();
+			}
+			return null;
+		}
+		if (t instanceof Select)
+		{
+			return ((Select) t).m_columnNames;
+		}
+		if (t instanceof RenameColumns)
+		{
+			return ((RenameColumns) t).m_names;
+		}
+		if (t instanceof RemoveColumns)
+		{
+			return getKeptColumns(t, getColumns(n.m_inputs[0]));
+		}
+		if (t instanceof SortRows || t instanceof Filter)
+		{
+			return getColumns(n.m_inputs[0]);
+		}
+		if (t instanceof Join)
+		{
+			Join j = (Join) t;
+			List<String> names = new ArrayList<String>(Arrays.asList(j.m_commonDimensions));
+			for (Node in : n.m_inputs)
+			{
+				String[] cols = getColumns(in);
+				if (cols == null)
+				{
+					return null;
+				}
+				for (String col : cols)
+				{
+					if (!j.isJoinColumn(col))
+					{
+						names.add(col);
+					}
+				}
+			}
+			return names.toArray(new String[names.size()]);
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the columns kept by a {@link Select} or a
+	 * {@link RemoveColumns}
+	 * @param t The transformation
+	 * @param in_cols The columns of the input table, or {@code null} if
+	 *   they are not known
+	 * @return The columns of the output table, or {@code null} if they
+	 *   are not known
+	 */
+	protected static String[] getKeptColumns(TableTransformation t, String[] in_cols)
+	{
+		if (t instanceof Select)
+		{
+			return ((Select) t).m_columnNames;
+		}
+		if (in_cols == null)
+		{
+			return null;
+		}
+		String[] removed = ((RemoveColumns) t).m_namesToRemove;
+		List<String> kept = new ArrayList<String>(in_cols.length);
+		for (String col : in_cols)
+		{
+			if (!contains(removed, col))
+			{
+				kept.add(col);
+			}
+		}
+		return kept.toArray(new String[kept.size()]);
+	}
+
+	/**
+	 * Determines if an array of names contains a name
+	 * @param names The array
+	 * @param name The name
+	 * @return {@code true} if the name is in the array
+	 */
+	protected static boolean contains(String[] names, String name)
+	{
+		for (String n : names)
+		{
+			if (n.compareTo(name) == 0)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Determines if an array of names contains all the names of another
+	 * @param names The array
+	 * @param others The names to look for
+	 * @return {@code true} if all the names are in the array
+	 */
+	protected static boolean containsAll(String[] names, String[] others)
+	{
+		for (String name : others)
+		{
+			if (!contains(names, name))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Determines if an array of names contains any of the names of
+	 * another
+	 * @param names The array
+	 * @param others The names to look for
+	 * @return {@code true} if at least one of the names is in the array
+	 */
+	protected static boolean containsAny(String[] names, String[] others)
+	{
+		for (String name : others)
+		{
+			if (contains(names, name))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * An operator of the plan
+	 */
+	protected static class Node
+	{
+		/**
+		 * The transformation applied by this node, or {@code null} if the
+		 * node stands for a table given as is
+		 */
+		protected final TableTransformation m_transformation;
+
+		/**
+		 * The nodes computing the input tables of the transformation
+		 */
+		protected final Node[] m_inputs;
+
+		/**
+		 * The table computed by this node, or {@code null} if it does not
+		 * exist yet
+		 */
+		protected final Table m_table;
+
+		/**
+		 * The table whose provenance, cache and incremental settings are
+		 * given to the table created for this node, or {@code null} to keep
+		 * the default settings
+		 */
+		protected TransformedTable m_settings = null;
+
+		/**
+		 * Creates a node standing for a table given as is
+		 * @param t The table
+		 */
+		public Node(Table t)
+		{
+			this(null, new Node[0], t);
+		}
+
+		/**
+		 * Creates a node applying a transformation
+		 * @param t The transformation
+		 * @param inputs The nodes computing the input tables
+		 * @param table The table computed by this node, or {@code null}
+		 */
+		public Node(TableTransformation t, Node[] inputs, Table table)
+		{
+			super();
+			m_transformation = t;
+			m_inputs = inputs;
+			m_table = table;
+		}
+	}
+}
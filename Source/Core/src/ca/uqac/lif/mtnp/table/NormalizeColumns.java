@@ -21,7 +21,7 @@ package ca.uqac.lif.mtnp.table;
  * Replaces the content of each entry by its fraction of the
  * sum of all values for the column
  */
-public class NormalizeColumns implements TableTransformation
+public class NormalizeColumns implements BlockingTransformation
 {
 	public NormalizeColumns()
 	{
@@ -32,32 +32,30 @@ public class NormalizeColumns implements TableTransformation
 	public TempTable transform(TempTable ... tables)
 	{
 		TempTable in_table = tables[0];
-		TempTable out_table = new TempTable(in_table.getId());
+		String[] col_names = in_table.getColumnNames();
+		TempTable out_table = new TempTable(in_table.getId(), col_names);
 		if (in_table.getRowCount() == 0)
 		{
 			return out_table;
 		}
-		for (String col_name : in_table.getColumnNames())
+		float[] totals = new float[col_names.length];
+		for (int col = 0; col < col_names.length; col++)
 		{
-			float total = 0;
-			for (TableEntry te : in_table.getEntries())
-			{
-				PrimitiveValue o = te.get(col_name);
-				if (o.isNumeric())
-				{
-					total += o.numberValue().floatValue();
-				}
-			}
-			for (TableEntry te : in_table.getEntries())
+			totals[col] = (float) in_table.getColumnStatistics(col_names[col]).getCompensatedSum();
+		}
+		boolean provenance = TransformedTable.isProvenanceEnabled();
+		for (TableEntry te : in_table.m_entries)
+		{
+			TableEntry new_te = new TableEntry(te, provenance);
+			for (int col = 0; col < col_names.length; col++)
 			{
-				TableEntry new_te = new TableEntry(te);
-				PrimitiveValue o = te.get(col_name);
-				if (o.isNumeric())
+				PrimitiveValue o = te.get(col_names[col]);
+				if (o != null && o.isNumeric())
 				{
-					new_te.put(col_name, o.numberValue().floatValue() / total);
+					new_te.put(col_names[col], o.numberValue().floatValue() / totals[col]);
 				}
-				out_table.add(new_te);
 			}
+			out_table.add(new_te);
 		}
 		return out_table;
 	}
@@ -17,107 +17,288 @@
  */
 package ca.uqac.lif.mtnp.table;
 
+import java.io.IOException;
+import java.io.Serializable;
+
+import ca.uqac.lif.mtnp.util.NumberParser;
+
 /**
  * Represents an atomic value that can be found in a table cell.
  * Such a value can either be a number or a string. Primitive
  * values are created so that a collection can mix values of
  * these types together, and still be able to sort them.
+ * <p>
+ * Each kind of value (integer, floating-point number, Boolean, string,
+ * null) is represented by its own subclass holding a primitive field,
+ * so that values can be compared without unboxing. Frequent values
+ * (null, Booleans, small integers and recently seen strings) are shared
+ * instances; since primitive values are immutable, this is transparent
+ * to callers.
  * @author Sylvain Hallé
  */
-public class PrimitiveValue implements Comparable<PrimitiveValue>
+public abstract class PrimitiveValue implements Comparable<PrimitiveValue>, Serializable
 {
-	protected String m_string;
+	/**
+	 * Dummy UID
+	 */
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * The null value
+	 */
+	public static final PrimitiveValue NULL = new NullValue();
+	
+	/**
+	 * The Boolean value <tt>true</tt>
+	 */
+	public static final PrimitiveValue TRUE = new BooleanValue(true);
+	
+	/**
+	 * The Boolean value <tt>false</tt>
+	 */
+	public static final PrimitiveValue FALSE = new BooleanValue(false);
+	
+	/**
+	 * The smallest integer kept in the cache of integers
+	 */
+	protected static final int s_minCachedInt = -128;
+	
+	/**
+	 * The largest integer kept in the cache of integers
+	 */
+	protected static final int s_maxCachedInt = 1023;
+	
+	/**
+	 * A cache of primitive values for small integers
+	 */
+	protected static final LongValue[] s_intCache = new LongValue[s_maxCachedInt - s_minCachedInt + 1];
+	
+	/**
+	 * The number of slots in the cache of strings. Must be a power of 2.
+	 */
+	protected static final int s_stringCacheSize = 4096;
 	
-	protected Number m_number;
+	/**
+	 * The maximum length of a string kept in the cache of strings
+	 */
+	protected static final int s_maxCachedLength = 32;
 	
-	protected Boolean m_boolean;
+	/**
+	 * A direct-mapped cache associating strings to the primitive values
+	 * parsed from them. A slot is overwritten when a new string with the
+	 * same hash is parsed, so the cache never grows beyond its size.
+	 */
+	protected static final CachedString[] s_stringCache = new CachedString[s_stringCacheSize];
+	
+	/**
+	 * Ranks used to order values of different kinds: numbers go before
+	 * strings, which go before nulls
+	 */
+	protected static final int RANK_NUMBER = 0;
+	protected static final int RANK_TEXT = 1;
+	protected static final int RANK_NULL = 2;
+	
+	static
+	{
+		for (int i = 0; i < s_intCache.length; i++)
+		{
+			s_intCache[i] = new LongValue(i + s_minCachedInt);
+		}
+	}
 	
 	public static PrimitiveValue getInstance(Object o)
 	{
+		if (o == null)
+		{
+			return NULL;
+		}
 		if (o instanceof PrimitiveValue)
 		{
 			return (PrimitiveValue) o;
 		}
-		return new PrimitiveValue(o);
+		if (o instanceof String)
+		{
+			return getInstance((String) o);
+		}
+		if (o instanceof Integer || o instanceof Long || o instanceof Short || o instanceof Byte)
+		{
+			return getInstance(((Number) o).longValue());
+		}
+		if (o instanceof Float)
+		{
+			return getInstance(((Float) o).floatValue());
+		}
+		if (o instanceof Number)
+		{
+			return getInstance(((Number) o).doubleValue());
+		}
+		if (o instanceof Boolean)
+		{
+			return getInstance(((Boolean) o).booleanValue());
+		}
+		return new StringValue(o.toString());
 	}
 	
-	private PrimitiveValue(Object o)
+	/**
+	 * Gets the primitive value for an integer
+	 * @param x The integer
+	 * @return The value
+	 */
+	public static PrimitiveValue getInstance(long x)
 	{
-		super();
-		m_string = null;
-		m_number = null;
-		if (o == null)
+		if (x >= s_minCachedInt && x <= s_maxCachedInt)
 		{
-			return;
+			return s_intCache[(int) x - s_minCachedInt];
 		}
-		if (o instanceof Boolean)
+		return new LongValue(x);
+	}
+	
+	/**
+	 * Gets the primitive value for a double-precision number
+	 * @param x The number
+	 * @return The value
+	 */
+	public static PrimitiveValue getInstance(double x)
+	{
+		return new DoubleValue(x);
+	}
+	
+	/**
+	 * Gets the primitive value for a single-precision number
+	 * @param x The number
+	 * @return The value
+	 */
+	public static PrimitiveValue getInstance(float x)
+	{
+		return new FloatValue(x);
+	}
+	
+	/**
+	 * Gets the primitive value for a Boolean
+	 * @param b The Boolean
+	 * @return The value
+	 */
+	public static PrimitiveValue getInstance(boolean b)
+	{
+		return b ? TRUE : FALSE;
+	}
+	
+	/**
+	 * Gets the primitive value for a string. If the string represents
+	 * a number, the value is that number.
+	 * @param s The string
+	 * @return The value
+	 */
+	public static PrimitiveValue getInstance(String s)
+	{
+		if (s == null)
 		{
-			m_boolean = (Boolean) o;
+			return NULL;
 		}
-		else if (o instanceof Number)
+		if (s.length() > s_maxCachedLength)
 		{
-			m_number = (Number) o;
-			return;
+			return parse(s);
 		}
-		else if (o instanceof String)
+		int h = s.hashCode();
+		int slot = (h ^ (h >>> 16)) & (s_stringCacheSize - 1);
+		CachedString cs = s_stringCache[slot];
+		if (cs != null && cs.m_key.equals(s))
 		{
-			try
-			{
-				int f = Integer.parseInt((String) o);
-				m_number = f;
-				return;
-			}
-			catch (NumberFormatException e1)
-			{
-				try
-				{
-					float f = Float.parseFloat((String) o);
-					m_number = f;
-					return;
-				}
-				catch (NumberFormatException e2)
-				{
-					m_string = (String) o;
-					return;
-				}
-			}
+			return cs.m_value;
 		}
-		m_string = o.toString();
+		PrimitiveValue v = parse(s);
+		s_stringCache[slot] = new CachedString(s, v);
+		return v;
+	}
+	
+	/**
+	 * Parses a string into a primitive value
+	 * @param s The string
+	 * @return The value
+	 */
+	protected static PrimitiveValue parse(String s)
+	{
+		Number n = NumberParser.parse(s);
+		if (n == null)
+		{
+			return new StringValue(s);
+		}
+		if (n instanceof Float)
+		{
+			return getInstance(n.floatValue());
+		}
+		return getInstance(n.longValue());
+	}
+	
+	/**
+	 * Creates a new primitive value. Instances must be obtained through
+	 * the {@code getInstance} methods.
+	 */
+	PrimitiveValue()
+	{
+		super();
 	}
 	
 	public boolean isNumeric()
 	{
-		return m_number != null;
+		return false;
+	}
+	
+	/**
+	 * Determines if this value is an integer
+	 * @return {@code true} if the value is an integer
+	 */
+	public boolean isIntegral()
+	{
+		return false;
 	}
 	
 	public boolean isBoolean()
 	{
-		return m_boolean != null;
+		return false;
 	}
 	
 	public boolean isString()
 	{
-		return m_number == null;
+		return true;
 	}
 	
 	public boolean isNull()
 	{
-		return m_number == null && m_string == null && m_boolean == null;
+		return false;
 	}
 	
 	public Number numberValue()
 	{
-		return m_number;
+		return null;
+	}
+	
+	/**
+	 * Gets the value of this cell as a <tt>long</tt>
+	 * @return The value; 0 if the value is not numeric
+	 */
+	public long longValue()
+	{
+		return 0;
+	}
+	
+	/**
+	 * Gets the value of this cell as a <tt>double</tt>
+	 * @return The value; {@code NaN} if the value is not numeric
+	 */
+	public double doubleValue()
+	{
+		return Double.NaN;
 	}
 	
 	public Boolean booleanValue()
 	{
-		return m_boolean;
+		return null;
 	}
 	
 	public String stringValue()
 	{
-		return m_string;
+		return null;
 	}
 	
 	/**
@@ -127,12 +308,22 @@ public class PrimitiveValue implements Comparable<PrimitiveValue>
 	 */
 	public Comparable<?> value()
 	{
-		if (isNumeric())
-		{
-			return m_number.doubleValue();
-		}
-		return m_string;
+		return stringValue();
 	}
+	
+	/**
+	 * Gets the rank of this kind of value in the ordering of values
+	 * @return The rank
+	 */
+	protected abstract int rank();
+	
+	/**
+	 * Compares this value to another value of the same rank
+	 * @param o The other value
+	 * @return A negative integer, zero, or a positive integer as this value
+	 *   is less than, equal to, or greater than the other value
+	 */
+	protected abstract int compareSameRank(PrimitiveValue o);
 
 	@Override
 	public int compareTo(PrimitiveValue o)
@@ -142,103 +333,605 @@ public class PrimitiveValue implements Comparable<PrimitiveValue>
 			// Nulls go last
 			return 1;
 		}
-		if (m_boolean != null && o.m_boolean != null)
+		if (o == this)
 		{
-			// Booleans are compared with false going first
-			if (m_boolean == o.m_boolean)
+			return 0;
+		}
+		int r1 = rank(), r2 = o.rank();
+		if (r1 != r2)
+		{
+			// Numbers go before strings, and null values go last
+			return r1 < r2 ? -1 : 1;
+		}
+		return compareSameRank(o);
+	}
+	
+	public String toQuotedString()
+	{
+		return "\"" + toString() + "\"";
+	}
+	
+	/**
+	 * Writes the string representation of this value, as given by
+	 * {@link #toString()}. Unlike {@link #toString()}, numbers are written
+	 * directly to the output without creating an intermediate string
+	 * whenever possible.
+	 * @param out The output to write to
+	 * @throws IOException If the output cannot be written to
+	 * @since 0.1.14
+	 */
+	public void appendTo(Appendable out) throws IOException
+	{
+		out.append(toString());
+	}
+	
+	/**
+	 * Writes the decimal representation of an integer, one character at
+	 * a time
+	 * @param out The output to write to
+	 * @param x The integer
+	 * @throws IOException If the output cannot be written to
+	 */
+	static void appendLong(Appendable out, long x) throws IOException
+	{
+		if (out instanceof StringBuilder)
+		{
+			((StringBuilder) out).append(x);
+			return;
+		}
+		if (x == Long.MIN_VALUE)
+		{
+			// Its absolute value cannot be represented
+			out.append(Long.toString(x));
+			return;
+		}
+		if (x < 0)
+		{
+			out.append('-');
+			x = -x;
+		}
+		long div = 1;
+		while (x / div >= 10)
+		{
+			div *= 10;
+		}
+		for (; div > 0; div /= 10)
+		{
+			out.append((char) ('0' + (x / div) % 10));
+		}
+	}
+	
+	@Override
+	public boolean equals(Object o)
+	{
+		if (o == null || !(o instanceof PrimitiveValue))
+		{
+			return false;
+		}
+		return compareTo((PrimitiveValue) o) == 0;
+	}
+	
+	/**
+	 * Compares two <tt>double</tt>s, with {@code NaN} going after all
+	 * other numbers. Contrary to {@link Double#compare(double, double)},
+	 * 0 and -0 are equal.
+	 * @param d1 The first number
+	 * @param d2 The second number
+	 * @return The result of the comparison
+	 */
+	protected static int compareDoubles(double d1, double d2)
+	{
+		if (d1 < d2)
+		{
+			return -1;
+		}
+		if (d1 > d2)
+		{
+			return 1;
+		}
+		if (d1 == d2)
+		{
+			return 0;
+		}
+		// At least one of the numbers is NaN
+		boolean n1 = d1 != d1, n2 = d2 != d2;
+		if (n1 && n2)
+		{
+			return 0;
+		}
+		return n1 ? 1 : -1;
+	}
+	
+	/**
+	 * Compares an integer with a <tt>double</tt> on their exact values.
+	 * Converting the integer to a <tt>double</tt> instead would make
+	 * distinct integers above 2<sup>53</sup> equal to the same
+	 * <tt>double</tt>. As in {@link #compareDoubles(double, double)},
+	 * {@code NaN} goes after all other numbers.
+	 * @param x The integer
+	 * @param d The <tt>double</tt>
+	 * @return A negative integer, zero, or a positive integer as the
+	 *   integer is less than, equal to, or greater than the <tt>double</tt>
+	 */
+	protected static int compareExact(long x, double d)
+	{
+		if (d != d || d >= 0x1p63)
+		{
+			return -1;
+		}
+		if (d < -0x1p63)
+		{
+			return 1;
+		}
+		// Within these bounds, the integer part of d is a long, and the
+		// fractional part is computed exactly
+		long l = (long) d;
+		if (x != l)
+		{
+			return x < l ? -1 : 1;
+		}
+		double fraction = d - l;
+		if (fraction > 0)
+		{
+			return -1;
+		}
+		return fraction < 0 ? 1 : 0;
+	}
+	
+	/**
+	 * An integer value
+	 */
+	static final class LongValue extends PrimitiveValue
+	{
+		/**
+		 * Dummy UID
+		 */
+		private static final long serialVersionUID = 1L;
+		
+		final long m_value;
+		
+		LongValue(long x)
+		{
+			super();
+			m_value = x;
+		}
+		
+		@Override
+		public boolean isNumeric()
+		{
+			return true;
+		}
+		
+		@Override
+		public boolean isIntegral()
+		{
+			return true;
+		}
+		
+		@Override
+		public boolean isString()
+		{
+			return false;
+		}
+		
+		@Override
+		public Number numberValue()
+		{
+			if (m_value >= Integer.MIN_VALUE && m_value <= Integer.MAX_VALUE)
 			{
-				// Equal
-				return 0;
+				return (int) m_value;
 			}
-			else
+			return m_value;
+		}
+		
+		@Override
+		public long longValue()
+		{
+			return m_value;
+		}
+		
+		@Override
+		public double doubleValue()
+		{
+			return m_value;
+		}
+		
+		@Override
+		public Comparable<?> value()
+		{
+			return (double) m_value;
+		}
+		
+		@Override
+		protected int rank()
+		{
+			return RANK_NUMBER;
+		}
+		
+		@Override
+		protected int compareSameRank(PrimitiveValue o)
+		{
+			if (o instanceof LongValue)
+			{
+				long x = ((LongValue) o).m_value;
+				return m_value < x ? -1 : (m_value == x ? 0 : 1);
+			}
+			return compareExact(m_value, o.doubleValue());
+		}
+		
+		@Override
+		public String toString()
+		{
+			return Long.toString(m_value);
+		}
+		
+		@Override
+		public void appendTo(Appendable out) throws IOException
+		{
+			appendLong(out, m_value);
+		}
+		
+		@Override
+		public String toQuotedString()
+		{
+			return toString();
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			return 13 * (int) m_value;
+		}
+	}
+	
+	/**
+	 * A double-precision floating-point value
+	 */
+	static class DoubleValue extends PrimitiveValue
+	{
+		/**
+		 * Dummy UID
+		 */
+		private static final long serialVersionUID = 1L;
+		
+		final double m_value;
+		
+		DoubleValue(double x)
+		{
+			super();
+			m_value = x;
+		}
+		
+		@Override
+		public boolean isNumeric()
+		{
+			return true;
+		}
+		
+		@Override
+		public boolean isString()
+		{
+			return false;
+		}
+		
+		@Override
+		public Number numberValue()
+		{
+			return m_value;
+		}
+		
+		@Override
+		public long longValue()
+		{
+			return (long) m_value;
+		}
+		
+		@Override
+		public double doubleValue()
+		{
+			return m_value;
+		}
+		
+		@Override
+		public Comparable<?> value()
+		{
+			return m_value;
+		}
+		
+		@Override
+		protected int rank()
+		{
+			return RANK_NUMBER;
+		}
+		
+		@Override
+		protected int compareSameRank(PrimitiveValue o)
+		{
+			if (o instanceof LongValue)
 			{
-				if (m_boolean == false)
-				{
-					return -1;
-				}
-				return 1;
+				return -compareExact(((LongValue) o).m_value, m_value);
 			}
+			return compareDoubles(m_value, o.doubleValue());
+		}
+		
+		@Override
+		public String toString()
+		{
+			return Double.toString(m_value);
 		}
-		if (m_number != null && o.m_number != null)
+		
+		@Override
+		public void appendTo(Appendable out) throws IOException
 		{
-			// Numbers are compared as numbers
-			if (m_number.doubleValue() > o.m_number.doubleValue())
+			if (out instanceof StringBuilder)
 			{
-				return 1;
+				((StringBuilder) out).append(m_value);
+				return;
 			}
-			if (m_number.doubleValue() < o.m_number.doubleValue())
+			out.append(toString());
+		}
+		
+		@Override
+		public String toQuotedString()
+		{
+			return toString();
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			long l = (long) m_value;
+			if (l == m_value)
 			{
-				return -1;
+				// Same hash code as the equal integer, if any. Integers are
+				// compared exactly with doubles: only the integer l can be
+				// equal to this value.
+				return 13 * (int) l;
 			}
-			return 0;
+			long bits = Double.doubleToLongBits(m_value);
+			return (int) (bits ^ (bits >>> 32));
 		}
-		if (m_number == null && o.m_number == null && m_string == null && o.m_string == null)
+	}
+	
+	/**
+	 * A single-precision floating-point value. It behaves like a
+	 * double-precision value, except for the way it is printed.
+	 */
+	static final class FloatValue extends DoubleValue
+	{
+		/**
+		 * Dummy UID
+		 */
+		private static final long serialVersionUID = 1L;
+		
+		FloatValue(float x)
 		{
-			// Two nulls are equal
-			return 0;
+			super(x);
 		}
-		if (m_number != null && o.m_number == null)
+		
+		@Override
+		public Number numberValue()
 		{
-			// Numbers go before strings
-			return -1;
+			return (float) m_value;
 		}
-		if (m_number == null && o.m_number != null)
+		
+		@Override
+		public String toString()
 		{
-			// Numbers go before strings
-			return 1;
+			return Float.toString((float) m_value);
+		}
+		
+		@Override
+		public void appendTo(Appendable out) throws IOException
+		{
+			if (out instanceof StringBuilder)
+			{
+				((StringBuilder) out).append((float) m_value);
+				return;
+			}
+			out.append(toString());
 		}
-		// Compare as strings
-		return m_string.compareTo(o.m_string);
 	}
 	
-	@Override
-	public String toString()
+	/**
+	 * A Boolean value. Booleans are compared with other strings through
+	 * their string representation.
+	 */
+	static final class BooleanValue extends PrimitiveValue
 	{
-		if (m_number != null)
+		/**
+		 * Dummy UID
+		 */
+		private static final long serialVersionUID = 1L;
+		
+		final boolean m_value;
+		
+		final String m_string;
+		
+		BooleanValue(boolean b)
 		{
-			return m_number.toString();
+			super();
+			m_value = b;
+			m_string = Boolean.toString(b);
 		}
-		if (m_string != null)
+		
+		/**
+		 * Replaces a deserialized Boolean by the shared instance
+		 * @return The shared instance
+		 */
+		private Object readResolve()
+		{
+			return m_value ? TRUE : FALSE;
+		}
+		
+		@Override
+		public boolean isBoolean()
+		{
+			return true;
+		}
+		
+		@Override
+		public Boolean booleanValue()
+		{
+			return m_value;
+		}
+		
+		@Override
+		public String stringValue()
 		{
 			return m_string;
 		}
-		return "null";
+		
+		@Override
+		protected int rank()
+		{
+			return RANK_TEXT;
+		}
+		
+		@Override
+		protected int compareSameRank(PrimitiveValue o)
+		{
+			if (o instanceof BooleanValue)
+			{
+				// Booleans are compared with false going first
+				boolean b = ((BooleanValue) o).m_value;
+				return m_value == b ? 0 : (m_value ? 1 : -1);
+			}
+			return m_string.compareTo(o.stringValue());
+		}
+		
+		@Override
+		public String toString()
+		{
+			return m_string;
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			return 37 * m_string.hashCode();
+		}
 	}
 	
-	public String toQuotedString()
+	/**
+	 * A string value
+	 */
+	static final class StringValue extends PrimitiveValue
 	{
-		if (m_number != null)
+		/**
+		 * Dummy UID
+		 */
+		private static final long serialVersionUID = 1L;
+		
+		final String m_value;
+		
+		StringValue(String s)
 		{
-			return m_number.toString();
+			super();
+			m_value = s;
 		}
-		if (m_string != null)
+		
+		@Override
+		public String stringValue()
 		{
-			return "\"" + m_string + "\"";
+			return m_value;
+		}
+		
+		@Override
+		protected int rank()
+		{
+			return RANK_TEXT;
+		}
+		
+		@Override
+		protected int compareSameRank(PrimitiveValue o)
+		{
+			return m_value.compareTo(o.stringValue());
+		}
+		
+		@Override
+		public String toString()
+		{
+			return m_value;
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			return 37 * m_value.hashCode();
 		}
-		return "\"null\"";
 	}
 	
-	@Override
-	public int hashCode()
+	/**
+	 * The null value
+	 */
+	static final class NullValue extends PrimitiveValue
 	{
-		if (m_number != null)
+		/**
+		 * Dummy UID
+		 */
+		private static final long serialVersionUID = 1L;
+		
+		NullValue()
 		{
-			return 13 * m_number.intValue();
+			super();
 		}
-		if (m_string != null)
+		
+		/**
+		 * Replaces a deserialized null value by the shared instance
+		 * @return The shared instance
+		 */
+		private Object readResolve()
 		{
-			return 37 * m_string.hashCode();
+			return NULL;
+		}
+		
+		@Override
+		public boolean isNull()
+		{
+			return true;
+		}
+		
+		@Override
+		protected int rank()
+		{
+			return RANK_NULL;
+		}
+		
+		@Override
+		protected int compareSameRank(PrimitiveValue o)
+		{
+			// Two nulls are equal
+			return 0;
+		}
+		
+		@Override
+		public String toString()
+		{
+			return "null";
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			return 0;
 		}
-		return 0;
 	}
 	
-	@Override
-	public boolean equals(Object o)
+	/**
+	 * An entry of the cache of strings
+	 */
+	protected static final class CachedString
 	{
-		if (o == null || !(o instanceof PrimitiveValue))
+		final String m_key;
+		
+		final PrimitiveValue m_value;
+		
+		CachedString(String key, PrimitiveValue value)
 		{
-			return false;
+			super();
+			m_key = key;
+			m_value = value;
 		}
-		return compareTo((PrimitiveValue) o) == 0;
 	}
-}
\ No newline at end of file
+}
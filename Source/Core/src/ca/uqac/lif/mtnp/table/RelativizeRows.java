@@ -17,13 +17,11 @@
  */
 package ca.uqac.lif.mtnp.table;
 
-import java.util.Map.Entry;
-
 /**
  * Replaces each value of the input table by the ratio of this value
  * to the smallest value in the row
  */
-public class RelativizeRows implements TableTransformation 
+public class RelativizeRows extends RowTransformation
 {
 	public RelativizeRows()
 	{
@@ -31,40 +29,36 @@ public class RelativizeRows implements TableTransformation
 	}
 
 	@Override
-	public TempTable transform(TempTable ... tables)
+	protected RowFunction getFunction(String[] input_columns)
 	{
-		TempTable in_table = tables[0];
-		TempTable out_table = new TempTable(in_table.getId(), in_table.getColumnNames());
-		if (in_table.getRowCount() == 0)
-		{
-			return out_table;
-		}
-		for (TableEntry te : in_table.getEntries())
+		// Each value depends on all the values of its row
+		return new RowFunction(input_columns, null)
 		{
-			float min = 1000000000;
-			for (Object o : te.values())
-			{
-				if (o instanceof Number)
-				{
-					min = Math.min(min, ((Number) o).floatValue());
-				}
-			}
-			TableEntry new_entry = new TableEntry();
-			for (Entry<String,PrimitiveValue> map_entry : te.entrySet())
+			@Override
+			public boolean apply(PrimitiveValue[] in, PrimitiveValue[] out)
 			{
-				String key = map_entry.getKey();
-				PrimitiveValue o = map_entry.getValue();
-				if (o.isNumeric())
+				float min = 1000000000;
+				for (PrimitiveValue v : in)
 				{
-					new_entry.put(key, o.numberValue().floatValue() / min);
+					if (v != null && v.isNumeric())
+					{
+						min = Math.min(min, v.numberValue().floatValue());
+					}
 				}
-				else
+				for (int i = 0; i < out.length; i++)
 				{
-					new_entry.put(key, o);
+					PrimitiveValue v = in[i];
+					if (v != null && v.isNumeric())
+					{
+						out[i] = PrimitiveValue.getInstance(v.numberValue().floatValue() / min);
+					}
+					else
+					{
+						out[i] = v;
+					}
 				}
+				return true;
 			}
-			out_table.add(new_entry);
-		}
-		return out_table;
+		};
 	}
 }
@@ -20,13 +20,11 @@ package ca.uqac.lif.mtnp.table;
 import java.util.ArrayList;
 import java.util.List;
 
-import ca.uqac.lif.petitpoucet.DirectValue;
-
 /**
  * Removes columns from a table
  * @author Sylvain Hallé
  */
-public class RemoveColumns implements TableTransformation 
+public class RemoveColumns extends RowTransformation
 {
 	/**
 	 * The names of the columns to remove
@@ -56,11 +54,9 @@ public class RemoveColumns implements TableTransformation
 	}
 
 	@Override
-	public TempTable transform(TempTable... tables)
+	protected RowFunction getFunction(String[] col_names)
 	{
-		TempTable table = tables[0];
 		List<String> cols = new ArrayList<String>();
-		String[] col_names = table.getColumnNames();
 		for (String name : col_names)
 		{
 			cols.add(name.intern());
@@ -76,6 +72,27 @@ public class RemoveColumns implements TableTransformation
 			new_col_names[i] = name;
 			i++;
 		}
+		return RowFunction.copy(new_col_names, getOldIndices(col_names, new_col_names));
+	}
+	
+	@Override
+	protected void setLineage(TempTable output, TempTable table, int[] rows)
+	{
+		if (TransformedTable.isProvenanceEnabled())
+		{
+			int[] old_indices = getOldIndices(table.getColumnNames(), output.getColumnNames());
+			output.setLineage(new CellMapping(table, null, old_indices, false));
+		}
+	}
+	
+	/**
+	 * Gets the position in the original table of each remaining column
+	 * @param col_names The columns of the original table
+	 * @param new_col_names The remaining columns
+	 * @return The position of each remaining column
+	 */
+	protected static int[] getOldIndices(String[] col_names, String[] new_col_names)
+	{
 		int[] old_indices = new int[new_col_names.length];
 		// Keep the correspondence between the column number in the original table
 		int old_j = 0;
@@ -85,24 +102,6 @@ public class RemoveColumns implements TableTransformation
 				old_j++;
 			old_indices[j] = old_j;
 		}
-		List<TableEntry> old_entries = table.getEntries();
-		List<TableEntry> new_entries = new ArrayList<TableEntry>(old_entries.size());
-		for (TableEntry te : old_entries)
-		{
-			TableEntry new_te = new TableEntry();
-			for (int j = 0; j < new_col_names.length; j++)
-			{
-				String k = new_col_names[j];
-				new_te.put(k, te.get(k));
-				DirectValue dv = new DirectValue();
-				dv.add(new TableCellNode(table, te.getRowIndex(), old_indices[j]));
-				new_te.addDependency(k, dv);
-			}
-			new_entries.add(new_te);
-		}
-		TempTable tt = new TempTable(table.getId(), new_entries, new_col_names);
-		return tt;
+		return old_indices;
 	}
-	
-	
 }
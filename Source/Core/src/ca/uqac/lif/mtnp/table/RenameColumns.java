@@ -21,7 +21,7 @@ package ca.uqac.lif.mtnp.table;
  * Table built by renaming the columns of another table
  * @author Sylvain Hallé
  */
-public class RenameColumns implements TableTransformation
+public class RenameColumns extends RowTransformation
 {
 	/**
 	 * The new names to be given to the original table's columns
@@ -40,21 +40,14 @@ public class RenameColumns implements TableTransformation
 	}
 
 	@Override
-	public TempTable transform(TempTable ... tables)
+	protected TempTable newTable(TempTable table)
 	{
-		TempTable table = tables[0];
-		String[] ordering = table.getColumnNames();
-		TempTable tt = new TempTable(-4, m_names);
-		for (TableEntry te : table.getEntries())
-		{
-			TableEntry new_te = new TableEntry();
-			for (int i = 0; i < ordering.length; i++)
-			{
-				new_te.put(m_names[i], te.get(ordering[i]));
-			}
-			tt.add(new_te);
-		}
-		return tt;
+		return new TempTable(-4, m_names);
+	}
 
+	@Override
+	protected RowFunction getFunction(String[] input_columns)
+	{
+		return RowFunction.copy(m_names, RowFunction.identity(m_names.length));
 	}
 }
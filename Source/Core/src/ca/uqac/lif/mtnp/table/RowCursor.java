@@ -0,0 +1,273 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import java.util.List;
+
+/**
+ * Reads the rows of a table one at a time. A cursor starts before the
+ * first row; each call to {@link #next()} moves it to the next row, whose
+ * values are then given by {@link #getValues()}. The same array is
+ * reused for all the rows, so that reading a table through a cursor
+ * does not create any object per row.
+ * <p>
+ * Cursors are pulled from the end: a cursor applying a
+ * {@link StreamableTransformation} only reads a row of its input when it
+ * is asked for a row itself. A pipeline of such transformations
+ * therefore holds a single row at a time, however large its source.
+ * A {@link BlockingTransformation} must instead read all its input
+ * before producing its first row; see
+ * {@link #stream(TableTransformation, RowCursor...)}.
+ * <p>
+ * Cursors only give values; they do not keep track of the lineage of
+ * the cells.
+ * @since 0.1.14
+ * @author Sylvain Hallé
+ */
+public abstract class RowCursor
+{
+	/**
+	 * The names of the columns of the rows
+	 */
+	protected final String[] m_columnNames;
+
+	/**
+	 * Creates a new cursor
+	 * @param column_names The names of the columns of the rows
+	 */
+	public RowCursor(String[] column_names)
+	{
+		super();
+		m_columnNames = column_names;
+	}
+
+	/**
+	 * Gets the names of the columns of the rows
+	 * @return The names
+	 */
+	public String[] getColumnNames()
+	{
+		return m_columnNames;
+	}
+
+	/**
+	 * Moves to the next row
+	 * @return {@code true} if there is such a row, {@code false} if all
+	 *   the rows have been read
+	 */
+	public abstract boolean next();
+
+	/**
+	 * Gets the values of the current row, in the order of the columns.
+	 * The array is overwritten by the next call to {@link #next()}, and
+	 * must not be modified.
+	 * @return The values. A missing value is {@code null}.
+	 */
+	public abstract PrimitiveValue[] getValues();
+
+	/**
+	 * Reads all the remaining rows into a table
+	 * @return The table
+	 */
+	public TempTable toTable()
+	{
+		RowSchema schema = RowSchema.of(m_columnNames);
+		TempTable table = new TempTable(-1, m_columnNames);
+		while (next())
+		{
+			PrimitiveValue[] values = getValues();
+			TableEntry te = new TableEntry(schema);
+			for (int i = 0; i < values.length; i++)
+			{
+				te.setValue(i, values[i]);
+			}
+			table.add(te);
+		}
+		return table;
+	}
+
+	/**
+	 * Creates a cursor reading the entries of a table. The entries are
+	 * read as the cursor moves, and must not be modified in the meantime.
+	 * @param table The table
+	 * @return The cursor
+	 */
+	public static RowCursor of(HardTable table)
+	{
+		final List<TableEntry> entries = table.m_entries;
+		final RowSchema schema = RowSchema.of(table.getColumnNames());
+		final PrimitiveValue[] values = new PrimitiveValue[schema.size()];
+		return new RowCursor(table.getColumnNames())
+		{
+			int m_row = -1;
+
+			@Override
+			public boolean next()
+			{
+				if (m_row + 1 >= entries.size())
+				{
+					return false;
+				}
+				m_row++;
+				RowTransformation.getValues(entries.get(m_row), schema, values);
+				return true;
+			}
+
+			@Override
+			public PrimitiveValue[] getValues()
+			{
+				return values;
+			}
+		};
+	}
+
+	/**
+	 * Creates a cursor applying a function to the rows of another cursor.
+	 * Rows dropped by the function are skipped.
+	 * @param input The cursor giving the input rows
+	 * @param f The function, created for the columns of the input cursor
+	 * @return The cursor
+	 */
+	public static RowCursor map(final RowCursor input, final RowFunction f)
+	{
+		final PrimitiveValue[] values = new PrimitiveValue[f.getOutputColumns().length];
+		return new RowCursor(f.getOutputColumns())
+		{
+			@Override
+			public boolean next()
+			{
+				while (input.next())
+				{
+					if (f.apply(input.getValues(), values))
+					{
+						return true;
+					}
+				}
+				return false;
+			}
+
+			@Override
+			public PrimitiveValue[] getValues()
+			{
+				return values;
+			}
+		};
+	}
+
+	/**
+	 * Applies a transformation to the rows of cursors. If the
+	 * transformation is a {@link StreamableTransformation}, its rows are
+	 * computed as they are read. A {@link SortRows} reads the rows of its
+	 * input with {@link SortRows#sort(RowCursor)}, which may spill them to
+	 * disk. Otherwise, all the rows of the inputs are first read into
+	 * tables, which are passed to
+	 * {@link TableTransformation#transform(TempTable...)}.
+	 * @param t The transformation
+	 * @param inputs The cursors giving the rows of the input tables
+	 * @return The cursor giving the rows of the output table
+	 */
+	public static RowCursor stream(TableTransformation t, RowCursor ... inputs)
+	{
+		if (t instanceof StreamableTransformation)
+		{
+			return ((StreamableTransformation) t).stream(inputs);
+		}
+		if (t instanceof SortRows)
+		{
+			return ((SortRows) t).sort(inputs[0]);
+		}
+		TempTable[] tables = new TempTable[inputs.length];
+		for (int i = 0; i < tables.length; i++)
+		{
+			tables[i] = inputs[i].toTable();
+		}
+		// The lineage of the result would refer to tables that are
+		// discarded anyway
+		Boolean previous_provenance = TransformedTable.disableProvenance(true);
+		try
+		{
+			return of(t.transform(tables));
+		}
+		finally
+		{
+			TransformedTable.restoreProvenance(previous_provenance);
+		}
+	}
+
+	/**
+	 * A cursor over a table whose cells can be read from their position
+	 */
+	public abstract static class Indexed extends RowCursor
+	{
+		/**
+		 * The number of rows of the table
+		 */
+		protected final int m_rowCount;
+
+		/**
+		 * The position of the current row
+		 */
+		protected int m_row = -1;
+
+		/**
+		 * The values of the current row
+		 */
+		protected final PrimitiveValue[] m_values;
+
+		/**
+		 * Creates a new cursor
+		 * @param column_names The names of the columns of the table
+		 * @param row_count The number of rows of the table
+		 */
+		public Indexed(String[] column_names, int row_count)
+		{
+			super(column_names);
+			m_rowCount = row_count;
+			m_values = new PrimitiveValue[column_names.length];
+		}
+
+		@Override
+		public boolean next()
+		{
+			if (m_row + 1 >= m_rowCount)
+			{
+				return false;
+			}
+			m_row++;
+			for (int col = 0; col < m_values.length; col++)
+			{
+				m_values[col] = get(col, m_row);
+			}
+			return true;
+		}
+
+		@Override
+		public PrimitiveValue[] getValues()
+		{
+			return m_values;
+		}
+
+		/**
+		 * Reads the value of a cell of the table
+		 * @param col The column
+		 * @param row The row
+		 * @return The value, or {@code null} if it is missing
+		 */
+		protected abstract PrimitiveValue get(int col, int row);
+	}
+}
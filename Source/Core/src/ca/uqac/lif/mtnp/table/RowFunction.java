@@ -0,0 +1,133 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+/**
+ * Computes the values of an output row from the values of an input row.
+ * This is the operation a {@link RowTransformation} applies to each row
+ * of its input. Rows are passed as arrays of values, in the order of the
+ * columns of the tables; the arrays can be reused from one row to the
+ * next, so that functions can be chained without creating an entry or a
+ * table for the intermediate rows.
+ * <p>
+ * A function is created for a specific list of input columns, and may
+ * keep buffers of its own; it must therefore not be used by more than
+ * one thread at a time.
+ * @since 0.1.14
+ * @author Sylvain Hallé
+ */
+public abstract class RowFunction
+{
+	/**
+	 * The names of the columns of the output rows
+	 */
+	protected final String[] m_outputColumns;
+
+	/**
+	 * The column of the input row each value of the output row comes
+	 * from, or {@code null} if output values depend on more than one
+	 * input value
+	 */
+	protected final int[] m_sources;
+
+	/**
+	 * Creates a new row function
+	 * @param output_columns The names of the columns of the output rows
+	 * @param sources The column of the input row each value of the output
+	 *   row comes from, or {@code null} if output values depend on more
+	 *   than one input value
+	 */
+	public RowFunction(String[] output_columns, int[] sources)
+	{
+		super();
+		m_outputColumns = output_columns;
+		m_sources = sources;
+	}
+
+	/**
+	 * Gets the names of the columns of the output rows
+	 * @return The names
+	 */
+	public String[] getOutputColumns()
+	{
+		return m_outputColumns;
+	}
+
+	/**
+	 * Gets the column of the input row each value of the output row
+	 * comes from
+	 * @return The position of the input column for each output column,
+	 *   or {@code null} if output values depend on more than one input
+	 *   value
+	 */
+	public int[] getSources()
+	{
+		return m_sources;
+	}
+
+	/**
+	 * Computes an output row
+	 * @param in The values of the input row. A missing value is
+	 *   {@code null}. The array must not be modified.
+	 * @param out The array receiving the values of the output row
+	 * @return {@code true} if the row is kept, {@code false} if it is
+	 *   dropped, in which case the contents of the output array are
+	 *   meaningless
+	 */
+	public abstract boolean apply(PrimitiveValue[] in, PrimitiveValue[] out);
+
+	/**
+	 * Creates a function that copies values of the input row to the
+	 * output row
+	 * @param output_columns The names of the columns of the output rows
+	 * @param sources The column of the input row each value of the output
+	 *   row is copied from
+	 * @return The function
+	 */
+	public static RowFunction copy(String[] output_columns, final int[] sources)
+	{
+		return new RowFunction(output_columns, sources)
+		{
+			@Override
+			public boolean apply(PrimitiveValue[] in, PrimitiveValue[] out)
+			{
+				for (int i = 0; i < out.length; i++)
+				{
+					out[i] = in[sources[i]];
+				}
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Gets the sources of a function that copies the values of its input
+	 * at the same positions
+	 * @param width The number of columns
+	 * @return The sources
+	 */
+	public static int[] identity(int width)
+	{
+		int[] sources = new int[width];
+		for (int i = 0; i < width; i++)
+		{
+			sources[i] = i;
+		}
+		return sources;
+	}
+}
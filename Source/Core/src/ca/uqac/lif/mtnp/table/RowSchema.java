@@ -0,0 +1,253 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import java.io.Serializable;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * The layout of a {@link TableEntry}: an ordered list of distinct column
+ * names, each associated to an ordinal. Schemas are immutable and
+ * shared: adding a column to a schema always returns the same instance
+ * for the same sequence of names. Hence, all the entries of a table
+ * that are filled in the same column order end up with the same schema,
+ * and a value can be fetched by ordinal without looking up its name.
+ * <p>
+ * A schema only holds weak references to the schemas obtained by
+ * appending a column to it, while each schema holds a strong reference
+ * to the schema it was obtained from. The schemas that are no longer
+ * used by any entry can therefore be garbage collected, and those that
+ * are still in use keep being returned for the same names.
+ * @since 0.1.14
+ * @author Sylvain Hallé
+ */
+public final class RowSchema implements Serializable
+{
+	/**
+	 * Dummy UID
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The schema with no column. Every other schema is obtained by
+	 * adding columns to this one.
+	 */
+	public static final RowSchema EMPTY = new RowSchema(null, new String[0]);
+
+	/**
+	 * The names of the columns, in order
+	 */
+	private final String[] m_names;
+
+	/**
+	 * An index associating each column name to its ordinal
+	 */
+	private final transient Map<String,Integer> m_ordinals;
+
+	/**
+	 * The schemas obtained by appending a column to this one
+	 */
+	private final transient Map<String,WeakReference<RowSchema>> m_transitions;
+
+	/**
+	 * The schema this one was obtained from, or {@code null} for the
+	 * empty schema
+	 */
+	private final transient RowSchema m_parent;
+
+	/**
+	 * Creates a new schema
+	 * @param parent The schema this one is obtained from
+	 * @param names The names of the columns
+	 */
+	private RowSchema(RowSchema parent, String[] names)
+	{
+		super();
+		m_parent = parent;
+		m_names = names;
+		m_ordinals = new HashMap<String,Integer>(names.length * 2);
+		for (int i = 0; i < names.length; i++)
+		{
+			m_ordinals.put(names[i], i);
+		}
+		m_transitions = new HashMap<String,WeakReference<RowSchema>>(4);
+	}
+
+	/**
+	 * Gets the schema made of a list of column names
+	 * @param names The names. Duplicate names are only counted once.
+	 * @return The schema
+	 */
+	public static RowSchema of(String ... names)
+	{
+		RowSchema s = EMPTY;
+		if (names == null)
+		{
+			return s;
+		}
+		for (String name : names)
+		{
+			s = s.with(name);
+		}
+		return s;
+	}
+
+	/**
+	 * Gets the schema obtained by appending a column to this schema
+	 * @param name The name of the column
+	 * @return The new schema, or this schema if it already contains
+	 *   a column with that name
+	 */
+	public RowSchema with(String name)
+	{
+		if (m_ordinals.containsKey(name))
+		{
+			return this;
+		}
+		synchronized (m_transitions)
+		{
+			WeakReference<RowSchema> ref = m_transitions.get(name);
+			RowSchema s = ref == null ? null : ref.get();
+			if (s == null)
+			{
+				// Forget the schemas that have been garbage collected
+				Iterator<WeakReference<RowSchema>> it = m_transitions.values().iterator();
+				while (it.hasNext())
+				{
+					if (it.next().get() == null)
+					{
+						it.remove();
+					}
+				}
+				String[] names = new String[m_names.length + 1];
+				System.arraycopy(m_names, 0, names, 0, m_names.length);
+				names[m_names.length] = name;
+				s = new RowSchema(this, names);
+				m_transitions.put(name, new WeakReference<RowSchema>(s));
+			}
+			return s;
+		}
+	}
+
+	/**
+	 * Gets the schema obtained by removing a column from this schema
+	 * @param name The name of the column
+	 * @return The new schema, or this schema if it does not contain
+	 *   a column with that name
+	 */
+	public RowSchema without(String name)
+	{
+		int pos = getOrdinal(name);
+		if (pos < 0)
+		{
+			return this;
+		}
+		RowSchema s = EMPTY;
+		for (int i = 0; i < m_names.length; i++)
+		{
+			if (i != pos)
+			{
+				s = s.with(m_names[i]);
+			}
+		}
+		return s;
+	}
+
+	/**
+	 * Gets the ordinal of a column
+	 * @param name The name of the column
+	 * @return The ordinal, or -1 if the column is not part of this schema
+	 */
+	public int getOrdinal(String name)
+	{
+		Integer i = m_ordinals.get(name);
+		if (i == null)
+		{
+			return -1;
+		}
+		return i;
+	}
+
+	/**
+	 * Gets the name of the column at a given ordinal
+	 * @param ordinal The ordinal
+	 * @return The name
+	 */
+	public String getName(int ordinal)
+	{
+		return m_names[ordinal];
+	}
+
+	/**
+	 * Gets the names of the columns of this schema
+	 * @return An array of names
+	 */
+	public String[] getNames()
+	{
+		return m_names.clone();
+	}
+
+	/**
+	 * Gets the number of columns in this schema
+	 * @return The number of columns
+	 */
+	public int size()
+	{
+		return m_names.length;
+	}
+
+	/**
+	 * Determines if this schema contains a column
+	 * @param name The name of the column
+	 * @return {@code true} if the column is part of the schema
+	 */
+	public boolean contains(String name)
+	{
+		return m_ordinals.containsKey(name);
+	}
+
+	/**
+	 * Replaces a deserialized schema by the shared schema with the same
+	 * names
+	 * @return The shared schema
+	 */
+	private Object readResolve()
+	{
+		return of(m_names);
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder out = new StringBuilder();
+		out.append("[");
+		for (int i = 0; i < m_names.length; i++)
+		{
+			if (i > 0)
+			{
+				out.append(",");
+			}
+			out.append(m_names[i]);
+		}
+		out.append("]");
+		return out.toString();
+	}
+}
@@ -0,0 +1,573 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import java.util.List;
+
+/**
+ * Computes the order of a list of entries according to the values of
+ * some of their columns. The entries themselves are not moved: the result
+ * is a permutation, giving the position in the list of the entry that
+ * comes first, second, and so on.
+ * <p>
+ * The values of the sort columns are read only once. Each value is
+ * turned into a pair of primitives: a class (number, string or missing
+ * value) and a <tt>long</tt> whose natural order is that of the values.
+ * Numbers are mapped to the bits of their <tt>double</tt> representation,
+ * rearranged so that they compare as signed integers; integers too large
+ * to be represented exactly as a <tt>double</tt> also get their exact
+ * value as a second key. Strings are mapped to their rank among the
+ * distinct strings of the column. Sorting then only compares primitives.
+ * <p>
+ * Values compare as in {@link PrimitiveValue#compareTo(PrimitiveValue)}:
+ * numbers come before strings. Each column can be sorted in ascending or
+ * descending order; in both cases, rows with a missing value come last.
+ * The sort is stable. Large inputs can be split into chunks sorted by
+ * separate threads and then merged; see {@link #setThreads(int)}.
+ * @since 0.1.14
+ * @author Sylvain Hallé
+ */
+public class RowSorter
+{
+	/**
+	 * The class of a numerical value
+	 */
+	protected static final byte NUMBER = 0;
+
+	/**
+	 * The class of a string value
+	 */
+	protected static final byte STRING = 1;
+
+	/**
+	 * The class of a missing value
+	 */
+	protected static final byte MISSING = 2;
+
+	/**
+	 * The minimum number of rows for the sort to be split among threads
+	 */
+	protected static final int s_parallelThreshold = 1 << 15;
+
+	/**
+	 * The columns to sort on, in decreasing order of priority
+	 */
+	protected final String[] m_columns;
+
+	/**
+	 * Whether each column is sorted in descending order
+	 */
+	protected final boolean[] m_descending;
+
+	/**
+	 * The number of threads used to sort large inputs
+	 */
+	protected int m_threads = 1;
+
+	/**
+	 * Creates a new sorter, with all columns in ascending order
+	 * @param columns The columns to sort on, in decreasing order of
+	 *   priority
+	 */
+	public RowSorter(String ... columns)
+	{
+		this(columns, new boolean[columns.length]);
+	}
+
+	/**
+	 * Creates a new sorter
+	 * @param columns The columns to sort on, in decreasing order of
+	 *   priority
+	 * @param descending Whether each column is sorted in descending order
+	 */
+	public RowSorter(String[] columns, boolean[] descending)
+	{
+		super();
+		m_columns = columns;
+		m_descending = descending;
+	}
+
+	/**
+	 * Sets the number of threads used to sort large inputs
+	 * @param threads The number of threads; 1 sorts in the calling thread
+	 * @return This sorter
+	 */
+	public RowSorter setThreads(int threads)
+	{
+		m_threads = Math.max(1, threads);
+		return this;
+	}
+
+	/**
+	 * Computes the order of a list of entries
+	 * @param entries The entries. The list is not modified.
+	 * @return An array whose element at position <i>i</i> is the position
+	 *   in the list of the <i>i</i>-th entry in sorted order
+	 */
+	public int[] sort(List<TableEntry> entries)
+	{
+		int size = entries.size();
+		SortKeys keys = new SortKeys(m_columns.length, size, m_descending);
+		TableEntry[] rows = entries.toArray(new TableEntry[size]);
+		PrimitiveValue[] values = new PrimitiveValue[size];
+		for (int col = 0; col < m_columns.length; col++)
+		{
+			for (int row = 0; row < size; row++)
+			{
+				values[row] = rows[row].get(m_columns[col]);
+			}
+			keys.extract(col, values);
+		}
+		return sort(keys, size);
+	}
+	
+	/**
+	 * Computes the order of a list of rows given as arrays of values
+	 * @param rows The rows. The list is not modified.
+	 * @param positions The position in each array of the value of each
+	 *   sort column
+	 * @return An array whose element at position <i>i</i> is the position
+	 *   in the list of the <i>i</i>-th row in sorted order
+	 */
+	public int[] sort(List<PrimitiveValue[]> rows, int[] positions)
+	{
+		int size = rows.size();
+		SortKeys keys = new SortKeys(m_columns.length, size, m_descending);
+		PrimitiveValue[] values = new PrimitiveValue[size];
+		for (int col = 0; col < m_columns.length; col++)
+		{
+			int row = 0;
+			for (PrimitiveValue[] r : rows)
+			{
+				values[row++] = r[positions[col]];
+			}
+			keys.extract(col, values);
+		}
+		return sort(keys, size);
+	}
+	
+	/**
+	 * Compares two rows given as arrays of values, in the same way as
+	 * the rows are sorted
+	 * @param r1 The first row
+	 * @param r2 The second row
+	 * @param positions The position in each array of the value of each
+	 *   sort column
+	 * @return A negative number, zero or a positive number if the first
+	 *   row comes before, at the same place or after the second
+	 */
+	public int compare(PrimitiveValue[] r1, PrimitiveValue[] r2, int[] positions)
+	{
+		for (int col = 0; col < positions.length; col++)
+		{
+			PrimitiveValue v1 = r1[positions[col]], v2 = r2[positions[col]];
+			boolean missing1 = v1 == null || v1.isNull(), missing2 = v2 == null || v2.isNull();
+			if (missing1 || missing2)
+			{
+				if (missing1 != missing2)
+				{
+					// Missing values come last in either order
+					return missing1 ? 1 : -1;
+				}
+				continue;
+			}
+			// Numbers are compared on the same keys as in a sort
+			int c = v1.isNumeric() && v2.isNumeric() ? compareNumbers(v1, v2) : v1.compareTo(v2);
+			if (c != 0)
+			{
+				return m_descending[col] ? -c : c;
+			}
+		}
+		return 0;
+	}
+	
+	/**
+	 * Sorts a permutation of rows according to their keys
+	 * @param keys The sort keys
+	 * @param size The number of rows
+	 * @return The sorted permutation
+	 */
+	protected int[] sort(SortKeys keys, int size)
+	{
+		int[] order = new int[size];
+		for (int i = 0; i < size; i++)
+		{
+			order[i] = i;
+		}
+		int[] buffer = new int[size];
+		if (m_threads > 1 && size >= s_parallelThreshold)
+		{
+			sortParallel(keys, order, buffer);
+		}
+		else
+		{
+			mergeSort(keys, order, buffer, 0, size);
+		}
+		return order;
+	}
+
+	/**
+	 * Sorts chunks of the permutation in separate threads, and then
+	 * merges the sorted chunks
+	 * @param keys The sort keys
+	 * @param order The permutation to sort
+	 * @param buffer A work array of the same size
+	 */
+	protected void sortParallel(final SortKeys keys, final int[] order, final int[] buffer)
+	{
+		int size = order.length;
+		int chunks = Math.min(m_threads, size / (s_parallelThreshold / 2));
+		final int[] bounds = new int[chunks + 1];
+		for (int i = 0; i <= chunks; i++)
+		{
+			bounds[i] = (int) ((long) size * i / chunks);
+		}
+		Thread[] threads = new Thread[chunks];
+		for (int i = 0; i < chunks; i++)
+		{
+			final int from = bounds[i], to = bounds[i + 1];
+			threads[i] = new Thread()
+			{
+				@Override
+				public void run()
+				{
+					mergeSort(keys, order, buffer, from, to);
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread t : threads)
+		{
+			try
+			{
+				t.join();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while sorting", e);
+			}
+		}
+		// Merge adjacent chunks until a single one remains
+		for (int width = 1; width < chunks; width *= 2)
+		{
+			for (int i = 0; i + width < chunks; i += 2 * width)
+			{
+				int from = bounds[i];
+				int mid = bounds[i + width];
+				int to = bounds[Math.min(i + 2 * width, chunks)];
+				System.arraycopy(order, from, buffer, from, to - from);
+				merge(keys, buffer, order, from, mid, to);
+			}
+		}
+	}
+
+	/**
+	 * Sorts a range of the permutation with a stable merge sort
+	 * @param keys The comparison between rows
+	 * @param order The permutation to sort
+	 * @param buffer A work array of the same size
+	 * @param from The start of the range, inclusive
+	 * @param to The end of the range, exclusive
+	 */
+	protected static void mergeSort(IndexComparator keys, int[] order, int[] buffer, int from, int to)
+	{
+		if (to - from <= 16)
+		{
+			// Insertion sort for short ranges
+			for (int i = from + 1; i < to; i++)
+			{
+				int row = order[i];
+				int j = i - 1;
+				while (j >= from && keys.compare(order[j], row) > 0)
+				{
+					order[j + 1] = order[j];
+					j--;
+				}
+				order[j + 1] = row;
+			}
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		mergeSort(keys, order, buffer, from, mid);
+		mergeSort(keys, order, buffer, mid, to);
+		if (keys.compare(order[mid - 1], order[mid]) <= 0)
+		{
+			// Already in order
+			return;
+		}
+		System.arraycopy(order, from, buffer, from, to - from);
+		merge(keys, buffer, order, from, mid, to);
+	}
+
+	/**
+	 * Merges two adjacent sorted ranges
+	 * @param keys The comparison between rows
+	 * @param src The array containing the two ranges
+	 * @param dest The array where the merged range is written
+	 * @param from The start of the first range
+	 * @param mid The start of the second range
+	 * @param to The end of the second range
+	 */
+	protected static void merge(IndexComparator keys, int[] src, int[] dest, int from, int mid, int to)
+	{
+		int i = from, j = mid, k = from;
+		while (i < mid && j < to)
+		{
+			if (keys.compare(src[j], src[i]) < 0)
+			{
+				dest[k++] = src[j++];
+			}
+			else
+			{
+				dest[k++] = src[i++];
+			}
+		}
+		while (i < mid)
+		{
+			dest[k++] = src[i++];
+		}
+		while (j < to)
+		{
+			dest[k++] = src[j++];
+		}
+	}
+
+	/**
+	 * Turns a <tt>double</tt> into a <tt>long</tt> such that comparing
+	 * two such <tt>long</tt>s gives the same result as comparing the
+	 * numbers. As in {@link PrimitiveValue}, 0 and -0 are equal and
+	 * {@code NaN} comes after all other numbers.
+	 * @param d The number
+	 * @return The key
+	 */
+	protected static long toSortableLong(double d)
+	{
+		if (d == 0)
+		{
+			// Also turns -0 into 0
+			d = 0;
+		}
+		long bits = Double.doubleToLongBits(d);
+		return bits ^ ((bits >> 63) & 0x7fffffffffffffffL);
+	}
+
+	/**
+	 * Gets the key of a number that orders the numbers having the same
+	 * <tt>double</tt> representation. Integers are keyed by their exact
+	 * value; other numbers by their value rounded to an integer, which is
+	 * the same for numbers that are equal.
+	 * @param v The number
+	 * @return The key
+	 */
+	protected static long toExactLong(PrimitiveValue v)
+	{
+		if (v.isIntegral())
+		{
+			return v.longValue();
+		}
+		return (long) v.doubleValue();
+	}
+
+	/**
+	 * Determines if an integer loses precision when turned into a
+	 * <tt>double</tt>
+	 * @param v The number
+	 * @return {@code true} if the number needs an exact key
+	 */
+	protected static boolean needsExactKey(PrimitiveValue v)
+	{
+		if (!v.isIntegral())
+		{
+			return false;
+		}
+		long x = v.longValue();
+		return (long) (double) x != x;
+	}
+
+	/**
+	 * Compares two numbers on their sort keys
+	 * @param v1 The first number
+	 * @param v2 The second number
+	 * @return A negative number, zero or a positive number if the first
+	 *   number comes before, at the same place or after the second
+	 */
+	protected static int compareNumbers(PrimitiveValue v1, PrimitiveValue v2)
+	{
+		long k1 = toSortableLong(v1.doubleValue()), k2 = toSortableLong(v2.doubleValue());
+		if (k1 == k2)
+		{
+			k1 = toExactLong(v1);
+			k2 = toExactLong(v2);
+		}
+		return k1 < k2 ? -1 : (k1 == k2 ? 0 : 1);
+	}
+
+	/**
+	 * A comparison between rows designated by their position
+	 */
+	protected static interface IndexComparator
+	{
+		/**
+		 * Compares two rows
+		 * @param r1 The first row
+		 * @param r2 The second row
+		 * @return A negative number, zero or a positive number if the first
+		 *   row comes before, at the same place or after the second
+		 */
+		public int compare(int r1, int r2);
+	}
+
+	/**
+	 * The sort keys of all the rows, stored column by column in arrays of
+	 * primitives
+	 */
+	protected static class SortKeys implements IndexComparator
+	{
+		/**
+		 * The class of the value of each row, for each column
+		 */
+		protected final byte[][] m_classes;
+
+		/**
+		 * The key of the value of each row, for each column
+		 */
+		protected final long[][] m_values;
+
+		/**
+		 * The exact key of the numbers of each row, for the columns that
+		 * contain integers too large for a <tt>double</tt>, or {@code null}
+		 */
+		protected final long[][] m_exact;
+
+		/**
+		 * Whether each column is sorted in descending order
+		 */
+		protected final boolean[] m_descending;
+
+		public SortKeys(int num_columns, int num_rows, boolean[] descending)
+		{
+			super();
+			m_classes = new byte[num_columns][num_rows];
+			m_values = new long[num_columns][num_rows];
+			m_exact = new long[num_columns][];
+			m_descending = descending;
+		}
+
+		/**
+		 * Computes the keys of the values of a column
+		 * @param col The position of the column among the sort columns
+		 * @param column The value of each row for that column
+		 */
+		public void extract(int col, PrimitiveValue[] column)
+		{
+			byte[] classes = m_classes[col];
+			long[] values = m_values[col];
+			ValueDictionary strings = null;
+			for (int row = 0; row < classes.length; row++)
+			{
+				PrimitiveValue v = column[row];
+				if (v == null || v.isNull())
+				{
+					classes[row] = MISSING;
+				}
+				else if (v.isNumeric())
+				{
+					classes[row] = NUMBER;
+					values[row] = toSortableLong(v.doubleValue());
+					if (m_exact[col] == null && needsExactKey(v))
+					{
+						m_exact[col] = new long[classes.length];
+						for (int i = 0; i < row; i++)
+						{
+							if (classes[i] == NUMBER)
+							{
+								m_exact[col][i] = toExactLong(column[i]);
+							}
+						}
+					}
+					if (m_exact[col] != null)
+					{
+						m_exact[col][row] = toExactLong(v);
+					}
+				}
+				else
+				{
+					if (strings == null)
+					{
+						strings = new ValueDictionary();
+					}
+					classes[row] = STRING;
+					values[row] = strings.encode(v);
+				}
+			}
+			if (strings == null)
+			{
+				return;
+			}
+			// Replace the code of each string by its rank
+			int[] sorted = strings.getSortedCodes();
+			int[] ranks = new int[sorted.length];
+			for (int i = 0; i < sorted.length; i++)
+			{
+				ranks[sorted[i]] = i;
+			}
+			for (int row = 0; row < classes.length; row++)
+			{
+				if (classes[row] == STRING)
+				{
+					values[row] = ranks[(int) values[row]];
+				}
+			}
+		}
+
+		@Override
+		public int compare(int r1, int r2)
+		{
+			for (int col = 0; col < m_classes.length; col++)
+			{
+				byte c1 = m_classes[col][r1], c2 = m_classes[col][r2];
+				int c;
+				if (c1 != c2)
+				{
+					if (c1 == MISSING || c2 == MISSING)
+					{
+						// Missing values come last in either order
+						return c1 == MISSING ? 1 : -1;
+					}
+					c = c1 < c2 ? -1 : 1;
+				}
+				else
+				{
+					long v1 = m_values[col][r1], v2 = m_values[col][r2];
+					if (v1 == v2 && c1 == NUMBER && m_exact[col] != null)
+					{
+						v1 = m_exact[col][r1];
+						v2 = m_exact[col][r2];
+					}
+					c = v1 < v2 ? -1 : (v1 == v2 ? 0 : 1);
+				}
+				if (c != 0)
+				{
+					return m_descending[col] ? -c : c;
+				}
+			}
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,178 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A transformation that produces at most one row of output for each row
+ * of its input, independently of the other rows. The operation applied
+ * to each row is given by the {@link RowFunction} returned by
+ * {@link #getFunction(String[])}. A transformation is evaluated by
+ * creating an empty output table with {@link #newTable(TempTable)}, and
+ * then filling it with {@link #addRows(TempTable, TempTable, int, int[])},
+ * which also records the input row each output row comes from. When
+ * rows are appended to the input, the output is updated by only
+ * transforming the new rows.
+ * <p>
+ * The output of a {@link TransformedTable} using such a transformation
+ * only grows by appended rows when its input does; pipelines made of
+ * row transformations can therefore be updated incrementally from end
+ * to end. Consecutive row transformations can also be fused into a
+ * single {@link FusedTransformation}, which goes through the rows once
+ * without creating the intermediate tables. Rows can also be streamed
+ * through the function with {@link #stream(RowCursor...)}.
+ * @since 0.1.14
+ * @author Sylvain Hallé
+ */
+public abstract class RowTransformation implements IncrementalTransformation, StreamableTransformation
+{
+	@Override
+	public TempTable transform(TempTable ... tables)
+	{
+		TempTable input = tables[0];
+		TempTable output = newTable(input);
+		int[] rows = addRows(output, input, 0, null);
+		setLineage(output, input, rows);
+		return output;
+	}
+
+	@Override
+	public TempTable update(TempTable previous, TempTable input, int from)
+	{
+		int[] rows = null;
+		CellLineage lineage = previous.getLineage();
+		if (lineage instanceof CellMapping)
+		{
+			// The input row of each row of the previous result
+			rows = ((CellMapping) lineage).m_rows;
+		}
+		rows = addRows(previous, input, from, rows);
+		setLineage(previous, input, rows);
+		return previous;
+	}
+
+	@Override
+	public RowCursor stream(RowCursor ... inputs)
+	{
+		return RowCursor.map(inputs[0], getFunction(inputs[0].getColumnNames()));
+	}
+
+	/**
+	 * Gets the function applied to each row of a table
+	 * @param input_columns The names of the columns of the input table
+	 * @return The function
+	 */
+	protected abstract RowFunction getFunction(String[] input_columns);
+
+	/**
+	 * Creates the empty table that receives the output rows
+	 * @param input The input table
+	 * @return The output table
+	 */
+	protected TempTable newTable(TempTable input)
+	{
+		return new TempTable(input.getId(), getFunction(input.getColumnNames()).getOutputColumns());
+	}
+
+	/**
+	 * Transforms rows of the input table and adds them to the output table
+	 * @param output The output table
+	 * @param input The input table
+	 * @param from The index of the first row of the input table to
+	 *   transform
+	 * @param rows The input row of each row already in the output table,
+	 *   or {@code null} if each of them comes from the input row at the
+	 *   same position. The array may be longer than the output table; its
+	 *   elements past the rows of the output table may be overwritten.
+	 * @return The input row of each row of the output table, in the same
+	 *   form
+	 */
+	protected int[] addRows(TempTable output, TempTable input, int from, int[] rows)
+	{
+		RowFunction f = getFunction(input.getColumnNames());
+		RowSchema in_schema = RowSchema.of(input.getColumnNames());
+		RowSchema out_schema = RowSchema.of(f.getOutputColumns());
+		PrimitiveValue[] in = new PrimitiveValue[in_schema.size()];
+		PrimitiveValue[] out = new PrimitiveValue[out_schema.size()];
+		List<TableEntry> entries = input.m_entries;
+		int out_row = output.getRowCount();
+		for (int i = from; i < entries.size(); i++)
+		{
+			getValues(entries.get(i), in_schema, in);
+			if (f.apply(in, out))
+			{
+				if (rows == null && i != out_row)
+				{
+					// The first output row that does not come from the input
+					// row at the same position
+					rows = new int[entries.size()];
+					for (int j = 0; j < out_row; j++)
+					{
+						rows[j] = j;
+					}
+				}
+				if (rows != null)
+				{
+					if (out_row >= rows.length)
+					{
+						rows = Arrays.copyOf(rows, Math.max(2 * rows.length, entries.size()));
+					}
+					rows[out_row] = i;
+				}
+				TableEntry new_te = new TableEntry(out_schema);
+				for (int j = 0; j < out.length; j++)
+				{
+					new_te.setValue(j, out[j]);
+				}
+				output.add(new_te);
+				out_row++;
+			}
+		}
+		return rows;
+	}
+
+	/**
+	 * Reads the values of an entry for the columns of a table
+	 * @param te The entry
+	 * @param schema The layout of the columns of the table
+	 * @param values The array receiving the values
+	 */
+	protected static void getValues(TableEntry te, RowSchema schema, PrimitiveValue[] values)
+	{
+		for (int j = 0; j < values.length; j++)
+		{
+			values[j] = te.get(schema, j);
+		}
+	}
+
+	/**
+	 * Sets the lineage of the cells of the output table. This method is
+	 * called after each evaluation or update, as the lineage refers to the
+	 * input table it was computed from. By default, it does nothing.
+	 * @param output The output table
+	 * @param input The input table
+	 * @param rows The input row of each output row, as returned by
+	 *   {@link #addRows(TempTable, TempTable, int, int[])}
+	 */
+	protected void setLineage(TempTable output, TempTable input, int[] rows)
+	{
+		// Nothing to do
+	}
+}
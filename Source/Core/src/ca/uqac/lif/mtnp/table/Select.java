@@ -17,11 +17,13 @@
  */
 package ca.uqac.lif.mtnp.table;
 
+import java.util.List;
+
 /**
  * Selects columns from another table
  * @author Sylvain Hallé
  */
-public class Select implements TableTransformation 
+public class Select implements IncrementalTransformation, StreamableTransformation
 {
 	/**
 	 * The column names to select
@@ -45,5 +47,58 @@ public class Select implements TableTransformation
 		TempTable table = tables[0];
 		return table.getDataTable(m_columnNames);
 	}
-
+	
+	@Override
+	public TempTable update(TempTable previous, TempTable input, int from)
+	{
+		List<TableEntry> entries = input.m_entries;
+		for (int i = from; i < entries.size(); i++)
+		{
+			// A copy, as adding an entry to a table may rearrange it
+			previous.add(new TableEntry(entries.get(i)));
+		}
+		if (input.getLineage() != null)
+		{
+			// Same as what input.getDataTable(m_columnNames) does
+			int[] columns = new int[m_columnNames.length];
+			for (int i = 0; i < m_columnNames.length; i++)
+			{
+				columns[i] = input.getColumnPosition(m_columnNames[i]);
+			}
+			previous.setLineage(new CellMapping(input, null, columns, true));
+		}
+		return previous;
+	}
+	
+	@Override
+	public RowCursor stream(RowCursor ... inputs)
+	{
+		String[] in_cols = inputs[0].getColumnNames();
+		final int[] sources = new int[m_columnNames.length];
+		for (int i = 0; i < sources.length; i++)
+		{
+			sources[i] = -1;
+			for (int j = 0; j < in_cols.length; j++)
+			{
+				if (in_cols[j].compareTo(m_columnNames[i]) == 0)
+				{
+					sources[i] = j;
+					break;
+				}
+			}
+		}
+		return RowCursor.map(inputs[0], new RowFunction(m_columnNames, null)
+		{
+			@Override
+			public boolean apply(PrimitiveValue[] in, PrimitiveValue[] out)
+			{
+				for (int i = 0; i < out.length; i++)
+				{
+					// A column absent from the input is missing
+					out[i] = sources[i] < 0 ? null : in[sources[i]];
+				}
+				return true;
+			}
+		});
+	}
 }
@@ -17,33 +17,30 @@
  */
 package ca.uqac.lif.mtnp.table;
 
-import java.util.Map;
-
 /**
  * Transformation that applies an operation on each individual cell
  * (i.e. key-value pair) in the table independently of the other cells.
  * 
  * @author Sylvain Hallé
  */
-public abstract class SingleCellTransformation implements TableTransformation 
+public abstract class SingleCellTransformation extends RowTransformation
 {
 	@Override
-	public final TempTable transform(TempTable ... tables) 
+	protected RowFunction getFunction(final String[] input_columns)
 	{
-		TempTable tt = tables[0];
-		TempTable new_tt = new TempTable(tt.getId(), tt.getColumnNames());
-		for (TableEntry te : tt.getEntries())
+		return new RowFunction(input_columns, RowFunction.identity(input_columns.length))
 		{
-			TableEntry new_te = new TableEntry();
-			for (Map.Entry<String,PrimitiveValue> entry :  te.entrySet())
+			@Override
+			public boolean apply(PrimitiveValue[] in, PrimitiveValue[] out)
 			{
-				String key = entry.getKey();
-				PrimitiveValue new_value = applyTransformation(key, entry.getValue());
-				new_te.put(key, new_value);
+				for (int i = 0; i < out.length; i++)
+				{
+					// Missing values stay missing
+					out[i] = in[i] == null ? null : applyTransformation(input_columns[i], in[i]);
+				}
+				return true;
 			}
-			new_tt.add(new_te);
-		}
-		return new_tt;
+		};
 	}
 	
 	/**
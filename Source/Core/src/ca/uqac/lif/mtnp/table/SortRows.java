@@ -17,97 +17,243 @@
  */
 package ca.uqac.lif.mtnp.table;
 
-import java.util.Collections;
+import java.io.IOException;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
-import ca.uqac.lif.petitpoucet.DirectValue;
+import ca.uqac.lif.mtnp.table.io.ExternalSorter;
 
 /**
- * Sorts the rows of the input table.
+ * Sorts the rows of the input table. By default, rows are sorted in
+ * ascending order of all the columns, in the order in which they appear
+ * in the table; specific sort columns and descending order can also be
+ * given. The input table is not modified.
+ * <p>
+ * Sorting is done by a {@link RowSorter}, which reads the values of the
+ * sort columns once and only compares primitives afterwards. A table
+ * passed to {@link #transform(TempTable...)} is already in memory, and
+ * is sorted there. Rows read from a cursor with
+ * {@link #sort(RowCursor)} are instead passed to an
+ * {@link ExternalSorter} as they are read; when a memory budget is given
+ * with {@link #setMemoryBudget(long)}, it writes sorted runs to disk
+ * whenever the rows held for sorting exceed the budget.
+ * <p>
+ * The first row of the output can only be known once all the rows have
+ * been read; a sort is therefore a {@link BlockingTransformation}.
  * @author Sylvain Hallé
  */
-public class SortRows implements TableTransformation 
+public class SortRows implements BlockingTransformation 
 {
+	/**
+	 * The columns to sort on, or an empty array to sort on all the
+	 * columns of the table
+	 */
+	protected final String[] m_columns;
+	
+	/**
+	 * The columns sorted in descending order
+	 */
+	protected final Set<String> m_descending = new HashSet<String>();
+	
+	/**
+	 * The number of threads used to sort large tables
+	 */
+	protected int m_threads = 1;
+	
+	/**
+	 * The estimated size of the rows held in memory while sorting, or 0
+	 * to sort entirely in memory
+	 */
+	protected long m_memoryBudget = 0;
+	
+	/**
+	 * Creates a new transformation sorting on all the columns of the
+	 * table
+	 */
+	public SortRows()
+	{
+		this(new String[0]);
+	}
+	
+	/**
+	 * Creates a new transformation sorting on specific columns
+	 * @param columns The columns to sort on, in decreasing order of
+	 *   priority
+	 */
+	public SortRows(String ... columns)
+	{
+		super();
+		m_columns = columns;
+	}
+	
+	/**
+	 * Sets columns to be sorted in descending order
+	 * @param columns The names of the columns
+	 * @return This transformation
+	 */
+	public SortRows setDescending(String ... columns)
+	{
+		for (String col_name : columns)
+		{
+			m_descending.add(col_name);
+		}
+		return this;
+	}
+	
+	/**
+	 * Sets the number of threads used to sort large tables
+	 * @param threads The number of threads
+	 * @return This transformation
+	 */
+	public SortRows setThreads(int threads)
+	{
+		m_threads = threads;
+		return this;
+	}
+
+	/**
+	 * Sets a budget for the memory used while sorting rows read from a
+	 * cursor. Rows beyond this budget are sorted in runs written to
+	 * temporary files, which are then merged.
+	 * @param bytes The estimated size in bytes of the rows held in memory,
+	 *   or 0 to sort entirely in memory
+	 * @return This transformation
+	 */
+	public SortRows setMemoryBudget(long bytes)
+	{
+		m_memoryBudget = bytes;
+		return this;
+	}
 
 	@Override
 	public TempTable transform(TempTable... tables)
 	{
 		TempTable in_table = tables[0];
 		String[] col_names = in_table.getColumnNames();
-		List<TableEntry> entries = in_table.getEntries();
-		Collections.sort(entries, new RowComparator(col_names));
+		List<TableEntry> entries = in_table.m_entries;
+		String[] sort_names = getSortColumns(col_names);
+		// Sort row indices rather than the entries themselves, so that the
+		// input table is left untouched and the permutation is known
+		int[] rows = new RowSorter(sort_names, getDescending(sort_names)).setThreads(m_threads).sort(entries);
 		TempTable out_table = new TempTable(in_table.getId(), col_names);
-		for (TableEntry te : entries)
+		for (int i = 0; i < rows.length; i++)
 		{
-			TableEntry new_te = new TableEntry(te);
-			for (int j = 0; j < col_names.length; j++)
-			{
-				DirectValue dv = new DirectValue();
-				dv.add(new TableCellNode(in_table, te.getRowIndex(), j));
-				new_te.addDependency(col_names[j], dv);				
-			}
-			out_table.add(new_te);
+			out_table.add(new TableEntry(entries.get(rows[i]), false));
+		}
+		if (TransformedTable.isProvenanceEnabled())
+		{
+			out_table.setLineage(new CellMapping(in_table, rows, null, false));
 		}
 		return out_table;
 	}
 
+	/**
+	 * Sorts the rows read from a cursor. All the rows are read before the
+	 * first one is returned; with a memory budget, at most the budget is
+	 * held in memory while doing so.
+	 * @param input The cursor giving the rows to sort
+	 * @return The cursor giving the sorted rows
+	 */
+	public RowCursor sort(RowCursor input)
+	{
+		String[] col_names = input.getColumnNames();
+		String[] sort_names = getSortColumns(col_names);
+		ExternalSorter sorter = new ExternalSorter(sort_names, getDescending(sort_names)).setMemoryBudget(m_memoryBudget > 0 ? m_memoryBudget : Long.MAX_VALUE);
+		sorter.handleHeader(col_names);
+		while (input.next())
+		{
+			// The cursor reuses its array
+			sorter.handleRow(input.getValues().clone());
+		}
+		try
+		{
+			return sorter.getCursor();
+		}
+		catch (IOException e)
+		{
+			throw new IllegalStateException("Cannot read sorted runs", e);
+		}
+	}
+
+	/**
+	 * Gets the columns to sort on
+	 * @param col_names The names of the columns of the table
+	 * @return The names of the sort columns
+	 */
+	protected String[] getSortColumns(String[] col_names)
+	{
+		return m_columns.length == 0 ? col_names : m_columns;
+	}
+
+	/**
+	 * Gets whether each sort column is sorted in descending order
+	 * @param sort_names The names of the sort columns
+	 * @return An array of flags
+	 */
+	protected boolean[] getDescending(String[] sort_names)
+	{
+		boolean[] descending = new boolean[sort_names.length];
+		for (int i = 0; i < sort_names.length; i++)
+		{
+			descending[i] = m_descending.contains(sort_names[i]);
+		}
+		return descending;
+	}
+
 	/**
 	 * Compares two rows of a table, so that they can be sorted
+	 * @deprecated Rows are now sorted with a {@link RowSorter}; this
+	 *   comparator delegates to {@link RowSorter#compare(PrimitiveValue[], PrimitiveValue[], int[])}
+	 *   and is kept for compatibility
 	 */
+	@Deprecated
 	public static class RowComparator implements Comparator<TableEntry>
 	{
 		String[] m_columnOrder;
 		
+		/**
+		 * The sorter comparing the values of the rows
+		 */
+		protected final RowSorter m_sorter;
+		
+		/**
+		 * The position of each sort column in the arrays of values
+		 */
+		protected final int[] m_positions;
+		
 		public RowComparator(String[] column_order)
 		{
 			super();
 			m_columnOrder = column_order;
+			m_sorter = new RowSorter(column_order);
+			m_positions = new int[column_order.length];
+			for (int i = 0; i < m_positions.length; i++)
+			{
+				m_positions[i] = i;
+			}
 		}
 
 		@Override
 		public int compare(TableEntry te1, TableEntry te2)
 		{
-			for (String s : m_columnOrder)
+			return m_sorter.compare(getValues(te1), getValues(te2), m_positions);
+		}
+		
+		/**
+		 * Gets the values of the sort columns in a row
+		 * @param te The row
+		 * @return The values; a missing value is {@code null}
+		 */
+		protected PrimitiveValue[] getValues(TableEntry te)
+		{
+			PrimitiveValue[] values = new PrimitiveValue[m_columnOrder.length];
+			for (int i = 0; i < values.length; i++)
 			{
-				if (!te1.containsKey(s))
-				{
-					if (te2.containsKey(s))
-					{
-						return 1;
-					}
-				}
-				else
-				{
-					if (!te2.containsKey(s))
-					{
-						return -1;
-					}
-					PrimitiveValue v1 = te1.get(s);
-					PrimitiveValue v2 = te2.get(s);
-					if (v1.isNumeric() && v2.isNumeric())
-					{
-						double d1 = v1.numberValue().doubleValue();
-						double d2 = v2.numberValue().doubleValue();
-						if (d1 < d2)
-						{
-							return -1;
-						}
-						if (d1 == d2)
-						{
-							return 0;
-						}
-						return 1;
-					}
-					if (v1.isString() && v2.isString())
-					{
-						String s1 = v1.stringValue();
-						String s2 = v2.stringValue();
-						return s1.compareTo(s2);
-					}
-				}
+				values[i] = te.get(m_columnOrder[i]);
 			}
-			return 0;
+			return values;
 		}
 	}
 }
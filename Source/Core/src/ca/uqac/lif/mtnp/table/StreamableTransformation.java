@@ -0,0 +1,38 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+/**
+ * A transformation that can compute its output rows as its input rows
+ * are read, without waiting for the rest of its input. The
+ * transformation only keeps a bounded number of rows at any time.
+ * @see RowCursor
+ * @since 0.1.14
+ * @author Sylvain Hallé
+ */
+public interface StreamableTransformation extends TableTransformation
+{
+	/**
+	 * Applies this transformation to rows as they are read
+	 * @param inputs The cursors giving the rows of the input tables
+	 * @return The cursor giving the rows of the output table. Reading a
+	 *   row from this cursor only reads as many input rows as needed to
+	 *   produce it.
+	 */
+	public RowCursor stream(RowCursor ... inputs);
+}
@@ -64,6 +64,18 @@ public abstract class Table implements DataOwner
 	 * This value may be set to {@code false} for intermediate tables.
 	 */
 	protected boolean m_showInList = true;
+	
+	/**
+	 * A counter incremented every time the contents of the table are
+	 * modified
+	 */
+	protected long m_version = 0;
+	
+	/**
+	 * A counter incremented every time the contents of the table are
+	 * modified in some other way than by appending rows
+	 */
+	protected long m_editVersion = 0;
 
 	/**
 	 * The types of values that a data cell can have
@@ -236,6 +248,17 @@ public abstract class Table implements DataOwner
 	 * @return The table
 	 */
 	public abstract TempTable getDataTable(boolean temporary);
+	
+	/**
+	 * Gets a cursor reading the rows of this table. By default, the rows
+	 * are read from {@link #getDataTable(boolean)}; tables that can give
+	 * their rows one at a time override this method.
+	 * @return The cursor
+	 */
+	public RowCursor getCursor()
+	{
+		return RowCursor.of(getDataTable(true));
+	}
 
 	@Override
 	public String toString()
@@ -256,6 +279,85 @@ public abstract class Table implements DataOwner
 	
 	public abstract NodeFunction getDependency(int row, int col);
 	
+	/**
+	 * Gets the dependencies of a block of cells at once. Tables whose
+	 * contents are computed can override this method so that the
+	 * computation is done only once for all the cells.
+	 * @param rows The rows of the cells
+	 * @param cols The columns of the cells
+	 * @return An array where the element at position [<i>i</i>][<i>j</i>]
+	 *   is the dependency of the cell at row <tt>rows[i]</tt> and column
+	 *   <tt>cols[j]</tt>
+	 */
+	public NodeFunction[][] getDependencies(int[] rows, int[] cols)
+	{
+		NodeFunction[][] deps = new NodeFunction[rows.length][cols.length];
+		for (int i = 0; i < rows.length; i++)
+		{
+			for (int j = 0; j < cols.length; j++)
+			{
+				deps[i][j] = getDependency(rows[i], cols[j]);
+			}
+		}
+		return deps;
+	}
+	
+	/**
+	 * Gets the version of the contents of this table. The version changes
+	 * every time the contents of the table may have been modified, so
+	 * that objects computed from the table can tell whether they are
+	 * still up to date.
+	 * @return The version
+	 */
+	public long getVersion()
+	{
+		return m_version;
+	}
+	
+	/**
+	 * Gets the version of the contents of this table, not counting the
+	 * rows appended at the end. As long as this version does not change,
+	 * the contents of the table only differ from a previous version by
+	 * the rows that were added after the rows that already existed.
+	 * @return The version
+	 * @since 0.1.14
+	 */
+	public long getEditVersion()
+	{
+		return m_editVersion;
+	}
+	
+	/**
+	 * Determines if the {@linkplain #getVersion() version} of this table
+	 * changes every time its contents change. Objects computed from a
+	 * table that is not versioned cannot be reused safely, as the table
+	 * may change without its version changing. By default, tables are
+	 * not versioned.
+	 * @return {@code true} if the table is versioned
+	 */
+	public boolean isVersioned()
+	{
+		return false;
+	}
+	
+	/**
+	 * Signals that the contents of this table have been modified
+	 */
+	protected void modified()
+	{
+		m_version++;
+		m_editVersion++;
+	}
+	
+	/**
+	 * Signals that rows have been appended to this table, without the
+	 * existing rows being modified
+	 */
+	protected void appended()
+	{
+		m_version++;
+	}
+	
 	/**
 	 * Represents a cell in a table by its row-column
 	 * coordinates.
@@ -309,7 +411,7 @@ public abstract class Table implements DataOwner
 	 */
 	public void clear()
 	{
-		// Nothing to do
+		modified();
 	}
 	
 	/**
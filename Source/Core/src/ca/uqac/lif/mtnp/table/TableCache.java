@@ -0,0 +1,333 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounds the memory used by the tables that {@link TransformedTable}s
+ * keep from their last evaluation. The cache does not hold the tables
+ * itself; it keeps track of the transformed tables that hold one, and
+ * of the number of cells of each, in the order in which they were last
+ * used. When the total number of cells exceeds the budget, the tables
+ * that were used least recently are told to discard their evaluation.
+ * A table larger than the whole budget is not kept at all. Each table
+ * counts for at least one cell, and a table computed with provenance
+ * also counts for the cells of the input tables its lineage refers to.
+ * <p>
+ * The cache only holds weak references to the transformed tables, so
+ * that a transformed table that is no longer used elsewhere can be
+ * garbage collected along with the table it keeps; its cells are then
+ * removed from the count.
+ * <p>
+ * Unless told otherwise, all the transformed tables share the cache
+ * returned by {@link #getDefault()}.
+ * @since 0.1.14
+ * @author Sylvain Hallé
+ */
+public class TableCache
+{
+	/**
+	 * The default number of cells of the cache shared by all tables
+	 */
+	public static final long DEFAULT_MAX_CELLS = 1000000;
+
+	/**
+	 * The cache shared by all tables
+	 */
+	protected static final TableCache s_default = new TableCache(DEFAULT_MAX_CELLS);
+
+	/**
+	 * The maximum number of cells of all the tables kept
+	 */
+	protected long m_maxCells;
+
+	/**
+	 * The number of cells of all the tables kept
+	 */
+	protected long m_cells = 0;
+
+	/**
+	 * The number of cells of the table kept by each transformed table,
+	 * from the least to the most recently used
+	 */
+	protected final LinkedHashMap<Key,Long> m_tables;
+
+	/**
+	 * The queue receiving the references to the transformed tables that
+	 * have been garbage collected
+	 */
+	protected final ReferenceQueue<TransformedTable> m_queue = new ReferenceQueue<TransformedTable>();
+
+	/**
+	 * Creates a new cache
+	 * @param max_cells The maximum number of cells of all the tables kept
+	 */
+	public TableCache(long max_cells)
+	{
+		super();
+		m_maxCells = max_cells;
+		m_tables = new LinkedHashMap<Key,Long>(16, 0.75f, true);
+	}
+
+	/**
+	 * Gets the cache shared by all tables
+	 * @return The cache
+	 */
+	public static TableCache getDefault()
+	{
+		return s_default;
+	}
+
+	/**
+	 * Sets the maximum number of cells of all the tables kept. Tables are
+	 * discarded right away if the cache exceeds the new budget.
+	 * @param max_cells The number of cells; 0 disables the cache
+	 * @return This cache
+	 */
+	public TableCache setMaxCells(long max_cells)
+	{
+		List<TransformedTable> evicted;
+		synchronized (this)
+		{
+			m_maxCells = max_cells;
+			evicted = evict(null);
+		}
+		discard(evicted);
+		return this;
+	}
+
+	/**
+	 * Gets the maximum number of cells of all the tables kept
+	 * @return The number of cells
+	 */
+	public synchronized long getMaxCells()
+	{
+		return m_maxCells;
+	}
+
+	/**
+	 * Gets the number of cells of all the tables currently kept
+	 * @return The number of cells
+	 */
+	public synchronized long getCellCount()
+	{
+		purge();
+		return m_cells;
+	}
+
+	/**
+	 * Gets the number of tables currently kept
+	 * @return The number of tables
+	 */
+	public synchronized int size()
+	{
+		purge();
+		return m_tables.size();
+	}
+
+	/**
+	 * Discards the tables kept by all the transformed tables
+	 */
+	public void clear()
+	{
+		List<TransformedTable> evicted;
+		synchronized (this)
+		{
+			evicted = new ArrayList<TransformedTable>(m_tables.size());
+			for (Key k : m_tables.keySet())
+			{
+				TransformedTable t = k.get();
+				if (t != null)
+				{
+					evicted.add(t);
+				}
+			}
+			m_tables.clear();
+			m_cells = 0;
+		}
+		discard(evicted);
+	}
+
+	/**
+	 * Records that a transformed table keeps the result of an evaluation.
+	 * Other tables are discarded if the cache exceeds its budget.
+	 * @param owner The transformed table
+	 * @param cells The number of cells kept alive by the evaluation. A
+	 *   value smaller than 1 counts as 1.
+	 * @return {@code true} if the table may be kept, {@code false} if it
+	 *   is larger than the whole budget
+	 */
+	protected boolean add(TransformedTable owner, long cells)
+	{
+		cells = Math.max(1, cells);
+		List<TransformedTable> evicted;
+		synchronized (this)
+		{
+			purge();
+			Long previous = m_tables.remove(new Key(owner, null));
+			if (previous != null)
+			{
+				m_cells -= previous;
+			}
+			if (cells > m_maxCells)
+			{
+				return false;
+			}
+			m_tables.put(new Key(owner, m_queue), cells);
+			m_cells += cells;
+			evicted = evict(owner);
+		}
+		discard(evicted);
+		return true;
+	}
+
+	/**
+	 * Marks the table kept by a transformed table as the most recently
+	 * used
+	 * @param owner The transformed table
+	 */
+	protected synchronized void touch(TransformedTable owner)
+	{
+		m_tables.get(new Key(owner, null));
+	}
+
+	/**
+	 * Forgets the table kept by a transformed table
+	 * @param owner The transformed table
+	 */
+	protected synchronized void remove(TransformedTable owner)
+	{
+		Long previous = m_tables.remove(new Key(owner, null));
+		if (previous != null)
+		{
+			m_cells -= previous;
+		}
+	}
+
+	/**
+	 * Removes the least recently used tables until the cache fits in its
+	 * budget. This method must be called while holding the lock on the
+	 * cache.
+	 * @param keep A table that must not be removed, or {@code null}
+	 * @return The transformed tables that must discard their table
+	 */
+	protected List<TransformedTable> evict(TransformedTable keep)
+	{
+		List<TransformedTable> evicted = new ArrayList<TransformedTable>();
+		Iterator<Map.Entry<Key,Long>> it = m_tables.entrySet().iterator();
+		while (m_cells > m_maxCells && it.hasNext())
+		{
+			Map.Entry<Key,Long> e = it.next();
+			TransformedTable t = e.getKey().get();
+			if (t != null && t == keep)
+			{
+				continue;
+			}
+			m_cells -= e.getValue();
+			if (t != null)
+			{
+				evicted.add(t);
+			}
+			it.remove();
+		}
+		return evicted;
+	}
+
+	/**
+	 * Forgets the transformed tables that have been garbage collected.
+	 * This method must be called while holding the lock on the cache.
+	 */
+	protected void purge()
+	{
+		Object k;
+		while ((k = m_queue.poll()) != null)
+		{
+			Long previous = m_tables.remove(k);
+			if (previous != null)
+			{
+				m_cells -= previous;
+			}
+		}
+	}
+
+	/**
+	 * Tells transformed tables to discard the table they keep. This is
+	 * done outside of the lock on the cache.
+	 * @param evicted The transformed tables
+	 */
+	protected static void discard(List<TransformedTable> evicted)
+	{
+		for (TransformedTable t : evicted)
+		{
+			t.discard();
+		}
+	}
+
+	/**
+	 * A weak reference to a transformed table, compared on the identity
+	 * of the table
+	 */
+	protected static final class Key extends WeakReference<TransformedTable>
+	{
+		/**
+		 * The identity hash code of the table
+		 */
+		private final int m_hash;
+
+		/**
+		 * Creates a new key
+		 * @param t The transformed table
+		 * @param queue The queue the key is added to once the table is
+		 *   garbage collected, or {@code null} for a key only used to look
+		 *   up the map
+		 */
+		Key(TransformedTable t, ReferenceQueue<TransformedTable> queue)
+		{
+			super(t, queue);
+			m_hash = System.identityHashCode(t);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return m_hash;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if (o == this)
+			{
+				return true;
+			}
+			if (!(o instanceof Key))
+			{
+				return false;
+			}
+			TransformedTable t = get();
+			return t != null && t == ((Key) o).get();
+		}
+	}
+}
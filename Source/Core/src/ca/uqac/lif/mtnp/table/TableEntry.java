@@ -17,15 +17,25 @@
  */
 package ca.uqac.lif.mtnp.table;
 
-import java.util.HashMap;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 import ca.uqac.lif.petitpoucet.NodeFunction;
 
 /**
- * An entry in a data table
+ * An entry in a data table. The values of an entry are stored in an
+ * array, whose layout is given by a shared {@link RowSchema}; entries
+ * filled in the same column order share the same schema, and their
+ * values can be accessed by ordinal. The entry can still be used as a
+ * regular {@link Map} from column names to values.
  */
-public class TableEntry extends HashMap<String,PrimitiveValue>
+public class TableEntry extends AbstractMap<String,PrimitiveValue> implements Serializable, Cloneable
 {
 	/**
 	 * Dummy UID
@@ -38,14 +48,39 @@ public class TableEntry extends HashMap<String,PrimitiveValue>
 	protected int m_rowIndex = -1;
 	
 	/**
-	 * Associates to each key of the map to a set of datapoint IDs
+	 * The layout of this entry
 	 */
-	private final Map<String,NodeFunction> m_datapointIds;
+	protected RowSchema m_schema;
+	
+	/**
+	 * The values of this entry, indexed by their ordinal in the schema.
+	 * The array may be longer than the schema.
+	 */
+	protected PrimitiveValue[] m_values;
+	
+	/**
+	 * The dependencies of each value of this entry, indexed by their
+	 * ordinal in the schema. This array is only allocated when a first
+	 * dependency is added.
+	 */
+	protected NodeFunction[] m_dependencies;
 	
 	public TableEntry()
+	{
+		this(RowSchema.EMPTY);
+	}
+	
+	/**
+	 * Creates a new entry with a given layout, where all values are
+	 * {@code null}
+	 * @param schema The layout
+	 */
+	public TableEntry(RowSchema schema)
 	{
 		super();
-		m_datapointIds = new HashMap<String,NodeFunction>();
+		m_schema = schema;
+		m_values = new PrimitiveValue[schema.size()];
+		m_dependencies = null;
 	}
 	
 	public TableEntry(String key, Object value)
@@ -61,9 +96,136 @@ public class TableEntry extends HashMap<String,PrimitiveValue>
 	
 	public TableEntry(TableEntry e)
 	{
-		this();
-		putAll(e);
-		m_datapointIds.putAll(e.m_datapointIds);
+		this(e, true);
+	}
+	
+	/**
+	 * Creates a copy of an entry
+	 * @param e The entry to copy
+	 * @param with_dependencies Set to {@code false} to copy only the
+	 *   values of the entry, and not their dependencies
+	 */
+	public TableEntry(TableEntry e, boolean with_dependencies)
+	{
+		super();
+		m_schema = e.m_schema;
+		m_values = Arrays.copyOf(e.m_values, e.m_schema.size());
+		if (with_dependencies && e.m_dependencies != null)
+		{
+			m_dependencies = Arrays.copyOf(e.m_dependencies, e.m_schema.size());
+		}
+	}
+	
+	/**
+	 * Creates a copy of this entry, with its values and dependencies
+	 * @return The copy
+	 */
+	@Override
+	public TableEntry clone()
+	{
+		try
+		{
+			TableEntry e = (TableEntry) super.clone();
+			e.m_values = m_values.clone();
+			if (m_dependencies != null)
+			{
+				e.m_dependencies = m_dependencies.clone();
+			}
+			return e;
+		}
+		catch (CloneNotSupportedException ex)
+		{
+			// Cannot happen, as this class is cloneable
+			throw new IllegalStateException(ex);
+		}
+	}
+	
+	/**
+	 * Gets the layout of this entry
+	 * @return The layout
+	 */
+	public RowSchema getSchema()
+	{
+		return m_schema;
+	}
+	
+	/**
+	 * Gets the value at a given ordinal of this entry's layout
+	 * @param ordinal The ordinal
+	 * @return The value
+	 */
+	public PrimitiveValue getValue(int ordinal)
+	{
+		return m_values[ordinal];
+	}
+	
+	/**
+	 * Sets the value at a given ordinal of this entry's layout
+	 * @param ordinal The ordinal
+	 * @param value The value
+	 */
+	public void setValue(int ordinal, PrimitiveValue value)
+	{
+		m_values[ordinal] = value;
+	}
+	
+	/**
+	 * Gets the value of a column, designated by its ordinal in some
+	 * schema. This is a fast path for callers that access many entries
+	 * sharing the same schema: when the schema is the one of this entry,
+	 * the value is fetched directly, without looking up the column name.
+	 * @param schema The schema
+	 * @param ordinal The ordinal of the column in that schema
+	 * @return The value, or {@code null} if this entry has no such column
+	 */
+	public PrimitiveValue get(RowSchema schema, int ordinal)
+	{
+		if (schema == m_schema)
+		{
+			return m_values[ordinal];
+		}
+		int pos = m_schema.getOrdinal(schema.getName(ordinal));
+		if (pos < 0)
+		{
+			return null;
+		}
+		return m_values[pos];
+	}
+	
+	@Override
+	public PrimitiveValue get(Object key)
+	{
+		if (!(key instanceof String))
+		{
+			return null;
+		}
+		int pos = m_schema.getOrdinal((String) key);
+		if (pos < 0)
+		{
+			return null;
+		}
+		return m_values[pos];
+	}
+	
+	@Override
+	public boolean containsKey(Object key)
+	{
+		return key instanceof String && m_schema.contains((String) key);
+	}
+	
+	@Override
+	public int size()
+	{
+		return m_schema.size();
+	}
+	
+	@Override
+	public PrimitiveValue put(String key, PrimitiveValue value)
+	{
+		int pos = ordinalFor(key);
+		PrimitiveValue old = m_values[pos];
+		m_values[pos] = value;
+		return old;
 	}
 	
 	public void put(String key, Object value)
@@ -73,8 +235,80 @@ public class TableEntry extends HashMap<String,PrimitiveValue>
 	
 	public void put(String key, Object value, NodeFunction node)
 	{
-		put(key, PrimitiveValue.getInstance(value));
-		m_datapointIds.put(key, node);
+		int pos = ordinalFor(key);
+		m_values[pos] = PrimitiveValue.getInstance(value);
+		setDependency(pos, node);
+	}
+	
+	@Override
+	public PrimitiveValue remove(Object key)
+	{
+		if (!(key instanceof String))
+		{
+			return null;
+		}
+		int pos = m_schema.getOrdinal((String) key);
+		if (pos < 0)
+		{
+			return null;
+		}
+		PrimitiveValue old = m_values[pos];
+		removeOrdinal(pos);
+		return old;
+	}
+	
+	@Override
+	public void clear()
+	{
+		m_schema = RowSchema.EMPTY;
+		m_values = new PrimitiveValue[0];
+		m_dependencies = null;
+	}
+	
+	@Override
+	public Set<Map.Entry<String,PrimitiveValue>> entrySet()
+	{
+		return new EntrySet();
+	}
+	
+	/**
+	 * Gets the ordinal of a column, adding the column to the layout of
+	 * this entry if it is not already present
+	 * @param key The name of the column
+	 * @return The ordinal
+	 */
+	protected int ordinalFor(String key)
+	{
+		int pos = m_schema.getOrdinal(key);
+		if (pos >= 0)
+		{
+			return pos;
+		}
+		m_schema = m_schema.with(key);
+		pos = m_schema.size() - 1;
+		if (pos >= m_values.length)
+		{
+			m_values = Arrays.copyOf(m_values, Math.max(4, m_values.length * 2));
+		}
+		return pos;
+	}
+	
+	/**
+	 * Removes the column at a given ordinal from the layout of this entry
+	 * @param pos The ordinal
+	 */
+	protected void removeOrdinal(int pos)
+	{
+		int size = m_schema.size();
+		m_schema = m_schema.without(m_schema.getName(pos));
+		System.arraycopy(m_values, pos + 1, m_values, pos, size - pos - 1);
+		m_values[size - 1] = null;
+		if (m_dependencies != null && m_dependencies.length > pos)
+		{
+			int dep_size = Math.min(size, m_dependencies.length);
+			System.arraycopy(m_dependencies, pos + 1, m_dependencies, pos, dep_size - pos - 1);
+			m_dependencies[dep_size - 1] = null;
+		}
 	}
 	
 	/**
@@ -91,11 +325,11 @@ public class TableEntry extends HashMap<String,PrimitiveValue>
 	public int hashCode()
 	{
 		int x = 0;
-		for (Object o : values())
+		for (int i = 0; i < m_schema.size(); i++)
 		{
-			if (o != null)
+			if (m_values[i] != null)
 			{
-				x += o.hashCode();
+				x += m_values[i].hashCode();
 			}
 		}
 		return x;
@@ -117,18 +351,18 @@ public class TableEntry extends HashMap<String,PrimitiveValue>
 		{
 			return false;
 		}
-		for (Map.Entry<String,PrimitiveValue> entry : entrySet())
+		for (int i = 0; i < m_schema.size(); i++)
 		{
-			PrimitiveValue e = te.get(entry.getKey());
+			PrimitiveValue e = te.get(m_schema, i);
 			if (e == null)
 			{
-				if (entry.getValue() == null)
+				if (m_values[i] == null)
 					continue; // Both are null
 				else
 					return false;
 			}
 			assert e != null;
-			if (!e.equals(entry.getValue()))
+			if (!e.equals(m_values[i]))
 			{
 				return false;
 			}
@@ -144,11 +378,46 @@ public class TableEntry extends HashMap<String,PrimitiveValue>
 	 */
 	public NodeFunction getDependency(String key)
 	{
-		if (!m_datapointIds.containsKey(key))
+		int pos = m_schema.getOrdinal(key);
+		if (pos < 0)
 		{
 			return null;
 		}
-		return m_datapointIds.get(key);
+		return getDependency(pos);
+	}
+	
+	/**
+	 * Gets the dependency of the value at a given ordinal of this entry's
+	 * layout
+	 * @param ordinal The ordinal
+	 * @return The node function associated to this value, or
+	 *   {@code null} if no dependency was found
+	 */
+	public NodeFunction getDependency(int ordinal)
+	{
+		if (m_dependencies == null || ordinal >= m_dependencies.length)
+		{
+			return null;
+		}
+		return m_dependencies[ordinal];
+	}
+	
+	/**
+	 * Gets the dependency of a column, designated by its ordinal in some
+	 * schema
+	 * @param schema The schema
+	 * @param ordinal The ordinal of the column in that schema
+	 * @return The node function associated to this value, or
+	 *   {@code null} if no dependency was found
+	 * @see #get(RowSchema, int)
+	 */
+	public NodeFunction getDependency(RowSchema schema, int ordinal)
+	{
+		if (schema == m_schema)
+		{
+			return getDependency(ordinal);
+		}
+		return getDependency(schema.getName(ordinal));
 	}
 	
 	/**
@@ -161,8 +430,168 @@ public class TableEntry extends HashMap<String,PrimitiveValue>
 	{
 		if (dependency != null)
 		{
-			m_datapointIds.put(key, dependency);
+			setDependency(ordinalFor(key), dependency);
+		}
+	}
+	
+	/**
+	 * Adds a new data point as a dependency of the value at a given
+	 * ordinal of this entry's layout
+	 * @param ordinal The ordinal
+	 * @param dependency The data point entry to add as a dependency
+	 */
+	public void addDependency(int ordinal, NodeFunction dependency)
+	{
+		if (dependency != null)
+		{
+			setDependency(ordinal, dependency);
 		}
 	}
+	
+	/**
+	 * Sets the dependency of the value at a given ordinal, allocating
+	 * the array of dependencies if needed
+	 * @param ordinal The ordinal
+	 * @param dependency The dependency
+	 */
+	protected void setDependency(int ordinal, NodeFunction dependency)
+	{
+		if (m_dependencies == null)
+		{
+			if (dependency == null)
+			{
+				return;
+			}
+			m_dependencies = new NodeFunction[m_values.length];
+		}
+		if (ordinal >= m_dependencies.length)
+		{
+			m_dependencies = Arrays.copyOf(m_dependencies, m_values.length);
+		}
+		m_dependencies[ordinal] = dependency;
+	}
+	
+	/**
+	 * A view of the contents of the entry as a set of key-value pairs
+	 */
+	protected class EntrySet extends AbstractSet<Map.Entry<String,PrimitiveValue>>
+	{
+		@Override
+		public Iterator<Map.Entry<String,PrimitiveValue>> iterator()
+		{
+			return new EntryIterator();
+		}
+
+		@Override
+		public int size()
+		{
+			return m_schema.size();
+		}
+	}
+	
+	/**
+	 * An iterator over the key-value pairs of the entry
+	 */
+	protected class EntryIterator implements Iterator<Map.Entry<String,PrimitiveValue>>
+	{
+		/**
+		 * The ordinal of the next pair to return
+		 */
+		protected int m_next = 0;
+		
+		/**
+		 * Whether the last pair returned can be removed
+		 */
+		protected boolean m_canRemove = false;
+		
+		@Override
+		public boolean hasNext()
+		{
+			return m_next < m_schema.size();
+		}
+
+		@Override
+		public Map.Entry<String,PrimitiveValue> next()
+		{
+			if (!hasNext())
+			{
+				throw new NoSuchElementException();
+			}
+			m_canRemove = true;
+			return new CellEntry(m_schema.getName(m_next++));
+		}
+
+		@Override
+		public void remove()
+		{
+			if (!m_canRemove)
+			{
+				throw new IllegalStateException();
+			}
+			m_canRemove = false;
+			m_next--;
+			removeOrdinal(m_next);
+		}
+	}
+	
+	/**
+	 * A key-value pair of the entry. Writing to the pair writes to the
+	 * entry.
+	 */
+	protected class CellEntry implements Map.Entry<String,PrimitiveValue>
+	{
+		/**
+		 * The name of the column
+		 */
+		protected final String m_key;
+		
+		public CellEntry(String key)
+		{
+			super();
+			m_key = key;
+		}
+
+		@Override
+		public String getKey()
+		{
+			return m_key;
+		}
+
+		@Override
+		public PrimitiveValue getValue()
+		{
+			return get(m_key);
+		}
 
+		@Override
+		public PrimitiveValue setValue(PrimitiveValue value)
+		{
+			return put(m_key, value);
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			PrimitiveValue v = getValue();
+			return m_key.hashCode() ^ (v == null ? 0 : v.hashCode());
+		}
+		
+		@Override
+		public boolean equals(Object o)
+		{
+			if (!(o instanceof Map.Entry))
+			{
+				return false;
+			}
+			Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+			PrimitiveValue v = getValue();
+			return m_key.equals(e.getKey()) && (v == null ? e.getValue() == null : v.equals(e.getValue()));
+		}
+		
+		@Override
+		public String toString()
+		{
+			return m_key + "=" + getValue();
+		}
+	}
 }
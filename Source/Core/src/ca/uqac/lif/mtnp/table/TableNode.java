@@ -17,7 +17,7 @@
  */
 package ca.uqac.lif.mtnp.table;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Pattern;
 
@@ -39,13 +39,19 @@ public class TableNode
 	
 	public List<TableNode> m_children;
 	
+	/**
+	 * The number of leaves in the tree rooted at this node, or -1 if
+	 * it must be counted
+	 */
+	protected int m_leaves = -1;
+	
 	public TableNode(String key, PrimitiveValue value)
 	{
 		super();
-		m_children = new LinkedList<TableNode>();
+		m_children = new ArrayList<TableNode>();
 		m_key = key;
 		m_value = value;
-		m_coordinates = new LinkedList<CellCoordinate>();
+		m_coordinates = new ArrayList<CellCoordinate>();
 	}
 	
 	public void addCoordinate(CellCoordinate c)
@@ -79,11 +85,16 @@ public class TableNode
 	}
 	
 	/**
-	 * Gets the number of leaf nodes in this tree
+	 * Gets the number of leaf nodes in this tree. For a tree produced by
+	 * a {@link TableNodeBuilder}, this number is known in advance.
 	 * @return The number of leaf nodes
 	 */
 	public int countLeaves()
 	{
+		if (m_leaves >= 0)
+		{
+			return m_leaves;
+		}
 		if (m_children.isEmpty())
 		{
 			return 1;
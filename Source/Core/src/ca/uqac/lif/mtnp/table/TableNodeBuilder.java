@@ -0,0 +1,325 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import java.io.IOException;
+import java.util.List;
+
+import ca.uqac.lif.mtnp.DataFormatter;
+
+/**
+ * Builds the tree of {@link TableNode}s representing a list of entries.
+ * Each level of the tree corresponds to a column; the children of a node
+ * are the distinct values of the next column among the entries below
+ * that node, in ascending order, with missing values last.
+ * <p>
+ * Instead of partitioning the entries again at each level, the builder
+ * gives each value its rank among the distinct values of its column,
+ * sorts the rows once on their ranks for all the columns, and then
+ * creates the nodes in a single pass over the sorted rows: a row starts
+ * a new node at the first level where it differs from the previous
+ * row. The sort is skipped when the rows are already in order. The
+ * number of leaves under each node is counted along the way, so that
+ * {@link TableNode#countLeaves()} does not need to go through the tree.
+ * When only the leaves are needed, as when the tree is rendered as CSV,
+ * {@link #writeCsv(List, Appendable, String, String)} writes them in the
+ * same order without creating the nodes.
+ * @since 0.1.14
+ * @author Sylvain Hallé
+ */
+public class TableNodeBuilder
+{
+	/**
+	 * The columns corresponding to each level of the tree
+	 */
+	protected final String[] m_sortOrder;
+
+	/**
+	 * Creates a new builder
+	 * @param sort_order The columns corresponding to each level of the
+	 *   tree, starting from the children of the root
+	 */
+	public TableNodeBuilder(String ... sort_order)
+	{
+		super();
+		m_sortOrder = sort_order;
+	}
+
+	/**
+	 * Builds the tree for a list of entries
+	 * @param entries The entries
+	 * @return The root of the tree
+	 */
+	public TableNode build(List<TableEntry> entries)
+	{
+		TableNode root = new TableNode("", PrimitiveValue.getInstance(""));
+		int depth = m_sortOrder.length;
+		int size = entries.size();
+		if (depth == 0 || size == 0)
+		{
+			root.m_leaves = 1;
+			return root;
+		}
+		TableEntry[] rows = entries.toArray(new TableEntry[size]);
+		Ranking r = new Ranking(rows);
+		ValueDictionary[] dictionaries = r.m_dictionaries;
+		int[][] sorted_codes = r.m_sortedCodes;
+		int[][] ranks = r.m_ranks;
+		int[] order = r.m_order;
+		root.m_leaves = 0;
+		// The node currently open at each level
+		TableNode[] path = new TableNode[depth];
+		int[] previous = null;
+		for (int i = 0; i < size; i++)
+		{
+			int row = order[i];
+			int first_new = 0;
+			if (previous != null)
+			{
+				while (first_new < depth && ranks[first_new][row] == previous[first_new])
+				{
+					first_new++;
+				}
+			}
+			for (int level = first_new; level < depth; level++)
+			{
+				TableNode node = new TableNode(m_sortOrder[level], dictionaries[level].decode(sorted_codes[level][ranks[level][row]]));
+				node.m_leaves = 0;
+				(level == 0 ? root : path[level - 1]).m_children.add(node);
+				path[level] = node;
+			}
+			if (first_new < depth)
+			{
+				// A new leaf was created: count it in all its ancestors
+				root.m_leaves++;
+				for (int level = 0; level < depth; level++)
+				{
+					path[level].m_leaves++;
+				}
+			}
+			int row_index = rows[row].getRowIndex();
+			for (int level = 0; level < depth; level++)
+			{
+				path[level].addCoordinate(row_index, level);
+			}
+			if (previous == null)
+			{
+				previous = new int[depth];
+			}
+			for (int level = 0; level < depth; level++)
+			{
+				previous[level] = ranks[level][row];
+			}
+		}
+		return root;
+	}
+
+	/**
+	 * Writes the leaves of the tree for a list of entries as CSV, one line
+	 * per leaf. The lines, and the values they contain, are the same as
+	 * when the tree is rendered by a
+	 * {@link ca.uqac.lif.mtnp.table.rendering.CsvTableRenderer CsvTableRenderer},
+	 * but the nodes of the tree are never created. Nothing is written if
+	 * the tree has no leaves.
+	 * @param entries The entries
+	 * @param out The output to write to
+	 * @param separator The symbol used as the separator for values
+	 * @param missing The symbol used for missing data
+	 * @throws IOException If the output cannot be written to
+	 */
+	public void writeCsv(List<TableEntry> entries, Appendable out, String separator, String missing) throws IOException
+	{
+		int depth = m_sortOrder.length;
+		int size = entries.size();
+		if (depth == 0 || size == 0)
+		{
+			return;
+		}
+		Ranking r = new Ranking(entries.toArray(new TableEntry[size]));
+		int previous = -1;
+		for (int i = 0; i < size; i++)
+		{
+			int row = r.m_order[i];
+			if (previous >= 0 && compare(r.m_ranks, previous, row) == 0)
+			{
+				// Same leaf as the previous row
+				continue;
+			}
+			for (int level = 0; level < depth; level++)
+			{
+				if (level > 0)
+				{
+					out.append(separator);
+				}
+				// As in the tree, the value shown is the first one of its rank
+				PrimitiveValue v = r.m_dictionaries[level].decode(r.m_sortedCodes[level][r.m_ranks[level][row]]);
+				if (v == null)
+				{
+					out.append(missing);
+				}
+				else
+				{
+					v.appendTo(out);
+				}
+			}
+			out.append(DataFormatter.CRLF);
+			previous = row;
+		}
+	}
+
+	/**
+	 * Encodes the value of each row for a column
+	 * @param rows The rows
+	 * @param key The name of the column
+	 * @param dictionary The dictionary in which the values are encoded
+	 * @return The code of each row
+	 */
+	protected static int[] getCodes(TableEntry[] rows, String key, ValueDictionary dictionary)
+	{
+		int[] codes = new int[rows.length];
+		RowSchema schema = null;
+		int ordinal = -1;
+		for (int i = 0; i < rows.length; i++)
+		{
+			TableEntry e = rows[i];
+			if (e.getSchema() != schema)
+			{
+				schema = e.getSchema();
+				ordinal = schema.getOrdinal(key);
+			}
+			codes[i] = dictionary.encode(ordinal < 0 ? null : e.getValue(ordinal));
+		}
+		return codes;
+	}
+
+	/**
+	 * Replaces codes by the rank of their value among the distinct values
+	 * @param codes The codes, which are replaced by ranks
+	 * @param sorted The codes sorted in ascending order of their value
+	 */
+	protected static void toRanks(int[] codes, int[] sorted)
+	{
+		int[] rank_of = new int[sorted.length];
+		for (int r = 0; r < sorted.length; r++)
+		{
+			rank_of[sorted[r]] = r;
+		}
+		for (int i = 0; i < codes.length; i++)
+		{
+			codes[i] = rank_of[codes[i]];
+		}
+	}
+
+	/**
+	 * Sorts the rows on their ranks for all the columns
+	 * @param ranks The ranks of each row, for each column
+	 * @param size The number of rows
+	 * @return The rows in sorted order
+	 */
+	protected static int[] sort(final int[][] ranks, int size)
+	{
+		int[] order = new int[size];
+		boolean sorted = true;
+		for (int i = 0; i < size; i++)
+		{
+			order[i] = i;
+			if (sorted && i > 0 && compare(ranks, i - 1, i) > 0)
+			{
+				sorted = false;
+			}
+		}
+		if (sorted)
+		{
+			// Already in order
+			return order;
+		}
+		RowSorter.mergeSort(new RowSorter.IndexComparator()
+		{
+			@Override
+			public int compare(int r1, int r2)
+			{
+				return TableNodeBuilder.compare(ranks, r1, r2);
+			}
+		}, order, new int[size], 0, size);
+		return order;
+	}
+
+	/**
+	 * Compares two rows on their ranks for all the columns
+	 * @param ranks The ranks of each row, for each column
+	 * @param r1 The first row
+	 * @param r2 The second row
+	 * @return A negative number, zero or a positive number if the first
+	 *   row comes before, at the same place or after the second
+	 */
+	protected static int compare(int[][] ranks, int r1, int r2)
+	{
+		for (int[] level : ranks)
+		{
+			if (level[r1] != level[r2])
+			{
+				return level[r1] < level[r2] ? -1 : 1;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * The ranks of the values of a list of rows for each column, and the
+	 * order of the rows sorted on these ranks
+	 */
+	protected class Ranking
+	{
+		/**
+		 * The dictionary of the values of each column
+		 */
+		protected final ValueDictionary[] m_dictionaries;
+
+		/**
+		 * The codes of each dictionary, in ascending order of their values
+		 */
+		protected final int[][] m_sortedCodes;
+
+		/**
+		 * The rank of the value of each row, for each column
+		 */
+		protected final int[][] m_ranks;
+
+		/**
+		 * The rows in sorted order
+		 */
+		protected final int[] m_order;
+
+		public Ranking(TableEntry[] rows)
+		{
+			super();
+			int depth = m_sortOrder.length;
+			m_dictionaries = new ValueDictionary[depth];
+			m_sortedCodes = new int[depth][];
+			m_ranks = new int[depth][];
+			for (int level = 0; level < depth; level++)
+			{
+				m_dictionaries[level] = new ValueDictionary();
+				m_ranks[level] = getCodes(rows, m_sortOrder[level], m_dictionaries[level]);
+				m_sortedCodes[level] = m_dictionaries[level].getSortedCodes();
+				toRanks(m_ranks[level], m_sortedCodes[level]);
+			}
+			m_order = sort(m_ranks, rows.length);
+		}
+	}
+}
@@ -0,0 +1,324 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The columns of a table: their names, an index associating each name to
+ * its position, and the type of each column. A column is numeric as soon
+ * as one of its cells contains a number, and is a column of strings
+ * otherwise.
+ * <p>
+ * The types are maintained incrementally: each entry added to the table
+ * is passed to {@link #update(TableEntry)}, which only looks at the
+ * cells of that entry. When the contents of the table are modified in
+ * some other way, the schema is marked as invalid with
+ * {@link #invalidate()}, and the types are computed again from all the
+ * entries by {@link #rebuild(Collection)} the next time they are needed.
+ * <p>
+ * The schema can optionally maintain {@link ColumnStatistics} for each
+ * column, in the same way. Statistics are only computed once they have
+ * been requested with {@link #enableStatistics()}.
+ * @since 0.1.14
+ * @author Sylvain Hallé
+ */
+public class TableSchema
+{
+	/**
+	 * The names of the columns, in order
+	 */
+	protected final String[] m_names;
+
+	/**
+	 * The layout of the entries that follow this schema
+	 */
+	protected final RowSchema m_layout;
+
+	/**
+	 * An index associating each column name to its position
+	 */
+	protected final Map<String,Integer> m_positions;
+
+	/**
+	 * Whether each column contains at least one numerical value
+	 */
+	protected final boolean[] m_numeric;
+
+	/**
+	 * The statistics of each column, or {@code null} if statistics are
+	 * not maintained
+	 */
+	protected ColumnStatistics[] m_statistics;
+
+	/**
+	 * Whether the column types reflect the current contents of the table
+	 */
+	protected boolean m_valid;
+
+	/**
+	 * Creates a new schema. The column types are initially invalid. A name
+	 * given more than once designates a single column, at the position of
+	 * its first occurrence.
+	 * @param names The names of the columns
+	 */
+	public TableSchema(String ... names)
+	{
+		super();
+		m_layout = RowSchema.of(names);
+		m_names = m_layout.size() == names.length ? names : m_layout.getNames();
+		m_positions = new HashMap<String,Integer>(m_names.length * 2);
+		for (int i = 0; i < m_names.length; i++)
+		{
+			m_positions.put(m_names[i], i);
+		}
+		m_numeric = new boolean[m_names.length];
+		m_statistics = null;
+		m_valid = false;
+	}
+
+	/**
+	 * Creates a copy of this schema, including its column types and
+	 * statistics
+	 * @return The copy
+	 */
+	public TableSchema copy()
+	{
+		TableSchema ts = new TableSchema(m_names);
+		System.arraycopy(m_numeric, 0, ts.m_numeric, 0, m_numeric.length);
+		if (m_statistics != null)
+		{
+			ts.m_statistics = new ColumnStatistics[m_statistics.length];
+			for (int i = 0; i < m_statistics.length; i++)
+			{
+				ts.m_statistics[i] = m_statistics[i].copy();
+			}
+		}
+		ts.m_valid = m_valid;
+		return ts;
+	}
+
+	/**
+	 * Gets the position of a column
+	 * @param name The name of the column
+	 * @return The position, or -1 if there is no column with that name
+	 */
+	public int getPosition(String name)
+	{
+		Integer i = m_positions.get(name);
+		if (i == null)
+		{
+			return -1;
+		}
+		return i;
+	}
+
+	/**
+	 * Gets the name of the column at a given position
+	 * @param col The position
+	 * @return The name, or {@code null} if the position is out of bounds
+	 */
+	public String getName(int col)
+	{
+		if (col < 0 || col >= m_names.length)
+		{
+			return null;
+		}
+		return m_names[col];
+	}
+
+	/**
+	 * Gets the names of the columns
+	 * @return An array of names
+	 */
+	public String[] getNames()
+	{
+		return m_names;
+	}
+
+	/**
+	 * Gets the number of columns
+	 * @return The number of columns
+	 */
+	public int size()
+	{
+		return m_names.length;
+	}
+
+	/**
+	 * Gets the layout of the entries that follow this schema
+	 * @return The layout
+	 */
+	public RowSchema getLayout()
+	{
+		return m_layout;
+	}
+
+	/**
+	 * Determines if a column is numeric. This method assumes the schema
+	 * is valid.
+	 * @param col The position of the column
+	 * @return {@code true} if the column contains at least one number
+	 */
+	public boolean isNumeric(int col)
+	{
+		return col >= 0 && col < m_numeric.length && m_numeric[col];
+	}
+
+	/**
+	 * Gets the type of a column. This method assumes the schema is valid.
+	 * @param col The position of the column
+	 * @return <tt>Float.class</tt> for a numeric column,
+	 *   <tt>String.class</tt> otherwise
+	 */
+	public Class<? extends Comparable<?>> getType(int col)
+	{
+		if (isNumeric(col))
+		{
+			return Float.class;
+		}
+		return String.class;
+	}
+
+	/**
+	 * Starts maintaining statistics on each column. If statistics were not
+	 * maintained so far, the schema becomes invalid so that they are
+	 * computed from all the entries of the table.
+	 */
+	public void enableStatistics()
+	{
+		if (m_statistics != null)
+		{
+			return;
+		}
+		m_statistics = new ColumnStatistics[m_names.length];
+		for (int i = 0; i < m_statistics.length; i++)
+		{
+			m_statistics[i] = new ColumnStatistics();
+		}
+		m_valid = false;
+	}
+
+	/**
+	 * Stops maintaining statistics on each column
+	 */
+	public void disableStatistics()
+	{
+		m_statistics = null;
+	}
+
+	/**
+	 * Determines if this schema maintains statistics on each column
+	 * @return {@code true} if statistics are maintained
+	 */
+	public boolean hasStatistics()
+	{
+		return m_statistics != null;
+	}
+
+	/**
+	 * Gets the statistics of a column. This method assumes the schema is
+	 * valid.
+	 * @param col The position of the column
+	 * @return The statistics, or {@code null} if statistics are not
+	 *   maintained or the position is out of bounds
+	 */
+	public ColumnStatistics getStatistics(int col)
+	{
+		if (m_statistics == null || col < 0 || col >= m_statistics.length)
+		{
+			return null;
+		}
+		return m_statistics[col];
+	}
+
+	/**
+	 * Determines if the column types reflect the current contents of the
+	 * table
+	 * @return {@code true} if the types are up to date
+	 */
+	public boolean isValid()
+	{
+		return m_valid;
+	}
+
+	/**
+	 * Marks the column types as no longer reflecting the contents of the
+	 * table
+	 */
+	public void invalidate()
+	{
+		m_valid = false;
+	}
+
+	/**
+	 * Updates the column types with the values of a new entry. Nothing is
+	 * done if the schema is invalid, as the types will be computed again
+	 * anyway.
+	 * @param e The entry
+	 */
+	public void update(TableEntry e)
+	{
+		if (!m_valid)
+		{
+			return;
+		}
+		if (m_statistics != null)
+		{
+			for (int i = 0; i < m_layout.size(); i++)
+			{
+				PrimitiveValue v = e.get(m_layout, i);
+				m_statistics[i].add(v);
+				m_numeric[i] |= v != null && v.isNumeric();
+			}
+			return;
+		}
+		for (int i = 0; i < m_layout.size(); i++)
+		{
+			if (!m_numeric[i])
+			{
+				PrimitiveValue v = e.get(m_layout, i);
+				m_numeric[i] = v != null && v.isNumeric();
+			}
+		}
+	}
+
+	/**
+	 * Computes the column types from scratch, and marks the schema as
+	 * valid
+	 * @param entries The entries of the table
+	 */
+	public void rebuild(Collection<TableEntry> entries)
+	{
+		for (int i = 0; i < m_numeric.length; i++)
+		{
+			m_numeric[i] = false;
+			if (m_statistics != null)
+			{
+				m_statistics[i].clear();
+			}
+		}
+		m_valid = true;
+		for (TableEntry e : entries)
+		{
+			update(e);
+		}
+	}
+}
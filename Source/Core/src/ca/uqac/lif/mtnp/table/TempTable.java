@@ -29,6 +29,12 @@ import ca.uqac.lif.petitpoucet.NodeFunction;
  */
 public class TempTable extends HardTable 
 {
+	/**
+	 * A description of where the cells of this table come from, used for
+	 * the cells whose entry carries no dependency. May be {@code null}.
+	 */
+	protected CellLineage m_lineage = null;
+	
 	/**
 	 * Creates a new data table
 	 * @param ordering The ordering of the columns in this table. This array
@@ -59,6 +65,28 @@ public class TempTable extends HardTable
 		m_id = id;
 	}
 	
+	/**
+	 * Sets the lineage of the cells of this table. The dependency of a
+	 * cell is then computed from the lineage when it is requested, unless
+	 * the entry of the cell already carries one.
+	 * @param lineage The lineage
+	 * @return This table
+	 */
+	public TempTable setLineage(CellLineage lineage)
+	{
+		m_lineage = lineage;
+		return this;
+	}
+	
+	/**
+	 * Gets the lineage of the cells of this table
+	 * @return The lineage, or {@code null} if none was set
+	 */
+	public CellLineage getLineage()
+	{
+		return m_lineage;
+	}
+	
 	@Override
 	public final NodeFunction dependsOn(int row, int col)
 	{
@@ -72,7 +100,48 @@ public class TempTable extends HardTable
 			return null;
 		}
 		String col_name = getColumnNames()[col];
-		return ent.getDependency(col_name);
+		NodeFunction nf = ent.getDependency(col_name);
+		if (nf == null && m_lineage != null)
+		{
+			nf = m_lineage.getDependency(row, col);
+		}
+		return nf;
+	}
+	
+	@Override
+	public NodeFunction getDependency(int row, int col)
+	{
+		NodeFunction nf = super.getDependency(row, col);
+		if (nf == null && m_lineage != null && row >= 0 && row < m_entries.size() && col >= 0 && col < getColumnCount())
+		{
+			nf = m_lineage.getDependency(row, col);
+		}
+		return nf;
+	}
+	
+	@Override
+	public TempTable getDataTable(boolean temporary)
+	{
+		TempTable tt = super.getDataTable(temporary);
+		// Same rows and columns: the lineage carries over
+		tt.m_lineage = m_lineage;
+		return tt;
+	}
+	
+	@Override
+	public TempTable getDataTable(boolean link_to_experiments, String ... ordering)
+	{
+		TempTable tt = super.getDataTable(link_to_experiments, ordering);
+		if (m_lineage != null)
+		{
+			int[] columns = new int[ordering.length];
+			for (int i = 0; i < ordering.length; i++)
+			{
+				columns[i] = getColumnPosition(ordering[i]);
+			}
+			tt.m_lineage = new CellMapping(this, null, columns, true);
+		}
+		return tt;
 	}
 	
 }
@@ -17,14 +17,62 @@
  */
 package ca.uqac.lif.mtnp.table;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import ca.uqac.lif.petitpoucet.NodeFunction;
 
 /**
- * Table obtained from applying a transformation to other tables
+ * Table obtained from applying a transformation to other tables.
+ * <p>
+ * By default, the transformations compute the dependencies of every
+ * cell they produce, so that each value of the resulting table can be
+ * explained in terms of the cells it comes from. When no explanation is
+ * needed, this can be turned off with {@link #setProvenance(boolean)}.
+ * The setting then applies to the whole pipeline: the transformations
+ * that produce the input tables, when evaluated to compute this table,
+ * do not compute dependencies either.
+ * <p>
+ * Explaining a cell of this table requires the transformation to be
+ * evaluated. {@link #getDependencies(int[], int[])} evaluates it once
+ * for all the cells it is asked about. When all the input tables are
+ * {@linkplain #isVersioned() versioned}, the table produced for that
+ * purpose is also kept and reused by later calls to
+ * {@link #getDependency(int, int)} and
+ * {@link #getDependencies(int[], int[])}, as long as the
+ * {@linkplain #getVersion() version} of the input tables does not
+ * change. Otherwise, a change to the input tables cannot be detected,
+ * and the transformation is evaluated again on every call.
+ * <p>
+ * When all the input tables are versioned,
+ * the same table is also reused by {@link #getDataTable(boolean)}, so
+ * that a table rendered or plotted several times in a row is only
+ * computed once. Each call still returns a new {@link TempTable} with
+ * its own copy of the entries, so that the caller may modify it without
+ * altering the table kept. The tables kept this way are bounded by a
+ * {@link TableCache}; see {@link #setCache(TableCache)}.
+ * <p>
+ * In {@linkplain #setIncremental(boolean) incremental mode}, when the
+ * only change to the input table since the last evaluation is the
+ * addition of new rows, an {@link IncrementalTransformation} updates the
+ * previous result from the new rows instead of transforming the whole
+ * table again.
  * @author Sylvain Hallé
  */
 public class TransformedTable extends Table 
 {
+	/**
+	 * Whether the transformations evaluated in the current thread compute
+	 * the dependencies of the cells they produce. A {@code null} value
+	 * stands for the default, which is {@code true}.
+	 */
+	protected static final ThreadLocal<Boolean> s_provenance = new ThreadLocal<Boolean>();
+	
+	/**
+	 * Whether this table computes the dependencies of its cells
+	 */
+	protected boolean m_provenance = true;
+	
 	/**
 	 * The tables used as the input for the transformation
 	 */
@@ -35,6 +83,25 @@ public class TransformedTable extends Table
 	 */
 	protected final TableTransformation m_transformation;
 	
+	/**
+	 * The result of the last evaluation of the transformation, or
+	 * {@code null}
+	 */
+	protected volatile Materialization m_materialized = null;
+	
+	/**
+	 * The cache bounding the memory used by the evaluations that are
+	 * kept, or {@code null} to never reuse an evaluation in
+	 * {@link #getDataTable(boolean)}
+	 */
+	protected TableCache m_cache = TableCache.getDefault();
+	
+	/**
+	 * Whether the result of the transformation is updated from the new
+	 * rows of the input table, when possible
+	 */
+	protected boolean m_incremental = false;
+	
 	public TransformedTable(TableTransformation trans, Table ... tables)
 	{
 		super();
@@ -42,18 +109,130 @@ public class TransformedTable extends Table
 		m_inputTables = tables;
 	}
 	
+	/**
+	 * Sets whether this table computes the dependencies of its cells.
+	 * Disabling provenance avoids creating the objects that record where
+	 * each value comes from, which saves time and memory when the
+	 * table is only used for its values.
+	 * @param b Set to {@code false} to disable provenance
+	 * @return This table
+	 */
+	public TransformedTable setProvenance(boolean b)
+	{
+		if (b != m_provenance)
+		{
+			m_provenance = b;
+			modified();
+		}
+		return this;
+	}
+	
+	/**
+	 * Sets the cache bounding the memory used by the evaluation of this
+	 * table that is kept
+	 * @param cache The cache, or {@code null} to evaluate the
+	 *   transformation on every call to {@link #getDataTable(boolean)}
+	 * @return This table
+	 * @since 0.1.14
+	 */
+	public TransformedTable setCache(TableCache cache)
+	{
+		if (m_cache != null)
+		{
+			m_cache.remove(this);
+		}
+		m_cache = cache;
+		m_materialized = null;
+		return this;
+	}
+	
+	/**
+	 * Sets whether the result of the transformation is updated from the
+	 * rows appended to the input table, rather than computed again from
+	 * all the rows. This only has an effect if the transformation is an
+	 * {@link IncrementalTransformation} with a single input table, and if
+	 * the result is kept between evaluations (see
+	 * {@link #setCache(TableCache)}).
+	 * @param b Set to {@code true} to enable the incremental mode
+	 * @return This table
+	 * @since 0.1.14
+	 */
+	public TransformedTable setIncremental(boolean b)
+	{
+		m_incremental = b;
+		return this;
+	}
+	
+	/**
+	 * Determines if the result of the transformation is updated from the
+	 * rows appended to the input table
+	 * @return {@code true} if the incremental mode is enabled
+	 */
+	public boolean isIncremental()
+	{
+		return m_incremental;
+	}
+	
+	/**
+	 * Determines if this table computes the dependencies of its cells
+	 * @return {@code true} if provenance is enabled
+	 */
+	public boolean getProvenance()
+	{
+		return m_provenance;
+	}
+	
+	/**
+	 * Determines if the transformation being evaluated should compute the
+	 * dependencies of the cells it produces. Transformations call this
+	 * method before creating any {@link ca.uqac.lif.petitpoucet.NodeFunction}.
+	 * @return {@code true} if provenance is enabled
+	 */
+	public static boolean isProvenanceEnabled()
+	{
+		Boolean b = s_provenance.get();
+		return b == null || b;
+	}
+	
 	@Override
 	protected TempTable getDataTable(boolean link_to_experiments, String... ordering) 
 	{
-		TempTable[] concrete_tables = new TempTable[m_inputTables.length];
-		for (int i = 0; i < m_inputTables.length; i++)
+		return getDataTable(link_to_experiments);
+	}
+	
+	/**
+	 * Disables provenance for the transformations evaluated in the current
+	 * thread. The setting in effect before must be given back to
+	 * {@link #restoreProvenance(Boolean)} once the evaluation is done,
+	 * typically in a <tt>finally</tt> block.
+	 * @param disable Set to {@code false} to keep the current setting
+	 * @return The setting in effect before the call
+	 */
+	protected static Boolean disableProvenance(boolean disable)
+	{
+		Boolean previous = s_provenance.get();
+		if (disable)
 		{
-			concrete_tables[i] = m_inputTables[i].getDataTable(link_to_experiments);
-			concrete_tables[i].setId(m_inputTables[i].getId());
+			s_provenance.set(Boolean.FALSE);
+		}
+		return previous;
+	}
+	
+	/**
+	 * Restores the provenance setting that was in effect before this table
+	 * was evaluated
+	 * @param previous The previous setting
+	 */
+	protected static void restoreProvenance(Boolean previous)
+	{
+		if (previous == null)
+		{
+			s_provenance.remove();
+		}
+		else
+		{
+			s_provenance.set(previous);
 		}
-		TempTable out = m_transformation.transform(concrete_tables);
-		out.setId(getId());
-		return out;
 	}
 	
 	/**
@@ -69,23 +248,291 @@ public class TransformedTable extends Table
 	@Override
 	public TempTable getDataTable(boolean temporary) 
 	{
-		TempTable[] concrete_tables = new TempTable[m_inputTables.length];
-		for (int i = 0; i < m_inputTables.length; i++)
+		if (m_cache == null || !isVersioned())
+		{
+			return evaluate(temporary);
+		}
+		TempTable kept = materialize(false, temporary);
+		List<TableEntry> entries = new ArrayList<TableEntry>(kept.m_entries.size());
+		for (TableEntry te : kept.m_entries)
 		{
-			concrete_tables[i] = m_inputTables[i].getDataTable(temporary);
-			concrete_tables[i].setId(m_inputTables[i].getId());
+			// Copies of the entries: the caller may modify them
+			TableEntry copy = new TableEntry(te);
+			copy.m_rowIndex = entries.size();
+			entries.add(copy);
+		}
+		TempTable out = new TempTable(getId(), entries, kept.m_preferredOrdering);
+		out.setLineage(kept.getLineage());
+		if (kept.m_schema.hasStatistics())
+		{
+			kept.getSchema();
+		}
+		if (kept.m_schema.isValid())
+		{
+			out.m_schema = kept.m_schema.copy();
 		}
-		TempTable out = m_transformation.transform(concrete_tables);
-		out.setId(getId());
 		return out;
 	}
 	
+	/**
+	 * Gets a cursor reading the rows of this table. The rows are computed
+	 * from the cursors of the input tables by
+	 * {@link RowCursor#stream(TableTransformation, RowCursor...)}: if the
+	 * transformation is a {@link StreamableTransformation}, rows are
+	 * computed as they are read, and no table is created. Otherwise, only
+	 * the inputs of this transformation are read into tables; the tables
+	 * further up the pipeline are still read through their cursors.
+	 * @return The cursor
+	 */
+	@Override
+	public RowCursor getCursor()
+	{
+		RowCursor[] inputs = new RowCursor[m_inputTables.length];
+		for (int i = 0; i < inputs.length; i++)
+		{
+			inputs[i] = m_inputTables[i].getCursor();
+		}
+		return RowCursor.stream(m_transformation, inputs);
+	}
+	
+	/**
+	 * Evaluates the transformation on the current contents of the input
+	 * tables
+	 * @param temporary Set {@code true} to get a temporary data table
+	 * @return The resulting table
+	 */
+	protected TempTable evaluate(boolean temporary)
+	{
+		return evaluate(temporary, null, null);
+	}
+	
+	/**
+	 * Evaluates the transformation on the current contents of the input
+	 * tables, or updates a previous result from the rows appended to the
+	 * input table
+	 * @param temporary Set {@code true} to get a temporary data table
+	 * @param previous The previous evaluation to update, or {@code null}
+	 *   to evaluate the transformation from scratch
+	 * @param inputs If not {@code null}, receives the data table of each
+	 *   input table
+	 * @return The resulting table
+	 */
+	protected TempTable evaluate(boolean temporary, Materialization previous, TempTable[] inputs)
+	{
+		Boolean previous_provenance = disableProvenance(!m_provenance);
+		try
+		{
+			TempTable[] concrete_tables = new TempTable[m_inputTables.length];
+			for (int i = 0; i < m_inputTables.length; i++)
+			{
+				concrete_tables[i] = m_inputTables[i].getDataTable(temporary);
+				concrete_tables[i].setId(m_inputTables[i].getId());
+				if (inputs != null)
+				{
+					inputs[i] = concrete_tables[i];
+				}
+			}
+			TempTable out;
+			if (previous != null && concrete_tables[0].getRowCount() >= previous.m_inputRows)
+			{
+				out = ((IncrementalTransformation) m_transformation).update(previous.m_table.getDataTable(temporary), concrete_tables[0], previous.m_inputRows);
+			}
+			else
+			{
+				out = m_transformation.transform(concrete_tables);
+			}
+			out.setId(getId());
+			return out;
+		}
+		finally
+		{
+			restoreProvenance(previous_provenance);
+		}
+	}
+	
 	@Override
 	public NodeFunction getDependency(int row, int col)
 	{
-		HardTable dt = getDataTable();
+		HardTable dt = getMaterializedTable();
 		return dt.dependsOn(row, col);
 	}
+	
+	@Override
+	public NodeFunction[][] getDependencies(int[] rows, int[] cols)
+	{
+		HardTable dt = getMaterializedTable();
+		NodeFunction[][] deps = new NodeFunction[rows.length][cols.length];
+		for (int i = 0; i < rows.length; i++)
+		{
+			for (int j = 0; j < cols.length; j++)
+			{
+				deps[i][j] = dt.dependsOn(rows[i], cols[j]);
+			}
+		}
+		return deps;
+	}
+	
+	/**
+	 * Gets the version of this table. It changes whenever the version of
+	 * one of the input tables changes.
+	 * @return The version
+	 */
+	@Override
+	public long getVersion()
+	{
+		long version = m_version;
+		for (Table t : m_inputTables)
+		{
+			version += t.getVersion();
+		}
+		return version;
+	}
+	
+	/**
+	 * Gets the version of this table, not counting the rows appended at
+	 * the end. If the transformation is a {@link RowTransformation}, the
+	 * table only grows by appended rows when the input tables do, and this
+	 * version only changes when the edit version of an input table
+	 * changes. Otherwise, any change to the input tables is an edit.
+	 * @return The version
+	 */
+	@Override
+	public long getEditVersion()
+	{
+		if (!(m_transformation instanceof RowTransformation))
+		{
+			return getVersion();
+		}
+		return getInputEditVersion();
+	}
+	
+	/**
+	 * Gets the sum of the edit version of this table and of the input
+	 * tables
+	 * @return The version
+	 */
+	protected long getInputEditVersion()
+	{
+		long version = m_editVersion;
+		for (Table t : m_inputTables)
+		{
+			version += t.getEditVersion();
+		}
+		return version;
+	}
+	
+	/**
+	 * Determines if the version of this table changes whenever its
+	 * contents change. This is the case if all the input tables are
+	 * versioned.
+	 * @return {@code true} if the table is versioned
+	 */
+	@Override
+	public boolean isVersioned()
+	{
+		for (Table t : m_inputTables)
+		{
+			if (!t.isVersioned())
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Discards the evaluation of the transformation that is kept, so
+	 * that it is computed again the next time it is needed. This must be
+	 * called if the transformation itself is modified.
+	 */
+	public void invalidate()
+	{
+		discard();
+		if (m_cache != null)
+		{
+			m_cache.remove(this);
+		}
+		modified();
+	}
+	
+	/**
+	 * Discards the evaluation of the transformation that is kept. This is
+	 * called by the {@link TableCache} when the evaluation is evicted.
+	 */
+	protected void discard()
+	{
+		m_materialized = null;
+	}
+	
+	/**
+	 * Gets the table used to answer dependency queries, evaluating the
+	 * transformation only if the input tables have changed since the last
+	 * call. If the table is not versioned, the transformation is always
+	 * evaluated.
+	 * @return The table
+	 */
+	protected TempTable getMaterializedTable()
+	{
+		return materialize(true, false);
+	}
+	
+	/**
+	 * Gets the result of the evaluation of the transformation, evaluating
+	 * it only if the input tables have changed since the last call. An
+	 * evaluation made without computing dependencies is not reused when
+	 * dependencies are needed. Evaluations are only kept and reused when
+	 * the table is versioned, as a change to the input tables cannot be
+	 * detected otherwise.
+	 * @param keep Set to {@code true} to keep the evaluation even if the
+	 *   cache refuses it
+	 * @param temporary Set {@code true} to evaluate the input tables as
+	 *   temporary data tables
+	 * @return The table
+	 */
+	protected synchronized TempTable materialize(boolean keep, boolean temporary)
+	{
+		long version = getVersion();
+		boolean provenance = m_provenance && isProvenanceEnabled();
+		boolean versioned = isVersioned();
+		Materialization m = versioned ? m_materialized : null;
+		if (m != null && m.m_version == version && (m.m_provenance || !provenance))
+		{
+			if (m_cache != null)
+			{
+				m_cache.touch(this);
+			}
+			return m.m_table;
+		}
+		long edit_version = getInputEditVersion();
+		Materialization previous = null;
+		if (m_incremental && m != null && m.m_editVersion == edit_version && m.m_provenance == provenance
+				&& m_inputTables.length == 1 && m_transformation instanceof IncrementalTransformation)
+		{
+			// Only rows have been appended to the input since the last evaluation
+			previous = m;
+		}
+		TempTable[] inputs = new TempTable[m_inputTables.length];
+		TempTable tt = evaluate(temporary, previous, inputs);
+		long cells = (long) tt.getRowCount() * tt.getColumnCount();
+		if (provenance && tt.getLineage() != null)
+		{
+			// The lineage keeps the input tables alive
+			for (TempTable in : inputs)
+			{
+				cells += (long) in.getRowCount() * in.getColumnCount();
+			}
+		}
+		boolean admitted = m_cache != null && versioned && m_cache.add(this, cells);
+		if (admitted || (keep && versioned))
+		{
+			m_materialized = new Materialization(tt, version, edit_version, provenance, inputs.length == 1 ? inputs[0].getRowCount() : -1);
+		}
+		else
+		{
+			m_materialized = null;
+		}
+		return tt;
+	}
 
 	@Override
 	public void clear()
@@ -106,7 +553,52 @@ public class TransformedTable extends Table
 			tables[i] = m_inputTables[i].duplicate(with_state);
 		}
 		TransformedTable tt = new TransformedTable(m_transformation, tables);
+		tt.m_provenance = m_provenance;
+		tt.m_cache = m_cache;
+		tt.m_incremental = m_incremental;
 		copyInto(tt, with_state);
 		return tt;
 	}
+	
+	/**
+	 * The result of an evaluation of the transformation, along with the
+	 * conditions in which it was computed
+	 */
+	protected static final class Materialization
+	{
+		/**
+		 * The resulting table
+		 */
+		final TempTable m_table;
+		
+		/**
+		 * The version of the transformed table at the time
+		 */
+		final long m_version;
+		
+		/**
+		 * The edit version of the input tables at the time
+		 */
+		final long m_editVersion;
+		
+		/**
+		 * Whether the dependencies of the cells were computed
+		 */
+		final boolean m_provenance;
+		
+		/**
+		 * The number of rows of the input table, if there is a single one
+		 */
+		final int m_inputRows;
+		
+		Materialization(TempTable table, long version, long edit_version, boolean provenance, int input_rows)
+		{
+			super();
+			m_table = table;
+			m_version = version;
+			m_editVersion = edit_version;
+			m_provenance = provenance;
+			m_inputRows = input_rows;
+		}
+	}
 }
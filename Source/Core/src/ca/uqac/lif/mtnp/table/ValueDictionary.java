@@ -0,0 +1,330 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * An association between distinct values and consecutive <tt>int</tt>
+ * codes. Values receive codes 0, 1, 2, ... in the order in which they
+ * are first encoded. A column of values can then be stored as an array of
+ * codes, and rows can be grouped by comparing integers instead of values.
+ * <p>
+ * Two values get the same code if they are equal in the sense of
+ * {@link PrimitiveValue#equals(Object)}; the value kept in the dictionary
+ * is the first one that was encoded. The Java {@code null} reference is
+ * accepted and gets a code like any other value.
+ * @since 0.1.14
+ * @author Sylvain Hallé
+ */
+public class ValueDictionary
+{
+	/**
+	 * The values of the dictionary, indexed by their code
+	 */
+	protected PrimitiveValue[] m_values;
+
+	/**
+	 * The number of values in the dictionary
+	 */
+	protected int m_size;
+
+	/**
+	 * An open-addressing hash table; each slot contains a code plus one,
+	 * or 0 if the slot is empty
+	 */
+	protected int[] m_slots;
+
+	/**
+	 * Creates a new empty dictionary
+	 */
+	public ValueDictionary()
+	{
+		this(16);
+	}
+
+	/**
+	 * Creates a new empty dictionary
+	 * @param capacity The number of values the dictionary can hold before
+	 *   growing
+	 */
+	public ValueDictionary(int capacity)
+	{
+		super();
+		capacity = Math.max(capacity, 4);
+		m_values = new PrimitiveValue[capacity];
+		int slots = Integer.highestOneBit(capacity * 2 - 1) << 1;
+		m_slots = new int[slots];
+		m_size = 0;
+	}
+
+	/**
+	 * Gets the code of a value, adding the value to the dictionary if it
+	 * is not already present
+	 * @param v The value
+	 * @return The code
+	 */
+	public int encode(PrimitiveValue v)
+	{
+		int mask = m_slots.length - 1;
+		int slot = hash(v) & mask;
+		while (true)
+		{
+			int c = m_slots[slot];
+			if (c == 0)
+			{
+				break;
+			}
+			if (same(m_values[c - 1], v))
+			{
+				return c - 1;
+			}
+			slot = (slot + 1) & mask;
+		}
+		int code = m_size;
+		if (code == m_values.length)
+		{
+			m_values = Arrays.copyOf(m_values, code * 2);
+		}
+		m_values[code] = v;
+		m_slots[slot] = code + 1;
+		m_size++;
+		if (m_size * 2 > m_slots.length)
+		{
+			rehash(m_slots.length * 2);
+		}
+		return code;
+	}
+
+	/**
+	 * Gets the code of a value, without adding it to the dictionary
+	 * @param v The value
+	 * @return The code, or -1 if the value is not in the dictionary
+	 */
+	public int getCode(PrimitiveValue v)
+	{
+		int mask = m_slots.length - 1;
+		int slot = hash(v) & mask;
+		while (true)
+		{
+			int c = m_slots[slot];
+			if (c == 0)
+			{
+				return -1;
+			}
+			if (same(m_values[c - 1], v))
+			{
+				return c - 1;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/**
+	 * Gets the value associated to a code
+	 * @param code The code
+	 * @return The value
+	 */
+	public PrimitiveValue decode(int code)
+	{
+		if (code < 0 || code >= m_size)
+		{
+			throw new IndexOutOfBoundsException("No value with code " + code);
+		}
+		return m_values[code];
+	}
+
+	/**
+	 * Gets the number of distinct values in the dictionary
+	 * @return The number of values
+	 */
+	public int size()
+	{
+		return m_size;
+	}
+
+	/**
+	 * Gets the codes of the dictionary, sorted in the ascending order of
+	 * their values. The {@code null} value, if present, comes last.
+	 * @return An array of codes
+	 */
+	public int[] getSortedCodes()
+	{
+		Integer[] codes = new Integer[m_size];
+		for (int i = 0; i < m_size; i++)
+		{
+			codes[i] = i;
+		}
+		Arrays.sort(codes, new Comparator<Integer>()
+		{
+			@Override
+			public int compare(Integer c1, Integer c2)
+			{
+				PrimitiveValue v1 = m_values[c1];
+				PrimitiveValue v2 = m_values[c2];
+				if (v1 == null)
+				{
+					return v2 == null ? 0 : 1;
+				}
+				if (v2 == null)
+				{
+					return -1;
+				}
+				return v1.compareTo(v2);
+			}
+		});
+		int[] sorted = new int[m_size];
+		for (int i = 0; i < m_size; i++)
+		{
+			sorted[i] = codes[i];
+		}
+		return sorted;
+	}
+
+	/**
+	 * Creates a copy of this dictionary. Encoding values in the copy does
+	 * not affect this dictionary.
+	 * @return The copy
+	 */
+	public ValueDictionary copy()
+	{
+		ValueDictionary d = new ValueDictionary(0);
+		d.m_values = Arrays.copyOf(m_values, Math.max(m_size, 4));
+		d.m_slots = m_slots.clone();
+		d.m_size = m_size;
+		return d;
+	}
+
+	/**
+	 * Resizes the hash table and inserts all the values again
+	 * @param length The new number of slots
+	 */
+	protected void rehash(int length)
+	{
+		int[] slots = new int[length];
+		int mask = length - 1;
+		for (int code = 0; code < m_size; code++)
+		{
+			int slot = hash(m_values[code]) & mask;
+			while (slots[slot] != 0)
+			{
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = code + 1;
+		}
+		m_slots = slots;
+	}
+
+	/**
+	 * Computes the hash of a value, spreading the high bits so that
+	 * values with close hash codes do not fall into adjacent slots
+	 * @param v The value
+	 * @return The hash
+	 */
+	protected static int hash(PrimitiveValue v)
+	{
+		if (v == null)
+		{
+			return 0;
+		}
+		int h = v.hashCode() * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Determines if two values should receive the same code
+	 * @param v1 The first value
+	 * @param v2 The second value
+	 * @return {@code true} if the values are equal
+	 */
+	protected static boolean same(PrimitiveValue v1, PrimitiveValue v2)
+	{
+		if (v1 == v2)
+		{
+			return true;
+		}
+		return v1 != null && v2 != null && v1.equals(v2);
+	}
+
+	/**
+	 * A tuple of codes, used as a key to group rows on more than one
+	 * column at a time
+	 */
+	public static final class Tuple
+	{
+		/**
+		 * The codes
+		 */
+		protected final int[] m_codes;
+
+		/**
+		 * The hash code of the tuple, computed once
+		 */
+		protected final int m_hash;
+
+		/**
+		 * Creates a new tuple
+		 * @param codes The codes. The array is not copied and should not
+		 *   be modified afterwards.
+		 */
+		public Tuple(int ... codes)
+		{
+			super();
+			m_codes = codes;
+			m_hash = Arrays.hashCode(codes);
+		}
+
+		/**
+		 * Gets the code at a given position in the tuple
+		 * @param i The position
+		 * @return The code
+		 */
+		public int get(int i)
+		{
+			return m_codes[i];
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return m_hash;
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if (o == this)
+			{
+				return true;
+			}
+			if (!(o instanceof Tuple))
+			{
+				return false;
+			}
+			Tuple t = (Tuple) o;
+			return m_hash == t.m_hash && Arrays.equals(m_codes, t.m_codes);
+		}
+
+		@Override
+		public String toString()
+		{
+			return Arrays.toString(m_codes);
+		}
+	}
+}
@@ -0,0 +1,144 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table.io;
+
+/**
+ * Constants describing the binary format used to store tables. A file in
+ * this format is made of a header, followed by one block per column:
+ * <pre>
+ * header:
+ *   int     magic number ("MTNP")
+ *   int     format version
+ *   int     number of rows
+ *   int     number of columns
+ *   for each column:
+ *     int   length of the column's name
+ *     byte[] name, encoded in UTF-8
+ *     byte  type of the column
+ *     long  position of the column's block in the file
+ *     long  length of the column's block
+ * </pre>
+ * Each block starts at a multiple of 8 bytes, and begins with a bitmap
+ * of one bit per row, padded to a multiple of 64 bits, where a set bit
+ * indicates a missing value. The rest of the block depends on the type
+ * of the column:
+ * <ul>
+ * <li>{@link #TYPE_LONG}: one <tt>long</tt> per row</li>
+ * <li>{@link #TYPE_DOUBLE}: a second bitmap indicating which values
+ *   are integers, a <tt>long</tt> equal to 1 if the other values are
+ *   single-precision, and one <tt>double</tt> per row</li>
+ * <li>{@link #TYPE_DICTIONARY}: the number of distinct values, the
+ *   length in bytes of the dictionary, the dictionary itself (each
+ *   value being a tag byte followed by its contents), padding to a
+ *   multiple of 4 bytes, and one <tt>int</tt> per row giving the index
+ *   of the row's value in the dictionary</li>
+ * </ul>
+ * All numbers are written in big-endian order.
+ * @since 0.1.14
+ * @author Sylvain Hallé
+ */
+public final class BinaryTableFormat
+{
+	/**
+	 * The magic number at the start of every file ("MTNP")
+	 */
+	public static final int MAGIC = 0x4D544E50;
+
+	/**
+	 * The version of the format written by this library
+	 */
+	public static final int VERSION = 1;
+
+	/**
+	 * A column of integers
+	 */
+	public static final byte TYPE_LONG = 1;
+
+	/**
+	 * A column of numbers, some of which may be integers
+	 */
+	public static final byte TYPE_DOUBLE = 2;
+
+	/**
+	 * A column of dictionary-encoded values
+	 */
+	public static final byte TYPE_DICTIONARY = 3;
+
+	/**
+	 * Tag of an integer in a dictionary, followed by a <tt>long</tt>
+	 */
+	public static final byte TAG_LONG = 1;
+
+	/**
+	 * Tag of a double in a dictionary, followed by a <tt>double</tt>
+	 */
+	public static final byte TAG_DOUBLE = 2;
+
+	/**
+	 * Tag of a float in a dictionary, followed by a <tt>float</tt>
+	 */
+	public static final byte TAG_FLOAT = 3;
+
+	/**
+	 * Tag of the Boolean <tt>true</tt> in a dictionary
+	 */
+	public static final byte TAG_TRUE = 4;
+
+	/**
+	 * Tag of the Boolean <tt>false</tt> in a dictionary
+	 */
+	public static final byte TAG_FALSE = 5;
+
+	/**
+	 * Tag of a string in a dictionary, followed by its length in bytes
+	 * and its UTF-8 encoding
+	 */
+	public static final byte TAG_STRING = 6;
+
+	/**
+	 * Tag of a missing value, used in the temporary files of an
+	 * {@link ExternalSorter}
+	 */
+	public static final byte TAG_NULL = 7;
+
+	private BinaryTableFormat()
+	{
+		super();
+	}
+
+	/**
+	 * Gets the number of 64-bit words in a bitmap
+	 * @param rows The number of rows
+	 * @return The number of words
+	 */
+	static int bitmapWords(int rows)
+	{
+		return (rows + 63) >>> 6;
+	}
+
+	/**
+	 * Rounds a position up to a multiple of a power of 2
+	 * @param pos The position
+	 * @param alignment The power of 2
+	 * @return The rounded position
+	 */
+	static long align(long pos, int alignment)
+	{
+		return (pos + alignment - 1) & ~((long) alignment - 1);
+	}
+}
@@ -0,0 +1,128 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table.io;
+
+import static ca.uqac.lif.mtnp.table.io.BinaryTableFormat.*;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Loads tables written by {@link BinaryTableWriter}. Only the header of
+ * the file is read; the block of each column is memory-mapped, and its
+ * contents are read from disk as values are accessed.
+ * @since 0.1.14
+ * @author Sylvain Hallé
+ */
+public class BinaryTableReader
+{
+	/**
+	 * Creates a new reader
+	 */
+	public BinaryTableReader()
+	{
+		super();
+	}
+
+	/**
+	 * Loads a table from a file
+	 * @param f The file
+	 * @return The table
+	 * @throws IOException If the file cannot be read, or is not in the
+	 *   expected format
+	 */
+	public MappedTable read(File f) throws IOException
+	{
+		String[] names;
+		byte[] types;
+		long[] offsets, lengths;
+		int rows;
+		DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+		try
+		{
+			if (dis.readInt() != MAGIC)
+			{
+				throw new IOException("Not a table file: " + f);
+			}
+			int version = dis.readInt();
+			if (version > VERSION)
+			{
+				throw new IOException("Unsupported table file version " + version + ": " + f);
+			}
+			rows = dis.readInt();
+			int cols = dis.readInt();
+			names = new String[cols];
+			types = new byte[cols];
+			offsets = new long[cols];
+			lengths = new long[cols];
+			for (int i = 0; i < cols; i++)
+			{
+				byte[] name = new byte[dis.readInt()];
+				dis.readFully(name);
+				names[i] = new String(name, BinaryTableWriter.s_utf8);
+				types[i] = dis.readByte();
+				offsets[i] = dis.readLong();
+				lengths[i] = dis.readLong();
+			}
+		}
+		finally
+		{
+			dis.close();
+		}
+		MappedTable.MappedColumn[] columns = new MappedTable.MappedColumn[names.length];
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		try
+		{
+			// Mappings remain valid once the channel is closed
+			FileChannel channel = raf.getChannel();
+			long size = channel.size();
+			for (int i = 0; i < names.length; i++)
+			{
+				if (offsets[i] < 0 || lengths[i] < 0 || offsets[i] + lengths[i] > size)
+				{
+					throw new IOException("Truncated table file: " + f);
+				}
+				ByteBuffer bb;
+				if (lengths[i] == 0)
+				{
+					bb = ByteBuffer.allocate(0);
+				}
+				else
+				{
+					bb = channel.map(FileChannel.MapMode.READ_ONLY, offsets[i], lengths[i]);
+				}
+				columns[i] = MappedTable.MappedColumn.create(types[i], bb, rows);
+				if (columns[i] == null)
+				{
+					throw new IOException("Unknown column type " + types[i] + ": " + f);
+				}
+			}
+		}
+		finally
+		{
+			raf.close();
+		}
+		return new MappedTable(names, rows, columns);
+	}
+}
@@ -0,0 +1,372 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table.io;
+
+import static ca.uqac.lif.mtnp.table.io.BinaryTableFormat.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.uqac.lif.mtnp.table.PrimitiveValue;
+import ca.uqac.lif.mtnp.table.Table;
+import ca.uqac.lif.mtnp.table.TempTable;
+
+/**
+ * Writes the contents of a table to a file, in the binary format
+ * described in {@link BinaryTableFormat}. Such a file can then be
+ * loaded with {@link BinaryTableReader}, without having to parse its
+ * contents again.
+ * <p>
+ * The type of each column is chosen from its values: a column of
+ * integers is written as <tt>long</tt>s, a column of numbers as
+ * <tt>double</tt>s, and any other column (strings, Booleans, or a
+ * mix of values of different kinds) is dictionary-encoded.
+ * @since 0.1.14
+ * @author Sylvain Hallé
+ */
+public class BinaryTableWriter
+{
+	/**
+	 * The character set used to encode text
+	 */
+	protected static final Charset s_utf8 = Charset.forName("UTF-8");
+
+	/**
+	 * The largest integer that can be stored exactly in a double
+	 */
+	protected static final long s_maxExactLong = 1L << 53;
+
+	/**
+	 * Creates a new writer
+	 */
+	public BinaryTableWriter()
+	{
+		super();
+	}
+
+	/**
+	 * Writes a table to a file. If the file exists, it is overwritten.
+	 * @param t The table
+	 * @param f The file
+	 * @throws IOException If the file cannot be written
+	 */
+	public void write(Table t, File f) throws IOException
+	{
+		TempTable tt = t.getDataTable();
+		String[] names = tt.getColumnNames();
+		int rows = tt.getRowCount();
+		byte[][] encoded_names = new byte[names.length][];
+		long header_size = 16;
+		for (int i = 0; i < names.length; i++)
+		{
+			encoded_names[i] = names[i].getBytes(s_utf8);
+			header_size += 4 + encoded_names[i].length + 1 + 8 + 8;
+		}
+		RandomAccessFile raf = new RandomAccessFile(f, "rw");
+		try
+		{
+			raf.setLength(0);
+			FileChannel channel = raf.getChannel();
+			byte[] types = new byte[names.length];
+			long[] offsets = new long[names.length];
+			long[] lengths = new long[names.length];
+			long pos = align(header_size, 8);
+			for (int col = 0; col < names.length; col++)
+			{
+				PrimitiveValue[] values = new PrimitiveValue[rows];
+				for (int row = 0; row < rows; row++)
+				{
+					PrimitiveValue v = tt.get(col, row);
+					values[row] = v == null || v.isNull() ? null : v;
+				}
+				types[col] = getType(values);
+				ByteBuffer block = encodeColumn(types[col], values);
+				offsets[col] = pos;
+				lengths[col] = block.limit();
+				writeFully(channel, block, pos);
+				pos = align(pos + lengths[col], 8);
+			}
+			if (raf.length() < pos)
+			{
+				// Empty blocks at the end must still lie within the file
+				raf.setLength(pos);
+			}
+			ByteBuffer header = ByteBuffer.allocate((int) header_size);
+			header.putInt(MAGIC).putInt(VERSION).putInt(rows).putInt(names.length);
+			for (int col = 0; col < names.length; col++)
+			{
+				header.putInt(encoded_names[col].length).put(encoded_names[col]);
+				header.put(types[col]).putLong(offsets[col]).putLong(lengths[col]);
+			}
+			header.flip();
+			writeFully(channel, header, 0);
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	/**
+	 * Writes a buffer to a channel at a given position
+	 * @param channel The channel
+	 * @param buffer The buffer
+	 * @param pos The position
+	 * @throws IOException If the buffer cannot be written
+	 */
+	protected static void writeFully(FileChannel channel, ByteBuffer buffer, long pos) throws IOException
+	{
+		while (buffer.hasRemaining())
+		{
+			pos += channel.write(buffer, pos);
+		}
+	}
+
+	/**
+	 * Chooses the type of a column from its values
+	 * @param values The values; missing values are {@code null}
+	 * @return The type
+	 */
+	protected static byte getType(PrimitiveValue[] values)
+	{
+		boolean all_integral = true, large_integer = false;
+		for (PrimitiveValue v : values)
+		{
+			if (v == null)
+			{
+				continue;
+			}
+			if (!v.isNumeric())
+			{
+				return TYPE_DICTIONARY;
+			}
+			if (v.isIntegral())
+			{
+				long l = v.longValue();
+				large_integer |= l > s_maxExactLong || l < -s_maxExactLong;
+			}
+			else
+			{
+				all_integral = false;
+			}
+		}
+		if (all_integral)
+		{
+			return TYPE_LONG;
+		}
+		// Large integers would not survive a conversion to double
+		return large_integer ? TYPE_DICTIONARY : TYPE_DOUBLE;
+	}
+
+	/**
+	 * Encodes the block of a column
+	 * @param type The type of the column
+	 * @param values The values; missing values are {@code null}
+	 * @return A buffer with the contents of the block, ready to be read
+	 */
+	protected static ByteBuffer encodeColumn(byte type, PrimitiveValue[] values)
+	{
+		int rows = values.length;
+		int words = bitmapWords(rows);
+		long[] nulls = new long[words];
+		for (int i = 0; i < rows; i++)
+		{
+			if (values[i] == null)
+			{
+				nulls[i >>> 6] |= 1L << i;
+			}
+		}
+		ByteBuffer bb;
+		switch (type)
+		{
+		case TYPE_LONG:
+		{
+			bb = ByteBuffer.allocate(8 * words + 8 * rows);
+			putLongs(bb, nulls);
+			for (PrimitiveValue v : values)
+			{
+				bb.putLong(v == null ? 0 : v.longValue());
+			}
+			break;
+		}
+		case TYPE_DOUBLE:
+		{
+			long[] integral = new long[words];
+			boolean all_float = true;
+			for (int i = 0; i < rows; i++)
+			{
+				PrimitiveValue v = values[i];
+				if (v == null)
+				{
+					continue;
+				}
+				if (v.isIntegral())
+				{
+					integral[i >>> 6] |= 1L << i;
+				}
+				else if (!(v.numberValue() instanceof Float))
+				{
+					all_float = false;
+				}
+			}
+			bb = ByteBuffer.allocate(16 * words + 8 + 8 * rows);
+			putLongs(bb, nulls);
+			putLongs(bb, integral);
+			bb.putLong(all_float ? 1 : 0);
+			for (PrimitiveValue v : values)
+			{
+				bb.putDouble(v == null ? 0 : v.doubleValue());
+			}
+			break;
+		}
+		default:
+		{
+			Map<Object,Integer> codes = new HashMap<Object,Integer>();
+			List<PrimitiveValue> dictionary = new ArrayList<PrimitiveValue>();
+			int[] row_codes = new int[rows];
+			for (int i = 0; i < rows; i++)
+			{
+				PrimitiveValue v = values[i];
+				if (v == null)
+				{
+					continue;
+				}
+				Object key = getKey(v);
+				Integer code = codes.get(key);
+				if (code == null)
+				{
+					code = dictionary.size();
+					codes.put(key, code);
+					dictionary.add(v);
+				}
+				row_codes[i] = code;
+			}
+			byte[] dict_bytes = encodeDictionary(dictionary);
+			int codes_start = (int) align(8 * words + 8 + dict_bytes.length, 4);
+			bb = ByteBuffer.allocate(codes_start + 4 * rows);
+			putLongs(bb, nulls);
+			bb.putInt(dictionary.size()).putInt(dict_bytes.length).put(dict_bytes);
+			bb.position(codes_start);
+			for (int code : row_codes)
+			{
+				bb.putInt(code);
+			}
+		}
+		}
+		bb.flip();
+		return bb;
+	}
+
+	/**
+	 * Gets the key identifying a value in a dictionary. Values of different
+	 * kinds (for example the Boolean <tt>true</tt> and the string
+	 * "true") get different keys, even if they are equal as primitive
+	 * values.
+	 * @param v The value
+	 * @return The key
+	 */
+	protected static Object getKey(PrimitiveValue v)
+	{
+		if (v.isBoolean())
+		{
+			return v.booleanValue();
+		}
+		if (v.isNumeric())
+		{
+			return v.numberValue();
+		}
+		return v.stringValue();
+	}
+
+	/**
+	 * Encodes the values of a dictionary
+	 * @param dictionary The values
+	 * @return The encoded values
+	 */
+	protected static byte[] encodeDictionary(List<PrimitiveValue> dictionary)
+	{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		DataOutputStream dos = new DataOutputStream(baos);
+		try
+		{
+			for (PrimitiveValue v : dictionary)
+			{
+				if (v.isBoolean())
+				{
+					dos.writeByte(v.booleanValue() ? TAG_TRUE : TAG_FALSE);
+				}
+				else if (v.isIntegral())
+				{
+					dos.writeByte(TAG_LONG);
+					dos.writeLong(v.longValue());
+				}
+				else if (v.isNumeric())
+				{
+					Number n = v.numberValue();
+					if (n instanceof Float)
+					{
+						dos.writeByte(TAG_FLOAT);
+						dos.writeFloat(n.floatValue());
+					}
+					else
+					{
+						dos.writeByte(TAG_DOUBLE);
+						dos.writeDouble(n.doubleValue());
+					}
+				}
+				else
+				{
+					byte[] bytes = v.stringValue().getBytes(s_utf8);
+					dos.writeByte(TAG_STRING);
+					dos.writeInt(bytes.length);
+					dos.write(bytes);
+				}
+			}
+			dos.flush();
+		}
+		catch (IOException e)
+		{
+			// Cannot happen when writing to memory
+			throw new IllegalStateException(e);
+		}
+		return baos.toByteArray();
+	}
+
+	/**
+	 * Writes an array of <tt>long</tt>s to a buffer
+	 * @param bb The buffer
+	 * @param values The array
+	 */
+	protected static void putLongs(ByteBuffer bb, long[] values)
+	{
+		for (long l : values)
+		{
+			bb.putLong(l);
+		}
+	}
+}
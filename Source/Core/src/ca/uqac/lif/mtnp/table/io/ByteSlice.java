@@ -0,0 +1,96 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table.io;
+
+/**
+ * A view of a portion of a byte array as a sequence of characters, where
+ * each byte is one character. This is only meaningful for ASCII text;
+ * it is used to look for numbers in raw file contents without first
+ * decoding them into strings.
+ * @since 0.1.14
+ * @author Sylvain Hallé
+ */
+class ByteSlice implements CharSequence
+{
+	/**
+	 * The array of bytes
+	 */
+	protected byte[] m_bytes;
+
+	/**
+	 * The position of the first byte of the slice
+	 */
+	protected int m_start;
+
+	/**
+	 * The number of bytes in the slice
+	 */
+	protected int m_length;
+
+	/**
+	 * Creates a new empty slice
+	 */
+	public ByteSlice()
+	{
+		super();
+	}
+
+	/**
+	 * Makes this slice point to a portion of a byte array
+	 * @param bytes The array
+	 * @param start The position of the first byte
+	 * @param end The position after the last byte
+	 * @return This slice
+	 */
+	public ByteSlice set(byte[] bytes, int start, int end)
+	{
+		m_bytes = bytes;
+		m_start = start;
+		m_length = end - start;
+		return this;
+	}
+
+	@Override
+	public int length()
+	{
+		return m_length;
+	}
+
+	@Override
+	public char charAt(int index)
+	{
+		return (char) (m_bytes[m_start + index] & 0xff);
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end)
+	{
+		return new ByteSlice().set(m_bytes, m_start + start, m_start + end);
+	}
+
+	@Override
+	public String toString()
+	{
+		char[] chars = new char[m_length];
+		for (int i = 0; i < m_length; i++)
+		{
+			chars[i] = charAt(i);
+		}
+		return new String(chars);
+	}
+}
@@ -0,0 +1,1081 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ca.uqac.lif.mtnp.table.ColumnarTable;
+import ca.uqac.lif.mtnp.table.HardTable;
+import ca.uqac.lif.mtnp.table.PrimitiveValue;
+import ca.uqac.lif.mtnp.table.RowSchema;
+import ca.uqac.lif.mtnp.table.TableEntry;
+import ca.uqac.lif.mtnp.util.NumberParser;
+
+/**
+ * Reads tables from CSV (or TSV) files. Contrary to
+ * {@link HardTable#read(java.util.Scanner, String)}, the reader works
+ * directly on the bytes of the file: the file is memory-mapped
+ * one chunk at a time, chunks are cut at line boundaries and parsed in
+ * parallel, and numbers are recognized without first creating a string
+ * for each cell. Rows are then passed, in file order, to a
+ * {@link RowHandler}, or loaded into a {@link HardTable} or a
+ * {@link ColumnarTable}.
+ * <p>
+ * The reader understands the following syntax:
+ * <ul>
+ * <li>The first non-empty line gives the names of the columns, unless
+ *   the reader is told otherwise with {@link #setHeader(boolean)}</li>
+ * <li>Empty lines, and lines starting with <tt>#</tt>, are ignored</li>
+ * <li>Fields can be enclosed in double quotes; a quoted field can
+ *   contain separators and line breaks, and a double quote is written
+ *   as two double quotes</li>
+ * <li>Lines can end with <tt>\n</tt> or <tt>\r\n</tt>; text is
+ *   decoded as UTF-8</li>
+ * </ul>
+ * Values are interpreted as in {@link PrimitiveValue#getInstance(String)}.
+ * Chunks are cut by counting quotes, so quotes must be balanced
+ * throughout the file, including in comments.
+ * A row with fewer fields than there are columns has no value for the
+ * remaining columns; fields beyond the last column are ignored. An
+ * empty field is a missing value, while an empty quoted field
+ * (<tt>""</tt>) is the empty string.
+ * <p>
+ * While reading, the reader also infers the type of each column, which
+ * can be retrieved with {@link #getColumnKinds()}. When loading into a
+ * {@link ColumnarTable}, these types are used to create its columns.
+ * @since 0.1.14
+ * @author Sylvain Hallé
+ */
+public class CsvReader
+{
+	/**
+	 * The character set used to decode text
+	 */
+	protected static final Charset s_utf8 = Charset.forName("UTF-8");
+	
+	/**
+	 * The size of the windows used to look for line boundaries
+	 */
+	protected static final int s_windowSize = 64 * 1024;
+	
+	/**
+	 * The symbol separating fields
+	 */
+	protected byte m_separator = ',';
+	
+	/**
+	 * The symbol used to quote fields
+	 */
+	protected byte m_quote = '"';
+	
+	/**
+	 * The symbol starting a comment line
+	 */
+	protected byte m_comment = '#';
+	
+	/**
+	 * Whether the first line contains the names of the columns
+	 */
+	protected boolean m_header = true;
+	
+	/**
+	 * The names of the columns, if the file has no header
+	 */
+	protected String[] m_columnNames = null;
+	
+	/**
+	 * The number of threads used to parse chunks
+	 */
+	protected int m_numThreads = Runtime.getRuntime().availableProcessors();
+	
+	/**
+	 * The approximate size of a chunk, in bytes
+	 */
+	protected int m_chunkSize = 16 * 1024 * 1024;
+	
+	/**
+	 * The kind of values found in each column during the last read
+	 */
+	protected int[] m_columnKinds = new int[0];
+	
+	/**
+	 * Receives the rows of a file, in order
+	 */
+	public static interface RowHandler
+	{
+		/**
+		 * Called once, before any row, with the names of the columns
+		 * @param names The names
+		 */
+		public void handleHeader(String[] names);
+		
+		/**
+		 * Called for each row of the file
+		 * @param values The values of the row, in the order of the columns.
+		 *   A {@code null} element indicates that the row has no value for
+		 *   that column.
+		 */
+		public void handleRow(PrimitiveValue[] values);
+	}
+	
+	/**
+	 * Creates a new CSV reader with default settings
+	 */
+	public CsvReader()
+	{
+		super();
+	}
+	
+	/**
+	 * Sets the symbol separating fields
+	 * @param separator The symbol; it must be an ASCII character
+	 * @return This reader
+	 */
+	public CsvReader setSeparator(char separator)
+	{
+		m_separator = (byte) separator;
+		return this;
+	}
+	
+	/**
+	 * Sets the symbol used to quote fields
+	 * @param quote The symbol; it must be an ASCII character
+	 * @return This reader
+	 */
+	public CsvReader setQuote(char quote)
+	{
+		m_quote = (byte) quote;
+		return this;
+	}
+	
+	/**
+	 * Sets whether the first line of the file contains the names of the
+	 * columns
+	 * @param b {@code true} if the file has a header line
+	 * @return This reader
+	 */
+	public CsvReader setHeader(boolean b)
+	{
+		m_header = b;
+		return this;
+	}
+	
+	/**
+	 * Sets the names of the columns, for a file that has no header line.
+	 * Calling this method implies {@code setHeader(false)}.
+	 * @param names The names
+	 * @return This reader
+	 */
+	public CsvReader setColumnNames(String ... names)
+	{
+		m_columnNames = names;
+		m_header = false;
+		return this;
+	}
+	
+	/**
+	 * Sets the number of threads used to parse the file
+	 * @param n The number of threads; 1 parses the file in the
+	 *   calling thread
+	 * @return This reader
+	 */
+	public CsvReader setThreads(int n)
+	{
+		m_numThreads = Math.max(1, n);
+		return this;
+	}
+	
+	/**
+	 * Sets the approximate size of the chunks in which the file is cut
+	 * @param size The size, in bytes
+	 * @return This reader
+	 */
+	public CsvReader setChunkSize(int size)
+	{
+		m_chunkSize = Math.max(1, size);
+		return this;
+	}
+	
+	/**
+	 * Gets the kind of values found in each column during the last read.
+	 * The kind of a column is the most general kind among its values, in
+	 * the order {@link NumberParser#INT}, {@link NumberParser#LONG},
+	 * {@link NumberParser#DECIMAL} and {@link NumberParser#TEXT}.
+	 * Missing values are not taken into account; a column containing only
+	 * missing values is of kind -1.
+	 * @return An array with the kind of each column
+	 */
+	public int[] getColumnKinds()
+	{
+		return m_columnKinds;
+	}
+	
+	/**
+	 * Reads a file into a {@link HardTable}
+	 * @param f The file
+	 * @return The table
+	 * @throws IOException If the file cannot be read
+	 */
+	public HardTable readHardTable(File f) throws IOException
+	{
+		HardTableLoader loader = new HardTableLoader();
+		read(f, loader);
+		return loader.m_table;
+	}
+	
+	/**
+	 * Reads CSV contents into a {@link HardTable}
+	 * @param contents The contents
+	 * @return The table
+	 * @throws IOException If the contents cannot be parsed
+	 */
+	public HardTable readHardTable(byte[] contents) throws IOException
+	{
+		HardTableLoader loader = new HardTableLoader();
+		read(contents, loader);
+		return loader.m_table;
+	}
+	
+	/**
+	 * Reads a file into a {@link ColumnarTable}
+	 * @param f The file
+	 * @return The table
+	 * @throws IOException If the file cannot be read
+	 */
+	public ColumnarTable readColumnarTable(File f) throws IOException
+	{
+		ColumnarTableLoader loader = new ColumnarTableLoader();
+		read(f, loader);
+		return loader.m_table;
+	}
+	
+	/**
+	 * Reads CSV contents into a {@link ColumnarTable}
+	 * @param contents The contents
+	 * @return The table
+	 * @throws IOException If the contents cannot be parsed
+	 */
+	public ColumnarTable readColumnarTable(byte[] contents) throws IOException
+	{
+		ColumnarTableLoader loader = new ColumnarTableLoader();
+		read(contents, loader);
+		return loader.m_table;
+	}
+	
+	/**
+	 * Reads a file and passes its rows to a handler
+	 * @param f The file
+	 * @param handler The handler
+	 * @throws IOException If the file cannot be read
+	 */
+	public void read(File f, RowHandler handler) throws IOException
+	{
+		FileInputStream fis = new FileInputStream(f);
+		try
+		{
+			read(new FileSource(fis.getChannel()), handler);
+		}
+		finally
+		{
+			fis.close();
+		}
+	}
+	
+	/**
+	 * Reads CSV contents and passes its rows to a handler
+	 * @param contents The contents
+	 * @param handler The handler
+	 * @throws IOException If the contents cannot be parsed
+	 */
+	public void read(byte[] contents, RowHandler handler) throws IOException
+	{
+		read(new ArraySource(contents), handler);
+	}
+	
+	/**
+	 * Reads CSV contents from a stream and passes its rows to a handler.
+	 * The stream is read completely before being parsed; use
+	 * {@link #read(File, RowHandler)} for large files.
+	 * @param is The stream
+	 * @param handler The handler
+	 * @throws IOException If the stream cannot be read
+	 */
+	public void read(InputStream is, RowHandler handler) throws IOException
+	{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int len;
+		while ((len = is.read(buffer)) != -1)
+		{
+			baos.write(buffer, 0, len);
+		}
+		read(baos.toByteArray(), handler);
+	}
+	
+	/**
+	 * Reads CSV contents and passes its rows to a handler
+	 * @param src The source of the contents
+	 * @param handler The handler
+	 * @throws IOException If the contents cannot be read
+	 */
+	protected void read(Source src, RowHandler handler) throws IOException
+	{
+		long size = src.size();
+		String[] names;
+		long start = 0;
+		if (m_header)
+		{
+			HeaderParser hp = new HeaderParser();
+			start = hp.parseHeader(src);
+			names = hp.getNames();
+		}
+		else
+		{
+			names = m_columnNames == null ? new String[0] : m_columnNames;
+		}
+		handler.handleHeader(names);
+		m_columnKinds = new int[names.length];
+		for (int i = 0; i < names.length; i++)
+		{
+			m_columnKinds[i] = -1;
+		}
+		if (start >= size)
+		{
+			return;
+		}
+		long[] bounds = getChunkBoundaries(src, start, size);
+		int num_chunks = bounds.length - 1;
+		if (m_numThreads <= 1 || num_chunks <= 1)
+		{
+			for (int i = 0; i < num_chunks; i++)
+			{
+				ChunkTask task = new ChunkTask(src, bounds[i], bounds[i + 1], names.length);
+				deliver(task.call(), handler);
+			}
+			return;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(m_numThreads, num_chunks));
+		try
+		{
+			// Keep a bounded number of chunks in flight, and deliver them in order
+			LinkedList<Future<ParsedChunk>> in_flight = new LinkedList<Future<ParsedChunk>>();
+			int next = 0;
+			while (next < num_chunks || !in_flight.isEmpty())
+			{
+				while (next < num_chunks && in_flight.size() < 2 * m_numThreads)
+				{
+					in_flight.add(executor.submit(new ChunkTask(src, bounds[next], bounds[next + 1], names.length)));
+					next++;
+				}
+				deliver(in_flight.removeFirst().get(), handler);
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while reading", e);
+		}
+		catch (ExecutionException e)
+		{
+			throw new IOException("Error while parsing", e.getCause());
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Merges the kinds of the columns of a parsed chunk with those found
+	 * so far, and passes its rows to a handler. A columnar table is told
+	 * about the kinds before it receives the rows, so that each of its
+	 * columns is created with the right type instead of being promoted
+	 * as the values come in.
+	 * @param chunk The chunk
+	 * @param handler The handler
+	 */
+	protected void deliver(ParsedChunk chunk, RowHandler handler)
+	{
+		for (int i = 0; i < m_columnKinds.length; i++)
+		{
+			m_columnKinds[i] = Math.max(m_columnKinds[i], chunk.m_kinds[i]);
+		}
+		if (handler instanceof ColumnarTableLoader)
+		{
+			((ColumnarTableLoader) handler).handleKinds(m_columnKinds);
+		}
+		for (PrimitiveValue[] row : chunk.m_rows)
+		{
+			handler.handleRow(row);
+		}
+	}
+	
+	/**
+	 * Cuts a portion of the contents into chunks that end at line
+	 * boundaries. Since a quoted field may span multiple lines, the
+	 * number of quotes in each chunk is first counted, so that a line
+	 * break inside a quoted field is not taken as a boundary.
+	 * @param src The source of the contents
+	 * @param start The position where to start
+	 * @param end The position where to end
+	 * @return An array with the boundaries of the chunks; chunk <i>i</i>
+	 *   goes from element <i>i</i> to element <i>i</i>+1
+	 * @throws IOException If the contents cannot be read
+	 */
+	protected long[] getChunkBoundaries(Source src, long start, long end) throws IOException
+	{
+		int num_chunks = (int) Math.max(1, (end - start + m_chunkSize - 1) / m_chunkSize);
+		long[] bounds = new long[num_chunks + 1];
+		bounds[0] = start;
+		bounds[num_chunks] = end;
+		if (num_chunks == 1)
+		{
+			return bounds;
+		}
+		boolean inside_quotes = false;
+		for (int i = 1; i < num_chunks; i++)
+		{
+			long raw_start = start + (long) (i - 1) * m_chunkSize;
+			long raw_end = raw_start + m_chunkSize;
+			if (src.countQuotes(raw_start, (int) (raw_end - raw_start), m_quote) % 2 == 1)
+			{
+				inside_quotes = !inside_quotes;
+			}
+			if (bounds[i - 1] > raw_end)
+			{
+				// The previous chunk already extends past this point; it ends
+				// at a line start, which is outside any quoted field
+				bounds[i] = findLineStart(src, bounds[i - 1], end, false);
+			}
+			else
+			{
+				bounds[i] = findLineStart(src, raw_end, end, inside_quotes);
+			}
+		}
+		// Remove empty chunks
+		List<Long> list = new ArrayList<Long>(bounds.length);
+		for (long b : bounds)
+		{
+			if (list.isEmpty() || b > list.get(list.size() - 1))
+			{
+				list.add(b);
+			}
+		}
+		long[] out = new long[list.size()];
+		for (int i = 0; i < out.length; i++)
+		{
+			out[i] = list.get(i);
+		}
+		return out;
+	}
+	
+	/**
+	 * Finds the beginning of the first line after a given position
+	 * @param src The source of the contents
+	 * @param pos The position
+	 * @param end The end of the contents
+	 * @param inside_quotes Whether the position is inside a quoted field
+	 * @return The position of the first byte of the next line, or
+	 *   <tt>end</tt> if there is no next line
+	 * @throws IOException If the contents cannot be read
+	 */
+	protected long findLineStart(Source src, long pos, long end, boolean inside_quotes) throws IOException
+	{
+		while (pos < end)
+		{
+			int len = (int) Math.min(s_windowSize, end - pos);
+			byte[] window = src.read(pos, len);
+			for (int i = 0; i < len; i++)
+			{
+				byte c = window[i];
+				if (c == m_quote)
+				{
+					inside_quotes = !inside_quotes;
+				}
+				else if (c == '\n' && !inside_quotes)
+				{
+					return pos + i + 1;
+				}
+			}
+			pos += len;
+		}
+		return end;
+	}
+	
+	/**
+	 * Loads rows into a {@link HardTable}
+	 */
+	protected static class HardTableLoader implements RowHandler
+	{
+		protected HardTable m_table;
+		
+		protected String[] m_names;
+		
+		protected RowSchema m_schema;
+		
+		@Override
+		public void handleHeader(String[] names)
+		{
+			m_names = names;
+			m_table = new HardTable(names);
+			m_schema = RowSchema.of(names);
+		}
+
+		@Override
+		public void handleRow(PrimitiveValue[] values)
+		{
+			TableEntry te = new TableEntry(m_schema);
+			boolean complete = m_schema.size() == values.length;
+			for (int i = 0; complete && i < values.length; i++)
+			{
+				if (values[i] == null)
+				{
+					complete = false;
+				}
+				else
+				{
+					te.setValue(i, values[i]);
+				}
+			}
+			if (!complete)
+			{
+				// Some values are absent: these keys are not in the entry
+				te = new TableEntry();
+				for (int i = 0; i < values.length; i++)
+				{
+					if (values[i] != null)
+					{
+						te.put(m_names[i], values[i]);
+					}
+				}
+			}
+			m_table.add(te);
+		}
+	}
+	
+	/**
+	 * Loads rows into a {@link ColumnarTable}
+	 */
+	protected static class ColumnarTableLoader implements RowHandler
+	{
+		protected ColumnarTable m_table;
+		
+		@Override
+		public void handleHeader(String[] names)
+		{
+			m_table = new ColumnarTable(names);
+		}
+		
+		/**
+		 * Prepares the columns of the table for the kinds of values
+		 * found so far
+		 * @param kinds The kind of each column
+		 */
+		public void handleKinds(int[] kinds)
+		{
+			for (int i = 0; i < kinds.length; i++)
+			{
+				m_table.prepareColumn(i, kinds[i]);
+			}
+		}
+
+		@Override
+		public void handleRow(PrimitiveValue[] values)
+		{
+			m_table.addRow((Object[]) values);
+		}
+	}
+	
+	/**
+	 * The rows parsed from a chunk
+	 */
+	protected static class ParsedChunk
+	{
+		protected final List<PrimitiveValue[]> m_rows;
+		
+		protected final int[] m_kinds;
+		
+		public ParsedChunk(List<PrimitiveValue[]> rows, int[] kinds)
+		{
+			super();
+			m_rows = rows;
+			m_kinds = kinds;
+		}
+	}
+	
+	/**
+	 * Reads and parses one chunk of the contents
+	 */
+	protected class ChunkTask extends RecordParser implements Callable<ParsedChunk>
+	{
+		protected final Source m_source;
+		
+		protected final long m_start;
+		
+		protected final long m_end;
+		
+		protected final int m_width;
+		
+		protected final int[] m_kinds;
+		
+		public ChunkTask(Source src, long start, long end, int width)
+		{
+			super();
+			m_source = src;
+			m_start = start;
+			m_end = end;
+			m_width = width;
+			m_kinds = new int[width];
+			for (int i = 0; i < width; i++)
+			{
+				m_kinds[i] = -1;
+			}
+		}
+		
+		@Override
+		public ParsedChunk call() throws IOException
+		{
+			int len = (int) (m_end - m_start);
+			byte[] bytes = m_source.read(m_start, len);
+			List<PrimitiveValue[]> rows = new ArrayList<PrimitiveValue[]>(Math.max(16, len / 64));
+			int pos = 0;
+			while (pos < len)
+			{
+				PrimitiveValue[] row = new PrimitiveValue[m_width];
+				m_row = row;
+				pos = parseRecord(bytes, pos, len);
+				if (m_fields > 0)
+				{
+					rows.add(row);
+				}
+			}
+			return new ParsedChunk(rows, m_kinds);
+		}
+		
+		@Override
+		protected void handleField(int col, byte[] b, int start, int end, boolean quoted)
+		{
+			if (col >= m_width)
+			{
+				return;
+			}
+			if (end == start && !quoted)
+			{
+				// An empty field is a missing value
+				return;
+			}
+			PrimitiveValue v = toValue(b, start, end);
+			m_row[col] = v;
+			int kind;
+			if (v.isNumeric())
+			{
+				if (!v.isIntegral())
+				{
+					kind = NumberParser.DECIMAL;
+				}
+				else
+				{
+					long l = v.longValue();
+					kind = l >= Integer.MIN_VALUE && l <= Integer.MAX_VALUE ? NumberParser.INT : NumberParser.LONG;
+				}
+			}
+			else
+			{
+				kind = NumberParser.TEXT;
+			}
+			if (kind > m_kinds[col])
+			{
+				m_kinds[col] = kind;
+			}
+		}
+	}
+	
+	/**
+	 * Parses the header line of the contents
+	 */
+	protected class HeaderParser extends RecordParser
+	{
+		protected final List<String> m_names = new ArrayList<String>();
+		
+		/**
+		 * Parses the first record of the contents as the names of the
+		 * columns
+		 * @param src The source of the contents
+		 * @return The position following the header
+		 * @throws IOException If the contents cannot be read
+		 */
+		public long parseHeader(Source src) throws IOException
+		{
+			long size = src.size();
+			long offset = 0;
+			int len = (int) Math.min(size, s_windowSize);
+			while (offset < size)
+			{
+				byte[] bytes = src.read(offset, len);
+				m_names.clear();
+				int next = parseRecord(bytes, 0, len);
+				boolean complete = offset + len == size || (next > 0 && bytes[next - 1] == '\n');
+				if (!complete)
+				{
+					// The record may continue beyond the bytes read
+					len = (int) Math.min(size - offset, 2L * len);
+					continue;
+				}
+				if (m_fields > 0)
+				{
+					return offset + next;
+				}
+				// Only empty lines and comments so far
+				offset += next;
+				len = (int) Math.min(size - offset, s_windowSize);
+			}
+			return size;
+		}
+		
+		public String[] getNames()
+		{
+			return m_names.toArray(new String[m_names.size()]);
+		}
+		
+		@Override
+		protected void handleField(int col, byte[] b, int start, int end, boolean quoted)
+		{
+			m_names.add(new String(b, start, end - start, s_utf8).trim());
+		}
+	}
+	
+	/**
+	 * Splits bytes into records and fields
+	 */
+	protected abstract class RecordParser
+	{
+		/**
+		 * A slice used to look for numbers
+		 */
+		protected final ByteSlice m_slice = new ByteSlice();
+		
+		/**
+		 * A buffer used to unescape quoted fields
+		 */
+		protected byte[] m_scratch = new byte[256];
+		
+		/**
+		 * The row being filled
+		 */
+		protected PrimitiveValue[] m_row;
+		
+		/**
+		 * The number of fields in the last record
+		 */
+		protected int m_fields;
+		
+		/**
+		 * Receives a field of a record
+		 * @param col The index of the field in the record
+		 * @param b An array containing the bytes of the field
+		 * @param start The position of the first byte of the field
+		 * @param end The position after the last byte of the field
+		 * @param quoted Whether the field was quoted
+		 */
+		protected abstract void handleField(int col, byte[] b, int start, int end, boolean quoted);
+		
+		/**
+		 * Parses one record, skipping empty and comment lines before it
+		 * @param b The array of bytes
+		 * @param pos The position where to start
+		 * @param len The number of bytes in the array
+		 * @return The position following the record
+		 */
+		protected int parseRecord(byte[] b, int pos, int len)
+		{
+			m_fields = 0;
+			// Skip empty lines and comments
+			while (pos < len)
+			{
+				int i = pos;
+				while (i < len && (b[i] == ' ' || b[i] == '\r'))
+				{
+					i++;
+				}
+				if (i < len && b[i] != '\n' && b[i] != m_comment)
+				{
+					break;
+				}
+				while (i < len && b[i] != '\n')
+				{
+					i++;
+				}
+				pos = i + 1;
+			}
+			if (pos >= len)
+			{
+				return len;
+			}
+			int col = 0;
+			while (true)
+			{
+				if (pos < len && b[pos] == m_quote)
+				{
+					pos = parseQuoted(b, pos + 1, len);
+					handleField(col, m_scratch, 0, m_scratchLength, true);
+					// Ignore anything between the closing quote and the separator
+					while (pos < len && b[pos] != m_separator && b[pos] != '\n')
+					{
+						pos++;
+					}
+				}
+				else
+				{
+					int start = pos;
+					while (pos < len && b[pos] != m_separator && b[pos] != '\n')
+					{
+						pos++;
+					}
+					int end = pos;
+					if (end > start && b[end - 1] == '\r')
+					{
+						end--;
+					}
+					handleField(col, b, start, end, false);
+				}
+				col++;
+				m_fields = col;
+				if (pos < len && b[pos] == m_separator)
+				{
+					pos++;
+					continue;
+				}
+				// End of record
+				return pos < len ? pos + 1 : len;
+			}
+		}
+		
+		/**
+		 * The number of bytes in the scratch buffer
+		 */
+		protected int m_scratchLength;
+		
+		/**
+		 * Reads a quoted field into the scratch buffer
+		 * @param b The array of bytes
+		 * @param pos The position following the opening quote
+		 * @param len The number of bytes in the array
+		 * @return The position following the closing quote
+		 */
+		protected int parseQuoted(byte[] b, int pos, int len)
+		{
+			m_scratchLength = 0;
+			while (pos < len)
+			{
+				byte c = b[pos];
+				if (c == m_quote)
+				{
+					if (pos + 1 < len && b[pos + 1] == m_quote)
+					{
+						pos++;
+					}
+					else
+					{
+						return pos + 1;
+					}
+				}
+				if (m_scratchLength == m_scratch.length)
+				{
+					byte[] new_scratch = new byte[m_scratch.length * 2];
+					System.arraycopy(m_scratch, 0, new_scratch, 0, m_scratchLength);
+					m_scratch = new_scratch;
+				}
+				m_scratch[m_scratchLength++] = c;
+				pos++;
+			}
+			return len;
+		}
+		
+		/**
+		 * Converts the bytes of a field into a value
+		 * @param b The array of bytes
+		 * @param start The position of the first byte of the field
+		 * @param end The position after the last byte of the field
+		 * @return The value
+		 */
+		protected PrimitiveValue toValue(byte[] b, int start, int end)
+		{
+			Number n = NumberParser.parse(m_slice.set(b, start, end), 0, end - start);
+			if (n == null)
+			{
+				return PrimitiveValue.getInstance(new String(b, start, end - start, s_utf8));
+			}
+			if (n instanceof Float)
+			{
+				return PrimitiveValue.getInstance(n.floatValue());
+			}
+			return PrimitiveValue.getInstance(n.longValue());
+		}
+	}
+	
+	/**
+	 * A source of bytes to parse
+	 */
+	protected static interface Source
+	{
+		/**
+		 * Gets the number of bytes in the source
+		 * @return The number of bytes
+		 * @throws IOException If the source cannot be read
+		 */
+		public long size() throws IOException;
+		
+		/**
+		 * Reads bytes from the source
+		 * @param start The position of the first byte to read
+		 * @param length The number of bytes to read
+		 * @return An array containing the bytes
+		 * @throws IOException If the source cannot be read
+		 */
+		public byte[] read(long start, int length) throws IOException;
+		
+		/**
+		 * Counts the occurrences of a byte in a portion of the source
+		 * @param start The position of the first byte to read
+		 * @param length The number of bytes to read
+		 * @param quote The byte to count
+		 * @return The number of occurrences
+		 * @throws IOException If the source cannot be read
+		 */
+		public int countQuotes(long start, int length, byte quote) throws IOException;
+	}
+	
+	/**
+	 * A source reading from a memory-mapped file
+	 */
+	protected static class FileSource implements Source
+	{
+		protected final FileChannel m_channel;
+		
+		public FileSource(FileChannel channel)
+		{
+			super();
+			m_channel = channel;
+		}
+		
+		@Override
+		public long size() throws IOException
+		{
+			return m_channel.size();
+		}
+		
+		@Override
+		public byte[] read(long start, int length) throws IOException
+		{
+			byte[] bytes = new byte[length];
+			if (length < s_windowSize)
+			{
+				// Small reads: mapping is not worth it
+				ByteBuffer bb = ByteBuffer.wrap(bytes);
+				while (bb.hasRemaining())
+				{
+					if (m_channel.read(bb, start + bb.position()) < 0)
+					{
+						break;
+					}
+				}
+				return bytes;
+			}
+			MappedByteBuffer mbb = m_channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+			mbb.get(bytes);
+			return bytes;
+		}
+		
+		@Override
+		public int countQuotes(long start, int length, byte quote) throws IOException
+		{
+			MappedByteBuffer mbb = m_channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+			int count = 0;
+			for (int i = 0; i < length; i++)
+			{
+				if (mbb.get(i) == quote)
+				{
+					count++;
+				}
+			}
+			return count;
+		}
+	}
+	
+	/**
+	 * A source reading from an array of bytes
+	 */
+	protected static class ArraySource implements Source
+	{
+		protected final byte[] m_bytes;
+		
+		public ArraySource(byte[] bytes)
+		{
+			super();
+			m_bytes = bytes;
+		}
+
+		@Override
+		public long size()
+		{
+			return m_bytes.length;
+		}
+
+		@Override
+		public byte[] read(long start, int length)
+		{
+			if (start == 0 && length == m_bytes.length)
+			{
+				return m_bytes;
+			}
+			byte[] bytes = new byte[length];
+			System.arraycopy(m_bytes, (int) start, bytes, 0, length);
+			return bytes;
+		}
+
+		@Override
+		public int countQuotes(long start, int length, byte quote)
+		{
+			int count = 0;
+			for (int i = (int) start; i < start + length; i++)
+			{
+				if (m_bytes[i] == quote)
+				{
+					count++;
+				}
+			}
+			return count;
+		}
+	}
+}
@@ -0,0 +1,807 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table.io;
+
+import static ca.uqac.lif.mtnp.table.io.BinaryTableFormat.TAG_DOUBLE;
+import static ca.uqac.lif.mtnp.table.io.BinaryTableFormat.TAG_FALSE;
+import static ca.uqac.lif.mtnp.table.io.BinaryTableFormat.TAG_FLOAT;
+import static ca.uqac.lif.mtnp.table.io.BinaryTableFormat.TAG_LONG;
+import static ca.uqac.lif.mtnp.table.io.BinaryTableFormat.TAG_NULL;
+import static ca.uqac.lif.mtnp.table.io.BinaryTableFormat.TAG_STRING;
+import static ca.uqac.lif.mtnp.table.io.BinaryTableFormat.TAG_TRUE;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import ca.uqac.lif.mtnp.table.PrimitiveValue;
+import ca.uqac.lif.mtnp.table.RowCursor;
+import ca.uqac.lif.mtnp.table.RowSorter;
+
+/**
+ * Sorts rows that may not all fit in memory. The sorter receives rows one
+ * at a time, for example directly from a {@link CsvReader}, and keeps them
+ * in memory until their estimated size exceeds a budget. The rows kept so
+ * far are then sorted and written to a temporary file, called a run.
+ * Once all the rows have been received, {@link #finish(RowSink)} merges
+ * the runs and passes the rows, in sorted order, to a {@link RowSink}
+ * without ever loading more than one row per run in memory; the merged
+ * rows can also be pulled from a {@link RowCursor} with
+ * {@link #getCursor()}. At most {@link #setMaxFanIn(int) a given number}
+ * of runs are read at the same time: when there are more, groups of
+ * runs are first merged into larger runs, until there are few enough
+ * of them.
+ * <p>
+ * Each row of a run is written as the position of the row in the input,
+ * followed by its values. Each value is a tag byte, as in
+ * {@link BinaryTableFormat}, followed by its contents. Rows are
+ * compared as in {@link RowSorter}: the sort is stable, and rows with a
+ * missing value come last. Temporary files are deleted once the rows
+ * have been merged.
+ * @since 0.1.14
+ * @author Sylvain Hallé
+ */
+public class ExternalSorter implements CsvReader.RowHandler
+{
+	/**
+	 * The size of the buffers used to read and write runs
+	 */
+	protected static final int s_bufferSize = 64 * 1024;
+
+	/**
+	 * The default maximum number of runs read at the same time
+	 */
+	protected static final int s_defaultFanIn = 64;
+
+	/**
+	 * An object receiving rows in sorted order
+	 */
+	public static interface RowSink
+	{
+		/**
+		 * Receives the names of the columns
+		 * @param names The names
+		 */
+		public void handleHeader(String[] names);
+
+		/**
+		 * Receives a row
+		 * @param index The position of the row in the input
+		 * @param values The values of the row
+		 */
+		public void handleRow(long index, PrimitiveValue[] values);
+	}
+
+	/**
+	 * The columns to sort on
+	 */
+	protected final String[] m_sortColumns;
+
+	/**
+	 * The sorter used on the rows kept in memory
+	 */
+	protected final RowSorter m_sorter;
+
+	/**
+	 * The estimated size in bytes of the rows kept in memory before they
+	 * are written to a run
+	 */
+	protected long m_memoryBudget = 64L * 1024 * 1024;
+
+	/**
+	 * The maximum number of runs read at the same time
+	 */
+	protected int m_maxFanIn = s_defaultFanIn;
+
+	/**
+	 * The folder where runs are written, or {@code null} for the default
+	 * temporary folder
+	 */
+	protected File m_tempFolder = null;
+
+	/**
+	 * The names of the columns
+	 */
+	protected String[] m_names = new String[0];
+
+	/**
+	 * The position of each sort column among the columns
+	 */
+	protected int[] m_positions;
+
+	/**
+	 * The rows kept in memory
+	 */
+	protected List<PrimitiveValue[]> m_rows = new ArrayList<PrimitiveValue[]>();
+
+	/**
+	 * The position in the input of the first row kept in memory
+	 */
+	protected long m_firstIndex = 0;
+
+	/**
+	 * The estimated size in bytes of the rows kept in memory
+	 */
+	protected long m_size = 0;
+
+	/**
+	 * The runs written so far
+	 */
+	protected List<File> m_runs = new ArrayList<File>();
+
+	/**
+	 * The number of rows in each run
+	 */
+	protected List<Integer> m_runLengths = new ArrayList<Integer>();
+
+	/**
+	 * Creates a new sorter, with all columns in ascending order
+	 * @param sort_columns The columns to sort on, in decreasing order of
+	 *   priority
+	 */
+	public ExternalSorter(String ... sort_columns)
+	{
+		this(sort_columns, new boolean[sort_columns.length]);
+	}
+
+	/**
+	 * Creates a new sorter
+	 * @param sort_columns The columns to sort on, in decreasing order of
+	 *   priority
+	 * @param descending Whether each column is sorted in descending order
+	 */
+	public ExternalSorter(String[] sort_columns, boolean[] descending)
+	{
+		super();
+		m_sortColumns = sort_columns;
+		m_sorter = new RowSorter(sort_columns, descending);
+	}
+
+	/**
+	 * Sets the estimated size of the rows kept in memory before they are
+	 * written to disk
+	 * @param bytes The size in bytes
+	 * @return This sorter
+	 */
+	public ExternalSorter setMemoryBudget(long bytes)
+	{
+		m_memoryBudget = bytes;
+		return this;
+	}
+
+	/**
+	 * Sets the maximum number of runs read at the same time, and hence of
+	 * files open at the same time, while merging
+	 * @param fan_in The number of runs, at least 2
+	 * @return This sorter
+	 */
+	public ExternalSorter setMaxFanIn(int fan_in)
+	{
+		m_maxFanIn = Math.max(2, fan_in);
+		return this;
+	}
+
+	/**
+	 * Sets the folder where temporary files are written
+	 * @param folder The folder, or {@code null} for the default
+	 *   temporary folder
+	 * @return This sorter
+	 */
+	public ExternalSorter setTempFolder(File folder)
+	{
+		m_tempFolder = folder;
+		return this;
+	}
+
+	/**
+	 * Gets the number of runs written to disk so far
+	 * @return The number of runs
+	 */
+	public int getRunCount()
+	{
+		return m_runs.size();
+	}
+
+	@Override
+	public void handleHeader(String[] names)
+	{
+		m_names = names;
+		m_positions = new int[m_sortColumns.length];
+		for (int i = 0; i < m_sortColumns.length; i++)
+		{
+			m_positions[i] = -1;
+			for (int j = 0; j < names.length; j++)
+			{
+				if (names[j].compareTo(m_sortColumns[i]) == 0)
+				{
+					m_positions[i] = j;
+					break;
+				}
+			}
+			if (m_positions[i] < 0)
+			{
+				throw new IllegalArgumentException("No column named " + m_sortColumns[i]);
+			}
+		}
+	}
+
+	@Override
+	public void handleRow(PrimitiveValue[] values)
+	{
+		if (values.length != m_names.length)
+		{
+			// Short rows are padded with missing values, and long rows are
+			// truncated, so that all the rows of a run have the same width
+			values = Arrays.copyOf(values, m_names.length);
+		}
+		m_rows.add(values);
+		m_size += estimateSize(values);
+		if (m_size > m_memoryBudget)
+		{
+			try
+			{
+				spill();
+			}
+			catch (IOException e)
+			{
+				throw new IllegalStateException("Cannot write sorted run", e);
+			}
+		}
+	}
+
+	/**
+	 * Passes all the rows received so far to a sink, in sorted order, and
+	 * deletes the temporary files. The sorter can then be reused.
+	 * @param sink The sink
+	 * @throws IOException If a run cannot be read
+	 */
+	public void finish(RowSink sink) throws IOException
+	{
+		Merge m = new Merge();
+		try
+		{
+			sink.handleHeader(m_names);
+			while (m.next())
+			{
+				sink.handleRow(m.m_index, m.m_values);
+			}
+		}
+		finally
+		{
+			m.close();
+		}
+	}
+
+	/**
+	 * Gets a cursor reading all the rows received so far, in sorted
+	 * order. The rows are merged as they are read from the cursor, and the
+	 * temporary files are deleted once the last row has been read. The
+	 * sorter can then be reused.
+	 * @return The cursor
+	 * @throws IOException If a run cannot be read
+	 */
+	public RowCursor getCursor() throws IOException
+	{
+		final Merge m = new Merge();
+		return new RowCursor(m_names)
+		{
+			@Override
+			public boolean next()
+			{
+				try
+				{
+					if (m.next())
+					{
+						return true;
+					}
+					m.close();
+					return false;
+				}
+				catch (IOException e)
+				{
+					throw new IllegalStateException("Cannot read sorted runs", e);
+				}
+			}
+
+			@Override
+			public PrimitiveValue[] getValues()
+			{
+				return m.m_values;
+			}
+		};
+	}
+
+	/**
+	 * Passes all the rows received so far to a row handler, in sorted
+	 * order
+	 * @param handler The handler
+	 * @throws IOException If a run cannot be read
+	 */
+	public void finish(final CsvReader.RowHandler handler) throws IOException
+	{
+		finish(new RowSink()
+		{
+			@Override
+			public void handleHeader(String[] names)
+			{
+				handler.handleHeader(names);
+			}
+
+			@Override
+			public void handleRow(long index, PrimitiveValue[] values)
+			{
+				handler.handleRow(values);
+			}
+		});
+	}
+
+	/**
+	 * Sorts the rows kept in memory and writes them to a new run
+	 * @throws IOException If the run cannot be written
+	 */
+	protected void spill() throws IOException
+	{
+		int[] order = m_sorter.sort(m_rows, m_positions);
+		File f = File.createTempFile("mtnp-sort", ".run", m_tempFolder);
+		// In case the sorted rows are never read to the end
+		f.deleteOnExit();
+		m_runs.add(f);
+		m_runLengths.add(order.length);
+		DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f), s_bufferSize));
+		try
+		{
+			for (int row : order)
+			{
+				dos.writeLong(m_firstIndex + row);
+				for (PrimitiveValue v : m_rows.get(row))
+				{
+					writeValue(dos, v);
+				}
+			}
+		}
+		finally
+		{
+			dos.close();
+		}
+		m_firstIndex += m_rows.size();
+		m_rows = new ArrayList<PrimitiveValue[]>();
+		m_size = 0;
+	}
+
+	/**
+	 * Merges the first runs written so far into a new run, placed after
+	 * the others. Since each row of a run carries its position in the
+	 * input, the order of the runs has no effect on the final order.
+	 * @param n The number of runs to merge
+	 * @throws IOException If a run cannot be read or written
+	 */
+	protected void mergeRuns(int n) throws IOException
+	{
+		File f = File.createTempFile("mtnp-sort", ".run", m_tempFolder);
+		f.deleteOnExit();
+		int length = 0;
+		for (int i = 0; i < n; i++)
+		{
+			length += m_runLengths.get(i);
+		}
+		// The new run is deleted with the others if the merge fails
+		m_runs.add(f);
+		m_runLengths.add(length);
+		List<Run> open_runs = new ArrayList<Run>(n);
+		PriorityQueue<Run> queue = new PriorityQueue<Run>(n);
+		DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f), s_bufferSize));
+		try
+		{
+			for (int i = 0; i < n; i++)
+			{
+				Run r = new Run(m_runs.get(i), m_runLengths.get(i), m_names.length);
+				open_runs.add(r);
+				if (r.next())
+				{
+					queue.add(r);
+				}
+			}
+			Run r;
+			while ((r = queue.poll()) != null)
+			{
+				dos.writeLong(r.m_index);
+				for (PrimitiveValue v : r.m_values)
+				{
+					writeValue(dos, v);
+				}
+				if (r.next())
+				{
+					queue.add(r);
+				}
+			}
+		}
+		finally
+		{
+			dos.close();
+			for (Run r : open_runs)
+			{
+				try
+				{
+					r.close();
+				}
+				catch (IOException e)
+				{
+					// Nothing else to do
+				}
+			}
+		}
+		for (int i = 0; i < n; i++)
+		{
+			m_runs.get(i).delete();
+		}
+		m_runs.subList(0, n).clear();
+		m_runLengths.subList(0, n).clear();
+	}
+
+	/**
+	 * Estimates the memory taken by a row
+	 * @param values The values of the row
+	 * @return The size in bytes
+	 */
+	protected static long estimateSize(PrimitiveValue[] values)
+	{
+		long size = 16 + 8L * values.length;
+		for (PrimitiveValue v : values)
+		{
+			if (v == null || v.isNull() || v.isBoolean())
+			{
+				// Shared instances
+				continue;
+			}
+			if (v.isNumeric())
+			{
+				size += 24;
+			}
+			else
+			{
+				size += 56 + 2L * v.stringValue().length();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Writes a value to a run
+	 * @param dos The stream to write to
+	 * @param v The value
+	 * @throws IOException If the value cannot be written
+	 */
+	protected static void writeValue(DataOutputStream dos, PrimitiveValue v) throws IOException
+	{
+		if (v == null || v.isNull())
+		{
+			dos.writeByte(TAG_NULL);
+		}
+		else if (v.isBoolean())
+		{
+			dos.writeByte(v.booleanValue() ? TAG_TRUE : TAG_FALSE);
+		}
+		else if (v.isIntegral())
+		{
+			dos.writeByte(TAG_LONG);
+			dos.writeLong(v.longValue());
+		}
+		else if (v.isNumeric())
+		{
+			Number n = v.numberValue();
+			if (n instanceof Float)
+			{
+				dos.writeByte(TAG_FLOAT);
+				dos.writeFloat(n.floatValue());
+			}
+			else
+			{
+				dos.writeByte(TAG_DOUBLE);
+				dos.writeDouble(n.doubleValue());
+			}
+		}
+		else
+		{
+			byte[] bytes = v.stringValue().getBytes(BinaryTableWriter.s_utf8);
+			dos.writeByte(TAG_STRING);
+			dos.writeInt(bytes.length);
+			dos.write(bytes);
+		}
+	}
+
+	/**
+	 * Reads a value from a run
+	 * @param dis The stream to read from
+	 * @return The value
+	 * @throws IOException If the value cannot be read
+	 */
+	protected static PrimitiveValue readValue(DataInputStream dis) throws IOException
+	{
+		byte tag = dis.readByte();
+		switch (tag)
+		{
+		case TAG_NULL:
+			return null;
+		case TAG_TRUE:
+			return PrimitiveValue.TRUE;
+		case TAG_FALSE:
+			return PrimitiveValue.FALSE;
+		case TAG_LONG:
+			return PrimitiveValue.getInstance(dis.readLong());
+		case TAG_FLOAT:
+			return PrimitiveValue.getInstance(dis.readFloat());
+		case TAG_DOUBLE:
+			return PrimitiveValue.getInstance(dis.readDouble());
+		case TAG_STRING:
+		{
+			byte[] bytes = new byte[dis.readInt()];
+			dis.readFully(bytes);
+			return PrimitiveValue.getInstance(new String(bytes, BinaryTableWriter.s_utf8));
+		}
+		default:
+			throw new IOException("Unknown value tag " + tag);
+		}
+	}
+
+	/**
+	 * The rows received so far, being read in sorted order. The state of
+	 * the sorter is taken over by the merge, so that new rows can be
+	 * received while the merge is in progress.
+	 */
+	protected class Merge
+	{
+		/**
+		 * The runs being merged, ordered on their current row, or
+		 * {@code null} if all the rows fit in memory
+		 */
+		protected final PriorityQueue<Run> m_queue;
+
+		/**
+		 * All the runs being merged
+		 */
+		protected final List<Run> m_openRuns = new ArrayList<Run>();
+
+		/**
+		 * The files of the runs
+		 */
+		protected final List<File> m_files;
+
+		/**
+		 * The rows, if they all fit in memory
+		 */
+		protected final List<PrimitiveValue[]> m_memoryRows;
+
+		/**
+		 * The order of the rows, if they all fit in memory
+		 */
+		protected final int[] m_order;
+
+		/**
+		 * The position of the first row, if they all fit in memory
+		 */
+		protected final long m_first;
+
+		/**
+		 * The position of the next row in {@link #m_order}
+		 */
+		protected int m_position = 0;
+
+		/**
+		 * The position in the input of the current row
+		 */
+		protected long m_index;
+
+		/**
+		 * The values of the current row
+		 */
+		protected PrimitiveValue[] m_values;
+
+		public Merge() throws IOException
+		{
+			super();
+			m_files = m_runs;
+			m_memoryRows = m_rows;
+			m_first = m_firstIndex;
+			try
+			{
+				if (m_runs.isEmpty())
+				{
+					// Everything fits in memory
+					m_order = m_sorter.sort(m_rows, m_positions);
+					m_queue = null;
+					return;
+				}
+				if (!m_rows.isEmpty())
+				{
+					spill();
+				}
+				while (m_runs.size() > m_maxFanIn)
+				{
+					// Merge just enough runs to be left with the maximum
+					mergeRuns(Math.min(m_maxFanIn, m_runs.size() - m_maxFanIn + 1));
+				}
+				m_order = null;
+				m_queue = new PriorityQueue<Run>(m_runs.size());
+				for (int i = 0; i < m_runs.size(); i++)
+				{
+					Run r = new Run(m_runs.get(i), m_runLengths.get(i), m_names.length);
+					m_openRuns.add(r);
+					if (r.next())
+					{
+						m_queue.add(r);
+					}
+				}
+			}
+			catch (IOException e)
+			{
+				close();
+				throw e;
+			}
+			finally
+			{
+				m_runs = new ArrayList<File>();
+				m_runLengths = new ArrayList<Integer>();
+				m_rows = new ArrayList<PrimitiveValue[]>();
+				m_size = 0;
+				m_firstIndex = 0;
+			}
+		}
+
+		/**
+		 * Moves to the next row in sorted order
+		 * @return {@code true} if there is such a row
+		 * @throws IOException If a run cannot be read
+		 */
+		public boolean next() throws IOException
+		{
+			if (m_queue == null)
+			{
+				if (m_position >= m_order.length)
+				{
+					return false;
+				}
+				int row = m_order[m_position++];
+				m_index = m_first + row;
+				m_values = m_memoryRows.get(row);
+				return true;
+			}
+			Run r = m_queue.poll();
+			if (r == null)
+			{
+				return false;
+			}
+			m_index = r.m_index;
+			m_values = r.m_values;
+			if (r.next())
+			{
+				m_queue.add(r);
+			}
+			return true;
+		}
+
+		/**
+		 * Closes the runs and deletes their files
+		 */
+		public void close()
+		{
+			for (Run r : m_openRuns)
+			{
+				try
+				{
+					r.close();
+				}
+				catch (IOException e)
+				{
+					// Nothing else to do
+				}
+			}
+			m_openRuns.clear();
+			for (File f : m_files)
+			{
+				f.delete();
+			}
+		}
+	}
+
+	/**
+	 * A run being merged, positioned on its current row
+	 */
+	protected class Run implements Comparable<Run>
+	{
+		/**
+		 * The stream reading the run
+		 */
+		protected final DataInputStream m_input;
+
+		/**
+		 * The number of rows not yet read
+		 */
+		protected int m_remaining;
+
+		/**
+		 * The position in the input of the current row
+		 */
+		protected long m_index;
+
+		/**
+		 * The values of the current row
+		 */
+		protected PrimitiveValue[] m_values;
+
+		/**
+		 * The number of values in a row
+		 */
+		protected final int m_width;
+
+		public Run(File f, int length, int width) throws IOException
+		{
+			super();
+			m_input = new DataInputStream(new BufferedInputStream(new FileInputStream(f), s_bufferSize));
+			m_remaining = length;
+			m_width = width;
+		}
+
+		/**
+		 * Reads the next row of the run
+		 * @return {@code true} if a row was read, {@code false} if the run
+		 *   is exhausted
+		 * @throws IOException If the row cannot be read
+		 */
+		public boolean next() throws IOException
+		{
+			if (m_remaining == 0)
+			{
+				return false;
+			}
+			m_remaining--;
+			m_index = m_input.readLong();
+			m_values = new PrimitiveValue[m_width];
+			for (int i = 0; i < m_width; i++)
+			{
+				m_values[i] = readValue(m_input);
+			}
+			return true;
+		}
+
+		public void close() throws IOException
+		{
+			m_input.close();
+		}
+
+		@Override
+		public int compareTo(Run r)
+		{
+			int c = m_sorter.compare(m_values, r.m_values, m_positions);
+			if (c != 0)
+			{
+				return c;
+			}
+			// Equal rows keep their order in the input
+			return m_index < r.m_index ? -1 : (m_index == r.m_index ? 0 : 1);
+		}
+	}
+}
@@ -0,0 +1,331 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table.io;
+
+import static ca.uqac.lif.mtnp.table.io.BinaryTableFormat.*;
+
+import java.nio.ByteBuffer;
+
+import ca.uqac.lif.mtnp.table.ColumnTable;
+import ca.uqac.lif.mtnp.table.PrimitiveValue;
+import ca.uqac.lif.mtnp.table.TableEntry;
+
+/**
+ * A read-only table whose columns are memory-mapped from a file written
+ * by {@link BinaryTableWriter}. Values are decoded from the file when
+ * they are accessed through {@link #get(int, int)}; no
+ * {@link TableEntry} is created unless the table is passed to a
+ * transformation through {@link #getDataTable()}.
+ * @since 0.1.14
+ * @author Sylvain Hallé
+ */
+public class MappedTable extends ColumnTable
+{
+	/**
+	 * The columns of this table
+	 */
+	protected final MappedColumn[] m_columns;
+
+	/**
+	 * Creates a new mapped table. Instances are obtained from
+	 * {@link BinaryTableReader#read(java.io.File)}.
+	 * @param names The names of the columns
+	 * @param rows The number of rows
+	 * @param columns The columns
+	 */
+	MappedTable(String[] names, int rows, MappedColumn[] columns)
+	{
+		super(names, rows);
+		m_columns = columns;
+	}
+
+	@Override
+	protected PrimitiveValue read(int col, int row)
+	{
+		MappedColumn c = m_columns[col];
+		if (c.isNull(row))
+		{
+			return null;
+		}
+		return c.get(row);
+	}
+
+	@Override
+	protected boolean isNumeric(int col)
+	{
+		return m_columns[col].isNumeric();
+	}
+
+	/**
+	 * Determines if the version of this table changes whenever its
+	 * contents change. This is the case, since the contents of a mapped
+	 * file never change.
+	 * @return {@code true}
+	 */
+	@Override
+	public boolean isVersioned()
+	{
+		return true;
+	}
+
+	@Override
+	public MappedTable duplicate(boolean with_state)
+	{
+		// The contents are read-only: the copy can share the mapped columns
+		MappedTable mt = new MappedTable(m_columnNames, m_rowCount, m_columns);
+		copyInto(mt, with_state);
+		return mt;
+	}
+
+	/**
+	 * A memory-mapped column. Values are read using absolute positions,
+	 * so a column can be read by multiple threads at the same time.
+	 */
+	abstract static class MappedColumn
+	{
+		/**
+		 * The block of the column
+		 */
+		protected final ByteBuffer m_buffer;
+
+		/**
+		 * The position in the block where values start
+		 */
+		protected final int m_dataStart;
+
+		/**
+		 * Creates a new column
+		 * @param buffer The block of the column
+		 * @param data_start The position in the block where values start
+		 */
+		MappedColumn(ByteBuffer buffer, int data_start)
+		{
+			super();
+			m_buffer = buffer;
+			m_dataStart = data_start;
+		}
+
+		/**
+		 * Creates a column of a given type
+		 * @param type The type
+		 * @param buffer The block of the column
+		 * @param rows The number of rows
+		 * @return The column, or {@code null} if the type is unknown
+		 */
+		static MappedColumn create(byte type, ByteBuffer buffer, int rows)
+		{
+			switch (type)
+			{
+			case TYPE_LONG:
+				return new LongColumn(buffer, rows);
+			case TYPE_DOUBLE:
+				return new DoubleColumn(buffer, rows);
+			case TYPE_DICTIONARY:
+				return new DictionaryColumn(buffer, rows);
+			default:
+				return null;
+			}
+		}
+
+		/**
+		 * Determines if a row contains a missing value
+		 * @param row The row
+		 * @return {@code true} if the value is missing
+		 */
+		final boolean isNull(int row)
+		{
+			return (m_buffer.getLong((row >>> 6) << 3) & (1L << row)) != 0;
+		}
+
+		/**
+		 * Gets the value at a given row. The row is assumed not to
+		 * contain a missing value.
+		 * @param row The row
+		 * @return The value
+		 */
+		abstract PrimitiveValue get(int row);
+
+		/**
+		 * Determines if this column contains numerical values
+		 * @return {@code true} if the column is numerical
+		 */
+		abstract boolean isNumeric();
+	}
+
+	/**
+	 * A column of integers
+	 */
+	static class LongColumn extends MappedColumn
+	{
+		LongColumn(ByteBuffer buffer, int rows)
+		{
+			super(buffer, 8 * bitmapWords(rows));
+		}
+
+		@Override
+		PrimitiveValue get(int row)
+		{
+			return PrimitiveValue.getInstance(m_buffer.getLong(m_dataStart + 8 * row));
+		}
+
+		@Override
+		boolean isNumeric()
+		{
+			return true;
+		}
+	}
+
+	/**
+	 * A column of numbers
+	 */
+	static class DoubleColumn extends MappedColumn
+	{
+		/**
+		 * The position of the bitmap of integral values
+		 */
+		protected final int m_integralStart;
+
+		/**
+		 * Whether non-integral values are single-precision
+		 */
+		protected final boolean m_float;
+
+		DoubleColumn(ByteBuffer buffer, int rows)
+		{
+			super(buffer, 16 * bitmapWords(rows) + 8);
+			m_integralStart = 8 * bitmapWords(rows);
+			m_float = buffer.getLong(m_dataStart - 8) != 0;
+		}
+
+		@Override
+		PrimitiveValue get(int row)
+		{
+			double d = m_buffer.getDouble(m_dataStart + 8 * row);
+			if ((m_buffer.getLong(m_integralStart + ((row >>> 6) << 3)) & (1L << row)) != 0)
+			{
+				return PrimitiveValue.getInstance((long) d);
+			}
+			if (m_float)
+			{
+				return PrimitiveValue.getInstance((float) d);
+			}
+			return PrimitiveValue.getInstance(d);
+		}
+
+		@Override
+		boolean isNumeric()
+		{
+			return true;
+		}
+	}
+
+	/**
+	 * A column of dictionary-encoded values
+	 */
+	static class DictionaryColumn extends MappedColumn
+	{
+		/**
+		 * The distinct values of the column, decoded on first access
+		 */
+		protected volatile PrimitiveValue[] m_dictionary;
+
+		/**
+		 * The position of the dictionary in the block
+		 */
+		protected final int m_dictionaryStart;
+
+		DictionaryColumn(ByteBuffer buffer, int rows)
+		{
+			super(buffer, (int) align(8 * bitmapWords(rows) + 8 + buffer.getInt(8 * bitmapWords(rows) + 4), 4));
+			m_dictionaryStart = 8 * bitmapWords(rows);
+		}
+
+		@Override
+		PrimitiveValue get(int row)
+		{
+			return getDictionary()[m_buffer.getInt(m_dataStart + 4 * row)];
+		}
+
+		@Override
+		boolean isNumeric()
+		{
+			for (PrimitiveValue v : getDictionary())
+			{
+				if (v.isNumeric())
+				{
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Gets the dictionary of this column, decoding it if needed
+		 * @return The dictionary
+		 */
+		protected PrimitiveValue[] getDictionary()
+		{
+			PrimitiveValue[] dictionary = m_dictionary;
+			if (dictionary != null)
+			{
+				return dictionary;
+			}
+			int size = m_buffer.getInt(m_dictionaryStart);
+			dictionary = new PrimitiveValue[size];
+			int pos = m_dictionaryStart + 8;
+			for (int i = 0; i < size; i++)
+			{
+				byte tag = m_buffer.get(pos++);
+				switch (tag)
+				{
+				case TAG_LONG:
+					dictionary[i] = PrimitiveValue.getInstance(m_buffer.getLong(pos));
+					pos += 8;
+					break;
+				case TAG_DOUBLE:
+					dictionary[i] = PrimitiveValue.getInstance(m_buffer.getDouble(pos));
+					pos += 8;
+					break;
+				case TAG_FLOAT:
+					dictionary[i] = PrimitiveValue.getInstance(m_buffer.getFloat(pos));
+					pos += 4;
+					break;
+				case TAG_TRUE:
+					dictionary[i] = PrimitiveValue.TRUE;
+					break;
+				case TAG_FALSE:
+					dictionary[i] = PrimitiveValue.FALSE;
+					break;
+				default:
+				{
+					int len = m_buffer.getInt(pos);
+					byte[] bytes = new byte[len];
+					for (int j = 0; j < len; j++)
+					{
+						bytes[j] = m_buffer.get(pos + 4 + j);
+					}
+					pos += 4 + len;
+					dictionary[i] = PrimitiveValue.getInstance(new String(bytes, BinaryTableWriter.s_utf8));
+				}
+				}
+			}
+			m_dictionary = dictionary;
+			return dictionary;
+		}
+	}
+}
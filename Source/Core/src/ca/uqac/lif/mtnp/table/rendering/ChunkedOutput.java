@@ -0,0 +1,125 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table.rendering;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * The output of a renderer, accumulated in a string builder. When a
+ * writer is given, the contents of the builder are sent to it and
+ * flushed at the end of a row once they exceed a given size, so that
+ * the whole rendering is never held in memory at once.
+ * <p>
+ * Since rows are produced by methods that cannot throw an
+ * {@link IOException}, an error of the writer is recorded and thrown by
+ * {@link #finish()}; nothing more is sent to the writer after it.
+ * @since 0.1.14
+ * @author Sylvain Hallé
+ */
+public class ChunkedOutput
+{
+	/**
+	 * The builder to which the rendering is written
+	 */
+	protected final StringBuilder m_builder = new StringBuilder();
+
+	/**
+	 * The writer to send the rendering to, or {@code null} to keep the
+	 * whole rendering in the builder
+	 */
+	protected final Writer m_writer;
+
+	/**
+	 * The number of characters accumulated before they are sent to the
+	 * writer
+	 */
+	protected final int m_chunkSize;
+
+	/**
+	 * The first error of the writer, if any
+	 */
+	protected IOException m_exception = null;
+
+	/**
+	 * Creates a new output
+	 * @param writer The writer to send the rendering to, or {@code null}
+	 *   to keep the whole rendering in the builder
+	 * @param chunk_size The number of characters accumulated before they
+	 *   are sent to the writer; 0 sends them after every row
+	 */
+	public ChunkedOutput(Writer writer, int chunk_size)
+	{
+		super();
+		m_writer = writer;
+		m_chunkSize = chunk_size;
+	}
+
+	/**
+	 * Gets the builder to which the rendering is written
+	 * @return The builder
+	 */
+	public StringBuilder getBuilder()
+	{
+		return m_builder;
+	}
+
+	/**
+	 * Signals the end of a row. If there is a writer and the contents of
+	 * the builder exceed the chunk size, they are sent to the writer and
+	 * the builder is emptied.
+	 */
+	public void endRow()
+	{
+		if (m_writer == null || m_exception != null || m_builder.length() < m_chunkSize)
+		{
+			return;
+		}
+		try
+		{
+			m_writer.append(m_builder);
+			m_writer.flush();
+		}
+		catch (IOException e)
+		{
+			m_exception = e;
+		}
+		m_builder.setLength(0);
+	}
+
+	/**
+	 * Sends what remains in the builder to the writer, and flushes it. The
+	 * writer is not closed.
+	 * @throws IOException If the writer could not be written to, now or
+	 *   at the end of a previous row
+	 */
+	public void finish() throws IOException
+	{
+		if (m_exception != null)
+		{
+			throw m_exception;
+		}
+		if (m_writer == null)
+		{
+			return;
+		}
+		m_writer.append(m_builder);
+		m_writer.flush();
+		m_builder.setLength(0);
+	}
+}
@@ -89,7 +89,8 @@ public class HtmlTableNodeRenderer extends TableNodeRenderer
 	@Override
 	public void printKey(StringBuilder out, String key)
 	{
-		out.append("<th>").append(key).append("</th>");
+		out.append("<th>");
+		TextEscaper.HTML.escape(key, out).append("</th>");
 	}
 
 	@Override
@@ -123,13 +124,14 @@ public class HtmlTableNodeRenderer extends TableNodeRenderer
 				break; // One is enough
 			}			
 		}
+		out.append(" <td").append(css_class);
 		if (nb_children < 2)
 		{
-			out.append(" <td" + css_class + ">");
+			out.append(">");
 		}
 		else
 		{
-			out.append(" <td" + css_class + " rowspan=\"").append(nb_children).append("\">");
+			out.append(" rowspan=\"").append(nb_children).append("\">");
 		}
 		if (coordinates.size() > 0)
 		{
@@ -140,20 +142,13 @@ public class HtmlTableNodeRenderer extends TableNodeRenderer
 			{
 				dp_id = nf.getDataPointId();//"""T" + m_table.getId() + ":" + cc.row + ":" + cc.col; //nf.getDataPointId();
 			}
-			out.append("<a class=\"explanation\" title=\"Click to see where this value comes from\" href=\"").append(m_explainUrlPrefix).append("?id=").append(dp_id).append("\">");
+			out.append("<a class=\"explanation\" title=\"Click to see where this value comes from\" href=\"").append(m_explainUrlPrefix).append("?id=");
+			TextEscaper.HTML.escape(dp_id, out).append("\">");
 		}
 		PrimitiveValue last = values.get(values.size() - 1);
-		if (last == null)
+		if (last != null)
 		{
-			out.append("");
-		}
-		else if (last.isString())
-		{
-			out.append(last.toString());
-		}
-		else
-		{
-			out.append(last);
+			TextEscaper.HTML.escape(last.toString(), out);
 		}
 		if (coordinates.size() > 0)
 		{
@@ -161,7 +161,7 @@ public class LatexTableRenderer extends TableNodeRenderer
 		{
 			m_keyBuffer.append("{");
 		}
-		m_keyBuffer.append(escape(key)).append("}");
+		TextEscaper.LATEX.escape(key, m_keyBuffer).append("}");
 		m_numColumns++;
 	}
 
@@ -224,7 +224,7 @@ public class LatexTableRenderer extends TableNodeRenderer
 				}
 				m_keyBuffer.append("\\href{").append(dp_id).append("}{");
 			}		
-			m_keyBuffer.append(escape(last.toString()));
+			TextEscaper.LATEX.escape(last.toString(), m_keyBuffer);
 			if (coordinates.size() > 0)
 			{
 				m_keyBuffer.append("}");
@@ -287,16 +287,7 @@ public class LatexTableRenderer extends TableNodeRenderer
 	 */
 	public static String escape(String input)
 	{
-		String output = input;
-		output = output.replaceAll("\\\\", "\\\\\\\\");
-		output = output.replaceAll("_", "\\\\_");
-		output = output.replaceAll("~", "\\\\~");
-		output = output.replaceAll("&", "\\\\&");
-		output = output.replaceAll("#", "\\\\$");
-		output = output.replaceAll("%", "\\\\%");
-		output = output.replaceAll("\\{", "\\\\\\{");
-		output = output.replaceAll("\\}", "\\\\\\}");
-		return output;
+		return TextEscaper.LATEX.escape(input);
 	}
 
 	/**
@@ -306,21 +297,22 @@ public class LatexTableRenderer extends TableNodeRenderer
 	 */
 	public static String formatName(String name)
 	{
-		String output = name;
-		// Keep only letters and numbers
-		output = output.replaceAll("[^A-Za-z0-9]", "");
-		// Since macro names cannot have numbers, replace them by letters
-		output = output.replaceAll("0", "a");
-		output = output.replaceAll("1", "b");
-		output = output.replaceAll("2", "c");
-		output = output.replaceAll("3", "d");
-		output = output.replaceAll("4", "e");
-		output = output.replaceAll("5", "f");
-		output = output.replaceAll("6", "g");
-		output = output.replaceAll("7", "h");
-		output = output.replaceAll("8", "i");
-		output = output.replaceAll("9", "j");
-		return output;
+		StringBuilder out = new StringBuilder(name.length());
+		for (int i = 0; i < name.length(); i++)
+		{
+			char c = name.charAt(i);
+			if (c >= '0' && c <= '9')
+			{
+				// Since macro names cannot have numbers, replace them by letters
+				out.append((char) ('a' + (c - '0')));
+			}
+			else if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z'))
+			{
+				// Keep only letters and numbers
+				out.append(c);
+			}
+		}
+		return out.toString();
 	}
 
 }
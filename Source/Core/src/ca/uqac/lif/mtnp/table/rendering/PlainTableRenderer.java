@@ -17,6 +17,10 @@
  */
 package ca.uqac.lif.mtnp.table.rendering;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
@@ -41,6 +45,12 @@ public class PlainTableRenderer
 	 */
 	protected Set<CellCoordinate> m_cellsToHighlight;
 	
+	/**
+	 * The number of characters accumulated before the output is sent to
+	 * the writer when rendering to a writer
+	 */
+	protected int m_chunkSize = 8192;
+	
 	public PlainTableRenderer(Table t)
 	{
 		super();
@@ -56,39 +66,97 @@ public class PlainTableRenderer
 		m_cellsToHighlight.addAll(to_highlight);
 	}
 	
+	/**
+	 * Sets the number of characters accumulated before the output is
+	 * written and flushed when rendering to a writer or a stream
+	 * @param size The number of characters; 0 sends the output after
+	 *   every row
+	 * @return This renderer
+	 * @since 0.1.14
+	 */
+	public PlainTableRenderer setChunkSize(int size)
+	{
+		m_chunkSize = size;
+		return this;
+	}
+	
 	public String render()
 	{
-		StringBuilder out = new StringBuilder();
+		ChunkedOutput output = new ChunkedOutput(null, m_chunkSize);
+		render(output);
+		return output.getBuilder().toString();
+	}
+	
+	/**
+	 * Renders the table to a writer, row by row. The writer is flushed,
+	 * but not closed.
+	 * @param writer The writer to send the rendering to
+	 * @throws IOException If the writer cannot be written to
+	 * @since 0.1.14
+	 */
+	public void render(Writer writer) throws IOException
+	{
+		ChunkedOutput output = new ChunkedOutput(writer, m_chunkSize);
+		render(output);
+		output.finish();
+	}
+	
+	/**
+	 * Renders the table to an output stream, encoded in UTF-8. The stream
+	 * is flushed, but not closed.
+	 * @param os The stream to send the rendering to
+	 * @throws IOException If the stream cannot be written to
+	 * @since 0.1.14
+	 */
+	public void render(OutputStream os) throws IOException
+	{
+		render(new OutputStreamWriter(os, "UTF-8"));
+	}
+	
+	/**
+	 * Renders the table
+	 * @param output The output to which the rendering is written
+	 */
+	protected void render(ChunkedOutput output)
+	{
+		StringBuilder out = output.getBuilder();
 		out.append("<table border=\"1\">\n");
 		HardTable dt = m_table.getDataTable();
 		String col_names[] = dt.getColumnNames();
 		out.append("<thead>\n<tr>\n");
 		for (String col_name : col_names)
 		{
-			out.append("<th>").append(col_name).append("</th>");
+			out.append("<th>");
+			TextEscaper.HTML.escape(col_name, out).append("</th>");
 		}
 		out.append("</tr></thead>\n<tbody>\n");
 		int row = 0;
-		for (TableEntry te : dt.getEntries())
+		for (TableEntry te : dt.readEntries())
 		{
 			out.append("<tr>");
 			for (int col = 0; col < col_names.length; col++)
 			{
 				PrimitiveValue value = te.get(col_names[col]);
-				String css_class = "";
+				out.append("<td");
 				if (isHighlighted(row, col))
 				{
-					css_class += " class=\"highlighted\"";
+					out.append(" class=\"highlighted\"");
 				}
 				NodeFunction nf = m_table.dependsOn(row, col);
-				String dp_id = nf.getDataPointId();
-				out.append("<td").append(css_class).append("><a class=\"explanation\" href=\"explain?id=").append(dp_id).append("\">").append(value).append("</a></td>");
+				String dp_id = "";
+				if (nf != null)
+				{
+					dp_id = nf.getDataPointId();
+				}
+				out.append("><a class=\"explanation\" href=\"explain?id=");
+				TextEscaper.HTML.escape(dp_id, out).append("\">");
+				TextEscaper.HTML.escape(String.valueOf(value), out).append("</a></td>");
 			}
 			out.append("</tr>\n");
 			row++;
+			output.endRow();
 		}
 		out.append("</tbody>\n</table>\n");
-		return out.toString();
 	}
 	
 	/**
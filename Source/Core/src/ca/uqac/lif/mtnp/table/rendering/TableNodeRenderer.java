@@ -17,6 +17,10 @@
  */
 package ca.uqac.lif.mtnp.table.rendering;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
@@ -31,6 +35,13 @@ import ca.uqac.lif.mtnp.table.TableNode;
 /**
  * Renders a result tree as a string of a given format. Different
  * subclasses of this class will render the tree differently.
+ * <p>
+ * The rendering can either be returned as a string, or be sent to a
+ * {@link Writer} or an {@link OutputStream} as the rows are produced.
+ * In the latter case, the output is accumulated in a buffer that is
+ * written and flushed every time it exceeds a given size (see
+ * {@link #setChunkSize(int)}), so that the whole rendering is never held
+ * in memory at once.
  * 
  * @author Sylvain Hallé
  */
@@ -47,6 +58,17 @@ public abstract class TableNodeRenderer
 	 */
 	protected Set<CellCoordinate> m_cellsToHighlight;
 	
+	/**
+	 * The number of characters accumulated before the output is sent to
+	 * the writer when rendering to a writer
+	 */
+	protected int m_chunkSize = 8192;
+	
+	/**
+	 * The output of the rendering in progress
+	 */
+	protected ChunkedOutput m_output = null;
+	
 	public TableNodeRenderer(Table t)
 	{
 		super();
@@ -62,6 +84,20 @@ public abstract class TableNodeRenderer
 		m_cellsToHighlight.addAll(to_highlight);
 	}
 	
+	/**
+	 * Sets the number of characters accumulated before the output is
+	 * written and flushed when rendering to a writer or a stream
+	 * @param size The number of characters; 0 sends the output after
+	 *   every row
+	 * @return This renderer
+	 * @since 0.1.14
+	 */
+	public TableNodeRenderer setChunkSize(int size)
+	{
+		m_chunkSize = size;
+		return this;
+	}
+	
 	/**
 	 * Renders a results tree
 	 * @param node The root of the results tree
@@ -69,28 +105,79 @@ public abstract class TableNodeRenderer
 	 * @return The rendering of that tree
 	 */
 	public String render(TableNode node, String[] sort_order)
+	{
+		ChunkedOutput output = new ChunkedOutput(null, m_chunkSize);
+		render(node, sort_order, output);
+		return output.getBuilder().toString();
+	}
+	
+	/**
+	 * Renders a results tree to a writer. The writer is flushed, but not
+	 * closed.
+	 * @param node The root of the results tree
+	 * @param sort_order The order in which the keys are expanded in the tree
+	 * @param writer The writer to send the rendering to
+	 * @throws IOException If the writer cannot be written to
+	 * @since 0.1.14
+	 */
+	public void render(TableNode node, String[] sort_order, Writer writer) throws IOException
+	{
+		ChunkedOutput output = new ChunkedOutput(writer, m_chunkSize);
+		render(node, sort_order, output);
+		output.finish();
+	}
+	
+	/**
+	 * Renders a results tree to an output stream, encoded in UTF-8. The
+	 * stream is flushed, but not closed.
+	 * @param node The root of the results tree
+	 * @param sort_order The order in which the keys are expanded in the tree
+	 * @param os The stream to send the rendering to
+	 * @throws IOException If the stream cannot be written to
+	 * @since 0.1.14
+	 */
+	public void render(TableNode node, String[] sort_order, OutputStream os) throws IOException
+	{
+		render(node, sort_order, new OutputStreamWriter(os, "UTF-8"));
+	}
+	
+	/**
+	 * Renders a results tree
+	 * @param node The root of the results tree
+	 * @param sort_order The order in which the keys are expanded in the tree
+	 * @param output The output to which the rendering is written
+	 */
+	protected void render(TableNode node, String[] sort_order, ChunkedOutput output)
 	{
 		int width = sort_order.length;
-		StringBuilder out = new StringBuilder();
+		StringBuilder out = output.getBuilder();
 		if (node == null || (node.m_children.isEmpty()))
 		{
-			return doEmptyTable();
+			out.append(doEmptyTable());
+			return;
 		}
-		startStructure(out);
-		startKeys(out);
-		for (String key : sort_order)
+		m_output = output;
+		try
 		{
-			printKey(out, key);
+			startStructure(out);
+			startKeys(out);
+			for (String key : sort_order)
+			{
+				printKey(out, key);
+			}
+			endKeys(out);
+			startBody(out);
+			startRow(out, width);
+			List<PrimitiveValue> values = new ArrayList<PrimitiveValue>();
+			renderRecursive(node, values, out, width);
+			endRow(out, width);
+			endBody(out);
+			endStructure(out);
+		}
+		finally
+		{
+			m_output = null;
 		}
-		endKeys(out);
-		startBody(out);
-		startRow(out, width);
-		List<PrimitiveValue> values = new ArrayList<PrimitiveValue>();
-		renderRecursive(node, values, out, width);
-		endRow(out, width);
-		endBody(out);
-		endStructure(out);
-		return out.toString();
 	}
 	
 	/**
@@ -129,6 +216,10 @@ public abstract class TableNodeRenderer
 			else
 			{
 				endRow(out, max_depth);
+				if (m_output != null)
+				{
+					m_output.endRow();
+				}
 				startRow(out, max_depth);
 				for (int i = 0; i < values.size() - 1; i++)
 				{
@@ -0,0 +1,144 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table.rendering;
+
+/**
+ * Escapes the special characters of a markup language in a single pass
+ * over a string. Each escaper holds a table associating every special
+ * character to its replacement; the characters of the input are looked
+ * up in this table one by one, and the result is written directly to
+ * the output buffer. Runs of characters that need no escaping are copied
+ * as a whole, and a string without special characters is not copied at
+ * all by {@link #escape(String)}.
+ * @since 0.1.14
+ * @author Sylvain Hallé
+ */
+public class TextEscaper
+{
+	/**
+	 * An escaper for the text of LaTeX documents
+	 */
+	public static final TextEscaper LATEX = new TextEscaper(
+			new char[] {'\\', '_', '~', '&', '#', '%', '{', '}'},
+			new String[] {"\\\\", "\\_", "\\~", "\\&", "\\#", "\\%", "\\{", "\\}"});
+
+	/**
+	 * An escaper for the text and the attribute values of HTML documents
+	 */
+	public static final TextEscaper HTML = new TextEscaper(
+			new char[] {'&', '<', '>', '"'},
+			new String[] {"&amp;", "&lt;", "&gt;", "&quot;"});
+
+	/**
+	 * The replacement of each character, indexed by its code, or
+	 * {@code null} if the character is left as is
+	 */
+	protected final String[] m_replacements;
+
+	/**
+	 * Creates a new escaper. Only characters with a code below 128 can be
+	 * replaced.
+	 * @param chars The characters to replace
+	 * @param replacements The replacement of each of these characters
+	 */
+	public TextEscaper(char[] chars, String[] replacements)
+	{
+		super();
+		m_replacements = new String[128];
+		for (int i = 0; i < chars.length; i++)
+		{
+			m_replacements[chars[i]] = replacements[i];
+		}
+	}
+
+	/**
+	 * Escapes a string
+	 * @param s The string
+	 * @return The escaped string; this is the input string itself if it
+	 *   contains no special character
+	 */
+	public String escape(String s)
+	{
+		int first = indexOfSpecial(s, 0);
+		if (first < 0)
+		{
+			return s;
+		}
+		StringBuilder out = new StringBuilder(s.length() + 16);
+		escape(s, first, out);
+		return out.toString();
+	}
+
+	/**
+	 * Escapes a string and appends it to a buffer
+	 * @param s The string
+	 * @param out The buffer
+	 * @return The buffer
+	 */
+	public StringBuilder escape(CharSequence s, StringBuilder out)
+	{
+		escape(s, 0, out);
+		return out;
+	}
+
+	/**
+	 * Escapes a string, starting from a given position, and appends it to
+	 * a buffer
+	 * @param s The string
+	 * @param from The position to start from
+	 * @param out The buffer
+	 */
+	protected void escape(CharSequence s, int from, StringBuilder out)
+	{
+		int start = from;
+		int len = s.length();
+		if (from > 0)
+		{
+			out.append(s, 0, from);
+		}
+		for (int i = from; i < len; i++)
+		{
+			char c = s.charAt(i);
+			if (c < 128 && m_replacements[c] != null)
+			{
+				out.append(s, start, i).append(m_replacements[c]);
+				start = i + 1;
+			}
+		}
+		out.append(s, start, len);
+	}
+
+	/**
+	 * Finds the first character of a string that must be replaced
+	 * @param s The string
+	 * @param from The position to start from
+	 * @return The position of the character, or -1 if there is none
+	 */
+	protected int indexOfSpecial(CharSequence s, int from)
+	{
+		for (int i = from; i < s.length(); i++)
+		{
+			char c = s.charAt(i);
+			if (c < 128 && m_replacements[c] != null)
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+}
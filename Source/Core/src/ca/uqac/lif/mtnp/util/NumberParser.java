@@ -0,0 +1,513 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.util;
+
+/**
+ * Recognizes and parses numbers written as text, in a single pass and
+ * without using exceptions for strings that are not numbers. The
+ * accepted syntax is the one of {@link Float#parseFloat(String)}
+ * (optional sign, digits with an optional decimal point, optional
+ * exponent, optional <tt>f</tt> or <tt>d</tt> suffix, <tt>NaN</tt> and
+ * <tt>Infinity</tt>), except for hexadecimal numbers, which are
+ * considered as text. Leading and trailing whitespace is ignored.
+ * <p>
+ * Integers are returned as {@link Integer}s, or {@link Long}s if they do
+ * not fit in an <tt>int</tt>; other numbers are returned as
+ * {@link Float}s. The conversion of a decimal number is done directly
+ * when its digits and exponent are small enough for the result to be
+ * exact, and is otherwise delegated to the JDK.
+ * @since 0.1.14
+ * @author Sylvain Hallé
+ */
+public class NumberParser
+{
+	/**
+	 * Classification of a string that is not a number
+	 */
+	public static final int TEXT = 0;
+	
+	/**
+	 * Classification of a string that is an integer fitting in an
+	 * <tt>int</tt>
+	 */
+	public static final int INT = 1;
+	
+	/**
+	 * Classification of a string that is an integer fitting in a
+	 * <tt>long</tt>, but not in an <tt>int</tt>
+	 */
+	public static final int LONG = 2;
+	
+	/**
+	 * Classification of a string that is a number with a fractional part
+	 * or an exponent, or an integer too large for a <tt>long</tt>
+	 */
+	public static final int DECIMAL = 3;
+	
+	/**
+	 * The maximum number of significant digits accumulated in the
+	 * mantissa; further digits are dropped (and scale the exponent)
+	 */
+	protected static final int s_maxDigits = 18;
+	
+	/**
+	 * Powers of 10 that are exactly representable as <tt>float</tt>s
+	 */
+	protected static final float[] s_floatPowers = {1e0f, 1e1f, 1e2f, 1e3f,
+		1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f};
+	
+	/**
+	 * Powers of 10 that are exactly representable as <tt>double</tt>s
+	 */
+	protected static final double[] s_doublePowers = {1e0, 1e1, 1e2, 1e3,
+		1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 
+		1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+	
+	private NumberParser()
+	{
+		super();
+	}
+	
+	/**
+	 * Determines the kind of number contained in a string
+	 * @param s The string
+	 * @return One of {@link #TEXT}, {@link #INT}, {@link #LONG} or
+	 *   {@link #DECIMAL}
+	 */
+	public static int classify(CharSequence s)
+	{
+		if (s == null)
+		{
+			return TEXT;
+		}
+		Scan sc = new Scan();
+		scan(s, 0, s.length(), sc);
+		return sc.m_type;
+	}
+	
+	/**
+	 * Determines if a string contains a number
+	 * @param s The string
+	 * @return {@code true} if the string is a number, {@code false}
+	 *   otherwise
+	 */
+	public static boolean isNumeric(CharSequence s)
+	{
+		return classify(s) != TEXT;
+	}
+	
+	/**
+	 * Parses a string into a number
+	 * @param s The string
+	 * @return An {@link Integer}, a {@link Long} or a {@link Float}, or
+	 *   {@code null} if the string is not a number
+	 */
+	public static Number parse(CharSequence s)
+	{
+		if (s == null)
+		{
+			return null;
+		}
+		return parse(s, 0, s.length());
+	}
+	
+	/**
+	 * Parses a portion of a string into a number
+	 * @param s The string
+	 * @param start The position of the first character to read
+	 * @param end The position after the last character to read
+	 * @return An {@link Integer}, a {@link Long} or a {@link Float}, or
+	 *   {@code null} if the characters do not form a number
+	 */
+	public static Number parse(CharSequence s, int start, int end)
+	{
+		Scan sc = new Scan();
+		scan(s, start, end, sc);
+		switch (sc.m_type)
+		{
+		case INT:
+			return (int) sc.m_mantissa;
+		case LONG:
+			return sc.m_mantissa;
+		case DECIMAL:
+			return toFloat(s, sc);
+		default:
+			return null;
+		}
+	}
+	
+	/**
+	 * Parses a string into a <tt>double</tt>
+	 * @param s The string
+	 * @return The number, or {@code NaN} if the string is not a number
+	 */
+	public static double parseDouble(CharSequence s)
+	{
+		if (s == null)
+		{
+			return Double.NaN;
+		}
+		Scan sc = new Scan();
+		scan(s, 0, s.length(), sc);
+		switch (sc.m_type)
+		{
+		case INT:
+		case LONG:
+			return sc.m_mantissa;
+		case DECIMAL:
+			return toDouble(s, sc);
+		default:
+			return Double.NaN;
+		}
+	}
+	
+	/**
+	 * Converts a scanned decimal number into a float
+	 * @param s The string that was scanned
+	 * @param sc The result of the scan
+	 * @return The number
+	 */
+	protected static Float toFloat(CharSequence s, Scan sc)
+	{
+		if (sc.m_special != 0)
+		{
+			return (float) special(sc);
+		}
+		if (!sc.m_truncated && sc.m_mantissa < (1L << 24) && sc.m_exponent >= -10 && sc.m_exponent <= 10)
+		{
+			// Both operands are exact floats: the result is correctly rounded
+			float f = (float) sc.m_mantissa;
+			if (sc.m_exponent < 0)
+			{
+				f /= s_floatPowers[-sc.m_exponent];
+			}
+			else
+			{
+				f *= s_floatPowers[sc.m_exponent];
+			}
+			return sc.m_negative ? -f : f;
+		}
+		return Float.parseFloat(s.subSequence(sc.m_start, sc.m_end).toString());
+	}
+	
+	/**
+	 * Converts a scanned decimal number into a double
+	 * @param s The string that was scanned
+	 * @param sc The result of the scan
+	 * @return The number
+	 */
+	protected static double toDouble(CharSequence s, Scan sc)
+	{
+		if (sc.m_special != 0)
+		{
+			return special(sc);
+		}
+		if (!sc.m_truncated && sc.m_mantissa < (1L << 53) && sc.m_exponent >= -22 && sc.m_exponent <= 22)
+		{
+			// Both operands are exact doubles: the result is correctly rounded
+			double d = (double) sc.m_mantissa;
+			if (sc.m_exponent < 0)
+			{
+				d /= s_doublePowers[-sc.m_exponent];
+			}
+			else
+			{
+				d *= s_doublePowers[sc.m_exponent];
+			}
+			return sc.m_negative ? -d : d;
+		}
+		return Double.parseDouble(s.subSequence(sc.m_start, sc.m_end).toString());
+	}
+	
+	/**
+	 * Gets the value of a scanned <tt>NaN</tt> or <tt>Infinity</tt>
+	 * @param sc The result of the scan
+	 * @return The value
+	 */
+	protected static double special(Scan sc)
+	{
+		if (sc.m_special == 1)
+		{
+			return Double.NaN;
+		}
+		return sc.m_negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+	}
+	
+	/**
+	 * Scans a portion of a string and determines if it is a number
+	 * @param s The string
+	 * @param start The position of the first character to read
+	 * @param end The position after the last character to read
+	 * @param sc The object in which to write the result of the scan
+	 */
+	protected static void scan(CharSequence s, int start, int end, Scan sc)
+	{
+		sc.m_type = TEXT;
+		// Trim whitespace
+		while (start < end && s.charAt(start) <= ' ')
+		{
+			start++;
+		}
+		while (end > start && s.charAt(end - 1) <= ' ')
+		{
+			end--;
+		}
+		if (start == end)
+		{
+			return;
+		}
+		sc.m_start = start;
+		sc.m_end = end;
+		int i = start;
+		char c = s.charAt(i);
+		if (c == '-' || c == '+')
+		{
+			sc.m_negative = c == '-';
+			i++;
+			if (i == end)
+			{
+				return;
+			}
+			c = s.charAt(i);
+		}
+		if (c == 'N' || c == 'I')
+		{
+			if (matches(s, i, end, "NaN"))
+			{
+				sc.m_special = 1;
+				sc.m_type = DECIMAL;
+			}
+			else if (matches(s, i, end, "Infinity"))
+			{
+				sc.m_special = 2;
+				sc.m_type = DECIMAL;
+			}
+			return;
+		}
+		long mantissa = 0;
+		int digits = 0, exponent = 0;
+		boolean any_digit = false, decimal = false, truncated = false;
+		// Integer part
+		while (i < end && (c = s.charAt(i)) >= '0' && c <= '9')
+		{
+			any_digit = true;
+			if (digits < s_maxDigits)
+			{
+				mantissa = mantissa * 10 + (c - '0');
+				if (mantissa != 0)
+				{
+					digits++;
+				}
+			}
+			else
+			{
+				exponent++;
+				truncated |= c != '0';
+			}
+			i++;
+		}
+		// Fractional part
+		if (i < end && s.charAt(i) == '.')
+		{
+			decimal = true;
+			i++;
+			while (i < end && (c = s.charAt(i)) >= '0' && c <= '9')
+			{
+				any_digit = true;
+				if (digits < s_maxDigits)
+				{
+					mantissa = mantissa * 10 + (c - '0');
+					exponent--;
+					if (mantissa != 0)
+					{
+						digits++;
+					}
+				}
+				else
+				{
+					truncated |= c != '0';
+				}
+				i++;
+			}
+		}
+		if (!any_digit)
+		{
+			return;
+		}
+		// Exponent
+		if (i < end && ((c = s.charAt(i)) == 'e' || c == 'E'))
+		{
+			decimal = true;
+			i++;
+			boolean negative_exp = false;
+			if (i < end && ((c = s.charAt(i)) == '-' || c == '+'))
+			{
+				negative_exp = c == '-';
+				i++;
+			}
+			int exp = 0;
+			boolean exp_digit = false;
+			while (i < end && (c = s.charAt(i)) >= '0' && c <= '9')
+			{
+				exp_digit = true;
+				if (exp < 100000)
+				{
+					exp = exp * 10 + (c - '0');
+				}
+				i++;
+			}
+			if (!exp_digit)
+			{
+				return;
+			}
+			exponent += negative_exp ? -exp : exp;
+		}
+		// Type suffix
+		if (i < end && ((c = s.charAt(i)) == 'f' || c == 'F' || c == 'd' || c == 'D'))
+		{
+			decimal = true;
+			i++;
+		}
+		if (i != end)
+		{
+			// Trailing characters: not a number
+			return;
+		}
+		sc.m_mantissa = mantissa;
+		sc.m_exponent = exponent;
+		sc.m_truncated = truncated;
+		if (decimal || exponent != 0)
+		{
+			if (!decimal)
+			{
+				// An integer with too many digits for the mantissa: it may
+				// still fit in a long
+				long l = parseLongDigits(s, sc.m_start, end);
+				if (l >= 0 || l == Long.MIN_VALUE && sc.m_negative)
+				{
+					sc.m_mantissa = sc.m_negative ? -l : l;
+					sc.m_type = LONG;
+					return;
+				}
+			}
+			sc.m_type = DECIMAL;
+			return;
+		}
+		if (sc.m_negative)
+		{
+			mantissa = -mantissa;
+			sc.m_mantissa = mantissa;
+		}
+		sc.m_type = mantissa >= Integer.MIN_VALUE && mantissa <= Integer.MAX_VALUE ? INT : LONG;
+	}
+	
+	/**
+	 * Reads the digits of an integer into a <tt>long</tt>, ignoring the
+	 * sign
+	 * @param s The string
+	 * @param start The position of the first character to read
+	 * @param end The position after the last character to read
+	 * @return The absolute value of the integer, or a negative value if
+	 *   it overflows
+	 */
+	protected static long parseLongDigits(CharSequence s, int start, int end)
+	{
+		long l = 0;
+		for (int i = start; i < end; i++)
+		{
+			char c = s.charAt(i);
+			if (c < '0' || c > '9')
+			{
+				continue;
+			}
+			if (l > (Long.MAX_VALUE - (c - '0')) / 10)
+			{
+				// Overflow; only Long.MIN_VALUE can still be represented
+				return l == Long.MAX_VALUE / 10 && c == '8' && i == end - 1 ? Long.MIN_VALUE : -1;
+			}
+			l = l * 10 + (c - '0');
+		}
+		return l;
+	}
+	
+	/**
+	 * Determines if a portion of a string matches a word exactly
+	 * @param s The string
+	 * @param start The position of the first character to read
+	 * @param end The position after the last character to read
+	 * @param word The word
+	 * @return {@code true} if the portion is equal to the word
+	 */
+	protected static boolean matches(CharSequence s, int start, int end, String word)
+	{
+		if (end - start != word.length())
+		{
+			return false;
+		}
+		for (int i = 0; i < word.length(); i++)
+		{
+			if (s.charAt(start + i) != word.charAt(i))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * The result of a scan
+	 */
+	protected static class Scan
+	{
+		/**
+		 * The kind of number found
+		 */
+		int m_type = TEXT;
+		
+		/**
+		 * The significant digits of the number. For integers, this is the
+		 * value of the number, with its sign.
+		 */
+		long m_mantissa = 0;
+		
+		/**
+		 * The power of 10 by which to multiply the mantissa
+		 */
+		int m_exponent = 0;
+		
+		/**
+		 * Whether the number is negative
+		 */
+		boolean m_negative = false;
+		
+		/**
+		 * Whether non-zero digits were dropped from the mantissa
+		 */
+		boolean m_truncated = false;
+		
+		/**
+		 * 1 for NaN, 2 for infinity, 0 otherwise
+		 */
+		int m_special = 0;
+		
+		/**
+		 * The boundaries of the number in the string, once trimmed
+		 */
+		int m_start = 0, m_end = 0;
+	}
+}
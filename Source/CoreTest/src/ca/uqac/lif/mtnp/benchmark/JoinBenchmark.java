@@ -0,0 +1,100 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.benchmark;
+
+import java.util.Random;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import ca.uqac.lif.mtnp.table.HardTable;
+import ca.uqac.lif.mtnp.table.Join;
+import ca.uqac.lif.mtnp.table.TableEntry;
+import ca.uqac.lif.mtnp.table.TempTable;
+import ca.uqac.lif.mtnp.table.TransformedTable;
+
+/**
+ * Measures the time taken by {@link Join} to join two tables of growing
+ * size, with the default hash join and with the merge of sorted inputs.
+ * Half of the keys of each table have a match in the other one.
+ * These measurements are not unit tests; they are ignored by default
+ * and meant to be run by hand.
+ */
+@Ignore
+public class JoinBenchmark
+{
+	@Test
+	public void rows10k()
+	{
+		compare(10000);
+	}
+
+	@Test
+	public void rows100k()
+	{
+		compare(100000);
+	}
+
+	@Test
+	public void rows1M()
+	{
+		compare(1000000);
+	}
+
+	protected static void compare(int num_rows)
+	{
+		HardTable left = getTable("A", num_rows, 0);
+		HardTable right = getTable("B", num_rows, num_rows / 2);
+		// Warm-up
+		run(new Join("K"), left, right);
+		long start = System.nanoTime();
+		int n1 = run(new Join("K"), left, right);
+		long t_hash = System.nanoTime() - start;
+		start = System.nanoTime();
+		int n2 = run(new Join("K").setSortedInputs(true), left, right);
+		long t_merge = System.nanoTime() - start;
+		System.out.println(num_rows + " rows: hash " + (t_hash / 1000000) + " ms, merge " 
+				+ (t_merge / 1000000) + " ms (" + n1 + "/" + n2 + " rows)");
+	}
+
+	protected static int run(Join join, HardTable left, HardTable right)
+	{
+		TempTable out = new TransformedTable(join, left, right).setProvenance(false).getDataTable();
+		return out.getRowCount();
+	}
+
+	/**
+	 * Creates a table with consecutive keys
+	 * @param col_name The name of the value column
+	 * @param num_rows The number of rows
+	 * @param first_key The first key
+	 * @return The table, sorted on its keys
+	 */
+	protected static HardTable getTable(String col_name, int num_rows, int first_key)
+	{
+		Random r = new Random(0);
+		HardTable ht = new HardTable("K", col_name);
+		for (int i = 0; i < num_rows; i++)
+		{
+			TableEntry te = new TableEntry("K", first_key + i);
+			te.put(col_name, r.nextInt(1000));
+			ht.add(te);
+		}
+		return ht;
+	}
+}
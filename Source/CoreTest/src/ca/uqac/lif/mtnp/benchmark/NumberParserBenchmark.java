@@ -0,0 +1,119 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.benchmark;
+
+import java.util.Random;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import ca.uqac.lif.mtnp.util.NumberParser;
+
+/**
+ * Compares the parsing of cell values with {@link NumberParser} against
+ * the previous approach, which tried {@link Integer#parseInt(String)} and
+ * {@link Float#parseFloat(String)} in turn and caught the exceptions.
+ * These measurements are not unit tests; they are ignored by default
+ * and meant to be run by hand.
+ */
+@Ignore
+public class NumberParserBenchmark
+{
+	/**
+	 * The number of cells to parse in each run
+	 */
+	protected static final int s_numCells = 1000000;
+
+	@Test
+	public void stringHeavy()
+	{
+		String[] cells = new String[s_numCells];
+		Random r = new Random(0);
+		for (int i = 0; i < cells.length; i++)
+		{
+			cells[i] = (i % 10 == 0) ? Integer.toString(r.nextInt(1000)) : "label" + r.nextInt(1000);
+		}
+		compare("String-heavy", cells);
+	}
+
+	@Test
+	public void numberHeavy()
+	{
+		String[] cells = new String[s_numCells];
+		Random r = new Random(0);
+		for (int i = 0; i < cells.length; i++)
+		{
+			cells[i] = (i % 2 == 0) ? Integer.toString(r.nextInt()) : Float.toString(r.nextFloat() * 1000);
+		}
+		compare("Number-heavy", cells);
+	}
+
+	protected static void compare(String title, String[] cells)
+	{
+		// Warm-up
+		runExceptions(cells);
+		runParser(cells);
+		long start = System.nanoTime();
+		int n1 = runExceptions(cells);
+		long t_exceptions = System.nanoTime() - start;
+		start = System.nanoTime();
+		int n2 = runParser(cells);
+		long t_parser = System.nanoTime() - start;
+		System.out.println(title + ": exceptions " + (t_exceptions / 1000000) + " ms, parser " 
+				+ (t_parser / 1000000) + " ms (" + n1 + "/" + n2 + " numbers)");
+	}
+
+	protected static int runExceptions(String[] cells)
+	{
+		int count = 0;
+		for (String s : cells)
+		{
+			try
+			{
+				Integer.parseInt(s);
+				count++;
+			}
+			catch (NumberFormatException e1)
+			{
+				try
+				{
+					Float.parseFloat(s);
+					count++;
+				}
+				catch (NumberFormatException e2)
+				{
+					// Text
+				}
+			}
+		}
+		return count;
+	}
+
+	protected static int runParser(String[] cells)
+	{
+		int count = 0;
+		for (String s : cells)
+		{
+			if (NumberParser.parse(s) != null)
+			{
+				count++;
+			}
+		}
+		return count;
+	}
+}
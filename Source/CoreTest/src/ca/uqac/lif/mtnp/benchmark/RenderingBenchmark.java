@@ -0,0 +1,138 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.benchmark;
+
+import java.util.Random;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import ca.uqac.lif.mtnp.table.HardTable;
+import ca.uqac.lif.mtnp.table.TableEntry;
+import ca.uqac.lif.mtnp.table.TableNode;
+import ca.uqac.lif.mtnp.table.rendering.HtmlTableNodeRenderer;
+import ca.uqac.lif.mtnp.table.rendering.LatexTableRenderer;
+import ca.uqac.lif.mtnp.table.rendering.TextEscaper;
+
+/**
+ * Measures the time taken to escape and render a table of 50,000 cells
+ * (10,000 rows of 5 columns) mixing numbers and strings with special
+ * characters. The escaping of {@link TextEscaper} is compared with the
+ * sequence of regular expressions that was used before.
+ * These measurements are not unit tests; they are ignored by default
+ * and meant to be run by hand.
+ */
+@Ignore
+public class RenderingBenchmark
+{
+	protected static final String[] COLUMNS = new String[] {"Name", "Size", "Time", "Ratio", "Note"};
+
+	@Test
+	public void escape()
+	{
+		String[] cells = getCells(50000);
+		// Warm-up
+		escapeRegex(cells);
+		escapeSinglePass(cells);
+		long start = System.nanoTime();
+		int n1 = escapeRegex(cells);
+		long t_regex = System.nanoTime() - start;
+		start = System.nanoTime();
+		int n2 = escapeSinglePass(cells);
+		long t_single = System.nanoTime() - start;
+		System.out.println("Escaping 50k cells: regex " + (t_regex / 1000000) + " ms, single pass "
+				+ (t_single / 1000000) + " ms (" + n1 + "/" + n2 + " chars)");
+	}
+
+	@Test
+	public void render()
+	{
+		HardTable ht = getTable(10000);
+		TableNode tree = ht.getTree(COLUMNS);
+		// Warm-up
+		new LatexTableRenderer(ht).render(tree, COLUMNS);
+		long start = System.nanoTime();
+		int n1 = new LatexTableRenderer(ht).render(tree, COLUMNS).length();
+		long t_latex = System.nanoTime() - start;
+		start = System.nanoTime();
+		int n2 = new HtmlTableNodeRenderer(ht).render(tree, COLUMNS).length();
+		long t_html = System.nanoTime() - start;
+		System.out.println("Rendering 50k cells: LaTeX " + (t_latex / 1000000) + " ms, HTML "
+				+ (t_html / 1000000) + " ms (" + n1 + "/" + n2 + " chars)");
+	}
+
+	protected static int escapeSinglePass(String[] cells)
+	{
+		StringBuilder out = new StringBuilder();
+		for (String s : cells)
+		{
+			TextEscaper.LATEX.escape(s, out);
+		}
+		return out.length();
+	}
+
+	protected static int escapeRegex(String[] cells)
+	{
+		StringBuilder out = new StringBuilder();
+		for (String s : cells)
+		{
+			String output = s;
+			output = output.replaceAll("\\\\", "\\\\\\\\");
+			output = output.replaceAll("_", "\\\\_");
+			output = output.replaceAll("~", "\\\\~");
+			output = output.replaceAll("&", "\\\\&");
+			output = output.replaceAll("#", "\\\\#");
+			output = output.replaceAll("%", "\\\\%");
+			output = output.replaceAll("\\{", "\\\\\\{");
+			output = output.replaceAll("\\}", "\\\\\\}");
+			out.append(output);
+		}
+		return out.length();
+	}
+
+	protected static String[] getCells(int num_cells)
+	{
+		HardTable ht = getTable(num_cells / COLUMNS.length);
+		String[] cells = new String[num_cells];
+		int i = 0;
+		for (TableEntry te : ht.getEntries())
+		{
+			for (String col : COLUMNS)
+			{
+				cells[i++] = te.get(col).toString();
+			}
+		}
+		return cells;
+	}
+
+	protected static HardTable getTable(int num_rows)
+	{
+		Random r = new Random(0);
+		HardTable ht = new HardTable(COLUMNS);
+		for (int i = 0; i < num_rows; i++)
+		{
+			TableEntry te = new TableEntry("Name", "run_" + i);
+			te.put("Size", r.nextInt(100000));
+			te.put("Time", r.nextDouble() * 1000);
+			te.put("Ratio", r.nextInt(100) + "%");
+			te.put("Note", r.nextBoolean() ? "ok" : "{slow} & #" + r.nextInt(10));
+			ht.add(te);
+		}
+		return ht;
+	}
+}
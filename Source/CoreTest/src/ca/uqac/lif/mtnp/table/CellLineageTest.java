@@ -0,0 +1,146 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import ca.uqac.lif.petitpoucet.AggregateFunction;
+import ca.uqac.lif.petitpoucet.DirectValue;
+import ca.uqac.lif.petitpoucet.NodeFunction;
+
+public class CellLineageTest
+{
+	@Test
+	public void testRemoveColumns()
+	{
+		HardTable ht = getTable();
+		TempTable out = new TransformedTable(new RemoveColumns("B"), ht).getDataTable();
+		assertArrayEquals(new String[] {"A", "C"}, out.getColumnNames());
+		TableCellNode tcn = getCell(out.dependsOn(1, 1));
+		assertEquals(ht.getId(), tcn.getOwner().getId());
+		assertEquals(1, tcn.getRow());
+		assertEquals(2, tcn.getCol());
+	}
+
+	@Test
+	public void testSortRows()
+	{
+		HardTable ht = getTable();
+		TempTable out = new TransformedTable(new SortRows(), ht).getDataTable();
+		// Sorting does not modify the input table
+		assertEquals(3, ht.getEntries().get(0).get("A").numberValue().intValue());
+		TableCellNode tcn = getCell(out.dependsOn(0, 2));
+		assertEquals(2, tcn.getRow());
+		assertEquals(2, tcn.getCol());
+	}
+
+	@Test
+	public void testSelect()
+	{
+		HardTable ht = getTable();
+		TempTable sorted = new TransformedTable(new SortRows(), ht).getDataTable();
+		TempTable out = sorted.getDataTable(false, "C", "A");
+		// The selection exposes the same cells as the sorted table
+		TableCellNode tcn = getCell(out.dependsOn(0, 0));
+		assertEquals(ht.getId(), tcn.getOwner().getId());
+		assertEquals(2, tcn.getRow());
+		assertEquals(2, tcn.getCol());
+	}
+
+	@Test
+	public void testJoin()
+	{
+		HardTable ht1 = new HardTable("K", "A");
+		ht1.add(JoinTest.entry("K", "b", "A", 1));
+		ht1.add(JoinTest.entry("K", "a", "A", 2));
+		HardTable ht2 = new HardTable("K", "B");
+		ht2.add(JoinTest.entry("K", "c", "B", 30));
+		ht2.add(JoinTest.entry("K", "a", "B", 10));
+		TempTable out = new TransformedTable(new Join("K"), ht1, ht2).getDataTable();
+		// Value of B for key a
+		TableCellNode tcn = getCell(out.dependsOn(1, 2));
+		assertEquals(ht2.getId(), tcn.getOwner().getId());
+		assertEquals(1, tcn.getRow());
+		assertEquals(1, tcn.getCol());
+		// Value of A for key b
+		tcn = getCell(out.dependsOn(0, 1));
+		assertEquals(ht1.getId(), tcn.getOwner().getId());
+		assertEquals(0, tcn.getRow());
+		// No value of A for key c
+		assertNull(out.dependsOn(2, 1));
+		// Join does not modify its input entries
+		assertNull(ht1.getEntries().get(0).get("B"));
+	}
+
+	@Test
+	public void testColumnSum()
+	{
+		HardTable ht = getTable();
+		TempTable out = new TransformedTable(new ColumnSum(), ht).getDataTable();
+		NodeFunction nf = out.dependsOn(0, 1);
+		assertTrue(nf instanceof AggregateFunction);
+		assertNull(out.dependsOn(1, 1));
+	}
+
+	@Test
+	public void testGroupInColumns()
+	{
+		HardTable ht = new HardTable("A", "B");
+		ht.add(JoinTest.entry("A", 0, "B", 1));
+		ht.add(JoinTest.entry("A", 1, "B", 2));
+		ht.add(JoinTest.entry("A", 0, "B", 4));
+		TempTable out = new TransformedTable(new GroupInColumns("A", "B"), ht).getDataTable();
+		// Second value of column 0
+		List<NodeFunction> nodes = ((DirectValue) out.dependsOn(1, 0)).getDependencyNodes();
+		assertEquals(2, ((TableCellNode) nodes.get(0)).getRow());
+		assertNull(out.dependsOn(1, 1));
+	}
+
+	@Test
+	public void testNoProvenance()
+	{
+		HardTable ht = getTable();
+		TempTable out = new TransformedTable(new SortRows(), ht).setProvenance(false).getDataTable();
+		assertNull(out.getLineage());
+	}
+
+	protected static TableCellNode getCell(NodeFunction nf)
+	{
+		assertTrue(nf instanceof DirectValue);
+		List<NodeFunction> nodes = ((DirectValue) nf).getDependencyNodes();
+		assertEquals(1, nodes.size());
+		return (TableCellNode) nodes.get(0);
+	}
+
+	protected static HardTable getTable()
+	{
+		HardTable ht = new HardTable("A", "B", "C");
+		for (int i = 3; i > 0; i--)
+		{
+			TableEntry te = new TableEntry("A", i);
+			te.put("B", i * 10);
+			te.put("C", i * 100);
+			ht.add(te);
+		}
+		return ht;
+	}
+}
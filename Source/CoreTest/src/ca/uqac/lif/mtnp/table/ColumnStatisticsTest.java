@@ -0,0 +1,127 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class ColumnStatisticsTest
+{
+	@Test
+	public void testStatistics()
+	{
+		ColumnStatistics cs = new ColumnStatistics();
+		assertTrue(Double.isNaN(cs.getMin()));
+		cs.add(PrimitiveValue.getInstance(3));
+		cs.add(null);
+		cs.add(PrimitiveValue.getInstance("foo"));
+		cs.add(PrimitiveValue.getInstance(-1.5));
+		cs.add(PrimitiveValue.NULL);
+		assertEquals(2, cs.getCount());
+		assertEquals(2, cs.getNullCount());
+		assertEquals(-1.5, cs.getMin(), 0);
+		assertEquals(3, cs.getMax(), 0);
+		assertEquals(1.5, cs.getCompensatedSum(), 0);
+		assertEquals(0.75, cs.getMean(), 0);
+	}
+
+	@Test
+	public void testCompensatedSum()
+	{
+		ColumnStatistics cs = new ColumnStatistics();
+		cs.add(PrimitiveValue.getInstance(1e16));
+		for (int i = 0; i < 1000; i++)
+		{
+			cs.add(PrimitiveValue.getInstance(1d));
+		}
+		cs.add(PrimitiveValue.getInstance(-1e16));
+		assertEquals(1000, cs.getCompensatedSum(), 0);
+		assertEquals(0, cs.getSum(), 0);
+	}
+
+	@Test
+	public void testIncremental()
+	{
+		HardTable ht = new HardTable("A", "B");
+		ht.add(entry("A", 1, "B", "x"));
+		ColumnStatistics cs = ht.getColumnStatistics("A");
+		assertEquals(1, cs.getCount());
+		ht.add(entry("A", 5, "B", "y"));
+		assertSame(cs, ht.getColumnStatistics("A"));
+		assertEquals(2, cs.getCount());
+		assertEquals(5, cs.getMax(), 0);
+		assertEquals(0, ht.getColumnStatistics("B").getCount());
+		assertNull(ht.getColumnStatistics("C"));
+		TempTable tt = ht.getDataTable();
+		assertTrue(tt.m_schema.isValid());
+		assertEquals(6, tt.getColumnStatistics("A").getSum(), 0);
+	}
+
+	@Test
+	public void testNormalizeColumns()
+	{
+		HardTable ht = new HardTable("A", "B");
+		ht.add(entry("A", 1, "B", "x"));
+		ht.add(entry("A", 3, "B", "y"));
+		TempTable out = new TransformedTable(new NormalizeColumns(), ht).getDataTable();
+		assertArrayEquals(new String[] {"A", "B"}, out.getColumnNames());
+		List<TableEntry> entries = out.getEntries();
+		assertEquals(2, entries.size());
+		assertEquals(0.25, entries.get(0).get("A").numberValue().floatValue(), 0.0001);
+		assertEquals(0.75, entries.get(1).get("A").numberValue().floatValue(), 0.0001);
+		assertEquals("y", entries.get(1).get("B").toString());
+	}
+
+	@Test
+	public void testColumnSum()
+	{
+		HardTable ht = new HardTable("A", "B");
+		ht.add(entry("A", 1, "B", 2.5));
+		ht.add(entry("A", 3, "B", null));
+		TempTable out = new TransformedTable(ColumnSum.get(), ht).getDataTable();
+		List<TableEntry> entries = out.getEntries();
+		assertEquals(1, entries.size());
+		assertEquals(4, entries.get(0).get("A").numberValue().floatValue(), 0);
+		assertEquals(2.5, entries.get(0).get("B").numberValue().floatValue(), 0);
+	}
+
+	protected static TableEntry entry(String k1, Object v1, String k2, Object v2)
+	{
+		TableEntry te = new TableEntry(k1, v1);
+		te.put(k2, v2);
+		return te;
+	}
+
+	@Test
+	public void testBoxSharedEntries()
+	{
+		HardTable ht = new HardTable("A");
+		ht.setKeepStatistics(true);
+		ht.add(new TableEntry("A", 2));
+		ht.add(new TableEntry("A", "foo"));
+		TempTable tt = ht.getDataTable();
+		// Modifying an entry shared with the temporary table
+		ht.getEntries().get(1).put("A", 8);
+		TempTable out = new BoxTransformation("x", "y").transform(tt);
+		assertEquals(2, out.get(1, 0).numberValue().intValue());
+		assertEquals(8, out.get(5, 0).numberValue().intValue());
+	}
+}
@@ -0,0 +1,185 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+
+import org.junit.Test;
+
+import ca.uqac.lif.mtnp.DataFormatter;
+
+public class ColumnarTableTest
+{
+	@Test
+	public void testPromotion()
+	{
+		ColumnarTable ct = new ColumnarTable("A", "B", "C");
+		ct.addRow(1, "foo", null);
+		ct.addRow(2, "bar", 3);
+		ct.addRow(3000000000L, null, 2.5f);
+		ct.addRow(4, 5, true);
+		assertEquals(4, ct.getRowCount());
+		assertEquals(3, ct.getColumnCount());
+		assertEquals(1, ct.get(0, 0).numberValue().intValue());
+		assertEquals(3000000000L, ct.get(0, 2).numberValue().longValue());
+		assertEquals("foo", ct.get(1, 0).toString());
+		assertNull(ct.get(1, 2));
+		assertEquals("5", ct.get(1, 3).toString());
+		assertNull(ct.get(2, 0));
+		assertEquals("3", ct.get(2, 1).toString());
+		assertEquals("2.5", ct.get(2, 2).toString());
+		assertEquals("true", ct.get(2, 3).toString());
+		assertTrue(ct.isColumnNumeric(0));
+		assertTrue(ct.isColumnNumeric(1));
+		assertNull(ct.get(5, 0));
+		assertNull(ct.get(0, 5));
+	}
+
+	@Test
+	public void testLargeLongs()
+	{
+		long big = (1L << 60) + 1;
+		ColumnarTable ct = new ColumnarTable("A", "B");
+		// A large integer after a double, and a double after a large integer
+		ct.addRow(1.5, big);
+		ct.addRow(big, 2.5);
+		ct.addRow(3, Long.MAX_VALUE);
+		assertEquals(big, ct.get(0, 1).longValue());
+		assertEquals(big, ct.get(1, 0).longValue());
+		assertEquals(Long.MAX_VALUE, ct.get(1, 2).longValue());
+		assertEquals(1.5, ct.get(0, 0).doubleValue(), 0);
+		assertEquals(2.5, ct.get(1, 1).doubleValue(), 0);
+		assertEquals(3, ct.get(0, 2).longValue());
+		assertTrue(ct.isColumnNumeric(0));
+		assertTrue(ct.isColumnNumeric(1));
+		assertEquals(Float.class, ct.getColumnTypes()[1]);
+	}
+
+	@Test
+	public void testDictionary()
+	{
+		ColumnarTable ct = new ColumnarTable("A", "B");
+		for (int i = 0; i < 100; i++)
+		{
+			ct.addRow(i, i % 3 == 0 ? "foo" : (i % 3 == 1 ? "bar" : null));
+		}
+		ValueDictionary d = ct.getDictionary(1);
+		assertNotNull(d);
+		assertNull(ct.getDictionary(0));
+		assertEquals(2, d.size());
+		assertEquals(0, ct.getCode(1, 0));
+		assertEquals(1, ct.getCode(1, 1));
+		assertEquals(-1, ct.getCode(1, 2));
+		assertEquals(0, ct.getCode(1, 99));
+		assertEquals("foo", ct.get(1, 99).toString());
+		assertSame(ct.get(1, 0), ct.get(1, 3));
+		ColumnarTable ct2 = ct.duplicate(true);
+		ct.addRow(100, "baz");
+		assertEquals(2, ct2.getDictionary(1).size());
+		assertEquals(3, ct.getDictionary(1).size());
+	}
+
+	@Test
+	public void testManyRows()
+	{
+		ColumnarTable ct = new ColumnarTable("A", "B");
+		for (int i = 0; i < 1000; i++)
+		{
+			if (i % 7 == 0)
+			{
+				ct.addRow(i, null);
+			}
+			else
+			{
+				ct.addRow(i, i / 2f);
+			}
+		}
+		assertEquals(1000, ct.getRowCount());
+		for (int i = 0; i < 1000; i++)
+		{
+			assertEquals(i, ct.get(0, i).numberValue().intValue());
+			if (i % 7 == 0)
+			{
+				assertNull(ct.get(1, i));
+			}
+			else
+			{
+				assertEquals(i / 2f, ct.get(1, i).numberValue().floatValue(), 0.0001);
+			}
+		}
+	}
+
+	@Test
+	public void testDataTable()
+	{
+		ColumnarTable ct = new ColumnarTable("A", "B");
+		{
+			TableEntry te = new TableEntry("A", 2);
+			te.put("B", "x");
+			ct.add(te);
+		}
+		{
+			TableEntry te = new TableEntry("A", 1);
+			te.put("B", "y");
+			ct.add(te);
+		}
+		TransformedTable tt = new TransformedTable(new SortRows(), ct);
+		TempTable ht_out = tt.getDataTable();
+		List<TableEntry> entries = ht_out.getEntries();
+		assertEquals(2, entries.size());
+		assertEquals("y", entries.get(0).get("B").toString());
+		assertEquals("x", entries.get(1).get("B").toString());
+	}
+
+	@Test
+	public void testDuplicate()
+	{
+		ColumnarTable ct = new ColumnarTable("A");
+		ct.addRow(1);
+		ColumnarTable ct2 = ct.duplicate(true);
+		ct.addRow("foo");
+		assertEquals(1, ct2.getRowCount());
+		assertEquals(1, ct2.get(0, 0).numberValue().intValue());
+		assertTrue(ct2.isColumnNumeric(0));
+		ct.clear();
+		assertEquals(0, ct.getRowCount());
+	}
+
+	@Test
+	public void testWriteCsv() throws IOException
+	{
+		ColumnarTable ct = new ColumnarTable("A", "B", "C");
+		ct.addRow("x", 12, 1.5f);
+		ct.addRow(null, 3000000000L, 2);
+		ct.addRow("y", null, 0.25);
+		String expected = "A,B,C" + DataFormatter.CRLF
+				+ "x,12,1.5" + DataFormatter.CRLF
+				+ "?,3000000000,2" + DataFormatter.CRLF
+				+ "y,?,0.25" + DataFormatter.CRLF;
+		StringWriter w = new StringWriter();
+		ct.writeCsv(w, ",", "?");
+		assertEquals(expected, w.toString());
+		StringBuilder sb = new StringBuilder();
+		ct.writeCsv(sb, ",", "?");
+		assertEquals(expected, sb.toString());
+	}
+}
@@ -23,6 +23,9 @@ import java.util.List;
 
 import org.junit.Test;
 
+import ca.uqac.lif.petitpoucet.DirectValue;
+import ca.uqac.lif.petitpoucet.NodeFunction;
+
 public class ExpandAsColumnsTest 
 {
 	@Test
@@ -97,4 +100,85 @@ public class ExpandAsColumnsTest
 		assertEquals(1, entries.size());
 		System.out.println(ht_out.toString());
 	}
+	
+	@Test
+	public void testColumnOrder()
+	{
+		HardTable ht = getSweep();
+		TempTable ht_out = new TransformedTable(new Composition(new RemoveColumns("W"), new ExpandAsColumns("Y", "Z")), ht).getDataTable();
+		assertArrayEquals(new String[] {"A", "C", "B"}, ht_out.getColumnNames());
+		ht_out = new TransformedTable(new Composition(new RemoveColumns("W"), new ExpandAsColumns("Y", "Z").setSortColumns(true)), ht).getDataTable();
+		assertArrayEquals(new String[] {"A", "B", "C"}, ht_out.getColumnNames());
+		List<TableEntry> entries = ht_out.getEntries();
+		assertEquals(2, entries.size());
+		assertEquals(5, entries.get(0).get("B").numberValue().intValue());
+		assertEquals(1, entries.get(0).get("C").numberValue().intValue());
+		assertNull(entries.get(1).get("B"));
+		assertEquals(3, entries.get(1).get("C").numberValue().intValue());
+		// Provenance follows the sorted columns
+		NodeFunction nf = ht_out.dependsOn(0, 1);
+		assertTrue(nf instanceof DirectValue);
+		TableCellNode tcn = (TableCellNode) ((DirectValue) nf).getDependencyNodes().get(0);
+		assertEquals(1, tcn.getRow());
+		assertEquals(2, tcn.getCol());
+		// No input row fills this cell
+		assertNull(ht_out.dependsOn(1, 1));
+	}
+	
+	@Test
+	public void testSeveralValues()
+	{
+		HardTable ht = getSweep();
+		TempTable ht_out = new TransformedTable(new ExpandAsColumns("Y", "Z", "W"), ht).getDataTable();
+		assertArrayEquals(new String[] {"A", "C Z", "C W", "B Z", "B W"}, ht_out.getColumnNames());
+		List<TableEntry> entries = ht_out.getEntries();
+		assertEquals(2, entries.size());
+		assertEquals(5, entries.get(0).get("B Z").numberValue().intValue());
+		assertEquals(50, entries.get(0).get("B W").numberValue().intValue());
+		assertEquals(30, entries.get(1).get("C W").numberValue().intValue());
+	}
+	
+	@Test
+	public void testSameName()
+	{
+		// The number 1 and the string "1" give the same column name
+		HardTable ht = new HardTable("A", "Y", "Z");
+		TableEntry te = new TableEntry("A", 1);
+		te.put("Y", 1);
+		te.put("Z", 10);
+		ht.add(te);
+		te = new TableEntry("A", 1);
+		te.put("Y", new StringBuilder("1"));
+		te.put("Z", 20);
+		ht.add(te);
+		assertFalse(ht.get(1, 0).equals(ht.get(1, 1)));
+		TempTable ht_out = new TransformedTable(new ExpandAsColumns("Y", "Z"), ht).getDataTable();
+		assertArrayEquals(new String[] {"A", "1"}, ht_out.getColumnNames());
+		List<TableEntry> entries = ht_out.getEntries();
+		assertEquals(1, entries.size());
+		assertEquals(20, entries.get(0).get("1").numberValue().intValue());
+		// The cell comes from the last row that filled it
+		NodeFunction nf = ht_out.dependsOn(0, 1);
+		assertTrue(nf instanceof DirectValue);
+		TableCellNode tcn = (TableCellNode) ((DirectValue) nf).getDependencyNodes().get(0);
+		assertEquals(1, tcn.getRow());
+	}
+	
+	protected static HardTable getSweep()
+	{
+		HardTable ht = new HardTable("A", "Y", "Z", "W");
+		ht.add(sweepEntry(1, "C", 1));
+		ht.add(sweepEntry(1, "B", 5));
+		ht.add(sweepEntry(2, "C", 3));
+		return ht;
+	}
+	
+	protected static TableEntry sweepEntry(int a, String y, int z)
+	{
+		TableEntry te = new TableEntry("A", a);
+		te.put("Y", y);
+		te.put("Z", z);
+		te.put("W", z * 10);
+		return te;
+	}
 }
@@ -0,0 +1,132 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class FusedTransformationTest
+{
+	@Test
+	public void testFusedChain()
+	{
+		HardTable ht = getTable();
+		TableTransformation[] steps = new TableTransformation[] {new NumberFormatting(), new RenameColumns("X", "Y", "Z"), new RemoveColumns("Y"), Filter.equal("X", "1")};
+		TempTable expected = ht.getDataTable();
+		for (TableTransformation t : steps)
+		{
+			expected = t.transform(expected);
+		}
+		Composition comp = new Composition(steps);
+		assertEquals(1, comp.m_steps.length);
+		assertTrue(comp.m_steps[0] instanceof FusedTransformation);
+		TempTable out = new TransformedTable(comp, ht).getDataTable();
+		LogicalPlanTest.assertSameContents(expected, out);
+		assertArrayEquals(new String[] {"X", "Z"}, out.getColumnNames());
+		assertEquals(2, out.getEntries().size());
+	}
+
+	@Test
+	public void testFuse()
+	{
+		SortRows sort = new SortRows();
+		TableTransformation[] steps = FusedTransformation.fuse(new RemoveColumns("A"), new RenameColumns("B"), sort, new NormalizeRows(), sort, new RelativizeRows());
+		assertEquals(5, steps.length);
+		assertEquals(2, ((FusedTransformation) steps[0]).getTransformations().length);
+		assertSame(sort, steps[1]);
+		assertTrue(steps[2] instanceof NormalizeRows);
+		assertTrue(steps[4] instanceof RelativizeRows);
+	}
+
+	@Test
+	public void testLineage()
+	{
+		HardTable ht = getTable();
+		TransformedTable tt = new TransformedTable(new FusedTransformation(new RemoveColumns("A"), Filter.equal("B", 4), new RenameColumns("P", "Q")), ht);
+		TempTable out = tt.getDataTable();
+		assertEquals(1, out.getEntries().size());
+		assertEquals(5, out.getEntries().get(0).get("Q").numberValue().intValue());
+		// Cell (0, 1) comes from column C of the second row
+		TableCellNode tcn = CellLineageTest.getCell(tt.getDependency(0, 1));
+		assertEquals(1, tcn.getRow());
+		assertEquals(2, tcn.getCol());
+	}
+
+	@Test
+	public void testIncremental()
+	{
+		HardTable ht = getTable();
+		TransformedTable tt = new TransformedTable(new FusedTransformation(new RenameColumns("X", "Y", "Z"), new NormalizeRows()), ht).setIncremental(true);
+		assertEquals(3, tt.getDataTable().getEntries().size());
+		ht.add(entry(1, 1, 2));
+		List<TableEntry> entries = tt.getDataTable().getEntries();
+		assertEquals(4, entries.size());
+		assertEquals(0.5, entries.get(3).get("Z").doubleValue(), 0.0001);
+	}
+
+	@Test
+	public void testIncrementalLineage()
+	{
+		HardTable ht = getTable();
+		final int[] calls = new int[1];
+		Filter f = new Filter(new Filter.Condition()
+		{
+			@Override
+			public boolean evaluate(TableEntry e)
+			{
+				calls[0]++;
+				return e.get("A").numberValue().intValue() == 1;
+			}
+		}, "A");
+		TransformedTable tt = new TransformedTable(new FusedTransformation(f, new RemoveColumns("B")), ht).setIncremental(true);
+		assertEquals(2, tt.getDataTable().getRowCount());
+		// The kept rows are recorded, not found again
+		assertEquals(3, calls[0]);
+		ht.add(entry(5, 0, 0));
+		ht.add(entry(1, 8, 9));
+		TempTable out = tt.getDataTable();
+		assertEquals(5, calls[0]);
+		assertEquals(3, out.getRowCount());
+		// Cell (2, 1) comes from column C of the last row
+		TableCellNode tcn = CellLineageTest.getCell(tt.getDependency(2, 1));
+		assertEquals(4, tcn.getRow());
+		assertEquals(2, tcn.getCol());
+		tcn = CellLineageTest.getCell(tt.getDependency(1, 0));
+		assertEquals(2, tcn.getRow());
+	}
+
+	protected static HardTable getTable()
+	{
+		HardTable ht = new HardTable("A", "B", "C");
+		ht.add(entry(1, 2, 3));
+		ht.add(entry(3, 4, 5));
+		ht.add(entry(1, 6, 7));
+		return ht;
+	}
+
+	protected static TableEntry entry(int a, int b, int c)
+	{
+		TableEntry te = new TableEntry("A", a);
+		te.put("B", b);
+		te.put("C", c);
+		return te;
+	}
+}
@@ -0,0 +1,66 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class GroupInColumnsTest
+{
+	@Test
+	public void testOrder()
+	{
+		HardTable ht = new HardTable("A", "B");
+		ht.add(entry("A", "y", "B", 1));
+		ht.add(entry("A", "x", "B", 2));
+		ht.add(entry("A", "y", "B", 3));
+		TempTable out = new TransformedTable(new GroupInColumns("A", "B"), ht).getDataTable();
+		assertArrayEquals(new String[] {"y", "x"}, out.getColumnNames());
+		List<TableEntry> entries = out.getEntries();
+		assertEquals(2, entries.size());
+		assertEquals(1, entries.get(0).get("y").numberValue().intValue());
+		assertEquals(2, entries.get(0).get("x").numberValue().intValue());
+		assertEquals(3, entries.get(1).get("y").numberValue().intValue());
+		assertNull(entries.get(1).get("x"));
+	}
+
+	@Test
+	public void testSameName()
+	{
+		// The number 1 and the string "1" give the same column name
+		HardTable ht = new HardTable("A", "B");
+		ht.add(entry("A", 1, "B", 1));
+		ht.add(entry("A", new StringBuilder("1"), "B", 2));
+		TempTable out = new TransformedTable(new GroupInColumns("A", "B"), ht).getDataTable();
+		assertArrayEquals(new String[] {"1"}, out.getColumnNames());
+		List<TableEntry> entries = out.getEntries();
+		assertEquals(2, entries.size());
+		assertEquals(1, entries.get(0).get("1").numberValue().intValue());
+		assertEquals(2, entries.get(1).get("1").numberValue().intValue());
+	}
+
+	protected static TableEntry entry(String k1, Object v1, String k2, Object v2)
+	{
+		TableEntry te = new TableEntry(k1, v1);
+		te.put(k2, v2);
+		return te;
+	}
+}
@@ -0,0 +1,122 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class JoinTest
+{
+	@Test
+	public void testJoin()
+	{
+		HardTable ht1 = new HardTable("K", "A");
+		ht1.add(entry("K", "b", "A", 1));
+		ht1.add(entry("K", "a", "A", 2));
+		HardTable ht2 = new HardTable("K", "B");
+		ht2.add(entry("K", "a", "B", 10));
+		ht2.add(entry("K", "c", "B", 30));
+		ht2.add(entry("K", "a", "B", 20));
+		TempTable out = new TransformedTable(new Join("K"), ht1, ht2).getDataTable();
+		assertArrayEquals(new String[] {"K", "A", "B"}, out.getColumnNames());
+		List<TableEntry> entries = out.getEntries();
+		assertEquals(3, entries.size());
+		assertEquals("b", entries.get(0).get("K").toString());
+		assertEquals(1, entries.get(0).get("A").numberValue().intValue());
+		assertNull(entries.get(0).get("B"));
+		assertEquals("a", entries.get(1).get("K").toString());
+		assertEquals(2, entries.get(1).get("A").numberValue().intValue());
+		assertEquals(10, entries.get(1).get("B").numberValue().intValue());
+		assertEquals("c", entries.get(2).get("K").toString());
+		assertNull(entries.get(2).get("A"));
+		assertEquals(30, entries.get(2).get("B").numberValue().intValue());
+	}
+
+	@Test
+	public void testMultiWay()
+	{
+		HardTable ht1 = new HardTable("K", "A");
+		ht1.add(entry("K", 1, "A", 1));
+		ht1.add(entry("K", 2, "A", 2));
+		HardTable ht2 = new HardTable("K", "B");
+		ht2.add(entry("K", 2, "B", 20));
+		HardTable ht3 = new HardTable("K", "C");
+		ht3.add(entry("K", 3, "C", 300));
+		ht3.add(entry("K", 2, "C", 200));
+		TempTable out = new TransformedTable(new Join("K"), ht1, ht2, ht3).getDataTable();
+		assertArrayEquals(new String[] {"K", "A", "B", "C"}, out.getColumnNames());
+		List<TableEntry> entries = out.getEntries();
+		assertEquals(3, entries.size());
+		assertEquals(2, entries.get(1).get("K").numberValue().intValue());
+		assertEquals(2, entries.get(1).get("A").numberValue().intValue());
+		assertEquals(20, entries.get(1).get("B").numberValue().intValue());
+		assertEquals(200, entries.get(1).get("C").numberValue().intValue());
+		assertEquals(3, entries.get(2).get("K").numberValue().intValue());
+		assertNull(entries.get(2).get("A"));
+	}
+
+	@Test
+	public void testSortedInputs()
+	{
+		HardTable ht1 = new HardTable("K", "A");
+		ht1.add(entry("K", 1, "A", 1));
+		ht1.add(entry("K", 3, "A", 3));
+		ht1.add(entry("K", 3, "A", 4));
+		HardTable ht2 = new HardTable("K", "B");
+		ht2.add(entry("K", 2, "B", 20));
+		ht2.add(entry("K", 3, "B", 30));
+		TempTable out = new TransformedTable(new Join("K").setSortedInputs(true), ht1, ht2).getDataTable();
+		List<TableEntry> entries = out.getEntries();
+		assertEquals(3, entries.size());
+		// Rows come in ascending order of the key
+		assertEquals(1, entries.get(0).get("K").numberValue().intValue());
+		assertNull(entries.get(0).get("B"));
+		assertEquals(2, entries.get(1).get("K").numberValue().intValue());
+		assertNull(entries.get(1).get("A"));
+		assertEquals(3, entries.get(2).get("K").numberValue().intValue());
+		assertEquals(3, entries.get(2).get("A").numberValue().intValue());
+		assertEquals(30, entries.get(2).get("B").numberValue().intValue());
+	}
+
+	@Test
+	public void testSortedInputsFallback()
+	{
+		// The first table is not sorted: the result is that of a hash join
+		HardTable ht1 = new HardTable("K", "A");
+		ht1.add(entry("K", 3, "A", 3));
+		ht1.add(entry("K", 1, "A", 1));
+		HardTable ht2 = new HardTable("K", "B");
+		ht2.add(entry("K", 1, "B", 10));
+		TempTable out = new TransformedTable(new Join("K").setSortedInputs(true), ht1, ht2).getDataTable();
+		List<TableEntry> entries = out.getEntries();
+		assertEquals(2, entries.size());
+		assertEquals(3, entries.get(0).get("K").numberValue().intValue());
+		assertEquals(1, entries.get(1).get("K").numberValue().intValue());
+		assertEquals(10, entries.get(1).get("B").numberValue().intValue());
+	}
+
+	protected static TableEntry entry(String k1, Object v1, String k2, Object v2)
+	{
+		TableEntry te = new TableEntry(k1, v1);
+		te.put(k2, v2);
+		return te;
+	}
+}
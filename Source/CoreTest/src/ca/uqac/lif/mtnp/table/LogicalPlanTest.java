@@ -0,0 +1,239 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class LogicalPlanTest
+{
+	@Test
+	public void testProjectionPushdown()
+	{
+		HardTable ht1 = new HardTable("K", "A", "B");
+		ht1.add(entry("K", 1, "A", 10, "B", 100));
+		ht1.add(entry("K", 2, "A", 20, "B", 200));
+		HardTable ht2 = new HardTable("K", "C", "D");
+		ht2.add(entry("K", 2, "C", 2000, "D", 20000));
+		TransformedTable tt = new TransformedTable(new Select("K", "C"), new TransformedTable(new Join("K"), ht1, ht2));
+		LogicalPlan plan = new LogicalPlan(tt).optimize();
+		// The select on top keeps all the columns once pushed below the join
+		assertEquals(2, plan.getRewrites().size());
+		assertEquals("Join [K]\n"
+				+ "  Select [K]\n"
+				+ "    Table " + ht1.getId() + " (HardTable)\n"
+				+ "  Select [K, C]\n"
+				+ "    Table " + ht2.getId() + " (HardTable)\n", plan.explain().substring(0, plan.explain().indexOf("Rewrites:")));
+		assertSameContents(tt.getDataTable(), plan.getTable().getDataTable());
+	}
+
+	@Test
+	public void testMerge()
+	{
+		HardTable ht = new HardTable("A", "B", "C", "D");
+		ht.add(entry("A", 1, "B", 2, "C", 3, "D", 4));
+		Table t = new TransformedTable(new Composition(new RemoveColumns("D"), new Select("A", "B", "C"), new Select("C", "A"), new RenameColumns("X", "Y"), new RenameColumns("P", "Q")), ht);
+		LogicalPlan plan = new LogicalPlan(t).optimize();
+		assertEquals("RenameColumns [P, Q]\n  Select [C, A]\n    Table " + ht.getId() + " (HardTable)\n", plan.explain().substring(0, plan.explain().indexOf("Rewrites:")));
+		Table opt = plan.getTable();
+		assertSameContents(t.getDataTable(), opt.getDataTable());
+		// Removing the columns that are not there does nothing
+		plan = new LogicalPlan(new TransformedTable(new RemoveColumns("E"), ht)).optimize();
+		assertEquals(1, plan.getRewrites().size());
+		opt = plan.getTable();
+		// The result is not the input table itself
+		assertNotSame(ht, opt);
+		assertSameContents(ht.getDataTable(), opt.getDataTable());
+		ht.add(entry("A", 5, "B", 6, "C", 7, "D", 8));
+		assertEquals(2, opt.getDataTable().getRowCount());
+		opt.getDataTable().getEntries().clear();
+		assertEquals(2, ht.getRowCount());
+	}
+
+	@Test
+	public void testSettings()
+	{
+		HardTable ht = new HardTable("A", "B", "C");
+		ht.add(entry("A", 1, "B", 2, "C", 3));
+		TableCache cache = new TableCache(1000);
+		TransformedTable t = new TransformedTable(new Composition(new SortRows("B"), new SortRows("A", "B"), Filter.equal("A", 1)), ht).setProvenance(false).setCache(cache).setIncremental(true);
+		Table opt = new LogicalPlan(t).optimize().getTable();
+		assertNotSame(t, opt);
+		// Each table of the optimized pipeline has the settings of the original
+		while (opt instanceof TransformedTable)
+		{
+			TransformedTable tt = (TransformedTable) opt;
+			assertFalse(tt.getProvenance());
+			assertSame(cache, tt.m_cache);
+			assertTrue(tt.isIncremental());
+			opt = tt.getInputTables()[0];
+		}
+		assertSame(ht, opt);
+	}
+
+	@Test
+	public void testRedundantSort()
+	{
+		HardTable ht = new HardTable("A", "B");
+		ht.add(entry("A", 2, "B", 1));
+		ht.add(entry("A", 1, "B", 2));
+		ht.add(entry("A", 1, "B", 1));
+		Table t = new TransformedTable(new SortRows("A", "B"), new TransformedTable(new SortRows("B").setDescending("B"), ht));
+		LogicalPlan plan = new LogicalPlan(t).optimize();
+		assertEquals(1, plan.getRewrites().size());
+		assertSameContents(t.getDataTable(), plan.getTable().getDataTable());
+		// The order given by the first sort matters here
+		t = new TransformedTable(new SortRows("A"), new TransformedTable(new SortRows("B"), ht));
+		plan = new LogicalPlan(t).optimize();
+		assertTrue(plan.getRewrites().isEmpty());
+		assertSame(t, plan.getTable());
+	}
+
+	@Test
+	public void testFilterPushdown()
+	{
+		HardTable ht1 = new HardTable("K", "A");
+		ht1.add(entry("K", "b", "A", 1));
+		ht1.add(entry("K", "a", "A", 2));
+		HardTable ht2 = new HardTable("K", "B");
+		ht2.add(entry("K", "a", "B", 10));
+		ht2.add(entry("K", "c", "B", 30));
+		Table t = new TransformedTable(new Composition(new Join("K"), new SortRows("A"), Filter.equal("K", "a")), ht1, ht2);
+		LogicalPlan plan = new LogicalPlan(t).optimize();
+		assertEquals("SortRows [A]\n"
+				+ "  Join [K]\n"
+				+ "    Filter K = a\n"
+				+ "      Table " + ht1.getId() + " (HardTable)\n"
+				+ "    Filter K = a\n"
+				+ "      Table " + ht2.getId() + " (HardTable)\n", plan.explain().substring(0, plan.explain().indexOf("Rewrites:")));
+		TempTable out = plan.getTable().getDataTable();
+		assertSameContents(t.getDataTable(), out);
+		assertEquals(1, out.getEntries().size());
+		assertEquals(10, out.getEntries().get(0).get("B").numberValue().intValue());
+	}
+
+	@Test
+	public void testBarrier()
+	{
+		HardTable ht = new HardTable("A", "B");
+		ht.add(entry("A", 1, "B", 2));
+		ht.add(entry("A", 3, "B", 4));
+		Table t = new TransformedTable(Filter.equal("A", 3), new TransformedTable(new Identity(), new TransformedTable(new SortRows(), ht)));
+		LogicalPlan plan = new LogicalPlan(t).optimize();
+		assertTrue(plan.getRewrites().isEmpty());
+		assertTrue(plan.explain().contains("Identity (barrier)"));
+		assertSame(t, plan.getTable());
+	}
+
+	@Test
+	public void testFusion()
+	{
+		HardTable ht = new HardTable("A", "B", "C");
+		ht.add(entry("A", 1, "B", 2, "C", 3));
+		ht.add(entry("A", 4, "B", 5, "C", 6));
+		TransformedTable sorted = new TransformedTable(new SortRows(), ht);
+		Table t = new TransformedTable(Filter.equal("X", 4), new TransformedTable(new RenameColumns("X", "Y"), new TransformedTable(new RemoveColumns("B"), sorted)));
+		LogicalPlan plan = new LogicalPlan(t).optimize();
+		assertEquals("Fused [RemoveColumns [B]; RenameColumns [X, Y]; Filter X = 4]\n"
+				+ "  SortRows (all columns)\n"
+				+ "    Table " + ht.getId() + " (HardTable)\n", plan.explain().substring(0, plan.explain().indexOf("Rewrites:")));
+		Table opt = plan.getTable();
+		assertSame(sorted, ((TransformedTable) opt).getInputTables()[0]);
+		assertSameContents(t.getDataTable(), opt.getDataTable());
+		// The fused table has the settings of the table it replaces
+		TableCache cache = new TableCache(1000);
+		t = new TransformedTable(new Composition(new RemoveColumns("B"), new RenameColumns("X", "Y")), ht).setProvenance(false).setCache(cache).setIncremental(true);
+		TransformedTable tt = (TransformedTable) new LogicalPlan(t).optimize().getTable();
+		assertTrue(tt.m_transformation instanceof FusedTransformation);
+		assertFalse(tt.getProvenance());
+		assertSame(cache, tt.m_cache);
+		assertTrue(tt.isIncremental());
+	}
+
+	@Test
+	public void testShared()
+	{
+		HardTable ht = new HardTable("A", "B");
+		ht.add(entry("A", 1, "B", 2));
+		TransformedTable sorted = new TransformedTable(new SortRows(), ht);
+		Table t = new TransformedTable(new Join("A"), new TransformedTable(new SortRows(), sorted), new TransformedTable(Filter.equal("A", 1), sorted));
+		LogicalPlan plan = new LogicalPlan(t).optimize();
+		// The sort used twice is not rewritten
+		assertTrue(plan.getRewrites().isEmpty());
+		assertTrue(plan.explain().contains("(see above)"));
+	}
+
+	@Test
+	public void testFilter()
+	{
+		HardTable ht = new HardTable("A", "B");
+		ht.add(entry("A", 1, "B", 2));
+		ht.add(entry("A", 3, "B", 4));
+		ht.add(entry("A", 1, "B", 6));
+		TransformedTable tt = new TransformedTable(Filter.equal("A", 1), ht).setIncremental(true);
+		TempTable out = tt.getDataTable();
+		assertEquals(2, out.getEntries().size());
+		assertEquals(6, out.getEntries().get(1).get("B").numberValue().intValue());
+		TableCellNode tcn = CellLineageTest.getCell(tt.getDependency(1, 1));
+		assertEquals(2, tcn.getRow());
+		ht.add(entry("A", 1, "B", 8));
+		out = tt.getDataTable();
+		assertEquals(3, out.getEntries().size());
+		assertEquals(8, out.getEntries().get(2).get("B").numberValue().intValue());
+	}
+
+	/**
+	 * A transformation unknown to the plan
+	 */
+	protected static class Identity implements TableTransformation
+	{
+		@Override
+		public TempTable transform(TempTable ... tables)
+		{
+			return tables[0];
+		}
+	}
+
+	protected static void assertSameContents(TempTable expected, TempTable actual)
+	{
+		assertArrayEquals(expected.getColumnNames(), actual.getColumnNames());
+		List<TableEntry> e_entries = expected.getEntries();
+		List<TableEntry> a_entries = actual.getEntries();
+		assertEquals(e_entries.size(), a_entries.size());
+		for (int i = 0; i < e_entries.size(); i++)
+		{
+			for (String col : expected.getColumnNames())
+			{
+				assertEquals(e_entries.get(i).get(col), a_entries.get(i).get(col));
+			}
+		}
+	}
+
+	protected static TableEntry entry(Object ... pairs)
+	{
+		TableEntry te = new TableEntry();
+		for (int i = 0; i < pairs.length; i += 2)
+		{
+			te.put((String) pairs[i], pairs[i + 1]);
+		}
+		return te;
+	}
+}
@@ -0,0 +1,100 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2018 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class PrimitiveValueTest
+{
+	@Test
+	public void testInterning()
+	{
+		assertSame(PrimitiveValue.getInstance(3), PrimitiveValue.getInstance("3"));
+		assertSame(PrimitiveValue.NULL, PrimitiveValue.getInstance((Object) null));
+		assertSame(PrimitiveValue.TRUE, PrimitiveValue.getInstance(Boolean.TRUE));
+		assertSame(PrimitiveValue.getInstance("foo"), PrimitiveValue.getInstance("foo"));
+		assertTrue(PrimitiveValue.getInstance(100000).isNumeric());
+	}
+
+	@Test
+	public void testTypes()
+	{
+		PrimitiveValue v = PrimitiveValue.getInstance("2.5");
+		assertTrue(v.isNumeric());
+		assertFalse(v.isString());
+		assertEquals("2.5", v.toString());
+		assertEquals(2.5, v.doubleValue(), 0);
+		assertTrue(v.numberValue() instanceof Float);
+		v = PrimitiveValue.getInstance(3000000000L);
+		assertTrue(v.isIntegral());
+		assertEquals(3000000000L, v.longValue());
+		v = PrimitiveValue.getInstance(true);
+		assertTrue(v.isBoolean());
+		assertTrue(v.isString());
+		assertEquals("true", v.stringValue());
+		assertTrue(PrimitiveValue.NULL.isNull());
+		assertEquals("null", PrimitiveValue.NULL.toString());
+	}
+
+	@Test
+	public void testCompare()
+	{
+		PrimitiveValue one = PrimitiveValue.getInstance(1);
+		PrimitiveValue one_f = PrimitiveValue.getInstance(1f);
+		PrimitiveValue two = PrimitiveValue.getInstance(2.5);
+		PrimitiveValue foo = PrimitiveValue.getInstance("foo");
+		assertEquals(one, one_f);
+		assertEquals(one.hashCode(), one_f.hashCode());
+		assertTrue(one.compareTo(two) < 0);
+		assertTrue(two.compareTo(one) > 0);
+		assertTrue(two.compareTo(foo) < 0);
+		assertTrue(foo.compareTo(PrimitiveValue.NULL) < 0);
+		assertTrue(PrimitiveValue.NULL.compareTo(one) > 0);
+		assertTrue(PrimitiveValue.FALSE.compareTo(PrimitiveValue.TRUE) < 0);
+		assertEquals(0, PrimitiveValue.getInstance(Long.MAX_VALUE).compareTo(PrimitiveValue.getInstance(Long.MAX_VALUE)));
+		assertTrue(PrimitiveValue.getInstance(Long.MAX_VALUE - 1).compareTo(PrimitiveValue.getInstance(Long.MAX_VALUE)) < 0);
+	}
+
+	@Test
+	public void testCompareLargeLongs()
+	{
+		long big = 1L << 60;
+		PrimitiveValue l = PrimitiveValue.getInstance(big + 1);
+		PrimitiveValue d = PrimitiveValue.getInstance((double) big);
+		PrimitiveValue l0 = PrimitiveValue.getInstance(big);
+		// The double is equal to 2^60, not to 2^60 + 1
+		assertTrue(l.compareTo(d) > 0);
+		assertTrue(d.compareTo(l) < 0);
+		assertFalse(l.equals(d));
+		assertEquals(l0, d);
+		assertEquals(l0.hashCode(), d.hashCode());
+		assertTrue(PrimitiveValue.getInstance(Long.MAX_VALUE).compareTo(PrimitiveValue.getInstance(0x1p63)) < 0);
+		assertTrue(PrimitiveValue.getInstance(Long.MIN_VALUE).compareTo(PrimitiveValue.getInstance(-0x1p63)) == 0);
+		assertTrue(PrimitiveValue.getInstance(3).compareTo(PrimitiveValue.getInstance(3.5)) < 0);
+		assertTrue(PrimitiveValue.getInstance(-3).compareTo(PrimitiveValue.getInstance(-3.5)) > 0);
+		assertTrue(PrimitiveValue.getInstance(Long.MAX_VALUE).compareTo(PrimitiveValue.getInstance(Double.NaN)) < 0);
+		assertEquals(PrimitiveValue.getInstance(0), PrimitiveValue.getInstance(-0.0));
+		// Grouping a long with a double that it is not equal to
+		ValueDictionary dict = new ValueDictionary();
+		assertEquals(0, dict.encode(l));
+		assertEquals(1, dict.encode(d));
+		assertEquals(1, dict.encode(l0));
+	}
+}
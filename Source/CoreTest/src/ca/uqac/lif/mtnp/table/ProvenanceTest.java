@@ -0,0 +1,84 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class ProvenanceTest
+{
+	@Test
+	public void testEnabled()
+	{
+		TransformedTable tt = new TransformedTable(new SortRows(), getTable());
+		TempTable out = tt.getDataTable();
+		assertNotNull(out.dependsOn(0, 0));
+		assertTrue(TransformedTable.isProvenanceEnabled());
+	}
+
+	@Test
+	public void testDisabled()
+	{
+		TransformedTable inner = new TransformedTable(new RemoveColumns("C"), getTable());
+		TransformedTable tt = new TransformedTable(new SortRows(), inner);
+		tt.setProvenance(false);
+		assertFalse(tt.getProvenance());
+		TempTable out = tt.getDataTable();
+		assertEquals(3, out.getRowCount());
+		assertEquals(1, out.get(0, 0).numberValue().intValue());
+		for (int row = 0; row < out.getRowCount(); row++)
+		{
+			for (int col = 0; col < out.getColumnCount(); col++)
+			{
+				assertNull(out.dependsOn(row, col));
+			}
+		}
+		assertTrue(TransformedTable.isProvenanceEnabled());
+		// The inner table still computes dependencies when evaluated alone
+		assertNotNull(inner.getDataTable().dependsOn(0, 0));
+	}
+
+	@Test
+	public void testAggregates()
+	{
+		TransformedTable tt = new TransformedTable(ColumnSum.get(), new TransformedTable(new RemoveColumns("C"), getTable()));
+		tt.setProvenance(false);
+		TempTable out = tt.getDataTable();
+		assertEquals(6, out.get(0, 0).numberValue().intValue());
+		assertNull(out.dependsOn(0, 0));
+		tt = new TransformedTable(new BoxTransformation(), new TransformedTable(new RemoveColumns("C"), getTable()));
+		tt.setProvenance(false);
+		out = tt.getDataTable();
+		assertEquals(2, out.getRowCount());
+		assertNull(out.dependsOn(0, 1));
+	}
+
+	protected static HardTable getTable()
+	{
+		HardTable ht = new HardTable("A", "B", "C");
+		for (int i = 3; i > 0; i--)
+		{
+			TableEntry te = new TableEntry("A", i);
+			te.put("B", i * 10);
+			te.put("C", "x" + i);
+			ht.add(te);
+		}
+		return ht;
+	}
+}
@@ -0,0 +1,138 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class RowCursorTest
+{
+	@Test
+	public void testStream()
+	{
+		HardTable ht = getTable(100);
+		TransformedTable tt = new TransformedTable(new Composition(new Select("C", "A", "B"), new RemoveColumns("B"), new Filter(new Filter.Condition()
+		{
+			@Override
+			public boolean evaluate(TableEntry e)
+			{
+				return e.get("A").numberValue().intValue() % 3 == 0;
+			}
+		}, "A"), new RenameColumns("X", "Y"), new Limit(10)), ht);
+		RowCursor cursor = tt.getCursor();
+		assertArrayEquals(new String[] {"X", "Y"}, cursor.getColumnNames());
+		TempTable expected = tt.getDataTable();
+		assertEquals(10, expected.getRowCount());
+		LogicalPlanTest.assertSameContents(expected, cursor.toTable());
+	}
+
+	@Test
+	public void testUnboundedSource()
+	{
+		// A source that never ends can be streamed up to a limit
+		RowCursor source = new RowCursor(new String[] {"A", "B"})
+		{
+			PrimitiveValue[] m_values = new PrimitiveValue[2];
+			int m_row = 0;
+
+			@Override
+			public boolean next()
+			{
+				m_values[0] = PrimitiveValue.getInstance(m_row);
+				m_values[1] = PrimitiveValue.getInstance(m_row * 2);
+				m_row++;
+				return true;
+			}
+
+			@Override
+			public PrimitiveValue[] getValues()
+			{
+				return m_values;
+			}
+		};
+		RowCursor cursor = RowCursor.stream(new Composition(Filter.equal("B", 10), new NormalizeRows(), new Limit(1)), source);
+		assertTrue(cursor.next());
+		assertEquals(1f / 3, cursor.getValues()[0].doubleValue(), 0.0001);
+		assertFalse(cursor.next());
+	}
+
+	@Test
+	public void testBlocking()
+	{
+		HardTable ht = getTable(10);
+		Composition comp = new Composition(new RemoveColumns("C"), new SortRows("A").setDescending("A"), new Limit(2));
+		TempTable out = new TransformedTable(comp, ht).getCursor().toTable();
+		List<TableEntry> entries = out.getEntries();
+		assertEquals(2, entries.size());
+		assertEquals(9, entries.get(0).get("A").numberValue().intValue());
+		assertEquals(8, entries.get(1).get("A").numberValue().intValue());
+		assertArrayEquals(new String[] {"A", "B"}, out.getColumnNames());
+		// The tables of a pipeline are not evaluated to read a blocking one
+		TransformedTable removed = new TransformedTable(new RemoveColumns("C"), ht).setCache(new TableCache(1000));
+		TransformedTable sorted = new TransformedTable(new SortRows("A").setDescending("A"), removed).setCache(new TableCache(1000));
+		out = sorted.getCursor().toTable();
+		assertEquals(10, out.getRowCount());
+		assertEquals(9, out.get(0, 0).numberValue().intValue());
+		assertNull(removed.m_materialized);
+		assertNull(sorted.m_materialized);
+	}
+
+	@Test
+	public void testColumnar()
+	{
+		ColumnarTable ct = new ColumnarTable("A", "B");
+		ct.addRow(1, "x");
+		ct.addRow(2, null);
+		RowCursor cursor = ct.getCursor();
+		assertTrue(cursor.next());
+		assertEquals("x", cursor.getValues()[1].stringValue());
+		assertTrue(cursor.next());
+		assertEquals(2, cursor.getValues()[0].numberValue().intValue());
+		assertNull(cursor.getValues()[1]);
+		assertFalse(cursor.next());
+	}
+
+	@Test
+	public void testLimit()
+	{
+		HardTable ht = getTable(3);
+		TransformedTable tt = new TransformedTable(new Limit(4), ht).setIncremental(true);
+		assertEquals(3, tt.getDataTable().getRowCount());
+		ht.add(getTable(3).getEntries().get(0));
+		ht.add(getTable(3).getEntries().get(1));
+		TempTable out = tt.getDataTable();
+		assertEquals(4, out.getRowCount());
+		assertEquals(0, out.getEntries().get(3).get("A").numberValue().intValue());
+	}
+
+	protected static HardTable getTable(int rows)
+	{
+		HardTable ht = new HardTable("A", "B", "C");
+		for (int i = 0; i < rows; i++)
+		{
+			TableEntry te = new TableEntry("A", i);
+			te.put("B", i * 2);
+			te.put("C", "c" + i);
+			ht.add(te);
+		}
+		return ht;
+	}
+}
@@ -19,7 +19,9 @@ package ca.uqac.lif.mtnp.table;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import org.junit.Test;
 
@@ -64,7 +66,7 @@ public class SortRowsTest
 			if (val == 1)
 			{
 				assertEquals(0, entry.getRowIndex());
-				NodeFunction nf = entry.getDependency("A");
+				NodeFunction nf = ht_out.dependsOn(entry.getRowIndex(), 0);
 				assertTrue(nf instanceof DirectValue);
 				DirectValue dv = (DirectValue) nf;
 				List<NodeFunction> nodes = dv.getDependencyNodes();
@@ -78,7 +80,7 @@ public class SortRowsTest
 			if (val == 2)
 			{
 				assertEquals(1, entry.getRowIndex());
-				NodeFunction nf = entry.getDependency("A");
+				NodeFunction nf = ht_out.dependsOn(entry.getRowIndex(), 0);
 				assertTrue(nf instanceof DirectValue);
 				DirectValue dv = (DirectValue) nf;
 				List<NodeFunction> nodes = dv.getDependencyNodes();
@@ -91,7 +93,7 @@ public class SortRowsTest
 			if (val == 3)
 			{
 				assertEquals(2, entry.getRowIndex());
-				NodeFunction nf = entry.getDependency("A");
+				NodeFunction nf = ht_out.dependsOn(entry.getRowIndex(), 0);
 				assertTrue(nf instanceof DirectValue);
 				DirectValue dv = (DirectValue) nf;
 				List<NodeFunction> nodes = dv.getDependencyNodes();
@@ -103,4 +105,105 @@ public class SortRowsTest
 			}
 		}
 	}
-}
\ No newline at end of file
+	
+	@SuppressWarnings("deprecation")
+	@Test
+	public void testRowComparator()
+	{
+		SortRows.RowComparator comp = new SortRows.RowComparator(new String[] {"A", "B"});
+		TableEntry te1 = new TableEntry("A", 1);
+		te1.put("B", "x");
+		TableEntry te2 = new TableEntry("A", 1);
+		te2.put("B", "y");
+		TableEntry te3 = new TableEntry("B", "a");
+		assertTrue(comp.compare(te1, te2) < 0);
+		assertTrue(comp.compare(te2, te1) > 0);
+		assertEquals(0, comp.compare(te1, te1));
+		// A row without a value comes last
+		assertTrue(comp.compare(te3, te1) > 0);
+	}
+	
+	@Test
+	public void testSecondColumn()
+	{
+		// Rows with the same value in the first column are sorted on the
+		// second one
+		HardTable ht = new HardTable("A", "B");
+		ht.add(entry(1, "z"));
+		ht.add(entry(0, "y"));
+		ht.add(entry(1, "x"));
+		TempTable out = new TransformedTable(new SortRows(), ht).getDataTable();
+		assertEquals("y", out.get(1, 0).toString());
+		assertEquals("x", out.get(1, 1).toString());
+		assertEquals("z", out.get(1, 2).toString());
+		// The input table is left untouched
+		assertEquals("z", ht.get(1, 0).toString());
+	}
+	
+	@Test
+	public void testDescending()
+	{
+		HardTable ht = new HardTable("A", "B");
+		ht.add(entry(1, "z"));
+		ht.add(entry(null, "w"));
+		ht.add(entry(0, "y"));
+		ht.add(entry(1, "x"));
+		TempTable out = new TransformedTable(new SortRows("A", "B").setDescending("A"), ht).getDataTable();
+		assertEquals("x", out.get(1, 0).toString());
+		assertEquals("z", out.get(1, 1).toString());
+		assertEquals("y", out.get(1, 2).toString());
+		// Missing values come last
+		assertEquals("w", out.get(1, 3).toString());
+	}
+	
+	@Test
+	public void testParallel()
+	{
+		Random r = new Random(0);
+		List<TableEntry> entries = new ArrayList<TableEntry>();
+		for (int i = 0; i < 100000; i++)
+		{
+			entries.add(entry(r.nextInt(100), r.nextBoolean() ? "s" + r.nextInt(100) : Float.valueOf(r.nextFloat())));
+		}
+		RowSorter sorter = new RowSorter("A", "B");
+		int[] sequential = sorter.sort(entries);
+		int[] parallel = sorter.setThreads(4).sort(entries);
+		assertArrayEquals(sequential, parallel);
+		for (int i = 1; i < sequential.length; i++)
+		{
+			TableEntry e1 = entries.get(sequential[i - 1]);
+			TableEntry e2 = entries.get(sequential[i]);
+			assertTrue(e1.get("A").compareTo(e2.get("A")) <= 0);
+			if (e1.get("A").equals(e2.get("A")))
+			{
+				assertTrue(e1.get("B").compareTo(e2.get("B")) <= 0);
+			}
+		}
+	}
+	
+	@Test
+	public void testLargeLongs()
+	{
+		HardTable ht = new HardTable("A", "B");
+		long big = 1L << 60;
+		ht.add(entry(big + 1, "b"));
+		ht.add(entry(big, "a"));
+		ht.add(entry((double) big, "c"));
+		ht.add(entry(big - 1, "d"));
+		TempTable out = new TransformedTable(new SortRows("A"), ht).getDataTable();
+		// Same double value, but distinct longs
+		assertEquals(big - 1, out.get(0, 0).longValue());
+		assertEquals(big, out.get(0, 1).longValue());
+		assertEquals("c", out.get(1, 2).toString());
+		assertEquals(big + 1, out.get(0, 3).longValue());
+		out = new TransformedTable(new SortRows("A").setDescending("A"), ht).getDataTable();
+		assertEquals(big + 1, out.get(0, 0).longValue());
+	}
+	
+	protected static TableEntry entry(Object a, Object b)
+	{
+		TableEntry te = new TableEntry("A", a);
+		te.put("B", b);
+		return te;
+	}
+}
@@ -0,0 +1,112 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2018 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class TableEntryTest
+{
+	@Test
+	public void testSharedSchema()
+	{
+		HardTable ht = new HardTable("A", "B");
+		TableEntry te1 = new TableEntry("A", 1);
+		te1.put("B", "foo");
+		TableEntry te2 = new TableEntry("B", "bar");
+		te2.put("A", 2);
+		ht.add(te1);
+		ht.add(te2);
+		assertSame(te1.getSchema(), te2.getSchema());
+		assertSame(RowSchema.of("A", "B"), te1.getSchema());
+		assertEquals("bar", ht.get(1, 1).toString());
+		assertEquals(2, ht.get(0, 1).numberValue().intValue());
+		assertSame(te2, ht.findEntry(new TableEntry("B", "bar")));
+	}
+
+	@Test
+	public void testMapView()
+	{
+		TableEntry te = new TableEntry("A", 1);
+		te.put("B", 2);
+		te.put("C", 3);
+		assertEquals(3, te.size());
+		assertTrue(te.containsKey("B"));
+		Iterator<Map.Entry<String,PrimitiveValue>> it = te.entrySet().iterator();
+		while (it.hasNext())
+		{
+			Map.Entry<String,PrimitiveValue> e = it.next();
+			if (e.getKey().equals("B"))
+			{
+				it.remove();
+			}
+			else
+			{
+				e.setValue(PrimitiveValue.getInstance(10));
+			}
+		}
+		assertEquals(2, te.size());
+		assertFalse(te.containsKey("B"));
+		assertEquals(10, te.get("C").numberValue().intValue());
+		assertSame(RowSchema.of("A", "C"), te.getSchema());
+		TableEntry te2 = new TableEntry(te);
+		te2.put("D", 4);
+		assertEquals(2, te.size());
+		assertEquals(3, te2.size());
+		assertEquals(te, new TableEntry(te));
+	}
+
+	@Test
+	public void testClone()
+	{
+		TableEntry te = new TableEntry("A", 1);
+		te.put("B", "foo");
+		TableEntry copy = te.clone();
+		copy.put("A", 2);
+		assertEquals(1, te.get("A").numberValue().intValue());
+		assertEquals(2, copy.get("A").numberValue().intValue());
+		assertSame(te.getSchema(), copy.getSchema());
+	}
+
+	@Test
+	public void testSerialize() throws Exception
+	{
+		TableEntry te = new TableEntry("A", 1);
+		te.put("B", null);
+		te.put("C", true);
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(bos);
+		oos.writeObject(te);
+		oos.close();
+		ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bos.toByteArray()));
+		TableEntry read = (TableEntry) ois.readObject();
+		ois.close();
+		assertEquals(te, read);
+		// Shared instances are preserved
+		assertSame(te.getSchema(), read.getSchema());
+		assertSame(PrimitiveValue.TRUE, read.get("C"));
+	}
+}
@@ -0,0 +1,76 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TableNodeBuilderTest
+{
+	@Test
+	public void testTree()
+	{
+		HardTable ht = new HardTable("A", "B");
+		ht.add(JoinTest.entry("A", "y", "B", 2));
+		ht.add(JoinTest.entry("A", "x", "B", 3));
+		ht.add(JoinTest.entry("A", "y", "B", 1));
+		ht.add(JoinTest.entry("A", "x", "B", 3));
+		TableNode root = ht.getTree();
+		assertEquals(3, root.countLeaves());
+		assertEquals(2, root.m_children.size());
+		TableNode x = root.m_children.get(0);
+		assertEquals("x", x.getValue().toString());
+		assertEquals(1, x.countLeaves());
+		// Both entries with x=3 end up in the same leaf
+		assertEquals(2, x.getCoordinates().size());
+		TableNode x3 = x.m_children.get(0);
+		assertEquals(3, x3.getValue().numberValue().intValue());
+		assertEquals(2, x3.getCoordinates().size());
+		assertEquals(1, x3.getCoordinates().get(0).row);
+		assertEquals(1, x3.getCoordinates().get(0).col);
+		TableNode y = root.m_children.get(1);
+		assertEquals(2, y.countLeaves());
+		assertEquals(1, y.m_children.get(0).getValue().numberValue().intValue());
+		assertEquals(2, y.m_children.get(1).getValue().numberValue().intValue());
+	}
+	
+	@Test
+	public void testMissingValues()
+	{
+		HardTable ht = new HardTable("A", "B");
+		ht.add(new TableEntry("A", 1));
+		ht.add(JoinTest.entry("A", 1, "B", 5));
+		ht.add(JoinTest.entry("A", 0, "B", 5));
+		TableNode root = new TableNodeBuilder("A", "B").build(ht.getEntries());
+		assertEquals(3, root.countLeaves());
+		TableNode one = root.m_children.get(1);
+		assertEquals(2, one.m_children.size());
+		// Missing values come last
+		assertEquals(5, one.m_children.get(0).getValue().numberValue().intValue());
+	}
+	
+	@Test
+	public void testEmpty()
+	{
+		HardTable ht = new HardTable("A", "B");
+		TableNode root = ht.getTree();
+		assertTrue(root.m_children.isEmpty());
+		assertEquals(1, root.countLeaves());
+	}
+}
@@ -0,0 +1,101 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TableSchemaTest
+{
+	@Test
+	public void testPositions()
+	{
+		HardTable ht = new HardTable("A", "B", "C");
+		assertEquals(0, ht.getColumnPosition("A"));
+		assertEquals(2, ht.getColumnPosition("C"));
+		assertEquals(-1, ht.getColumnPosition("D"));
+		assertEquals("B", ht.getSchema().getName(1));
+		assertNull(ht.getSchema().getName(3));
+	}
+
+	@Test
+	public void testIncrementalTypes()
+	{
+		HardTable ht = new HardTable("A", "B");
+		assertFalse(ht.isColumnNumeric(0));
+		TableEntry te = new TableEntry("A", "foo");
+		te.put("B", "bar");
+		ht.add(te);
+		assertTrue(ht.m_schema.isValid());
+		assertFalse(ht.isColumnNumeric(0));
+		assertFalse(ht.isColumnNumeric(1));
+		te = new TableEntry("B", 3);
+		te.put("A", "baz");
+		ht.add(te);
+		assertTrue(ht.m_schema.isValid());
+		assertFalse(ht.isColumnNumeric(0));
+		assertTrue(ht.isColumnNumeric(1));
+		assertEquals(Float.class, ht.getColumnTypes()[1]);
+		assertEquals(String.class, ht.getColumnTypeFor("A"));
+	}
+
+	@Test
+	public void testInvalidation()
+	{
+		HardTable ht = new HardTable("A");
+		ht.add(new TableEntry("A", "foo"));
+		assertFalse(ht.isColumnNumeric(0));
+		ht.getEntries().get(0).put("A", 2);
+		assertFalse(ht.m_schema.isValid());
+		assertTrue(ht.isColumnNumeric(0));
+		ht.clear();
+		assertFalse(ht.isColumnNumeric(0));
+	}
+
+	@Test
+	public void testRepeatedNames()
+	{
+		HardTable ht = new HardTable("A", "B", "A");
+		assertEquals(2, ht.getSchema().size());
+		assertEquals(ht.getSchema().getLayout().size(), ht.getSchema().size());
+		assertEquals(2, ht.getColumnCount());
+		TableEntry te = new TableEntry("A", 1);
+		te.put("B", "foo");
+		ht.add(te);
+		assertTrue(ht.isColumnNumeric(0));
+		assertFalse(ht.isColumnNumeric(1));
+		assertNull(ht.get(2, 0));
+	}
+
+	@Test
+	public void testReadEntries()
+	{
+		HardTable ht = new HardTable("A");
+		ht.add(new TableEntry("A", 1));
+		assertTrue(ht.isColumnNumeric(0));
+		long version = ht.getEditVersion();
+		assertEquals(1, ht.readEntries().size());
+		assertTrue(ht.m_schema.isValid());
+		assertEquals(version, ht.getEditVersion());
+		// Reading the input of a transformation keeps its schema
+		TempTable tt = ht.getDataTable();
+		new SortRows().transform(tt);
+		assertTrue(tt.m_schema.isValid());
+	}
+}
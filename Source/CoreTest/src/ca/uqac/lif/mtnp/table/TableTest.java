@@ -2,9 +2,16 @@ package ca.uqac.lif.mtnp.table;
 
 import static org.junit.Assert.*;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Random;
+
 import org.junit.Test;
 
 import ca.uqac.lif.mtnp.DataFormatter;
+import ca.uqac.lif.mtnp.table.rendering.CsvTableRenderer;
+import ca.uqac.lif.mtnp.table.rendering.LatexTableRenderer;
 
 public class TableTest
 {
@@ -64,4 +71,98 @@ public class TableTest
 		assertEquals("foo,0.1,4", lines[2]);
 		assertEquals("foo,0.2,4", lines[3]);
 	}
+	
+	@Test
+	public void testWriteCsv() throws IOException
+	{
+		HardTable ht = new HardTable("A", "B", "C");
+		{
+			TableEntry te = JoinTest.entry("A", "foo", "B", -120);
+			te.put("C", 0.5f);
+			ht.add(te);
+		}
+		ht.add(JoinTest.entry("A", "bar", "B", 0));
+		ht.add(JoinTest.entry("A", "bar", "B", 0));
+		StringWriter w = new StringWriter();
+		ht.writeCsv(w, ",", "?");
+		String[] lines = w.toString().split(DataFormatter.CRLF);
+		// Rows are sorted and identical rows are merged, as in the tree
+		assertEquals(3, lines.length);
+		assertEquals("A,B,C", lines[0]);
+		assertEquals("bar,0,?", lines[1]);
+		assertEquals("foo,-120,0.5", lines[2]);
+		assertEquals(w.toString(), ht.writeCsv(new StringBuilder(), ",", "?").toString());
+		assertEquals(w.toString(), new CsvTableRenderer(ht, ",", "?").render(ht.getTree(), ht.getColumnNames()));
+		assertEquals("", new HardTable("A").writeCsv(new StringBuilder(), ",", "?").toString());
+	}
+	
+	@Test
+	public void testWriteCsvSameAsTree()
+	{
+		Random r = new Random(0);
+		HardTable ht = new HardTable("A", "B", "C");
+		for (int i = 0; i < 500; i++)
+		{
+			TableEntry te = new TableEntry();
+			if (r.nextInt(8) > 0)
+			{
+				// The number 1 and the float 1 are equal, and shown as the first one
+				te.put("A", r.nextBoolean() ? (Object) r.nextInt(3) : (Object) (float) r.nextInt(3));
+			}
+			te.put("B", "s" + r.nextInt(4));
+			if (r.nextInt(5) > 0)
+			{
+				te.put("C", r.nextInt(5) - 2.5);
+			}
+			ht.add(te);
+		}
+		String expected = new CsvTableRenderer(ht, ",", "?").render(ht.getTree(), ht.getColumnNames());
+		assertEquals(expected, ht.writeCsv(new StringBuilder(), ",", "?").toString());
+		assertEquals(expected, ht.toCsv(",", "?"));
+	}
+	
+	@Test
+	public void testRenderToWriter() throws IOException
+	{
+		HardTable ht = new HardTable("A", "B");
+		for (int i = 0; i < 20; i++)
+		{
+			ht.add(JoinTest.entry("A", i % 3, "B", i));
+		}
+		String[] order = new String[] {"A", "B"};
+		String expected = new LatexTableRenderer(ht).render(ht.getTree(), order);
+		StringWriter w = new StringWriter();
+		new LatexTableRenderer(ht).setChunkSize(0).render(ht.getTree(), order, w);
+		assertEquals(expected, w.toString());
+		// An error of the writer while rendering the rows is not lost
+		Writer failing = new Writer()
+		{
+			@Override
+			public void write(char[] cbuf, int off, int len) throws IOException
+			{
+				throw new IOException("Cannot write");
+			}
+
+			@Override
+			public void flush()
+			{
+				// Nothing to do
+			}
+
+			@Override
+			public void close()
+			{
+				// Nothing to do
+			}
+		};
+		try
+		{
+			new LatexTableRenderer(ht).setChunkSize(0).render(ht.getTree(), order, failing);
+			fail("Expected an IOException");
+		}
+		catch (IOException e)
+		{
+			assertEquals("Cannot write", e.getMessage());
+		}
+	}
 }
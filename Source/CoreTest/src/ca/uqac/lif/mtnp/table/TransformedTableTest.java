@@ -0,0 +1,331 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import ca.uqac.lif.petitpoucet.NodeFunction;
+
+public class TransformedTableTest
+{
+	@Test
+	public void testDependencyCache()
+	{
+		HardTable ht = CellLineageTest.getTable();
+		CountingSort sort = new CountingSort();
+		TransformedTable tt = new TransformedTable(sort, ht);
+		for (int row = 0; row < 3; row++)
+		{
+			for (int col = 0; col < 3; col++)
+			{
+				assertNotNull(tt.getDependency(row, col));
+			}
+		}
+		assertEquals(1, sort.m_calls);
+		// Modifying the input table invalidates the cached evaluation
+		TableEntry te = new TableEntry("A", 0);
+		te.put("B", 0);
+		te.put("C", 0);
+		ht.add(te);
+		TableCellNode tcn = CellLineageTest.getCell(tt.getDependency(0, 0));
+		assertEquals(3, tcn.getRow());
+		assertEquals(2, sort.m_calls);
+	}
+
+	@Test
+	public void testDependencyCacheChain()
+	{
+		HardTable ht = CellLineageTest.getTable();
+		CountingSort sort = new CountingSort();
+		TransformedTable tt = new TransformedTable(new RemoveColumns("B"), new TransformedTable(sort, ht));
+		long version = tt.getVersion();
+		tt.getDependency(0, 0);
+		tt.getDependency(1, 1);
+		assertEquals(1, sort.m_calls);
+		assertEquals(version, tt.getVersion());
+		ht.clear();
+		assertTrue(tt.getVersion() != version);
+		tt.getDependency(0, 0);
+		assertEquals(2, sort.m_calls);
+	}
+
+	@Test
+	public void testGetDependencies()
+	{
+		HardTable ht = CellLineageTest.getTable();
+		CountingSort sort = new CountingSort();
+		TransformedTable tt = new TransformedTable(sort, ht);
+		NodeFunction[][] deps = tt.getDependencies(new int[] {0, 2}, new int[] {1});
+		assertEquals(2, deps.length);
+		assertEquals(1, deps[0].length);
+		assertEquals(1, sort.m_calls);
+		TableCellNode tcn = CellLineageTest.getCell(deps[1][0]);
+		assertEquals(0, tcn.getRow());
+		assertEquals(1, tcn.getCol());
+	}
+
+	@Test
+	public void testMemoizedDataTable()
+	{
+		HardTable ht = CellLineageTest.getTable();
+		CountingSort sort = new CountingSort();
+		TransformedTable tt = new TransformedTable(sort, ht).setCache(new TableCache(100));
+		TempTable t1 = tt.getDataTable();
+		TempTable t2 = tt.getDataTable();
+		assertEquals(1, sort.m_calls);
+		assertNotSame(t1, t2);
+		assertEquals(3, t2.getRowCount());
+		// Modifying the returned table does not affect the next one
+		t2.clear();
+		assertEquals(3, tt.getDataTable().getRowCount());
+		assertEquals(1, sort.m_calls);
+		ht.add(JoinTest.entry("A", 0, "B", 0));
+		assertEquals(4, tt.getDataTable().getRowCount());
+		assertEquals(2, sort.m_calls);
+	}
+
+	@Test
+	public void testCacheBudget()
+	{
+		TableCache cache = new TableCache(20);
+		CountingSort sort1 = new CountingSort(), sort2 = new CountingSort();
+		TransformedTable tt1 = new TransformedTable(sort1, CellLineageTest.getTable()).setCache(cache);
+		TransformedTable tt2 = new TransformedTable(sort2, CellLineageTest.getTable()).setCache(cache);
+		tt1.getDataTable();
+		// The lineage of the sorted table keeps the input table alive
+		assertEquals(18, cache.getCellCount());
+		// Keeping the second table evicts the first
+		tt2.getDataTable();
+		assertEquals(1, cache.size());
+		tt2.getDataTable();
+		tt1.getDataTable();
+		assertEquals(1, sort2.m_calls);
+		assertEquals(2, sort1.m_calls);
+		// A table larger than the budget is never kept
+		cache.setMaxCells(5);
+		assertEquals(0, cache.size());
+		tt1.getDataTable();
+		tt1.getDataTable();
+		assertEquals(4, sort1.m_calls);
+	}
+
+	@Test
+	public void testCacheCost()
+	{
+		TableCache cache = new TableCache(100);
+		TransformedTable tt = new TransformedTable(new SortRows(), CellLineageTest.getTable()).setCache(cache).setProvenance(false);
+		tt.getDataTable();
+		assertEquals(9, cache.getCellCount());
+		// An empty table still counts for one cell
+		TransformedTable empty = new TransformedTable(new SortRows(), new HardTable("A")).setCache(cache);
+		empty.getDataTable();
+		assertEquals(2, cache.size());
+		assertEquals(10, cache.getCellCount());
+	}
+
+	@Test
+	public void testCachedCopy()
+	{
+		CountingSort sort = new CountingSort();
+		TransformedTable tt = new TransformedTable(sort, CellLineageTest.getTable()).setCache(new TableCache(100));
+		TempTable t1 = tt.getDataTable();
+		Object value = t1.get(0, 0);
+		t1.getEntries().get(0).put("A", 100);
+		TempTable t2 = tt.getDataTable();
+		assertEquals(1, sort.m_calls);
+		assertEquals(value, t2.get(0, 0));
+	}
+
+	@Test
+	public void testMemoizedProvenance()
+	{
+		CountingSort sort = new CountingSort();
+		TransformedTable tt = new TransformedTable(sort, CellLineageTest.getTable()).setCache(new TableCache(100));
+		TransformedTable no_prov = new TransformedTable(new RemoveColumns("B"), tt).setProvenance(false);
+		no_prov.getDataTable();
+		assertEquals(1, sort.m_calls);
+		// The evaluation without dependencies cannot be reused to explain a cell
+		assertNotNull(tt.getDataTable().dependsOn(0, 0));
+		assertEquals(2, sort.m_calls);
+		no_prov.getDataTable();
+		assertEquals(2, sort.m_calls);
+	}
+
+	@Test
+	public void testNotVersioned()
+	{
+		CountingSort sort = new CountingSort();
+		final HardTable ht = CellLineageTest.getTable();
+		Table t = new HardTable("A", "B", "C")
+		{
+			@Override
+			public boolean isVersioned()
+			{
+				return false;
+			}
+
+			@Override
+			public TempTable getDataTable(boolean temporary)
+			{
+				return ht.getDataTable(temporary);
+			}
+		};
+		TransformedTable tt = new TransformedTable(sort, t);
+		tt.getDataTable();
+		tt.getDataTable();
+		assertEquals(2, sort.m_calls);
+	}
+
+	@Test
+	public void testNotVersionedDependency()
+	{
+		final HardTable ht = CellLineageTest.getTable();
+		Table t = new HardTable("A", "B", "C")
+		{
+			@Override
+			public boolean isVersioned()
+			{
+				return false;
+			}
+
+			@Override
+			public TempTable getDataTable(boolean temporary)
+			{
+				return ht.getDataTable(temporary);
+			}
+		};
+		CountingSort sort = new CountingSort();
+		TransformedTable tt = new TransformedTable(sort, t);
+		assertNull(tt.getDependency(3, 0));
+		ht.add(JoinTest.entry("A", 0, "B", 5));
+		// The change to the input cannot be detected: the explanation is
+		// computed again
+		TableCellNode tcn = CellLineageTest.getCell(tt.getDependency(0, 0));
+		assertEquals(3, tcn.getRow());
+		assertNotNull(tt.getDependency(3, 0));
+		assertEquals(3, sort.m_calls);
+		// A bulk query evaluates the transformation once
+		tt.getDependencies(new int[] {0, 1, 2}, new int[] {0, 1});
+		assertEquals(4, sort.m_calls);
+	}
+
+	@Test
+	public void testIncremental()
+	{
+		HardTable ht = CellLineageTest.getTable();
+		TableCache cache = new TableCache(1000);
+		CountingRemove remove = new CountingRemove("B");
+		TransformedTable t1 = new TransformedTable(remove, ht).setIncremental(true).setCache(cache);
+		TransformedTable t2 = new TransformedTable(new NormalizeRows(), t1).setIncremental(true).setCache(cache);
+		assertEquals(3, t2.getDataTable().getRowCount());
+		assertEquals(1, remove.m_transforms);
+		ht.add(JoinTest.entry("A", 1, "C", 3));
+		TempTable out = t2.getDataTable();
+		assertEquals(1, remove.m_transforms);
+		assertEquals(1, remove.m_updates);
+		assertEquals(4, out.getRowCount());
+		TempTable expected = new TransformedTable(new NormalizeRows(), new TransformedTable(new RemoveColumns("B"), ht)).setCache(null).getDataTable();
+		assertEquals(expected.toCsv(), out.toCsv());
+		assertEquals(0.25f, out.get(0, 3).numberValue().floatValue(), 0.0001);
+		assertNotNull(t1.getDataTable().dependsOn(3, 1));
+		// Any other modification of the input evaluates everything again
+		ht.getEntries();
+		assertEquals(4, t2.getDataTable().getRowCount());
+		assertEquals(2, remove.m_transforms);
+		assertEquals(1, remove.m_updates);
+	}
+
+	@Test
+	public void testIncrementalSum()
+	{
+		HardTable ht = CellLineageTest.getTable();
+		TransformedTable tt = new TransformedTable(ColumnSum.get(), ht).setIncremental(true).setCache(new TableCache(1000));
+		assertEquals(600, tt.getDataTable().get(2, 0).numberValue().intValue());
+		TableEntry te = JoinTest.entry("A", 4, "B", 40);
+		te.put("C", 400);
+		ht.add(te);
+		TempTable out = tt.getDataTable();
+		assertEquals(10, out.get(0, 0).numberValue().intValue());
+		assertEquals(100, out.get(1, 0).numberValue().intValue());
+		assertEquals(1000, out.get(2, 0).numberValue().intValue());
+		assertNotNull(out.dependsOn(0, 2));
+	}
+
+	@Test
+	public void testIncrementalSumLarge()
+	{
+		HardTable ht = new HardTable("A");
+		ht.add(new TableEntry("A", 16777216));
+		TransformedTable tt = new TransformedTable(ColumnSum.get(), ht).setIncremental(true).setCache(new TableCache(1000));
+		tt.getDataTable();
+		// Past 2^24, adding 1 to a float has no effect
+		ht.add(new TableEntry("A", 1));
+		tt.getDataTable();
+		ht.add(new TableEntry("A", 1));
+		TempTable out = tt.getDataTable();
+		assertEquals(16777218, out.get(0, 0).numberValue().intValue());
+		assertEquals(new TransformedTable(ColumnSum.get(), ht).getDataTable().get(0, 0), out.get(0, 0));
+	}
+
+	/**
+	 * Sorts rows and counts how many times it was called
+	 */
+	protected static class CountingSort extends SortRows
+	{
+		int m_calls = 0;
+
+		@Override
+		public TempTable transform(TempTable ... tables)
+		{
+			m_calls++;
+			return super.transform(tables);
+		}
+	}
+
+	/**
+	 * Removes columns and counts how many times it was evaluated and
+	 * updated
+	 */
+	protected static class CountingRemove extends RemoveColumns
+	{
+		int m_transforms = 0;
+
+		int m_updates = 0;
+
+		public CountingRemove(String ... names)
+		{
+			super(names);
+		}
+
+		@Override
+		public TempTable transform(TempTable ... tables)
+		{
+			m_transforms++;
+			return super.transform(tables);
+		}
+
+		@Override
+		public TempTable update(TempTable previous, TempTable input, int from)
+		{
+			m_updates++;
+			return super.update(previous, input, from);
+		}
+	}
+}
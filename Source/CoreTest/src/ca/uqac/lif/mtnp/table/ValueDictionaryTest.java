@@ -0,0 +1,74 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class ValueDictionaryTest
+{
+	@Test
+	public void testEncode()
+	{
+		ValueDictionary d = new ValueDictionary();
+		assertEquals(0, d.encode(PrimitiveValue.getInstance("foo")));
+		assertEquals(1, d.encode(PrimitiveValue.getInstance(3)));
+		assertEquals(2, d.encode(null));
+		assertEquals(0, d.encode(PrimitiveValue.getInstance("foo")));
+		assertEquals(1, d.encode(PrimitiveValue.getInstance(3.0)));
+		assertEquals(2, d.encode(null));
+		assertEquals(3, d.size());
+		assertEquals("foo", d.decode(0).toString());
+		assertNull(d.decode(2));
+		assertEquals(-1, d.getCode(PrimitiveValue.getInstance("bar")));
+		assertEquals(3, d.size());
+	}
+
+	@Test
+	public void testGrowth()
+	{
+		ValueDictionary d = new ValueDictionary(4);
+		for (int i = 0; i < 10000; i++)
+		{
+			assertEquals(i, d.encode(PrimitiveValue.getInstance("s" + i)));
+		}
+		ValueDictionary copy = d.copy();
+		copy.encode(PrimitiveValue.getInstance("new"));
+		assertEquals(10000, d.size());
+		assertEquals(10001, copy.size());
+		for (int i = 0; i < 10000; i++)
+		{
+			assertEquals(i, d.getCode(PrimitiveValue.getInstance("s" + i)));
+			assertEquals(i, copy.getCode(PrimitiveValue.getInstance("s" + i)));
+		}
+	}
+
+	@Test
+	public void testSortedCodes()
+	{
+		ValueDictionary d = new ValueDictionary();
+		d.encode(PrimitiveValue.getInstance("b"));
+		d.encode(null);
+		d.encode(PrimitiveValue.getInstance(10));
+		d.encode(PrimitiveValue.getInstance("a"));
+		d.encode(PrimitiveValue.getInstance(2));
+		assertArrayEquals(new int[] {4, 2, 3, 0, 1}, d.getSortedCodes());
+	}
+
+}
@@ -0,0 +1,99 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table.io;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import ca.uqac.lif.mtnp.table.ColumnarTable;
+import ca.uqac.lif.mtnp.table.TableEntry;
+import ca.uqac.lif.mtnp.table.TempTable;
+
+public class BinaryTableTest
+{
+	@Test
+	public void testRoundTrip() throws IOException
+	{
+		ColumnarTable ct = new ColumnarTable("I", "D", "S", "M");
+		for (int i = 0; i < 200; i++)
+		{
+			Object d = (i % 3 == 0) ? (Object) i : (Object) (i / 4f);
+			Object m = (i % 4 == 0) ? (Object) "foo" : (i % 4 == 1 ? (Object) true : (Object) (i * 1.5));
+			ct.addRow(i * 10000000000L, d, i % 5 == 0 ? null : "s" + (i % 3), m);
+		}
+		File f = File.createTempFile("mtnp", ".bin");
+		f.deleteOnExit();
+		new BinaryTableWriter().write(ct, f);
+		MappedTable mt = new BinaryTableReader().read(f);
+		assertEquals(200, mt.getRowCount());
+		assertArrayEquals(ct.getColumnNames(), mt.getColumnNames());
+		for (int row = 0; row < 200; row++)
+		{
+			for (int col = 0; col < 4; col++)
+			{
+				assertEquals(String.valueOf(ct.get(col, row)), String.valueOf(mt.get(col, row)));
+			}
+		}
+		assertTrue(mt.isColumnNumeric(0));
+		assertTrue(mt.isColumnNumeric(1));
+		assertFalse(mt.isColumnNumeric(2));
+		assertTrue(mt.isColumnNumeric(3));
+		TempTable tt = mt.getDataTable();
+		assertEquals(200, tt.getRowCount());
+		TableEntry te = tt.getEntries().get(1);
+		assertEquals("0.25", te.get("D").toString());
+		assertEquals("true", te.get("M").toString());
+		assertTrue(te.get("M").isBoolean());
+		f.delete();
+	}
+
+	@Test
+	public void testEmpty() throws IOException
+	{
+		File f = File.createTempFile("mtnp", ".bin");
+		f.deleteOnExit();
+		new BinaryTableWriter().write(new ColumnarTable("A"), f);
+		MappedTable mt = new BinaryTableReader().read(f);
+		assertEquals(0, mt.getRowCount());
+		assertEquals(1, mt.getColumnCount());
+		f.delete();
+	}
+
+	@Test(expected = IOException.class)
+	public void testBadFile() throws IOException
+	{
+		File f = File.createTempFile("mtnp", ".bin");
+		f.deleteOnExit();
+		FileOutputStream fos = new FileOutputStream(f);
+		fos.write("A,B\n1,2\n".getBytes("UTF-8"));
+		fos.close();
+		try
+		{
+			new BinaryTableReader().read(f);
+		}
+		finally
+		{
+			f.delete();
+		}
+	}
+}
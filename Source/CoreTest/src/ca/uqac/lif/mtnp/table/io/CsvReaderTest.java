@@ -0,0 +1,132 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table.io;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import ca.uqac.lif.mtnp.table.ColumnarTable;
+import ca.uqac.lif.mtnp.table.HardTable;
+import ca.uqac.lif.mtnp.util.NumberParser;
+
+public class CsvReaderTest
+{
+	@Test
+	public void testSimple() throws IOException
+	{
+		String csv = "# A comment\n\nA, B ,C\r\n1,foo,2.5\r\n2,\"bar, baz\",3\r\n\n3,\"say \"\"hi\"\"\"\n4\n";
+		CsvReader reader = new CsvReader();
+		HardTable ht = reader.readHardTable(csv.getBytes("UTF-8"));
+		assertEquals(3, ht.getColumnCount());
+		assertEquals("B", ht.getColumnName(1));
+		assertEquals(4, ht.getRowCount());
+		assertEquals(1, ht.get(0, 0).numberValue().intValue());
+		assertEquals("foo", ht.get(1, 0).toString());
+		assertEquals(2.5, ht.get(2, 0).doubleValue(), 0);
+		assertEquals("bar, baz", ht.get(1, 1).toString());
+		assertEquals("say \"hi\"", ht.get(1, 2).toString());
+		assertNull(ht.get(2, 2));
+		assertFalse(ht.getEntries().get(3).containsKey("B"));
+		int[] kinds = reader.getColumnKinds();
+		assertEquals(NumberParser.INT, kinds[0]);
+		assertEquals(NumberParser.TEXT, kinds[1]);
+		assertEquals(NumberParser.DECIMAL, kinds[2]);
+	}
+
+	@Test
+	public void testChunks() throws IOException
+	{
+		StringBuilder csv = new StringBuilder();
+		csv.append("x\ty\tz\n");
+		for (int i = 0; i < 5000; i++)
+		{
+			csv.append(i).append("\t");
+			if (i % 100 == 0)
+			{
+				csv.append("\"multi\nline ").append(i).append("\"");
+			}
+			else
+			{
+				csv.append("v").append(i % 7);
+			}
+			csv.append("\t").append(i * 3000000L).append("\n");
+		}
+		File f = File.createTempFile("mtnp", ".tsv");
+		f.deleteOnExit();
+		FileOutputStream fos = new FileOutputStream(f);
+		fos.write(csv.toString().getBytes("UTF-8"));
+		fos.close();
+		CsvReader reader = new CsvReader().setSeparator('\t').setChunkSize(1000).setThreads(4);
+		ColumnarTable ct = reader.readColumnarTable(f);
+		assertEquals(5000, ct.getRowCount());
+		for (int i = 0; i < 5000; i++)
+		{
+			assertEquals(i, ct.get(0, i).longValue());
+			assertEquals(i * 3000000L, ct.get(2, i).longValue());
+			if (i % 100 == 0)
+			{
+				assertEquals("multi\nline " + i, ct.get(1, i).toString());
+			}
+		}
+		assertEquals(NumberParser.LONG, reader.getColumnKinds()[2]);
+		HardTable ht = new CsvReader().setSeparator('\t').setChunkSize(777).setThreads(1).readHardTable(f);
+		assertEquals(5000, ht.getRowCount());
+		assertEquals("v1", ht.get(1, 4999).toString());
+		f.delete();
+	}
+
+	@Test
+	public void testEmptyFields() throws IOException
+	{
+		String csv = "A,B,C\n1,,2.5\n,foo,\n3,\"\",4\n";
+		CsvReader reader = new CsvReader();
+		ColumnarTable ct = reader.readColumnarTable(csv.getBytes("UTF-8"));
+		assertEquals(3, ct.getRowCount());
+		assertNull(ct.get(0, 1));
+		assertEquals(3, ct.get(0, 2).longValue());
+		assertNull(ct.get(1, 0));
+		assertEquals("", ct.get(1, 2).toString());
+		assertNull(ct.get(2, 1));
+		assertTrue(ct.isColumnNumeric(0));
+		assertTrue(ct.isColumnNumeric(2));
+		// The column of strings is still dictionary-encoded
+		assertNotNull(ct.getDictionary(1));
+		int[] kinds = reader.getColumnKinds();
+		assertEquals(NumberParser.INT, kinds[0]);
+		assertEquals(NumberParser.TEXT, kinds[1]);
+		assertEquals(NumberParser.DECIMAL, kinds[2]);
+		HardTable ht = reader.readHardTable(csv.getBytes("UTF-8"));
+		assertNull(ht.get(0, 1));
+		assertFalse(ht.readEntries().get(1).containsKey("A"));
+		assertEquals(Float.class, ht.getColumnTypeFor("A"));
+	}
+
+	@Test
+	public void testNoHeader() throws IOException
+	{
+		CsvReader reader = new CsvReader().setColumnNames("A", "B");
+		HardTable ht = reader.readHardTable("1,2\n3,4".getBytes("UTF-8"));
+		assertEquals(2, ht.getRowCount());
+		assertEquals(4, ht.get(1, 1).longValue());
+	}
+}
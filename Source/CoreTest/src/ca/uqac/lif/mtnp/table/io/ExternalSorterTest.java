@@ -0,0 +1,232 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table.io;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ca.uqac.lif.mtnp.table.HardTable;
+import ca.uqac.lif.mtnp.table.PrimitiveValue;
+import ca.uqac.lif.mtnp.table.RowCursor;
+import ca.uqac.lif.mtnp.table.RowSorter;
+import ca.uqac.lif.mtnp.table.SortRows;
+import ca.uqac.lif.mtnp.table.TableEntry;
+import ca.uqac.lif.mtnp.table.TempTable;
+import ca.uqac.lif.mtnp.table.TransformedTable;
+
+public class ExternalSorterTest
+{
+	@Test
+	public void testRuns() throws IOException
+	{
+		List<PrimitiveValue[]> rows = getRows(5000);
+		ExternalSorter sorter = new ExternalSorter(new String[] {"A", "B"}, new boolean[] {false, true}).setMemoryBudget(10000);
+		sorter.handleHeader(new String[] {"A", "B", "C"});
+		for (PrimitiveValue[] row : rows)
+		{
+			sorter.handleRow(row);
+		}
+		assertTrue(sorter.getRunCount() > 1);
+		Collector c = new Collector();
+		sorter.finish(c);
+		assertEquals(0, sorter.getRunCount());
+		int[] expected = new RowSorter(new String[] {"A", "B"}, new boolean[] {false, true}).sort(rows, new int[] {0, 1});
+		assertEquals(expected.length, c.m_indices.size());
+		for (int i = 0; i < expected.length; i++)
+		{
+			int index = c.m_indices.get(i).intValue();
+			assertEquals(expected[i], index);
+			PrimitiveValue[] values = c.m_rows.get(i);
+			for (int j = 0; j < values.length; j++)
+			{
+				PrimitiveValue v = rows.get(index)[j];
+				if (v == null)
+				{
+					assertNull(values[j]);
+				}
+				else
+				{
+					assertEquals(v, values[j]);
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void testInMemory() throws IOException
+	{
+		List<PrimitiveValue[]> rows = getRows(100);
+		ExternalSorter sorter = new ExternalSorter("C");
+		sorter.handleHeader(new String[] {"A", "B", "C"});
+		for (PrimitiveValue[] row : rows)
+		{
+			sorter.handleRow(row);
+		}
+		assertEquals(0, sorter.getRunCount());
+		Collector c = new Collector();
+		sorter.finish(c);
+		assertEquals(100, c.m_rows.size());
+		for (int i = 1; i < c.m_rows.size(); i++)
+		{
+			assertTrue(c.m_rows.get(i - 1)[2].compareTo(c.m_rows.get(i)[2]) <= 0);
+		}
+	}
+	
+	@Test
+	public void testSortRows()
+	{
+		HardTable ht = new HardTable("A", "B", "C");
+		for (PrimitiveValue[] row : getRows(2000))
+		{
+			TableEntry te = new TableEntry("A", row[0]);
+			te.put("B", row[1]);
+			te.put("C", row[2]);
+			ht.add(te);
+		}
+		TempTable t1 = new TransformedTable(new SortRows(), ht).getDataTable();
+		// Rows read from a cursor are spilled to disk as they are read
+		TempTable t2 = RowCursor.stream(new SortRows().setMemoryBudget(5000), ht.getCursor()).toTable();
+		assertEquals(t1.getRowCount(), t2.getRowCount());
+		for (int row = 0; row < t1.getRowCount(); row++)
+		{
+			for (int col = 0; col < 3; col++)
+			{
+				PrimitiveValue v1 = t1.get(col, row), v2 = t2.get(col, row);
+				if (v1 == null || v1.isNull())
+				{
+					// A missing value may be null or the null value
+					assertTrue(v2 == null || v2.isNull());
+				}
+				else
+				{
+					assertEquals(v1, v2);
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void testLargeLongs() throws IOException
+	{
+		ExternalSorter sorter = new ExternalSorter("A").setMemoryBudget(1);
+		sorter.handleHeader(new String[] {"A"});
+		long big = 1L << 60;
+		// Each row is a run of its own
+		for (int i = 0; i < 10; i++)
+		{
+			sorter.handleRow(new PrimitiveValue[] {PrimitiveValue.getInstance(big + (i * 7) % 10)});
+		}
+		assertEquals(10, sorter.getRunCount());
+		RowCursor c = sorter.getCursor();
+		for (int i = 0; i < 10; i++)
+		{
+			assertTrue(c.next());
+			assertEquals(big + i, c.getValues()[0].longValue());
+		}
+		assertFalse(c.next());
+		assertEquals(0, sorter.getRunCount());
+	}
+	
+	@Test
+	public void testFanIn() throws IOException
+	{
+		File folder = File.createTempFile("mtnp", "");
+		folder.delete();
+		folder.mkdir();
+		folder.deleteOnExit();
+		List<PrimitiveValue[]> rows = getRows(200);
+		ExternalSorter sorter = new ExternalSorter("A", "C").setMemoryBudget(1).setMaxFanIn(3).setTempFolder(folder);
+		sorter.handleHeader(new String[] {"A", "B", "C"});
+		for (PrimitiveValue[] row : rows)
+		{
+			sorter.handleRow(row);
+		}
+		// Each row is a run of its own
+		assertEquals(200, sorter.getRunCount());
+		RowCursor c = sorter.getCursor();
+		// The runs have been merged down to the maximum fan-in
+		assertEquals(3, folder.listFiles().length);
+		int[] expected = new RowSorter("A", "C").sort(rows, new int[] {0, 2});
+		for (int i = 0; i < expected.length; i++)
+		{
+			assertTrue(c.next());
+			assertEquals(rows.get(expected[i])[2], c.getValues()[2]);
+		}
+		assertFalse(c.next());
+		assertEquals(0, folder.listFiles().length);
+		folder.delete();
+	}
+	
+	@Test
+	public void testRowWidth() throws IOException
+	{
+		ExternalSorter sorter = new ExternalSorter("A").setMemoryBudget(1);
+		sorter.handleHeader(new String[] {"A", "B"});
+		sorter.handleRow(new PrimitiveValue[] {PrimitiveValue.getInstance(2), PrimitiveValue.getInstance(20), PrimitiveValue.getInstance(200)});
+		sorter.handleRow(new PrimitiveValue[] {PrimitiveValue.getInstance(1)});
+		Collector c = new Collector();
+		sorter.finish(c);
+		assertEquals(2, c.m_rows.size());
+		assertNull(c.m_rows.get(0)[1]);
+		// The extra value is dropped
+		assertEquals(2, c.m_rows.get(1).length);
+		assertEquals(20, c.m_rows.get(1)[1].longValue());
+	}
+	
+	protected static List<PrimitiveValue[]> getRows(int num_rows)
+	{
+		Random r = new Random(0);
+		List<PrimitiveValue[]> rows = new ArrayList<PrimitiveValue[]>();
+		for (int i = 0; i < num_rows; i++)
+		{
+			PrimitiveValue[] row = new PrimitiveValue[3];
+			row[0] = r.nextInt(10) == 0 ? null : PrimitiveValue.getInstance(r.nextInt(20));
+			row[1] = r.nextBoolean() ? PrimitiveValue.getInstance("s" + r.nextInt(50)) : PrimitiveValue.getInstance(r.nextFloat());
+			row[2] = PrimitiveValue.getInstance(r.nextDouble() * 100);
+			rows.add(row);
+		}
+		return rows;
+	}
+	
+	protected static class Collector implements ExternalSorter.RowSink
+	{
+		List<Long> m_indices = new ArrayList<Long>();
+		
+		List<PrimitiveValue[]> m_rows = new ArrayList<PrimitiveValue[]>();
+		
+		@Override
+		public void handleHeader(String[] names)
+		{
+			// Nothing to do
+		}
+		
+		@Override
+		public void handleRow(long index, PrimitiveValue[] values)
+		{
+			m_indices.add(index);
+			m_rows.add(values);
+		}
+	}
+}
@@ -0,0 +1,47 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.table.rendering;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TextEscaperTest
+{
+	@Test
+	public void testLatex()
+	{
+		assertEquals("a\\_b \\& \\{c\\} 50\\% \\#1 \\\\ \\~", LatexTableRenderer.escape("a_b & {c} 50% #1 \\ ~"));
+		String s = "nothing special";
+		assertSame(s, LatexTableRenderer.escape(s));
+	}
+
+	@Test
+	public void testHtml()
+	{
+		StringBuilder out = new StringBuilder("<td>");
+		TextEscaper.HTML.escape("a<b & \"c\" > é", out);
+		assertEquals("<td>a&lt;b &amp; &quot;c&quot; &gt; é", out.toString());
+	}
+
+	@Test
+	public void testFormatName()
+	{
+		assertEquals("Tablebcd", LatexTableRenderer.formatName("Table #1-2_3"));
+	}
+}
@@ -0,0 +1,72 @@
+/*
+  MTNP: Manipulate Tables N'Plots
+  Copyright (C) 2017-2020 Sylvain Hallé
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.mtnp.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class NumberParserTest
+{
+	@Test
+	public void testIntegers()
+	{
+		assertEquals(42, NumberParser.parse("42"));
+		assertEquals(-42, NumberParser.parse(" -42 "));
+		assertEquals(5, NumberParser.parse("+5"));
+		assertEquals(Integer.MIN_VALUE, NumberParser.parse("-2147483648"));
+		assertEquals(3000000000L, NumberParser.parse("3000000000"));
+		assertEquals(Long.MAX_VALUE, NumberParser.parse("9223372036854775807"));
+		assertEquals(Long.MIN_VALUE, NumberParser.parse("-9223372036854775808"));
+		assertEquals(NumberParser.DECIMAL, NumberParser.classify("9223372036854775808"));
+		assertEquals(NumberParser.INT, NumberParser.classify("0"));
+		assertEquals(NumberParser.LONG, NumberParser.classify("-3000000000"));
+	}
+
+	@Test
+	public void testDecimals()
+	{
+		String[] inputs = {"2.5", "-0.1", ".5", "5.", "1e5", "1.5E-3", "3.14159265358979", 
+				"123456789.123", "1e-45", "3.4028235e38", "7f", "2.5d", "0.000001", 
+				"16777217", "1.00000005960464477539062499"};
+		for (String s : inputs)
+		{
+			if (NumberParser.classify(s) == NumberParser.DECIMAL)
+			{
+				assertEquals(s, Float.parseFloat(s), NumberParser.parse(s).floatValue(), 0);
+				assertEquals(s, Double.parseDouble(s), NumberParser.parseDouble(s), 0);
+			}
+		}
+		assertTrue(NumberParser.parse("2.5") instanceof Float);
+		assertTrue(Float.isNaN(NumberParser.parse("NaN").floatValue()));
+		assertEquals(Float.NEGATIVE_INFINITY, NumberParser.parse("-Infinity").floatValue(), 0);
+	}
+
+	@Test
+	public void testText()
+	{
+		String[] inputs = {"", " ", "abc", "-", "+", ".", "e5", "1e", "1e+", "1.2.3", 
+				"12abc", "0x10", "1,5", "Nan", "--1", "1 2"};
+		for (String s : inputs)
+		{
+			assertNull(s, NumberParser.parse(s));
+			assertFalse(s, NumberParser.isNumeric(s));
+		}
+		assertNull(NumberParser.parse(null));
+	}
+}